@@ -36,6 +36,7 @@ import edu.cmu.tetrad.algcomparison.statistic.ElapsedTime;
 import edu.cmu.tetrad.algcomparison.statistic.ParameterColumn;
 import edu.cmu.tetrad.algcomparison.statistic.Statistic;
 import edu.cmu.tetrad.algcomparison.statistic.Statistics;
+import edu.cmu.tetrad.algcomparison.statistic.utils.ConfusionContext;
 import edu.cmu.tetrad.algcomparison.utils.HasKnowledge;
 import edu.cmu.tetrad.algcomparison.utils.HasParameterValues;
 import edu.cmu.tetrad.algcomparison.utils.HasParameters;
@@ -50,10 +51,13 @@ import org.reflections.Reflections;
 
 import java.io.*;
 import java.lang.reflect.Constructor;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.rmi.MarshalledObject;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.*;
-import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.*;
 
 /**
  * Script to do a comparison of a list of algorithms using a list of statistics and a list
@@ -83,6 +87,9 @@ public class Comparison {
     private boolean savePags = false;
     private ArrayList<String> dirs = null;
     private ComparisonGraph comparisonGraph = ComparisonGraph.true_DAG;
+    private int numWorkers = 1;
+    private int taskMemoryMb = 0;
+    private boolean checkpointing = false;
 
     public void compareFromFiles(String filePath, Algorithms algorithms,
                                  Statistics statistics, Parameters parameters) {
@@ -866,56 +873,26 @@ public class Comparison {
                 AlgorithmTask task = new AlgorithmTask(algorithmSimulationWrappers,
                         algorithmWrappers, simulationWrappers,
                         statistics, numGraphTypes, allStats, run);
-                task.compute();
-//                tasks.add(task);
+                tasks.add(task);
             }
         }
 
-//        if (!isParallelized()) {
-//            for (AlgorithmTask task : tasks) {
-//                task.compute();
-//            }
-//        } else {
-//            class Task extends RecursiveTask<Boolean> {
-//                List<AlgorithmTask> tasks;
-//
-//                public Task(List<AlgorithmTask> tasks) {
-//                    this.tasks = tasks;
-//                }
-//
-//                @Override
-//                protected Boolean compute() {
-//                    Queue<AlgorithmTask> tasks = new ArrayDeque<>();
-//
-//                    for (AlgorithmTask task : this.tasks) {
-//                        tasks.add(task);
-//                        task.fork();
-//
-//                        for (AlgorithmTask _task : new ArrayList<>(tasks)) {
-//                            if (_task.isDone()) {
-//                                _task.join();
-//                                tasks.remove(_task);
-//                            }
-//                        }
-//
-//                        while (tasks.size() > Runtime.getRuntime().availableProcessors()) {
-//                            AlgorithmTask _task = tasks.poll();
-//                            _task.join();
-//                        }
-//                    }
-//
-//                    for (AlgorithmTask task : tasks) {
-//                        task.join();
-//                    }
-//
-//                    return true;
-//                }
-//            }
+        if (!isParallelized() || numWorkers <= 1) {
+            for (AlgorithmTask task : tasks) {
+                task.compute();
+            }
+        } else {
+            runInParallel(tasks);
+        }
 
-//            Task task = new Task(tasks);
-//
-//            ForkJoinPoolInstance.getInstance().getPool().invoke(task);
-//        }
+        // Each task records the graph types it used; they are merged here, after all have finished.
+        for (AlgorithmTask task : tasks) {
+            for (int u = 0; u < numGraphTypes; u++) {
+                if (task.graphTypeUsed[u]) {
+                    graphTypeUsed[u] = true;
+                }
+            }
+        }
 
         return allStats;
     }
@@ -976,6 +953,56 @@ public class Comparison {
         this.parallelized = parallelized;
     }
 
+    public int getNumWorkers() {
+        return numWorkers;
+    }
+
+    /**
+     * @param numWorkers The number of algorithm runs to do at once, if parallelized. The default
+     *                   is 1, which runs them one after another.
+     */
+    public void setNumWorkers(int numWorkers) {
+        if (numWorkers < 1) {
+            throw new IllegalArgumentException("Number of workers must be at least 1: " + numWorkers);
+        }
+
+        this.numWorkers = numWorkers;
+    }
+
+    public int getTaskMemoryMb() {
+        return taskMemoryMb;
+    }
+
+    /**
+     * @param taskMemoryMb The memory in megabytes that a single algorithm run is assumed to need.
+     *                     Runs are only started together if their memory fits in the maximum heap.
+     *                     If 0 (the default), the memory of a run is estimated from the size of its
+     *                     data.
+     */
+    public void setTaskMemoryMb(int taskMemoryMb) {
+        if (taskMemoryMb < 0) {
+            throw new IllegalArgumentException("Task memory must be non-negative: " + taskMemoryMb);
+        }
+
+        this.taskMemoryMb = taskMemoryMb;
+    }
+
+    public boolean isCheckpointing() {
+        return checkpointing;
+    }
+
+    /**
+     * @param checkpointing True if the statistics of each completed algorithm run should be saved
+     *                      under the results path, in the "checkpoints" directory, so that an
+     *                      interrupted comparison picks up where it stopped when it is run again.
+     *                      The saved statistics are only used if the algorithm and simulation
+     *                      descriptions still match, so the simulations must produce the same data
+     *                      each time, for instance by loading them from files or by fixing the seed.
+     */
+    public void setCheckpointing(boolean checkpointing) {
+        this.checkpointing = checkpointing;
+    }
+
     /**
      * @return True if patterns should be saved out.
      */
@@ -1074,6 +1101,12 @@ public class Comparison {
         private double[][][][] allStats;
         private final Run run;
 
+        // The graph types this run used.
+        private final boolean[] graphTypeUsed;
+
+        // True if the run should use its own copy of the algorithm.
+        private boolean copiesAlgorithm = false;
+
         public AlgorithmTask(List<AlgorithmSimulationWrapper> algorithmSimulationWrappers,
                              List<AlgorithmWrapper> algorithmWrappers, List<SimulationWrapper> simulationWrappers,
                              Statistics statistics, int numGraphTypes, double[][][][] allStats, Run run) {
@@ -1084,14 +1117,237 @@ public class Comparison {
             this.numGraphTypes = numGraphTypes;
             this.allStats = allStats;
             this.run = run;
+            this.graphTypeUsed = new boolean[numGraphTypes];
         }
 
         @Override
         protected Boolean compute() {
-            doRun(algorithmSimulationWrappers, algorithmWrappers,
-                    simulationWrappers, statistics, numGraphTypes, allStats, run);
-            return true;
+            if (checkpointing && loadCheckpoint(run, statistics, allStats, graphTypeUsed)) {
+                System.out.println("Loaded checkpoint for " + run.getWrapper().getAlgorithmWrapper().getDescription()
+                        + " run " + (run.getRunIndex() + 1));
+                return true;
+            }
+
+            Algorithm algorithm = run.getWrapper().getAlgorithmWrapper().getAlgorithm();
+
+            if (copiesAlgorithm) {
+                algorithm = copyAlgorithm(algorithm);
+            }
+
+            boolean done = doRun(algorithmSimulationWrappers, algorithmWrappers,
+                    simulationWrappers, statistics, numGraphTypes, allStats, run, algorithm, graphTypeUsed);
+
+            if (done && checkpointing) {
+                saveCheckpoint(run, statistics, allStats, graphTypeUsed);
+            }
+
+            return done;
+        }
+    }
+
+    // Runs the tasks on numWorkers threads, starting a task only when its estimated memory fits in
+    // what the other running tasks leave of the maximum heap.
+    private void runInParallel(List<AlgorithmTask> tasks) {
+        final int totalMb = (int) Math.max(1, Runtime.getRuntime().maxMemory() / (1024 * 1024));
+        final Semaphore memory = new Semaphore(totalMb, true);
+        ExecutorService pool = Executors.newFixedThreadPool(numWorkers);
+        List<Future<Boolean>> futures = new ArrayList<>();
+
+        for (final AlgorithmTask task : tasks) {
+            final int mb = Math.min(totalMb, getTaskMemoryMb(task.run));
+            Algorithm algorithm = task.run.getWrapper().getAlgorithmWrapper().getAlgorithm();
+
+            // These algorithms are configured for each run before searching, so each run gets its
+            // own copy.
+            task.copiesAlgorithm = algorithm instanceof ExternalAlgorithm || algorithm instanceof HasKnowledge;
+
+            futures.add(pool.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    memory.acquire(mb);
+
+                    try {
+                        return task.compute();
+                    } finally {
+                        memory.release(mb);
+                    }
+                }
+            }));
+        }
+
+        try {
+            for (Future<Boolean> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Algorithm copyAlgorithm(Algorithm algorithm) {
+        try {
+            return new MarshalledObject<>(algorithm).get();
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not copy " + algorithm.getDescription()
+                    + " for a parallel run.", e);
+        }
+    }
+
+    // The memory in megabytes that the given run is assumed to need. If no task memory is set, this
+    // is the data (twice, if it is copied) plus a covariance matrix over its columns.
+    private int getTaskMemoryMb(Run run) {
+        if (taskMemoryMb > 0) {
+            return taskMemoryMb;
+        }
+
+        SimulationWrapper simulationWrapper = run.getWrapper().getSimulationWrapper();
+        DataModel data = simulationWrapper.getDataModel(run.getRunIndex());
+
+        if (!(data instanceof DataSet)) {
+            return 1;
         }
+
+        long rows = ((DataSet) data).getNumRows();
+        long columns = ((DataSet) data).getNumColumns();
+        long bytes = 8L * (rows * columns * (copyData ? 2 : 1) + columns * columns);
+
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, bytes / (1024 * 1024)));
+    }
+
+    private File getCheckpointFile(Run run) {
+        if (resultsPath == null) {
+            throw new IllegalArgumentException("Results path not provided.");
+        }
+
+        File dir = new File(resultsPath, "checkpoints");
+        return new File(dir, "run." + (run.getAlgSimIndex() + 1) + "." + (run.getRunIndex() + 1) + ".txt");
+    }
+
+    // Saves the statistics of a finished run. The file has the algorithm and simulation descriptions
+    // on the first two lines, the statistic names and the parameter values on the next two, then one
+    // line per graph type: the graph type index, whether this run used it, and the value of each
+    // statistic.
+    private void saveCheckpoint(Run run, Statistics statistics, double[][][][] allStats, boolean[] used) {
+        File file = getCheckpointFile(run);
+        file.getParentFile().mkdirs();
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+
+        AlgorithmSimulationWrapper wrapper = run.getWrapper();
+
+        try (PrintStream out = new PrintStream(new FileOutputStream(temp))) {
+            out.println(wrapper.getAlgorithmWrapper().getDescription());
+            out.println(wrapper.getSimulationWrapper().getDescription());
+            out.println(getCheckpointStatistics(statistics));
+            out.println(getCheckpointParameters(run));
+
+            for (int u = 0; u < allStats.length; u++) {
+                StringBuilder buf = new StringBuilder();
+                buf.append(u).append("\t").append(used[u]);
+
+                for (int statIndex = 0; statIndex < allStats[u][run.getAlgSimIndex()].length; statIndex++) {
+                    buf.append("\t").append(allStats[u][run.getAlgSimIndex()][statIndex][run.getRunIndex()]);
+                }
+
+                out.println(buf);
+            }
+        } catch (IOException e) {
+            System.out.println("Could not save checkpoint " + file.getAbsolutePath());
+            e.printStackTrace();
+            return;
+        }
+
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Could not save checkpoint " + file.getAbsolutePath());
+            e.printStackTrace();
+        }
+    }
+
+    // Loads the statistics of a run saved by saveCheckpoint, returning false if there is no
+    // checkpoint for the run or it was saved for a different algorithm, simulation, list of
+    // statistics or parameter values.
+    private boolean loadCheckpoint(Run run, Statistics statistics, double[][][][] allStats, boolean[] used) {
+        File file = getCheckpointFile(run);
+
+        if (!file.exists()) {
+            return false;
+        }
+
+        AlgorithmSimulationWrapper wrapper = run.getWrapper();
+        int numStats = allStats[0][run.getAlgSimIndex()].length;
+        double[][] stats = new double[allStats.length][numStats];
+        boolean[] _used = new boolean[allStats.length];
+
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            if (!wrapper.getAlgorithmWrapper().getDescription().equals(in.readLine())) return false;
+            if (!wrapper.getSimulationWrapper().getDescription().equals(in.readLine())) return false;
+            if (!getCheckpointStatistics(statistics).equals(in.readLine())) return false;
+            if (!getCheckpointParameters(run).equals(in.readLine())) return false;
+
+            for (int u = 0; u < allStats.length; u++) {
+                String line = in.readLine();
+                if (line == null) return false;
+
+                String[] tokens = line.split("\t");
+                if (tokens.length != numStats + 2 || Integer.parseInt(tokens[0]) != u) return false;
+
+                _used[u] = Boolean.parseBoolean(tokens[1]);
+
+                for (int statIndex = 0; statIndex < numStats; statIndex++) {
+                    stats[u][statIndex] = Double.parseDouble(tokens[statIndex + 2]);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            return false;
+        }
+
+        for (int u = 0; u < allStats.length; u++) {
+            used[u] = _used[u];
+
+            for (int statIndex = 0; statIndex < numStats; statIndex++) {
+                allStats[u][run.getAlgSimIndex()][statIndex][run.getRunIndex()] = stats[u][statIndex];
+            }
+        }
+
+        return true;
+    }
+
+    // The statistics line of a checkpoint: their abbreviations, in order.
+    private String getCheckpointStatistics(Statistics statistics) {
+        StringBuilder buf = new StringBuilder("statistics");
+
+        for (Statistic statistic : statistics.getStatistics()) {
+            buf.append("\t").append(statistic.getAbbreviation());
+        }
+
+        return buf.toString();
+    }
+
+    // The parameters line of a checkpoint: the values of the algorithm's and then the simulation's
+    // parameters, for this run.
+    private String getCheckpointParameters(Run run) {
+        AlgorithmWrapper algorithmWrapper = run.getWrapper().getAlgorithmWrapper();
+        SimulationWrapper simulationWrapper = run.getWrapper().getSimulationWrapper();
+        StringBuilder buf = new StringBuilder("parameters");
+
+        for (String name : algorithmWrapper.getParameters()) {
+            buf.append("\t").append(name).append(" = ")
+                    .append(Arrays.toString(algorithmWrapper.getAlgorithmSpecificParameters().getValues(name)));
+        }
+
+        for (String name : simulationWrapper.getParameters()) {
+            buf.append("\t").append(name).append(" = ")
+                    .append(Arrays.toString(simulationWrapper.getSimulationSpecificParameters().getValues(name)));
+        }
+
+        return buf.toString();
     }
 
     private void printParameters(List<String> names, Parameters parameters, PrintStream out) {
@@ -1137,10 +1393,11 @@ public class Comparison {
         dir.delete();
     }
 
-    private void doRun(List<AlgorithmSimulationWrapper> algorithmSimulationWrappers,
+    private boolean doRun(List<AlgorithmSimulationWrapper> algorithmSimulationWrappers,
                        List<AlgorithmWrapper> algorithmWrappers, List<SimulationWrapper> simulationWrappers,
                        Statistics statistics,
-                       int numGraphTypes, double[][][][] allStats, Run run) {
+                       int numGraphTypes, double[][][][] allStats, Run run, Algorithm algorithm,
+                       boolean[] graphTypeUsed) {
         System.out.println();
         System.out.println("Run " + (run.getRunIndex() + 1));
         System.out.println();
@@ -1158,15 +1415,14 @@ public class Comparison {
         Graph out;
 
         try {
-            Algorithm algorithm = algorithmWrapper.getAlgorithm();
             Simulation simulation = simulationWrapper.getSimulation();
 
             if (algorithm instanceof HasKnowledge && simulation instanceof HasKnowledge) {
                 ((HasKnowledge) algorithm).setKnowledge(((HasKnowledge) simulation).getKnowledge());
             }
 
-            if (algorithmWrapper.getAlgorithm() instanceof ExternalAlgorithm) {
-                ExternalAlgorithm external = (ExternalAlgorithm) algorithmWrapper.getAlgorithm();
+            if (algorithm instanceof ExternalAlgorithm) {
+                ExternalAlgorithm external = (ExternalAlgorithm) algorithm;
                 external.setSimulation(simulationWrapper.getSimulation());
                 external.setPath(resultsPath);
                 external.setSimIndex(simulationWrappers.indexOf(simulationWrapper));
@@ -1195,7 +1451,7 @@ public class Comparison {
         } catch (Exception e) {
             System.out.println("Could not run " + algorithmWrapper.getDescription());
             e.printStackTrace();
-            return;
+            return false;
         }
 
         int simIndex = simulationWrappers.indexOf(simulationWrapper) + 1;
@@ -1212,8 +1468,8 @@ public class Comparison {
             out = GraphUtils.replaceNodes(out, trueGraph.getNodes());
         }
 
-        if (algorithmWrapper.getAlgorithm() instanceof ExternalAlgorithm) {
-            ExternalAlgorithm extAlg = (ExternalAlgorithm) algorithmWrapper.getAlgorithm();
+        if (algorithm instanceof ExternalAlgorithm) {
+            ExternalAlgorithm extAlg = (ExternalAlgorithm) algorithm;
             extAlg.setSimIndex(simulationWrappers.indexOf(simulationWrapper));
             extAlg.setSimulation(simulationWrapper.getSimulation());
             extAlg.setPath(resultsPath);
@@ -1265,23 +1521,32 @@ public class Comparison {
 
                 int statIndex = -1;
 
-                for (Statistic _stat : statistics.getStatistics()) {
-                    statIndex++;
+                // The confusion counts are computed once here for all of the statistics.
+                ConfusionContext.open(truth[u], est[u]);
 
-                    if (_stat instanceof ParameterColumn) continue;
+                try {
+                    for (Statistic _stat : statistics.getStatistics()) {
+                        statIndex++;
 
-                    double stat;
+                        if (_stat instanceof ParameterColumn) continue;
 
-                    if (_stat instanceof ElapsedTime) {
-                        stat = elapsed / 1000.0;
-                    } else {
-                        stat = _stat.getValue(truth[u], est[u]);
-                    }
+                        double stat;
 
-                    allStats[u][run.getAlgSimIndex()][statIndex][run.getRunIndex()] = stat;
+                        if (_stat instanceof ElapsedTime) {
+                            stat = elapsed / 1000.0;
+                        } else {
+                            stat = _stat.getValue(truth[u], est[u]);
+                        }
+
+                        allStats[u][run.getAlgSimIndex()][statIndex][run.getRunIndex()] = stat;
+                    }
+                } finally {
+                    ConfusionContext.close();
                 }
             }
         }
+
+        return true;
     }
 
     private void saveGraph(String resultsPath, Graph graph, int i, int simIndex, int algIndex,
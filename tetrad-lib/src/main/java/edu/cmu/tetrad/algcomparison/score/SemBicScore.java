@@ -33,6 +33,7 @@ public class SemBicScore implements ScoreWrapper {
         double penaltyDiscount = parameters.getDouble("penaltyDiscount");
         this.penaltyDiscount = penaltyDiscount;
         semBicScore.setPenaltyDiscount(penaltyDiscount);
+        semBicScore.setUseCholeskyCache(parameters.getBoolean("useCholeskyCache"));
         return semBicScore;
     }
 
@@ -50,6 +51,7 @@ public class SemBicScore implements ScoreWrapper {
     public List<String> getParameters() {
         List<String> parameters = new ArrayList<>();
         parameters.add("penaltyDiscount");
+        parameters.add("useCholeskyCache");
         return parameters;
     }
 
@@ -1,6 +1,6 @@
 package edu.cmu.tetrad.algcomparison.statistic;
 
-import edu.cmu.tetrad.algcomparison.statistic.utils.AdjacencyConfusion;
+import edu.cmu.tetrad.algcomparison.statistic.utils.ConfusionContext;
 import edu.cmu.tetrad.graph.Graph;
 
 /**
@@ -24,7 +24,7 @@ public class AdjacencyFP implements Statistic {
 
     @Override
     public double getValue(Graph trueGraph, Graph estGraph) {
-        AdjacencyConfusion adjConfusion = new AdjacencyConfusion(trueGraph, estGraph);
+        ConfusionContext adjConfusion = ConfusionContext.get(trueGraph, estGraph);
         return adjConfusion.getAdjFp();
     }
 
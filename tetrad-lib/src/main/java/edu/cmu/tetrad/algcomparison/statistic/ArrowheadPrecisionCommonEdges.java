@@ -1,6 +1,6 @@
 package edu.cmu.tetrad.algcomparison.statistic;
 
-import edu.cmu.tetrad.algcomparison.statistic.utils.ArrowConfusion;
+import edu.cmu.tetrad.algcomparison.statistic.utils.ConfusionContext;
 import edu.cmu.tetrad.graph.Graph;
 
 /**
@@ -27,7 +27,7 @@ public class ArrowheadPrecisionCommonEdges implements Statistic {
 
     @Override
     public double getValue(Graph trueGraph, Graph estGraph) {
-        ArrowConfusion confusion = new ArrowConfusion(trueGraph, estGraph);
+        ConfusionContext confusion = ConfusionContext.get(trueGraph, estGraph);
         double arrowsTp = confusion.getArrowsTpc();
         double arrowsFp = confusion.getArrowsFpc();
         return arrowsTp / (arrowsTp + arrowsFp);
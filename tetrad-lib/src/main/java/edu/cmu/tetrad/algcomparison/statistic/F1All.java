@@ -1,7 +1,6 @@
 package edu.cmu.tetrad.algcomparison.statistic;
 
-import edu.cmu.tetrad.algcomparison.statistic.utils.AdjacencyConfusion;
-import edu.cmu.tetrad.algcomparison.statistic.utils.ArrowConfusion;
+import edu.cmu.tetrad.algcomparison.statistic.utils.ConfusionContext;
 import edu.cmu.tetrad.graph.Graph;
 
 /**
@@ -28,16 +27,15 @@ public class F1All implements Statistic {
 
     @Override
     public double getValue(Graph trueGraph, Graph estGraph) {
-        AdjacencyConfusion adjConfusion = new AdjacencyConfusion(trueGraph, estGraph);
-        ArrowConfusion arrowConfusion = new ArrowConfusion(trueGraph, estGraph);
-        int adjTp = adjConfusion.getAdjTp();
-        int adjFp = adjConfusion.getAdjFp();
-        int adjFn = adjConfusion.getAdjFn();
-        int adjTn = adjConfusion.getAdjTn();
-        int arrowTp = arrowConfusion.getArrowsTp();
-        int arrowFp = arrowConfusion.getArrowsFp();
-        int arrowFn = arrowConfusion.getArrowsFn();
-        int arrowTn = arrowConfusion.getArrowsTn();
+        ConfusionContext confusion = ConfusionContext.get(trueGraph, estGraph);
+        int adjTp = confusion.getAdjTp();
+        int adjFp = confusion.getAdjFp();
+        int adjFn = confusion.getAdjFn();
+        int adjTn = confusion.getAdjTn();
+        int arrowTp = confusion.getArrowsTp();
+        int arrowFp = confusion.getArrowsFp();
+        int arrowFn = confusion.getArrowsFn();
+        int arrowTn = confusion.getArrowsTn();
         double adjPrecision = adjTp / (double) (adjTp + adjFp);
         double adjRecall = adjTp / (double) (adjTp + adjFn);
         double arrowPrecision = arrowTp / (double) (arrowTp + arrowFp);
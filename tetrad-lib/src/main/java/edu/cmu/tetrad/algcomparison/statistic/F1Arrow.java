@@ -1,6 +1,6 @@
 package edu.cmu.tetrad.algcomparison.statistic;
 
-import edu.cmu.tetrad.algcomparison.statistic.utils.ArrowConfusion;
+import edu.cmu.tetrad.algcomparison.statistic.utils.ConfusionContext;
 import edu.cmu.tetrad.graph.Graph;
 
 /**
@@ -30,7 +30,7 @@ public class F1Arrow implements Statistic {
 
     @Override
     public double getValue(Graph trueGraph, Graph estGraph) {
-        ArrowConfusion arrowConfusion = new ArrowConfusion(trueGraph, estGraph);
+        ConfusionContext arrowConfusion = ConfusionContext.get(trueGraph, estGraph);
         int arrowTp = arrowConfusion.getArrowsTp();
         int arrowFp = arrowConfusion.getArrowsFp();
         int arrowFn = arrowConfusion.getArrowsFn();
@@ -1,7 +1,6 @@
 package edu.cmu.tetrad.algcomparison.statistic;
 
-import edu.cmu.tetrad.algcomparison.statistic.utils.ArrowConfusion;
-import edu.cmu.tetrad.algcomparison.statistic.utils.TailConfusion;
+import edu.cmu.tetrad.algcomparison.statistic.utils.ConfusionContext;
 import edu.cmu.tetrad.graph.Graph;
 
 /**
@@ -28,10 +27,10 @@ public class TailPrecision implements Statistic {
 
     @Override
     public double getValue(Graph trueGraph, Graph estGraph) {
-        TailConfusion adjConfusion = new TailConfusion(trueGraph, estGraph);
-        double arrowsTp = adjConfusion.getArrowsTp();
-        double arrowsFp = adjConfusion.getArrowsFp();
-        return arrowsTp / (arrowsTp + arrowsFp);
+        ConfusionContext confusion = ConfusionContext.get(trueGraph, estGraph);
+        double tailsTp = confusion.getTailsTp();
+        double tailsFp = confusion.getTailsFp();
+        return tailsTp / (tailsTp + tailsFp);
     }
 
     @Override
@@ -1,7 +1,6 @@
 package edu.cmu.tetrad.algcomparison.statistic;
 
-import edu.cmu.tetrad.algcomparison.statistic.utils.ArrowConfusion;
-import edu.cmu.tetrad.algcomparison.statistic.utils.TailConfusion;
+import edu.cmu.tetrad.algcomparison.statistic.utils.ConfusionContext;
 import edu.cmu.tetrad.graph.Graph;
 
 /**
@@ -28,11 +27,11 @@ public class TailRecall implements Statistic {
 
     @Override
     public double getValue(Graph trueGraph, Graph estGraph) {
-        TailConfusion confusion = new TailConfusion(trueGraph, estGraph);
-        double arrowsTp = confusion.getArrowsTp();
-        double arrowsFn = confusion.getArrowsFn();
-        double den = arrowsTp + arrowsFn;
-        return arrowsTp / den;
+        ConfusionContext confusion = ConfusionContext.get(trueGraph, estGraph);
+        double tailsTp = confusion.getTailsTp();
+        double tailsFn = confusion.getTailsFn();
+        double den = tailsTp + tailsFn;
+        return tailsTp / den;
     }
 
     @Override
@@ -0,0 +1,386 @@
+package edu.cmu.tetrad.algcomparison.statistic.utils;
+
+import edu.cmu.tetrad.graph.Edge;
+import edu.cmu.tetrad.graph.Endpoint;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Node;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The adjacency, arrow, tail and two-cycle confusion counts for a (true graph, estimated graph)
+ * pair, all computed in one pass over the edges of the two graphs. Nodes of the two graphs are
+ * matched by name. When the two graphs share their Node objects, as they do in Comparison, the
+ * counts are the same as those of AdjacencyConfusion, ArrowConfusion and TailConfusion; those
+ * classes compare nodes with Node.equals, so for graphs over distinct nodes with the same names
+ * their counts may differ from these.
+ * <p>
+ * So that the statistics of one comparison share a single context, the caller opens a context
+ * for the pair before calculating its statistics and closes it afterward; in between, get()
+ * returns the open context for that pair on the current thread. Otherwise get() computes a new
+ * context each time.
+ *
+ * @see AdjacencyConfusion
+ * @see ArrowConfusion
+ * @see TailConfusion
+ */
+public class ConfusionContext {
+
+    // The context opened on each thread, if any.
+    private static final ThreadLocal<ConfusionContext> open = new ThreadLocal<>();
+
+    private final Graph truth;
+    private final Graph est;
+
+    private int adjTp;
+    private int adjFp;
+    private int adjFn;
+    private int adjTn;
+
+    private int arrowsTp;
+    private int arrowsTpc;
+    private int arrowsFp;
+    private int arrowsFpc;
+    private int arrowsFn;
+    private int arrowsFnc;
+    private int arrowsTn;
+    private int arrowsTnc;
+
+    private int tailsTp;
+    private int tailsFp;
+    private int tailsFn;
+    private int tailsTn;
+
+    private int twoCycleTp;
+    private int twoCycleFp;
+    private int twoCycleFn;
+
+    // True once the counts have been computed.
+    private boolean counted = false;
+
+    /**
+     * Creates a context for the given true and estimated graphs. The counts are computed when
+     * first asked for.
+     */
+    public ConfusionContext(Graph truth, Graph est) {
+        this.truth = truth;
+        this.est = est;
+    }
+
+    /**
+     * Opens a context for the given graphs on the current thread, replacing any open one.
+     */
+    public static ConfusionContext open(Graph truth, Graph est) {
+        ConfusionContext context = new ConfusionContext(truth, est);
+        open.set(context);
+        return context;
+    }
+
+    /**
+     * Closes the context open on the current thread, if any.
+     */
+    public static void close() {
+        open.remove();
+    }
+
+    /**
+     * @return The context open on the current thread if it is for exactly these graphs, otherwise
+     * a new context for them.
+     */
+    public static ConfusionContext get(Graph truth, Graph est) {
+        ConfusionContext context = open.get();
+
+        if (context != null && context.truth == truth && context.est == est) {
+            return context;
+        }
+
+        return new ConfusionContext(truth, est);
+    }
+
+    public int getAdjTp() {
+        ensureCounted();
+        return adjTp;
+    }
+
+    public int getAdjFp() {
+        ensureCounted();
+        return adjFp;
+    }
+
+    public int getAdjFn() {
+        ensureCounted();
+        return adjFn;
+    }
+
+    public int getAdjTn() {
+        ensureCounted();
+        return adjTn;
+    }
+
+    public int getArrowsTp() {
+        ensureCounted();
+        return arrowsTp;
+    }
+
+    public int getArrowsFp() {
+        ensureCounted();
+        return arrowsFp;
+    }
+
+    public int getArrowsFn() {
+        ensureCounted();
+        return arrowsFn;
+    }
+
+    public int getArrowsTn() {
+        ensureCounted();
+        return arrowsTn;
+    }
+
+    /**
+     * True positives for common edges.
+     */
+    public int getArrowsTpc() {
+        ensureCounted();
+        return arrowsTpc;
+    }
+
+    /**
+     * False positives for common edges.
+     */
+    public int getArrowsFpc() {
+        ensureCounted();
+        return arrowsFpc;
+    }
+
+    /**
+     * False negatives for common edges.
+     */
+    public int getArrowsFnc() {
+        ensureCounted();
+        return arrowsFnc;
+    }
+
+    /**
+     * True negatives for common edges.
+     */
+    public int getArrowsTnc() {
+        ensureCounted();
+        return arrowsTnc;
+    }
+
+    public int getTailsTp() {
+        ensureCounted();
+        return tailsTp;
+    }
+
+    public int getTailsFp() {
+        ensureCounted();
+        return tailsFp;
+    }
+
+    public int getTailsFn() {
+        ensureCounted();
+        return tailsFn;
+    }
+
+    public int getTailsTn() {
+        ensureCounted();
+        return tailsTn;
+    }
+
+    public int getTwoCycleTp() {
+        ensureCounted();
+        return twoCycleTp;
+    }
+
+    public int getTwoCycleFp() {
+        ensureCounted();
+        return twoCycleFp;
+    }
+
+    public int getTwoCycleFn() {
+        ensureCounted();
+        return twoCycleFn;
+    }
+
+    //==============================PRIVATE METHODS=========================//
+
+    private synchronized void ensureCounted() {
+        if (counted) return;
+
+        if (truth == null) throw new NullPointerException("True graph must not be null.");
+        if (est == null) throw new NullPointerException("Estimated graph must not be null.");
+
+        Map<String, Integer> indices = new HashMap<>();
+        Map<Long, Pair> pairs = new HashMap<>();
+
+        for (Edge edge : truth.getEdges()) {
+            IntEdge _edge = new IntEdge(edge, indices);
+            getPair(pairs, _edge).truth.add(_edge);
+        }
+
+        for (Edge edge : est.getEdges()) {
+            IntEdge _edge = new IntEdge(edge, indices);
+            getPair(pairs, _edge).est.add(_edge);
+        }
+
+        for (Pair pair : pairs.values()) {
+            count(pair);
+        }
+
+        int numNodes = truth.getNumNodes();
+        adjTn = numNodes * (numNodes - 1) / 2 - adjFn;
+
+        // Each two-cycle is counted once for each of its edges.
+        twoCycleTp /= 2;
+        twoCycleFn /= 2;
+        twoCycleFp /= 2;
+
+        counted = true;
+    }
+
+    private static Pair getPair(Map<Long, Pair> pairs, IntEdge edge) {
+        long lo = Math.min(edge.node1, edge.node2);
+        long hi = Math.max(edge.node1, edge.node2);
+        long key = (lo << 32) | hi;
+
+        Pair pair = pairs.get(key);
+
+        if (pair == null) {
+            pair = new Pair();
+            pairs.put(key, pair);
+        }
+
+        return pair;
+    }
+
+    // Adds the counts for the edges between one pair of nodes.
+    private void count(Pair pair) {
+        boolean inTruth = !pair.truth.isEmpty();
+        boolean inEst = !pair.est.isEmpty();
+
+        if (inTruth && inEst) adjTp++;
+        if (inTruth && !inEst) adjFn++;
+        if (!inTruth && inEst) adjFp++;
+
+        for (IntEdge edge : pair.truth) {
+            IntEdge edge1 = pair.select(pair.est, edge.node1, edge.node2);
+            IntEdge edge2 = pair.select(pair.truth, edge.node1, edge.node2);
+            boolean common = edge1 != null && edge2 != null;
+
+            countTrueEndpoint(IntEdge.proximal(edge2, edge.node1), IntEdge.proximal(edge1, edge.node1), common);
+            countTrueEndpoint(IntEdge.proximal(edge2, edge.node2), IntEdge.proximal(edge1, edge.node2), common);
+
+            if (pair.truth.size() == 2 && pair.est.size() == 2) twoCycleTp++;
+            if (pair.truth.size() == 2 && pair.est.size() != 2) twoCycleFn++;
+        }
+
+        for (IntEdge edge : pair.est) {
+            IntEdge edge1 = pair.select(pair.est, edge.node1, edge.node2);
+            IntEdge edge2 = pair.select(pair.truth, edge.node1, edge.node2);
+            boolean common = edge1 != null && edge2 != null;
+
+            countEstEndpoint(IntEdge.proximal(edge2, edge.node1), IntEdge.proximal(edge1, edge.node1), common);
+            countEstEndpoint(IntEdge.proximal(edge2, edge.node2), IntEdge.proximal(edge1, edge.node2), common);
+
+            if (pair.truth.size() != 2 && pair.est.size() == 2) twoCycleFp++;
+        }
+    }
+
+    // Counts one endpoint of an edge in the true graph.
+    private void countTrueEndpoint(Endpoint trueEndpoint, Endpoint estEndpoint, boolean common) {
+        if (trueEndpoint == Endpoint.ARROW && estEndpoint != Endpoint.ARROW) {
+            arrowsFn++;
+            if (common) arrowsFnc++;
+        }
+
+        if (trueEndpoint == Endpoint.ARROW && estEndpoint == Endpoint.ARROW) {
+            arrowsTp++;
+            if (common) arrowsTpc++;
+        }
+
+        if (trueEndpoint != Endpoint.ARROW && estEndpoint != Endpoint.ARROW) {
+            arrowsTn++;
+            if (common) arrowsTnc++;
+        }
+
+        if (trueEndpoint == Endpoint.TAIL && estEndpoint != Endpoint.TAIL) tailsFn++;
+        if (trueEndpoint == Endpoint.TAIL && estEndpoint == Endpoint.TAIL) tailsTp++;
+        if (trueEndpoint != Endpoint.TAIL && estEndpoint != Endpoint.TAIL) tailsTn++;
+    }
+
+    // Counts one endpoint of an edge in the estimated graph.
+    private void countEstEndpoint(Endpoint trueEndpoint, Endpoint estEndpoint, boolean common) {
+        if (estEndpoint == Endpoint.ARROW && trueEndpoint != Endpoint.ARROW) {
+            arrowsFp++;
+            if (common) arrowsFpc++;
+        }
+
+        if (estEndpoint == Endpoint.TAIL && trueEndpoint != Endpoint.TAIL) tailsFp++;
+    }
+
+    // An edge with its nodes replaced by their indices.
+    private static class IntEdge {
+        private final int node1;
+        private final int node2;
+        private final Endpoint endpoint1;
+        private final Endpoint endpoint2;
+
+        private IntEdge(Edge edge, Map<String, Integer> indices) {
+            this.node1 = index(edge.getNode1(), indices);
+            this.node2 = index(edge.getNode2(), indices);
+            this.endpoint1 = edge.getEndpoint1();
+            this.endpoint2 = edge.getEndpoint2();
+        }
+
+        private static int index(Node node, Map<String, Integer> indices) {
+            Integer index = indices.get(node.getName());
+
+            if (index == null) {
+                index = indices.size();
+                indices.put(node.getName(), index);
+            }
+
+            return index;
+        }
+
+        // The endpoint of the edge at the given node, or null if there is no edge.
+        private static Endpoint proximal(IntEdge edge, int node) {
+            if (edge == null) return null;
+            if (edge.node1 == node) return edge.endpoint1;
+            if (edge.node2 == node) return edge.endpoint2;
+            return null;
+        }
+
+        // True if this is a directed edge into the given node.
+        private boolean isDirectedInto(int node) {
+            if (endpoint1 == Endpoint.TAIL && endpoint2 == Endpoint.ARROW) return node2 == node;
+            if (endpoint1 == Endpoint.ARROW && endpoint2 == Endpoint.TAIL) return node1 == node;
+            return false;
+        }
+    }
+
+    // The edges between a pair of nodes in the true and estimated graphs.
+    private static class Pair {
+        private final List<IntEdge> truth = new ArrayList<>(1);
+        private final List<IntEdge> est = new ArrayList<>(1);
+
+        // The edge from node1 to node2 the confusion classes compare: the only edge, if there is
+        // one, otherwise the directed edge node1-->node2, if there is one.
+        private IntEdge select(List<IntEdge> edges, int node1, int node2) {
+            if (edges.size() == 1) return edges.get(0);
+
+            for (IntEdge edge : edges) {
+                if (edge.isDirectedInto(node2)) {
+                    return edge;
+                }
+            }
+
+            return null;
+        }
+    }
+}
@@ -24,25 +24,51 @@ package edu.cmu.tetrad.bayes;
 import edu.cmu.tetrad.graph.Dag;
 import edu.cmu.tetrad.graph.Graph;
 import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
 import edu.cmu.tetrad.util.RandomUtil;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
- * Calculates updated marginals for a Bayes net by simulating data and
- * calculating likelihood ratios. The method is as follows. For P(A | B), enough
- * sample points are simulated from the underlying BayesIm so that 1000 satisfy
- * the condition B. Then the maximum likelihood estimate of condition A is
- * calculated.
+ * Calculates updated marginals for a Bayes net by simulating from it. Three methods are
+ * available.
+ * <ul>
+ * <li>Rejection: points are simulated from the manipulated Bayes IM, and those that do not
+ * satisfy the evidence are thrown away. Slow if the evidence is unlikely.</li>
+ * <li>Likelihood weighting (the default): variables in evidence are drawn only from their
+ * allowed categories, and each point is weighted by the probability of the evidence given
+ * the rest of the point.</li>
+ * <li>Gibbs sampling: several Markov chains are run, each starting from a point that
+ * satisfies the evidence and redrawing each variable not fixed by the evidence from its
+ * distribution given its Markov blanket.</li>
+ * </ul>
+ * Points are simulated in batches in parallel, each batch with its own random number stream
+ * seeded from RandomUtil, so results are repeatable for a given seed. Simulation stops when
+ * the estimated standard error of every marginal is below the tolerance, when the maximum
+ * number of points has been simulated, or when the time limit is reached, whichever comes
+ * first; isConverged() tells which. The standard errors are estimated from the effective
+ * sample size of the weights; for Gibbs sampling they ignore autocorrelation and so are
+ * optimistic.
  *
  * @author Joseph Ramsey
  */
 public final class ApproximateUpdater implements ManipulatingBayesUpdater {
     static final long serialVersionUID = 23L;
 
+    /**
+     * The sampling methods.
+     */
+    public enum Method {REJECTION, LIKELIHOOD_WEIGHTING, GIBBS}
+
     /**
      * The IM which this updater modifies.
      *
@@ -58,12 +84,20 @@ public final class ApproximateUpdater implements ManipulatingBayesUpdater {
     private Evidence evidence;
 
     /**
-     * Counts of data points for each variable value.
+     * Counts of data points for each variable value, from versions that simulated only by
+     * rejection. Kept for sessions saved by those versions; see readObject.
      *
      * @serial
      */
     private int[][] counts;
 
+    /**
+     * Summed weights of data points for each variable value.
+     *
+     * @serial
+     */
+    private double[][] weightedCounts;
+
     /**
      * This is the source BayesIm after manipulation; all data simulations
      * should be taken from this.
@@ -72,6 +106,44 @@ public final class ApproximateUpdater implements ManipulatingBayesUpdater {
      */
     private BayesIm manipulatedBayesIm;
 
+    /**
+     * @serial Cannot be null.
+     */
+    private Method method = Method.LIKELIHOOD_WEIGHTING;
+
+    /**
+     * Simulation stops when every marginal has an estimated standard error below this.
+     *
+     * @serial Range [0, 1].
+     */
+    private double tolerance = 0.01;
+
+    /**
+     * @serial Range &gt; 0.
+     */
+    private long maxSamples = 1000000;
+
+    /**
+     * In milliseconds.
+     *
+     * @serial Range &gt; 0.
+     */
+    private long timeLimit = 10000;
+
+    /**
+     * The number of points simulated in each batch.
+     *
+     * @serial Range &gt; 0.
+     */
+    private int batchSize = 1000;
+
+    // The number of points simulated, the sums of their weights and of their squared weights,
+    // and whether simulation stopped because the tolerance was reached.
+    private long numSamples;
+    private double sumWeights;
+    private double sumSquaredWeights;
+    private boolean converged;
+
     //==============================CONSTRUCTORS===========================//
 
     public ApproximateUpdater(BayesIm bayesIm) {
@@ -160,18 +232,22 @@ public final class ApproximateUpdater implements ManipulatingBayesUpdater {
         BayesPm manipulatedBayesPm = createUpdatedBayesPm(manipulatedGraph);
         this.manipulatedBayesIm = createdUpdatedBayesIm(manipulatedBayesPm);
 
-        this.counts = null;
+        this.weightedCounts = null;
     }
 
+    /**
+     * @return the estimated probability of the given value of the given variable given the
+     * evidence, or NaN if no simulated point had positive weight.
+     */
     public double getMarginal(int variable, int value) {
         doUpdate();
-        int sum = 0;
+        double sum = 0;
 
         for (int i = 0; i < manipulatedBayesIm.getNumColumns(variable); i++) {
-            sum += counts[variable][i];
+            sum += weightedCounts[variable][i];
         }
 
-        return counts[variable][value] / (double) sum;
+        return weightedCounts[variable][value] / sum;
     }
 
     public boolean isJointMarginalSupported() {
@@ -211,6 +287,90 @@ public final class ApproximateUpdater implements ManipulatingBayesUpdater {
         return marginals;
     }
 
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * Sets the sampling method; by default likelihood weighting.
+     */
+    public void setMethod(Method method) {
+        if (method == null) throw new NullPointerException();
+        this.method = method;
+        this.weightedCounts = null;
+    }
+
+    /**
+     * Sets the standard error below which every marginal must be estimated for simulation to
+     * stop early. By default 0.01.
+     */
+    public void setTolerance(double tolerance) {
+        if (tolerance < 0 || tolerance > 1) throw new IllegalArgumentException("Tolerance must be in [0, 1]: " + tolerance);
+        this.tolerance = tolerance;
+        this.weightedCounts = null;
+    }
+
+    /**
+     * Sets the maximum number of points to simulate. By default 1,000,000.
+     */
+    public void setMaxSamples(long maxSamples) {
+        if (maxSamples < 1) throw new IllegalArgumentException("Max samples must be at least 1: " + maxSamples);
+        this.maxSamples = maxSamples;
+        this.weightedCounts = null;
+    }
+
+    /**
+     * Sets the time after which simulation stops, in milliseconds. By default 10,000.
+     */
+    public void setTimeLimit(long timeLimit) {
+        if (timeLimit < 1) throw new IllegalArgumentException("Time limit must be at least 1: " + timeLimit);
+        this.timeLimit = timeLimit;
+        this.weightedCounts = null;
+    }
+
+    /**
+     * Sets the number of points simulated in each batch. By default 1000.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) throw new IllegalArgumentException("Batch size must be at least 1: " + batchSize);
+        this.batchSize = batchSize;
+        this.weightedCounts = null;
+    }
+
+    /**
+     * @return the number of points simulated for the current evidence.
+     */
+    public long getNumSamples() {
+        doUpdate();
+        return numSamples;
+    }
+
+    /**
+     * @return the effective sample size, the squared sum of the weights over the sum of the
+     * squared weights.
+     */
+    public double getEffectiveSampleSize() {
+        doUpdate();
+        return effectiveSampleSize(sumWeights, sumSquaredWeights);
+    }
+
+    /**
+     * @return the largest estimated standard error of any marginal.
+     */
+    public double getStandardError() {
+        doUpdate();
+        return standardError(weightedCounts, sumWeights, sumSquaredWeights);
+    }
+
+    /**
+     * @return true if simulation stopped because every marginal was estimated within the
+     * tolerance, false if it stopped because the sample or time budget ran out.
+     */
+    public boolean isConverged() {
+        doUpdate();
+        return converged;
+    }
+
     /**
      * Prints out the most recent marginal.
      */
@@ -221,45 +381,93 @@ public final class ApproximateUpdater implements ManipulatingBayesUpdater {
     //==============================PRIVATE METHODS=======================//
 
     private void doUpdate() {
-        if (counts != null) {
+        if (weightedCounts != null) {
             return;
         }
 
-        this.counts = new int[manipulatedBayesIm.getNumNodes()][];
+        Sampler sampler = new Sampler(bayesIm, evidence);
+        int n = bayesIm.getNumNodes();
+
+        double[][] counts = new double[n][];
 
-        for (int i = 0; i < manipulatedBayesIm.getNumNodes(); i++) {
-            this.counts[i] = new int[manipulatedBayesIm.getNumColumns(i)];
+        for (int i = 0; i < n; i++) {
+            counts[i] = new double[bayesIm.getNumColumns(i)];
         }
 
-        // Get a tier ordering and convert it to an int array.
-        Graph graph = getManipulatedGraph();
-        List<Node> tierOrdering = graph.getCausalOrdering();
-        int[] tiers = new int[tierOrdering.size()];
+        ForkJoinPool pool = ForkJoinPoolInstance.getInstance().getPool();
+        int parallelism = pool.getParallelism();
+        long start = System.currentTimeMillis();
 
-        for (int i = 0; i < tierOrdering.size(); i++) {
-            tiers[i] = getManipulatedBayesIm().getNodeIndex(tierOrdering.get(i));
-        }
+        this.numSamples = 0;
+        this.sumWeights = 0.0;
+        this.sumSquaredWeights = 0.0;
+        this.converged = false;
 
-        int numCounted = 0;
+        while (numSamples < maxSamples && System.currentTimeMillis() - start < timeLimit) {
+            List<Callable<Batch>> tasks = new ArrayList<>();
 
-        // Adding an "ur"-counter--if the counting procedure exceeds this many
-        // iterations, just give up. Handles the case there there simply aren't
-        // enough (say, none) legitimate combinations to count, which was
-        // leading to infinite loops. jdramsey 2/7/12
-        int numSurveyed = 0;
+            for (int t = 0; t < parallelism && numSamples + (long) t * batchSize < maxSamples; t++) {
+                final int size = (int) Math.min(batchSize, maxSamples - numSamples - (long) t * batchSize);
+                final long seed = RandomUtil.getInstance().nextLong();
+                final Sampler _sampler = sampler;
 
-        // Construct the sample.
-        while (numCounted < 1000 && ++numSurveyed < 10000) {
-            int[] point = getSinglePoint(getBayesIm(), tiers);
+                tasks.add(new Callable<Batch>() {
+                    public Batch call() {
+                        return _sampler.sample(method, size, new SplittableRandom(seed));
+                    }
+                });
+            }
 
-            if (evidence.getProposition().isPermissibleCombination(point)) {
-                numCounted++;
+            for (Future<Batch> future : pool.invokeAll(tasks)) {
+                Batch batch;
+
+                try {
+                    batch = future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while simulating.", e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                    throw new IllegalStateException(e.getCause());
+                }
 
-                for (int j = 0; j < getManipulatedBayesIm().getNumNodes(); j++) {
-                    counts[j][point[j]]++;
+                for (int i = 0; i < n; i++) {
+                    for (int j = 0; j < counts[i].length; j++) {
+                        counts[i][j] += batch.counts[i][j];
+                    }
                 }
+
+                numSamples += batch.numSamples;
+                sumWeights += batch.sumWeights;
+                sumSquaredWeights += batch.sumSquaredWeights;
+            }
+
+            if (sumWeights > 0 && standardError(counts, sumWeights, sumSquaredWeights) < tolerance) {
+                converged = true;
+                break;
             }
         }
+
+        this.weightedCounts = counts;
+    }
+
+    private static double effectiveSampleSize(double sumWeights, double sumSquaredWeights) {
+        return sumSquaredWeights == 0 ? 0 : sumWeights * sumWeights / sumSquaredWeights;
+    }
+
+    private static double standardError(double[][] counts, double sumWeights, double sumSquaredWeights) {
+        double n = effectiveSampleSize(sumWeights, sumSquaredWeights);
+        if (n == 0) return Double.NaN;
+        double max = 0.0;
+
+        for (double[] _counts : counts) {
+            for (double count : _counts) {
+                double p = count / sumWeights;
+                max = Math.max(max, Math.sqrt(p * (1 - p) / n));
+            }
+        }
+
+        return max;
     }
 
     private BayesIm createdUpdatedBayesIm(BayesPm updatedBayesPm) {
@@ -289,41 +497,273 @@ public final class ApproximateUpdater implements ManipulatingBayesUpdater {
         return updatedGraph;
     }
 
-    private static int[] getSinglePoint(BayesIm bayesIm, int[] tiers) {
-        int[] point = new int[bayesIm.getNumNodes()];
-        int[] combination = new int[bayesIm.getNumNodes()];
-        RandomUtil randomUtil = RandomUtil.getInstance();
+    // The result of simulating a batch of points.
+    private static final class Batch {
+        private final double[][] counts;
+        private long numSamples;
+        private double sumWeights;
+        private double sumSquaredWeights;
 
-        for (int nodeIndex : tiers) {
-            double cutoff = randomUtil.nextDouble();
+        Batch(int[] dims) {
+            counts = new double[dims.length][];
 
-            for (int k = 0; k < bayesIm.getNumParents(nodeIndex); k++) {
-                combination[k] = point[bayesIm.getParent(nodeIndex, k)];
+            for (int i = 0; i < dims.length; i++) {
+                counts[i] = new double[dims[i]];
             }
+        }
 
-            int rowIndex = bayesIm.getRowIndex(nodeIndex, combination);
-            double sum = 0.0;
+        void add(int[] point, double weight) {
+            numSamples++;
+            if (weight == 0.0) return;
+
+            for (int i = 0; i < point.length; i++) {
+                counts[i][point[i]] += weight;
+            }
+
+            sumWeights += weight;
+            sumSquaredWeights += weight * weight;
+        }
+    }
+
+    // The manipulated Bayes IM and the evidence in primitive arrays, for simulation. A
+    // manipulated variable has no parents and is equally likely to take each of its allowed
+    // categories.
+    private static final class Sampler {
+
+        // The number of Gibbs sweeps discarded at the start of each chain.
+        private static final int BURN_IN = 100;
+
+        private final int[] dims;
+        private final int[] order;
+        private final int[][] parents;
+        private final double[][] cpts;
+        private final boolean[] manipulated;
+        private final boolean[][] allowed;
+        private final boolean[] conditioned;
+
+        // For each variable, its children and its position among the parents of each.
+        private final int[][] children;
+        private final int[][] childPositions;
+
+        Sampler(BayesIm bayesIm, Evidence evidence) {
+            int n = bayesIm.getNumNodes();
+            Proposition proposition = evidence.getProposition();
+
+            dims = new int[n];
+            parents = new int[n][];
+            cpts = new double[n][];
+            manipulated = new boolean[n];
+            allowed = new boolean[n][];
+            conditioned = new boolean[n];
+
+            for (int i = 0; i < n; i++) {
+                dims[i] = bayesIm.getNumColumns(i);
+                manipulated[i] = evidence.isManipulated(i);
+                parents[i] = manipulated[i] ? new int[0] : bayesIm.getParents(i);
+                conditioned[i] = proposition.isConditioned(i);
+                allowed[i] = new boolean[dims[i]];
+
+                for (int j = 0; j < dims[i]; j++) {
+                    allowed[i][j] = proposition.isAllowed(i, j);
+                }
+
+                if (manipulated[i]) {
+                    cpts[i] = new double[dims[i]];
+
+                    int numAllowed = 0;
+
+                    for (int j = 0; j < dims[i]; j++) {
+                        if (allowed[i][j]) numAllowed++;
+                    }
+
+                    for (int j = 0; j < dims[i]; j++) {
+                        cpts[i][j] = allowed[i][j] ? 1.0 / numAllowed : 0.0;
+                    }
+                } else {
+                    cpts[i] = new double[bayesIm.getNumRows(i) * dims[i]];
+
+                    for (int row = 0; row < bayesIm.getNumRows(i); row++) {
+                        for (int col = 0; col < dims[i]; col++) {
+                            double probability = bayesIm.getProbability(i, row, col);
+
+                            if (Double.isNaN(probability)) {
+                                throw new IllegalStateException("Some probability " +
+                                        "values in the BayesIm are not filled in; " +
+                                        "cannot simulate data to do approximate updating.");
+                            }
+
+                            cpts[i][row * dims[i] + col] = probability;
+                        }
+                    }
+                }
+            }
+
+            // An ordering of the original DAG is an ordering of the manipulated one too.
+            List<Node> ordering = bayesIm.getDag().getCausalOrdering();
+            order = new int[n];
+
+            for (int k = 0; k < n; k++) {
+                order[k] = bayesIm.getNodeIndex(ordering.get(k));
+            }
+
+            int[] numChildren = new int[n];
+
+            for (int i = 0; i < n; i++) {
+                for (int p : parents[i]) numChildren[p]++;
+            }
+
+            children = new int[n][];
+            childPositions = new int[n][];
+
+            for (int i = 0; i < n; i++) {
+                children[i] = new int[numChildren[i]];
+                childPositions[i] = new int[numChildren[i]];
+                numChildren[i] = 0;
+            }
+
+            for (int i = 0; i < n; i++) {
+                for (int k = 0; k < parents[i].length; k++) {
+                    int p = parents[i][k];
+                    children[p][numChildren[p]] = i;
+                    childPositions[p][numChildren[p]] = k;
+                    numChildren[p]++;
+                }
+            }
+        }
+
+        Batch sample(Method method, int size, SplittableRandom random) {
+            Batch batch = new Batch(dims);
+            int[] point = new int[dims.length];
+
+            if (method == Method.GIBBS) {
+                gibbs(batch, point, size, random);
+            } else {
+                for (int s = 0; s < size; s++) {
+                    double weight = forward(point, method == Method.LIKELIHOOD_WEIGHTING, random);
+                    batch.add(point, weight);
+                }
+            }
+
+            return batch;
+        }
+
+        // Simulates a point in causal order, returning its weight, 0 if the point is rejected.
+        private double forward(int[] point, boolean weighted, SplittableRandom random) {
+            double weight = 1.0;
+
+            for (int i : order) {
+                int offset = row(i, point) * dims[i];
 
-            for (int k = 0; k < bayesIm.getNumColumns(nodeIndex); k++) {
-                double probability =
-                        bayesIm.getProbability(nodeIndex, rowIndex, k);
+                if (weighted && conditioned[i]) {
+                    double total = 0.0;
 
-                if (Double.isNaN(probability)) {
-                    throw new IllegalStateException("Some probability " +
-                            "values in the BayesIm are not filled in; " +
-                            "cannot simulate data to do approximate updating.");
+                    for (int j = 0; j < dims[i]; j++) {
+                        if (allowed[i][j]) total += cpts[i][offset + j];
+                    }
+
+                    if (total == 0.0) return 0.0;
+
+                    if (!manipulated[i]) weight *= total;
+                    point[i] = draw(cpts[i], offset, dims[i], allowed[i], total, random);
+                } else {
+                    point[i] = draw(cpts[i], offset, dims[i], null, 1.0, random);
+                    if (conditioned[i] && !allowed[i][point[i]]) return 0.0;
                 }
+            }
+
+            return weight;
+        }
+
+        private void gibbs(Batch batch, int[] point, int size, SplittableRandom random) {
+
+            // Start from a point that satisfies the evidence.
+            boolean found = false;
+
+            for (int tries = 0; tries < 10000 && !found; tries++) {
+                found = forward(point, true, random) > 0;
+            }
+
+            if (!found) {
+                batch.numSamples += size;
+                return;
+            }
 
-                sum += probability;
+            double[] probs = new double[max(dims)];
 
-                if (sum >= cutoff) {
-                    point[nodeIndex] = k;
-                    break;
+            for (int sweep = 0; sweep < BURN_IN + size; sweep++) {
+                for (int i : order) {
+                    if (conditioned[i] && single(allowed[i])) continue;
+
+                    double total = 0.0;
+
+                    for (int j = 0; j < dims[i]; j++) {
+                        probs[j] = 0.0;
+                        if (!allowed[i][j]) continue;
+
+                        point[i] = j;
+                        double p = cpts[i][row(i, point) * dims[i] + j];
+
+                        for (int c = 0; c < children[i].length && p > 0; c++) {
+                            int child = children[i][c];
+                            p *= cpts[child][row(child, point) * dims[child] + point[child]];
+                        }
+
+                        probs[j] = p;
+                        total += p;
+                    }
+
+                    point[i] = draw(probs, 0, dims[i], null, total, random);
+                }
+
+                if (sweep >= BURN_IN) {
+                    batch.add(point, 1.0);
                 }
             }
         }
 
-        return point;
+        // The row of the conditional probability table of i for the values of its parents.
+        private int row(int i, int[] point) {
+            int row = 0;
+
+            for (int p : parents[i]) {
+                row = row * dims[p] + point[p];
+            }
+
+            return row;
+        }
+
+        // Draws a category with probability proportional to probs[offset + j] among the
+        // allowed categories, given their total.
+        private static int draw(double[] probs, int offset, int dim, boolean[] allowed, double total,
+                                SplittableRandom random) {
+            double cutoff = random.nextDouble() * total;
+            double sum = 0.0;
+            int last = -1;
+
+            for (int j = 0; j < dim; j++) {
+                if (allowed != null && !allowed[j]) continue;
+                double p = probs[offset + j];
+                if (p <= 0.0) continue;
+                sum += p;
+                last = j;
+                if (sum > cutoff) return j;
+            }
+
+            // Rounding; take the last category with positive probability.
+            return last == -1 ? 0 : last;
+        }
+
+        private static boolean single(boolean[] allowed) {
+            int count = 0;
+            for (boolean a : allowed) if (a) count++;
+            return count == 1;
+        }
+
+        private static int max(int[] dims) {
+            int max = 0;
+            for (int dim : dims) max = Math.max(max, dim);
+            return max;
+        }
     }
 
     /**
@@ -350,6 +790,34 @@ public final class ApproximateUpdater implements ManipulatingBayesUpdater {
         if (evidence == null) {
             throw new NullPointerException();
         }
+
+        // Each point counted by earlier versions was accepted by rejection, with weight 1.
+        if (counts != null && weightedCounts == null) {
+            weightedCounts = new double[counts.length][];
+
+            for (int i = 0; i < counts.length; i++) {
+                weightedCounts[i] = new double[counts[i].length];
+
+                for (int j = 0; j < counts[i].length; j++) {
+                    weightedCounts[i][j] = counts[i][j];
+                }
+            }
+
+            if (counts.length > 0) {
+                for (int count : counts[0]) sumWeights += count;
+            }
+
+            sumSquaredWeights = sumWeights;
+            numSamples = (long) sumWeights;
+            counts = null;
+        }
+
+        // Fields added since those versions are missing from their streams.
+        if (method == null) method = Method.LIKELIHOOD_WEIGHTING;
+        if (tolerance == 0) tolerance = 0.01;
+        if (maxSamples == 0) maxSamples = 1000000;
+        if (timeLimit == 0) timeLimit = 10000;
+        if (batchSize == 0) batchSize = 1000;
     }
 }
 
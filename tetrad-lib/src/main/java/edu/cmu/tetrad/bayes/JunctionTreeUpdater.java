@@ -0,0 +1,820 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.bayes;
+
+import edu.cmu.tetrad.graph.Dag;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Node;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Calculates updated marginals for a Bayes IM by message passing over a junction tree. The
+ * tree is compiled once, when the updater is constructed: the DAG is moralized, triangulated
+ * by eliminating at each step the variable whose elimination adds the fewest edges, and the
+ * maximal cliques joined into a tree. Each clique holds a potential over its variables as a
+ * flat array, the last variable varying fastest. Setting evidence only reloads the
+ * potentials from the conditional probability tables and the evidence; the tree is
+ * calibrated on the first query after that.
+ * <p>
+ * Manipulating a variable removes the edges into it, which leaves the moral graph of the
+ * manipulated DAG a subgraph of that of the original DAG, so the same tree serves for any
+ * manipulation. As in RowSummingExactUpdater, a manipulated variable is given probability 1
+ * for each of its allowed categories.
+ * <p>
+ * The cost of updating is exponential in the size of the largest clique rather than in the
+ * number of variables, so networks of hundreds of variables can be updated if they are
+ * sparse.
+ */
+public final class JunctionTreeUpdater implements ManipulatingBayesUpdater {
+    static final long serialVersionUID = 23L;
+
+    /**
+     * The IM which this updater updates.
+     *
+     * @serial Cannot be null.
+     */
+    private BayesIm bayesIm;
+
+    /**
+     * Stores evidence for all variables.
+     *
+     * @serial Cannot be null.
+     */
+    private Evidence evidence;
+
+    /**
+     * The manipulated Bayes IM, made when asked for.
+     *
+     * @serial Can be null.
+     */
+    private BayesIm manipulatedBayesIm;
+
+    /**
+     * The updated Bayes IM, made when asked for.
+     *
+     * @serial Can be null.
+     */
+    private BayesIm updatedBayesIm;
+
+    // The number of categories of each variable.
+    private int[] dims;
+
+    // The variables of each clique, in ascending order, and the size of its table.
+    private int[][] cliques;
+    private int[] sizes;
+
+    // The parent of each clique in the tree, or -1 for the root, and the cliques in order
+    // from the root, so that each comes after its parent.
+    private int[] parents;
+    private int[] order;
+
+    // For each clique other than the root, the index into the table for its separator with
+    // its parent of each entry in its table and in its parent's table.
+    private int[][] separatorMaps;
+    private int[][] parentSeparatorMaps;
+    private int[] separatorSizes;
+
+    // For each variable, a clique containing it and its parents, and the value of the
+    // variable at each entry in the table for that clique.
+    private int[] homes;
+    private int[][] homeValues;
+
+    // The products of the conditional probability tables assigned to each clique, for the
+    // variables manipulated as given.
+    private double[][] prior;
+    private boolean[] priorManipulated;
+
+    // The calibrated potentials, or null if not yet calibrated.
+    private double[][] potentials;
+
+    // The updated marginals of each variable, calculated when asked for.
+    private double[][] marginals;
+
+    //==============================CONSTRUCTORS===========================//
+
+    /**
+     * Constructs a new updater for the given Bayes net.
+     */
+    public JunctionTreeUpdater(BayesIm bayesIm) {
+        this(bayesIm, Evidence.tautology(bayesIm));
+    }
+
+    /**
+     * Constructs a new updater for the given Bayes net.
+     */
+    public JunctionTreeUpdater(BayesIm bayesIm, Evidence evidence) {
+        if (bayesIm == null) {
+            throw new NullPointerException();
+        }
+
+        this.bayesIm = bayesIm;
+        compile();
+        setEvidence(evidence);
+    }
+
+    /**
+     * Generates a simple exemplar of this class to test serialization.
+     */
+    public static JunctionTreeUpdater serializableInstance() {
+        return new JunctionTreeUpdater(MlBayesIm.serializableInstance());
+    }
+
+    //============================PUBLIC METHODS==========================//
+
+    public BayesIm getBayesIm() {
+        return bayesIm;
+    }
+
+    public BayesIm getManipulatedBayesIm() {
+        if (manipulatedBayesIm == null) {
+            Graph graph = bayesIm.getBayesPm().getDag();
+            BayesPm manipulatedPm = new BayesPm(createManipulatedGraph(graph), bayesIm.getBayesPm());
+            BayesIm manipulatedIm = new MlBayesIm(manipulatedPm, bayesIm, MlBayesIm.MANUAL);
+
+            for (int i = 0; i < evidence.getNumNodes(); i++) {
+                if (evidence.isManipulated(i)) {
+                    for (int j = 0; j < evidence.getNumCategories(i); j++) {
+                        manipulatedIm.setProbability(i, 0, j, evidence.getProposition().isAllowed(i, j) ? 1.0 : 0.0);
+                    }
+                }
+            }
+
+            this.manipulatedBayesIm = manipulatedIm;
+        }
+
+        return manipulatedBayesIm;
+    }
+
+    public Graph getManipulatedGraph() {
+        return getManipulatedBayesIm().getDag();
+    }
+
+    /**
+     * The manipulated Bayes IM with the probability of each variable given its parents
+     * updated on the evidence, or NaN for combinations of values of the parents that the
+     * evidence rules out.
+     */
+    public BayesIm getUpdatedBayesIm() {
+        if (updatedBayesIm == null) {
+            calibrate();
+
+            BayesIm manipulatedIm = getManipulatedBayesIm();
+            BayesIm updatedIm = new MlBayesIm(manipulatedIm);
+
+            for (int node = 0; node < manipulatedIm.getNumNodes(); node++) {
+                int i = manipulatedIm.getCorrespondingNodeIndex(node, bayesIm);
+                int[] _parents = manipulatedIm.getParents(node);
+                int[] vars = new int[_parents.length + 1];
+                int[] strides = new int[vars.length];
+                int numCols = manipulatedIm.getNumColumns(node);
+
+                vars[0] = i;
+                strides[0] = 1;
+                int stride = numCols;
+
+                for (int k = _parents.length - 1; k >= 0; k--) {
+                    vars[k + 1] = manipulatedIm.getCorrespondingNodeIndex(_parents[k], bayesIm);
+                    strides[k + 1] = stride;
+                    stride *= dims[vars[k + 1]];
+                }
+
+                double[] table = new double[manipulatedIm.getNumRows(node) * numCols];
+                int[] map = map(cliques[homes[i]], vars, strides);
+                double[] potential = potentials[homes[i]];
+
+                for (int e = 0; e < potential.length; e++) {
+                    table[map[e]] += potential[e];
+                }
+
+                for (int row = 0; row < manipulatedIm.getNumRows(node); row++) {
+                    double sum = 0.0;
+
+                    for (int col = 0; col < numCols; col++) {
+                        sum += table[row * numCols + col];
+                    }
+
+                    for (int col = 0; col < numCols; col++) {
+                        updatedIm.setProbability(node, row, col, table[row * numCols + col] / sum);
+                    }
+                }
+            }
+
+            this.updatedBayesIm = updatedIm;
+        }
+
+        return updatedBayesIm;
+    }
+
+    /**
+     * @return a defensive copy of the evidence.
+     */
+    public Evidence getEvidence() {
+        return new Evidence(this.evidence);
+    }
+
+    /**
+     * Sets new evidence. The junction tree is reused; it is recalibrated when next queried.
+     */
+    public void setEvidence(Evidence evidence) {
+        if (evidence == null) {
+            throw new NullPointerException();
+        }
+
+        if (evidence.isIncompatibleWith(bayesIm)) {
+            throw new IllegalArgumentException("The variable list for this evidence " +
+                    "must be compatible with the variable list of the stored IM.");
+        }
+
+        this.evidence = evidence;
+        this.manipulatedBayesIm = null;
+        this.updatedBayesIm = null;
+        this.potentials = null;
+        this.marginals = new double[dims.length][];
+    }
+
+    /**
+     * @return P&lpar;variable&equals;value &vbar; evidence&rpar; where evidence is getEvidence(),
+     * or NaN if the evidence has probability zero.
+     */
+    public double getMarginal(int variable, int value) {
+        if (marginals[variable] == null) {
+            calibrate();
+
+            double[] marginal = new double[dims[variable]];
+            double[] potential = potentials[homes[variable]];
+            int[] values = homeValues[variable];
+            double sum = 0.0;
+
+            for (int e = 0; e < potential.length; e++) {
+                marginal[values[e]] += potential[e];
+                sum += potential[e];
+            }
+
+            for (int j = 0; j < marginal.length; j++) {
+                marginal[j] /= sum;
+            }
+
+            marginals[variable] = marginal;
+        }
+
+        return marginals[variable][value];
+    }
+
+    public boolean isJointMarginalSupported() {
+        return true;
+    }
+
+    /**
+     * @return the probability that the given variables have the given values conditional on
+     * the evidence, or NaN if the evidence has probability zero. This is calculated as the
+     * ratio of the probability of the evidence with and without the given values added, each
+     * found by passing messages to the root of the tree.
+     */
+    public double getJointMarginal(int[] variables, int[] values) {
+        if (variables.length != values.length) {
+            throw new IllegalArgumentException("Values must match variables.");
+        }
+
+        calibrate();
+        double[] root = potentials[order[0]];
+        double evidenceProb = 0.0;
+        for (double p : root) evidenceProb += p;
+
+        double[][] _potentials = load();
+
+        for (int k = 0; k < variables.length; k++) {
+            double[] potential = _potentials[homes[variables[k]]];
+            int[] _values = homeValues[variables[k]];
+
+            for (int e = 0; e < potential.length; e++) {
+                if (_values[e] != values[k]) potential[e] = 0.0;
+            }
+        }
+
+        double[][] _separators = new double[sizes.length][];
+
+        for (int c : order) {
+            if (parents[c] != -1) {
+                _separators[c] = new double[separatorSizes[c]];
+                Arrays.fill(_separators[c], 1.0);
+            }
+        }
+
+        collect(_potentials, _separators);
+
+        double jointProb = 0.0;
+        for (double p : _potentials[order[0]]) jointProb += p;
+
+        return jointProb / evidenceProb;
+    }
+
+    public double[] calculatePriorMarginals(int nodeIndex) {
+        Evidence evidence = getEvidence();
+        setEvidence(Evidence.tautology(evidence.getVariableSource()));
+
+        double[] marginals = new double[evidence.getNumCategories(nodeIndex)];
+
+        for (int i = 0; i < getBayesIm().getNumColumns(nodeIndex); i++) {
+            marginals[i] = getMarginal(nodeIndex, i);
+        }
+
+        setEvidence(evidence);
+        return marginals;
+    }
+
+    public double[] calculateUpdatedMarginals(int nodeIndex) {
+        double[] marginals = new double[evidence.getNumCategories(nodeIndex)];
+
+        for (int i = 0; i < getBayesIm().getNumColumns(nodeIndex); i++) {
+            marginals[i] = getMarginal(nodeIndex, i);
+        }
+
+        return marginals;
+    }
+
+    /**
+     * @return the number of variables in the largest clique of the junction tree.
+     */
+    public int getMaxCliqueSize() {
+        int max = 0;
+        for (int[] clique : cliques) max = Math.max(max, clique.length);
+        return max;
+    }
+
+    /**
+     * Prints out the most recent marginal.
+     */
+    public String toString() {
+        return "Junction tree updater, evidence = " + evidence;
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    // Builds the junction tree for the DAG of the Bayes IM.
+    private void compile() {
+        int n = bayesIm.getNumNodes();
+        dims = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            dims[i] = bayesIm.getNumColumns(i);
+        }
+
+        // Moralize.
+        boolean[][] adj = new boolean[n][n];
+
+        for (int i = 0; i < n; i++) {
+            int[] _parents = bayesIm.getParents(i);
+
+            for (int k = 0; k < _parents.length; k++) {
+                connect(adj, i, _parents[k]);
+
+                for (int l = k + 1; l < _parents.length; l++) {
+                    connect(adj, _parents[k], _parents[l]);
+                }
+            }
+        }
+
+        // Triangulate by min-fill elimination, keeping the maximal cliques.
+        List<int[]> _cliques = new ArrayList<>();
+        boolean[] eliminated = new boolean[n];
+
+        for (int step = 0; step < n; step++) {
+            int best = -1;
+            int bestFill = Integer.MAX_VALUE;
+            double bestWeight = Double.POSITIVE_INFINITY;
+
+            for (int v = 0; v < n; v++) {
+                if (eliminated[v]) continue;
+
+                int[] nbrs = neighbors(adj, eliminated, v);
+                int fill = 0;
+                double weight = dims[v];
+
+                for (int a = 0; a < nbrs.length; a++) {
+                    weight *= dims[nbrs[a]];
+
+                    for (int b = a + 1; b < nbrs.length; b++) {
+                        if (!adj[nbrs[a]][nbrs[b]]) fill++;
+                    }
+                }
+
+                if (fill < bestFill || (fill == bestFill && weight < bestWeight)) {
+                    best = v;
+                    bestFill = fill;
+                    bestWeight = weight;
+                }
+            }
+
+            int[] nbrs = neighbors(adj, eliminated, best);
+
+            for (int a = 0; a < nbrs.length; a++) {
+                for (int b = a + 1; b < nbrs.length; b++) {
+                    connect(adj, nbrs[a], nbrs[b]);
+                }
+            }
+
+            int[] clique = Arrays.copyOf(nbrs, nbrs.length + 1);
+            clique[nbrs.length] = best;
+            Arrays.sort(clique);
+
+            boolean contained = false;
+
+            for (int[] _clique : _cliques) {
+                if (isSubset(clique, _clique)) {
+                    contained = true;
+                    break;
+                }
+            }
+
+            if (!contained) _cliques.add(clique);
+            eliminated[best] = true;
+        }
+
+        int numCliques = _cliques.size();
+        cliques = _cliques.toArray(new int[numCliques][]);
+        sizes = new int[numCliques];
+
+        for (int c = 0; c < numCliques; c++) {
+            sizes[c] = tableSize(cliques[c]);
+        }
+
+        // Join the cliques in a maximum spanning tree, weighted by the sizes of the separators.
+        parents = new int[numCliques];
+        order = new int[numCliques];
+        boolean[] inTree = new boolean[numCliques];
+        int[] bestWeight = new int[numCliques];
+        Arrays.fill(bestWeight, -1);
+        Arrays.fill(parents, -1);
+        bestWeight[0] = 0;
+
+        for (int k = 0; k < numCliques; k++) {
+            int next = -1;
+
+            for (int c = 0; c < numCliques; c++) {
+                if (!inTree[c] && (next == -1 || bestWeight[c] > bestWeight[next])) next = c;
+            }
+
+            inTree[next] = true;
+            order[k] = next;
+
+            for (int c = 0; c < numCliques; c++) {
+                if (inTree[c]) continue;
+                int weight = intersection(cliques[next], cliques[c]).length;
+
+                if (weight > bestWeight[c]) {
+                    bestWeight[c] = weight;
+                    parents[c] = next;
+                }
+            }
+        }
+
+        separatorMaps = new int[numCliques][];
+        parentSeparatorMaps = new int[numCliques][];
+        separatorSizes = new int[numCliques];
+
+        for (int c = 0; c < numCliques; c++) {
+            if (parents[c] == -1) continue;
+            int[] separator = intersection(cliques[c], cliques[parents[c]]);
+            int[] strides = strides(separator);
+            separatorMaps[c] = map(cliques[c], separator, strides);
+            parentSeparatorMaps[c] = map(cliques[parents[c]], separator, strides);
+            separatorSizes[c] = tableSize(separator);
+        }
+
+        // The home of each variable is the smallest clique containing its family.
+        homes = new int[n];
+        homeValues = new int[n][];
+
+        for (int i = 0; i < n; i++) {
+            int[] family = Arrays.copyOf(bayesIm.getParents(i), bayesIm.getNumParents(i) + 1);
+            family[family.length - 1] = i;
+            Arrays.sort(family);
+
+            int home = -1;
+
+            for (int c = 0; c < numCliques; c++) {
+                if (isSubset(family, cliques[c]) && (home == -1 || sizes[c] < sizes[home])) {
+                    home = c;
+                }
+            }
+
+            homes[i] = home;
+            homeValues[i] = map(cliques[home], new int[]{i}, new int[]{1});
+        }
+    }
+
+    // Multiplies the conditional probability tables into the potentials of their home cliques,
+    // for the variables manipulated in the evidence.
+    private void loadPrior() {
+        int n = dims.length;
+        boolean[] manipulated = new boolean[n];
+
+        for (int i = 0; i < n; i++) {
+            manipulated[i] = evidence.isManipulated(i);
+        }
+
+        if (prior != null && Arrays.equals(manipulated, priorManipulated)) {
+            return;
+        }
+
+        double[][] _prior = new double[sizes.length][];
+
+        for (int c = 0; c < sizes.length; c++) {
+            _prior[c] = new double[sizes[c]];
+            Arrays.fill(_prior[c], 1.0);
+        }
+
+        for (int i = 0; i < n; i++) {
+
+            // A manipulated variable has no parents, and its allowed categories come from the evidence.
+            if (manipulated[i]) continue;
+
+            int[] _parents = bayesIm.getParents(i);
+            int[] vars = new int[_parents.length + 1];
+            int[] strides = new int[vars.length];
+
+            vars[0] = i;
+            strides[0] = 1;
+            int stride = dims[i];
+
+            for (int k = _parents.length - 1; k >= 0; k--) {
+                vars[k + 1] = _parents[k];
+                strides[k + 1] = stride;
+                stride *= dims[_parents[k]];
+            }
+
+            double[] table = new double[stride];
+
+            for (int row = 0; row < bayesIm.getNumRows(i); row++) {
+                for (int col = 0; col < dims[i]; col++) {
+                    table[row * dims[i] + col] = bayesIm.getProbability(i, row, col);
+                }
+            }
+
+            int[] map = map(cliques[homes[i]], vars, strides);
+            double[] potential = _prior[homes[i]];
+
+            for (int e = 0; e < potential.length; e++) {
+                potential[e] *= table[map[e]];
+            }
+        }
+
+        this.prior = _prior;
+        this.priorManipulated = manipulated;
+    }
+
+    // A copy of the prior potentials with the evidence multiplied in.
+    private double[][] load() {
+        loadPrior();
+
+        double[][] _potentials = new double[prior.length][];
+
+        for (int c = 0; c < prior.length; c++) {
+            _potentials[c] = prior[c].clone();
+        }
+
+        Proposition proposition = evidence.getProposition();
+
+        for (int i = 0; i < dims.length; i++) {
+            if (!proposition.isConditioned(i)) continue;
+
+            double[] potential = _potentials[homes[i]];
+            int[] values = homeValues[i];
+
+            for (int e = 0; e < potential.length; e++) {
+                if (!proposition.isAllowed(i, values[e])) potential[e] = 0.0;
+            }
+        }
+
+        return _potentials;
+    }
+
+    private void calibrate() {
+        if (potentials != null) return;
+
+        double[][] _potentials = load();
+        double[][] _separators = new double[sizes.length][];
+
+        for (int c : order) {
+            if (parents[c] != -1) {
+                _separators[c] = new double[separatorSizes[c]];
+                Arrays.fill(_separators[c], 1.0);
+            }
+        }
+
+        collect(_potentials, _separators);
+
+        // Distribute from the root.
+        for (int c : order) {
+            if (parents[c] != -1) {
+                pass(_potentials[parents[c]], parentSeparatorMaps[c], _separators[c],
+                        _potentials[c], separatorMaps[c]);
+            }
+        }
+
+        this.potentials = _potentials;
+    }
+
+    // Passes messages from the leaves to the root.
+    private void collect(double[][] potentials, double[][] separators) {
+        for (int k = order.length - 1; k > 0; k--) {
+            int c = order[k];
+            pass(potentials[c], separatorMaps[c], separators[c], potentials[parents[c]],
+                    parentSeparatorMaps[c]);
+        }
+    }
+
+    // Passes a message from one clique to another through their separator, replacing the
+    // separator with the marginal of the first clique and multiplying the second by the
+    // ratio of the new separator to the old.
+    private static void pass(double[] from, int[] fromMap, double[] separator, double[] to, int[] toMap) {
+        double[] marginal = new double[separator.length];
+
+        for (int e = 0; e < from.length; e++) {
+            marginal[fromMap[e]] += from[e];
+        }
+
+        for (int s = 0; s < separator.length; s++) {
+            double old = separator[s];
+            separator[s] = marginal[s];
+            marginal[s] = old == 0.0 ? 0.0 : marginal[s] / old;
+        }
+
+        for (int e = 0; e < to.length; e++) {
+            to[e] *= marginal[toMap[e]];
+        }
+    }
+
+    // For each entry in the table over the given sorted variables, the index given by the
+    // values of the given variables times the given strides, summed.
+    private int[] map(int[] vars, int[] sub, int[] subStrides) {
+        int[] strides = new int[vars.length];
+
+        for (int k = 0; k < sub.length; k++) {
+            int pos = Arrays.binarySearch(vars, sub[k]);
+            strides[pos] += subStrides[k];
+        }
+
+        int size = tableSize(vars);
+        int[] map = new int[size];
+        int[] values = new int[vars.length];
+        int index = 0;
+
+        for (int e = 0; e < size; e++) {
+            map[e] = index;
+
+            for (int pos = vars.length - 1; pos >= 0; pos--) {
+                values[pos]++;
+                index += strides[pos];
+
+                if (values[pos] < dims[vars[pos]]) break;
+
+                index -= values[pos] * strides[pos];
+                values[pos] = 0;
+            }
+        }
+
+        return map;
+    }
+
+    // Strides for a table over the given variables, the last varying fastest.
+    private int[] strides(int[] vars) {
+        int[] strides = new int[vars.length];
+        int stride = 1;
+
+        for (int k = vars.length - 1; k >= 0; k--) {
+            strides[k] = stride;
+            stride *= dims[vars[k]];
+        }
+
+        return strides;
+    }
+
+    private int tableSize(int[] vars) {
+        long size = 1;
+
+        for (int v : vars) {
+            size *= dims[v];
+
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("A clique of the junction tree is too large " +
+                        "to tabulate; the network is too densely connected for exact updating.");
+            }
+        }
+
+        return (int) size;
+    }
+
+    private static void connect(boolean[][] adj, int i, int j) {
+        adj[i][j] = true;
+        adj[j][i] = true;
+    }
+
+    private static int[] neighbors(boolean[][] adj, boolean[] eliminated, int v) {
+        int count = 0;
+
+        for (int w = 0; w < adj.length; w++) {
+            if (adj[v][w] && !eliminated[w]) count++;
+        }
+
+        int[] nbrs = new int[count];
+        count = 0;
+
+        for (int w = 0; w < adj.length; w++) {
+            if (adj[v][w] && !eliminated[w]) nbrs[count++] = w;
+        }
+
+        return nbrs;
+    }
+
+    // Both arrays sorted.
+    private static boolean isSubset(int[] a, int[] b) {
+        return intersection(a, b).length == a.length;
+    }
+
+    // Both arrays sorted.
+    private static int[] intersection(int[] a, int[] b) {
+        int[] c = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, k = 0;
+
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else {
+                c[k++] = a[i];
+                i++;
+                j++;
+            }
+        }
+
+        return Arrays.copyOf(c, k);
+    }
+
+    private Dag createManipulatedGraph(Graph graph) {
+        Dag updatedGraph = new Dag(graph);
+
+        // alters graph for manipulated evidenceItems
+        for (int i = 0; i < evidence.getNumNodes(); ++i) {
+            if (evidence.isManipulated(i)) {
+                Node node = updatedGraph.getNode(evidence.getNode(i).getName());
+                List<Node> parents = updatedGraph.getParents(node);
+
+                for (Node parent : parents) {
+                    updatedGraph.removeEdge(node, parent);
+                }
+            }
+        }
+
+        return updatedGraph;
+    }
+
+    /**
+     * Adds semantic checks to the default deserialization method. This method
+     * must have the standard signature for a readObject method, and the body of
+     * the method must begin with "s.defaultReadObject();". Other than that, any
+     * semantic checks can be specified and do not need to stay the same from
+     * version to version. A readObject method of this form may be added to any
+     * class, even if Tetrad sessions were previously saved out using a version
+     * of the class that didn't include it. (That's what the
+     * "s.defaultReadObject();" is for. See J. Bloch, Effective Java, for help.
+     *
+     * @throws java.io.IOException
+     * @throws ClassNotFoundException
+     */
+    private void readObject(ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+
+        if (bayesIm == null) {
+            throw new NullPointerException();
+        }
+
+        if (evidence == null) {
+            throw new NullPointerException();
+        }
+    }
+}
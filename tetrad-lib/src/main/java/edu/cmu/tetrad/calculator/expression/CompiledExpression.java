@@ -0,0 +1,674 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+package edu.cmu.tetrad.calculator.expression;
+
+import edu.cmu.tetrad.util.RandomUtil;
+import org.apache.commons.math3.distribution.NormalDistribution;
+import org.apache.commons.math3.distribution.UniformRealDistribution;
+import org.apache.commons.math3.random.RandomGenerator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An expression compiled into a flat stack program whose variables are read from slots of a
+ * double array rather than looked up by name in a Context, so that evaluating it boxes nothing.
+ * The program can be evaluated for one row of slot values or for a batch of rows at once, with
+ * the slots given as columns.
+ * <p>
+ * Arithmetic, the elementary functions, AND, XOR, IF, random, and the Normal and Uniform
+ * distributions are compiled. Any other expression is evaluated as it is, through a Context
+ * backed by the slots. Evaluated for one row, a compiled expression gives exactly the value of
+ * the original, drawing the same random numbers in the same order. Evaluated for a batch, each
+ * step of the program is done for every row of the batch before the next, so random numbers are
+ * drawn in a different order.
+ */
+public final class CompiledExpression {
+
+    // Opcodes.
+    private static final int CONST = 0;
+    private static final int LOAD = 1;
+    private static final int UNASSIGNED = 2;
+    private static final int FALLBACK = 3;
+    private static final int GUARDED = 4;
+    private static final int ADD = 5;
+    private static final int MUL = 6;
+    private static final int MAX = 7;
+    private static final int MIN = 8;
+    private static final int AND = 9;
+    private static final int NEG = 10;
+    private static final int SUB = 11;
+    private static final int DIV = 12;
+    private static final int POW = 13;
+    private static final int XOR = 14;
+    private static final int IF = 15;
+    private static final int RANDOM = 16;
+    private static final int NORMAL = 17;
+    private static final int UNIFORM = 18;
+    private static final int FUNCTION = 19;
+
+    // Functions of one argument, for FUNCTION.
+    private static final String[] FUNCTIONS = {"ceil", "signum", "cos", "cosh", "acos", "floor",
+            "abs", "log10", "ln", "round", "tan", "tanh", "atan", "logistic", "sqrt", "sin",
+            "sinh", "asin", "exp"};
+
+    private final Expression expression;
+    private final Map<String, Integer> slots;
+
+    // The program: for each instruction an opcode and an integer argument (a slot, a count of
+    // operands, a function, or an index into constants or objects).
+    private final int[] ops;
+    private final int[] args;
+    private final double[] constants;
+    private final Object[] objects;
+    private final int maxDepth;
+    private final boolean mayThrow;
+
+    private CompiledExpression(Expression expression, Map<String, Integer> slots, Builder builder) {
+        this.expression = expression;
+        this.slots = slots;
+        this.ops = builder.ops.toArray();
+        this.args = builder.args.toArray();
+        this.constants = builder.constants.toArray();
+        this.objects = builder.objects.toArray();
+        this.maxDepth = builder.maxDepth;
+        this.mayThrow = builder.mayThrow;
+    }
+
+    /**
+     * Compiles the given expression.
+     *
+     * @param expression The expression.
+     * @param slots      The slot of each variable that may be referred to. A variable not in the
+     *                   map is taken to be unassigned, as if the context returned null for it.
+     *                   The map is kept and consulted again by any parts of the expression that
+     *                   are not compiled.
+     */
+    public static CompiledExpression compile(Expression expression, Map<String, Integer> slots) {
+        if (expression == null) throw new NullPointerException("Expression is null.");
+        if (slots == null) throw new NullPointerException("Slots are null.");
+        Builder builder = new Builder(slots);
+        builder.emit(expression);
+        return new CompiledExpression(expression, slots, builder);
+    }
+
+    /**
+     * @return the expression that was compiled.
+     */
+    public Expression getExpression() {
+        return expression;
+    }
+
+    /**
+     * Evaluates the expression for one row.
+     *
+     * @param values The value of each slot.
+     */
+    public double evaluate(double[] values) {
+        double[] stack = new double[maxDepth];
+        int sp = 0;
+
+        for (int pc = 0; pc < ops.length; pc++) {
+            int arg = args[pc];
+
+            switch (ops[pc]) {
+                case CONST:
+                    stack[sp++] = constants[arg];
+                    break;
+                case LOAD:
+                    stack[sp++] = values[arg];
+                    break;
+                case UNASSIGNED:
+                    throw new IllegalArgumentException(objects[arg] + " was not assigned a value.");
+                case FALLBACK:
+                    stack[sp++] = ((Expression) objects[arg]).evaluate(new SlotContext(slots, values, 0));
+                    break;
+                case GUARDED:
+                    stack[sp++] = guarded((CompiledExpression) objects[arg], values);
+                    break;
+                case ADD: {
+                    double value = 0.0;
+                    for (int i = sp - arg; i < sp; i++) value += stack[i];
+                    sp -= arg;
+                    stack[sp++] = value;
+                    break;
+                }
+                case MUL: {
+                    double value = 1.0;
+                    for (int i = sp - arg; i < sp; i++) value *= stack[i];
+                    sp -= arg;
+                    stack[sp++] = value;
+                    break;
+                }
+                case MAX: {
+                    double max = stack[sp - arg];
+                    for (int i = sp - arg + 1; i < sp; i++) if (max < stack[i]) max = stack[i];
+                    sp -= arg;
+                    stack[sp++] = max;
+                    break;
+                }
+                case MIN: {
+                    double min = stack[sp - arg];
+                    for (int i = sp - arg + 1; i < sp; i++) if (stack[i] < min) min = stack[i];
+                    sp -= arg;
+                    stack[sp++] = min;
+                    break;
+                }
+                case AND: {
+                    boolean allOnes = true;
+                    for (int i = sp - arg; i < sp; i++) if (stack[i] != 1.0) allOnes = false;
+                    sp -= arg;
+                    stack[sp++] = allOnes ? 1.0 : 0.0;
+                    break;
+                }
+                case NEG:
+                    stack[sp - 1] = -stack[sp - 1];
+                    break;
+                case SUB:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] - stack[sp];
+                    break;
+                case DIV:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] / stack[sp];
+                    break;
+                case POW:
+                    sp--;
+                    stack[sp - 1] = Math.pow(stack[sp - 1], stack[sp]);
+                    break;
+                case XOR:
+                    sp--;
+                    stack[sp - 1] = xor(stack[sp - 1], stack[sp]);
+                    break;
+                case IF:
+                    sp -= 2;
+                    stack[sp - 1] = stack[sp - 1] == 1.0 ? stack[sp] : stack[sp + 1];
+                    break;
+                case RANDOM:
+                    stack[sp++] = Math.random();
+                    break;
+                case NORMAL:
+                    sp--;
+                    stack[sp - 1] = normal(RandomUtil.getInstance().getRandomGenerator(), stack[sp - 1], stack[sp]);
+                    break;
+                case UNIFORM:
+                    sp--;
+                    stack[sp - 1] = uniform(RandomUtil.getInstance().getRandomGenerator(), stack[sp - 1], stack[sp]);
+                    break;
+                case FUNCTION:
+                    stack[sp - 1] = function(arg, stack[sp - 1]);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown opcode: " + ops[pc]);
+            }
+        }
+
+        return stack[0];
+    }
+
+    /**
+     * Evaluates the expression for a batch of rows.
+     *
+     * @param columns The values of each slot, one column per slot; a column for a slot the
+     *                expression does not refer to may be null.
+     * @param from    The first row of the batch.
+     * @param to      One past the last row of the batch.
+     * @param result  The value for each row of the batch is put here, at the same row.
+     */
+    public void evaluate(double[][] columns, int from, int to, double[] result) {
+        int n = to - from;
+        if (n <= 0) return;
+
+        double[][] stack = new double[maxDepth][n];
+        int sp = 0;
+
+        for (int pc = 0; pc < ops.length; pc++) {
+            int arg = args[pc];
+
+            switch (ops[pc]) {
+                case CONST:
+                    Arrays.fill(stack[sp++], constants[arg]);
+                    break;
+                case LOAD:
+                    System.arraycopy(columns[arg], from, stack[sp++], 0, n);
+                    break;
+                case UNASSIGNED:
+                    throw new IllegalArgumentException(objects[arg] + " was not assigned a value.");
+                case FALLBACK: {
+                    double[] out = stack[sp++];
+                    Expression _expression = (Expression) objects[arg];
+                    SlotContext context = new SlotContext(slots, columns, from);
+
+                    for (int r = 0; r < n; r++) {
+                        context.row = from + r;
+                        out[r] = _expression.evaluate(context);
+                    }
+
+                    break;
+                }
+                case GUARDED:
+                    guarded((CompiledExpression) objects[arg], columns, from, to, stack[sp++]);
+                    break;
+                case ADD: {
+                    double[] a = stack[sp - arg];
+                    for (int r = 0; r < n; r++) a[r] = 0.0 + a[r];
+                    for (int i = sp - arg + 1; i < sp; i++) {
+                        double[] s = stack[i];
+                        for (int r = 0; r < n; r++) a[r] += s[r];
+                    }
+                    sp -= arg - 1;
+                    break;
+                }
+                case MUL: {
+                    double[] a = stack[sp - arg];
+                    for (int i = sp - arg + 1; i < sp; i++) {
+                        double[] s = stack[i];
+                        for (int r = 0; r < n; r++) a[r] *= s[r];
+                    }
+                    sp -= arg - 1;
+                    break;
+                }
+                case MAX: {
+                    double[] a = stack[sp - arg];
+                    for (int i = sp - arg + 1; i < sp; i++) {
+                        double[] s = stack[i];
+                        for (int r = 0; r < n; r++) if (a[r] < s[r]) a[r] = s[r];
+                    }
+                    sp -= arg - 1;
+                    break;
+                }
+                case MIN: {
+                    double[] a = stack[sp - arg];
+                    for (int i = sp - arg + 1; i < sp; i++) {
+                        double[] s = stack[i];
+                        for (int r = 0; r < n; r++) if (s[r] < a[r]) a[r] = s[r];
+                    }
+                    sp -= arg - 1;
+                    break;
+                }
+                case AND: {
+                    double[] a = stack[sp - arg];
+                    for (int r = 0; r < n; r++) a[r] = a[r] != 1.0 ? 0.0 : 1.0;
+                    for (int i = sp - arg + 1; i < sp; i++) {
+                        double[] s = stack[i];
+                        for (int r = 0; r < n; r++) if (s[r] != 1.0) a[r] = 0.0;
+                    }
+                    sp -= arg - 1;
+                    break;
+                }
+                case NEG: {
+                    double[] a = stack[sp - 1];
+                    for (int r = 0; r < n; r++) a[r] = -a[r];
+                    break;
+                }
+                case SUB: {
+                    sp--;
+                    double[] a = stack[sp - 1], b = stack[sp];
+                    for (int r = 0; r < n; r++) a[r] = a[r] - b[r];
+                    break;
+                }
+                case DIV: {
+                    sp--;
+                    double[] a = stack[sp - 1], b = stack[sp];
+                    for (int r = 0; r < n; r++) a[r] = a[r] / b[r];
+                    break;
+                }
+                case POW: {
+                    sp--;
+                    double[] a = stack[sp - 1], b = stack[sp];
+                    for (int r = 0; r < n; r++) a[r] = Math.pow(a[r], b[r]);
+                    break;
+                }
+                case XOR: {
+                    sp--;
+                    double[] a = stack[sp - 1], b = stack[sp];
+                    for (int r = 0; r < n; r++) a[r] = xor(a[r], b[r]);
+                    break;
+                }
+                case IF: {
+                    sp -= 2;
+                    double[] a = stack[sp - 1], b = stack[sp], c = stack[sp + 1];
+                    for (int r = 0; r < n; r++) a[r] = a[r] == 1.0 ? b[r] : c[r];
+                    break;
+                }
+                case RANDOM: {
+                    double[] out = stack[sp++];
+                    for (int r = 0; r < n; r++) out[r] = Math.random();
+                    break;
+                }
+                case NORMAL: {
+                    sp--;
+                    double[] a = stack[sp - 1], b = stack[sp];
+                    RandomGenerator generator = RandomUtil.getInstance().getRandomGenerator();
+                    for (int r = 0; r < n; r++) a[r] = normal(generator, a[r], b[r]);
+                    break;
+                }
+                case UNIFORM: {
+                    sp--;
+                    double[] a = stack[sp - 1], b = stack[sp];
+                    RandomGenerator generator = RandomUtil.getInstance().getRandomGenerator();
+                    for (int r = 0; r < n; r++) a[r] = uniform(generator, a[r], b[r]);
+                    break;
+                }
+                case FUNCTION: {
+                    double[] a = stack[sp - 1];
+                    for (int r = 0; r < n; r++) a[r] = function(arg, a[r]);
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Unknown opcode: " + ops[pc]);
+            }
+        }
+
+        System.arraycopy(stack[0], 0, result, from, n);
+    }
+
+    //=============================PRIVATE METHODS=========================//
+
+    // A term of a sum; an exception makes it 0, as in the Addition expression.
+    private static double guarded(CompiledExpression term, double[] values) {
+        try {
+            return term.evaluate(values);
+        } catch (Exception e) {
+            return 0.0;
+        }
+    }
+
+    private static void guarded(CompiledExpression term, double[][] columns, int from, int to, double[] out) {
+        double[] result = new double[to];
+
+        try {
+            term.evaluate(columns, from, to, result);
+            System.arraycopy(result, from, out, 0, to - from);
+        } catch (Exception e) {
+
+            // Some row failed; evaluate the rows one at a time.
+            double[] values = new double[columns.length];
+
+            for (int r = from; r < to; r++) {
+                for (int s = 0; s < columns.length; s++) {
+                    values[s] = columns[s] == null ? Double.NaN : columns[s][r];
+                }
+
+                out[r - from] = guarded(term, values);
+            }
+        }
+    }
+
+    private static double xor(double first, double second) {
+        first = first == 1.0 ? 1.0 : 0.0;
+        second = second == 1.0 ? 1.0 : 0.0;
+        return first + second == 1.0 ? 1.0 : 0.0;
+    }
+
+    // As NormalDistribution.sample(), without constructing the distribution unless the
+    // parameters are invalid, in which case its constructor throws as before.
+    private static double normal(RandomGenerator generator, double mean, double sd) {
+        if (sd <= 0) return new NormalDistribution(generator, mean, sd).sample();
+        return sd * generator.nextGaussian() + mean;
+    }
+
+    // As UniformRealDistribution.sample(), likewise.
+    private static double uniform(RandomGenerator generator, double lower, double upper) {
+        if (lower >= upper) return new UniformRealDistribution(generator, lower, upper).sample();
+        double u = generator.nextDouble();
+        return u * upper + (1 - u) * lower;
+    }
+
+    private static double function(int function, double x) {
+        switch (function) {
+            case 0:
+                return Math.ceil(x);
+            case 1:
+                return Math.signum(x);
+            case 2:
+                return Math.cos(x);
+            case 3:
+                return Math.cosh(x);
+            case 4:
+                return Math.acos(x);
+            case 5:
+                return Math.floor(x);
+            case 6:
+                return Math.abs(x);
+            case 7:
+                return Math.log10(x);
+            case 8:
+                return Math.log(x);
+            case 9:
+                return Math.round(x);
+            case 10:
+                return Math.tan(x);
+            case 11:
+                return Math.tanh(x);
+            case 12:
+                return Math.atan(x);
+            case 13:
+                return 1.0 / (1.0 + Math.exp(-x));
+            case 14:
+                return Math.sqrt(x);
+            case 15:
+                return Math.sin(x);
+            case 16:
+                return Math.sinh(x);
+            case 17:
+                return Math.asin(x);
+            case 18:
+                return Math.exp(x);
+            default:
+                throw new IllegalStateException("Unknown function: " + function);
+        }
+    }
+
+    // Looks up variables in the slots, for expressions that are not compiled.
+    private static final class SlotContext implements Context {
+        private final Map<String, Integer> slots;
+        private final double[] values;
+        private final double[][] columns;
+        private int row;
+
+        SlotContext(Map<String, Integer> slots, double[] values, int row) {
+            this.slots = slots;
+            this.values = values;
+            this.columns = null;
+            this.row = row;
+        }
+
+        SlotContext(Map<String, Integer> slots, double[][] columns, int row) {
+            this.slots = slots;
+            this.values = null;
+            this.columns = columns;
+            this.row = row;
+        }
+
+        public Double getValue(String var) {
+            Integer slot = slots.get(var);
+            if (slot == null) return null;
+            return values != null ? values[slot] : columns[slot][row];
+        }
+    }
+
+    // Emits the program for an expression in postfix order, so that operands are evaluated in
+    // the same order as by the expression itself.
+    private static final class Builder {
+        private final Map<String, Integer> slots;
+        private final IntList ops = new IntList();
+        private final IntList args = new IntList();
+        private final DoubleList constants = new DoubleList();
+        private final List<Object> objects = new ArrayList<>();
+        private int depth = 0;
+        private int maxDepth = 0;
+
+        // Whether evaluating the program may throw an exception.
+        private boolean mayThrow = false;
+
+        Builder(Map<String, Integer> slots) {
+            this.slots = slots;
+        }
+
+        void emit(Expression expression) {
+            if (expression instanceof ConstantExpression) {
+                constants.add(expression.evaluate(null));
+                instruction(CONST, constants.size() - 1, 0, 1);
+                return;
+            }
+
+            if (expression instanceof VariableExpression) {
+                String variable = ((VariableExpression) expression).getVariable();
+                Integer slot = slots.get(variable);
+
+                if (slot == null) {
+                    objects.add(variable);
+                    instruction(UNASSIGNED, objects.size() - 1, 0, 1);
+                    mayThrow = true;
+                } else {
+                    instruction(LOAD, slot, 0, 1);
+                }
+
+                return;
+            }
+
+            List<Expression> operands = expression.getExpressions();
+            int n = operands.size();
+            String token = expression instanceof AbstractExpression ? expression.getToken() : null;
+            int function = token == null ? -1 : Arrays.asList(FUNCTIONS).indexOf(token);
+
+            if (function != -1 && n == 1) {
+                emitAll(operands);
+                instruction(FUNCTION, function, 1, 1);
+            } else if ("+".equals(token) && n > 0) {
+                for (Expression operand : operands) {
+                    emitTerm(operand);
+                }
+
+                instruction(ADD, n, n, 1);
+            } else if ("-".equals(token) && n == 1) {
+                emitAll(operands);
+                instruction(NEG, 0, 1, 1);
+            } else if ("-".equals(token) && n == 2) {
+                emitAll(operands);
+                instruction(SUB, 0, 2, 1);
+            } else if ("*".equals(token) && n >= 2) {
+                emitAll(operands);
+                instruction(MUL, n, n, 1);
+            } else if ("/".equals(token) && n == 2) {
+                emitAll(operands);
+                instruction(DIV, 0, 2, 1);
+            } else if (("^".equals(token) || "pow".equals(token)) && n == 2) {
+                emitAll(operands);
+                instruction(POW, 0, 2, 1);
+            } else if ("max".equals(token) && n >= 2) {
+                emitAll(operands);
+                instruction(MAX, n, n, 1);
+            } else if ("min".equals(token) && n >= 2) {
+                emitAll(operands);
+                instruction(MIN, n, n, 1);
+            } else if ("AND".equals(token) && n >= 2) {
+                emitAll(operands);
+                instruction(AND, n, n, 1);
+            } else if ("XOR".equals(token) && n == 2) {
+                emitAll(operands);
+                instruction(XOR, 0, 2, 1);
+            } else if ("IF".equals(token) && n == 3) {
+                emitAll(operands);
+                instruction(IF, 0, 3, 1);
+            } else if ("random".equals(token) && n == 0) {
+                instruction(RANDOM, 0, 0, 1);
+            } else if (("N".equals(token) || "Normal".equals(token)) && n == 2) {
+                emitAll(operands);
+                instruction(NORMAL, 0, 2, 1);
+                mayThrow |= !(constant(operands.get(1)) > 0);
+            } else if ("Uniform".equals(token) && n == 2) {
+                emitAll(operands);
+                instruction(UNIFORM, 0, 2, 1);
+                mayThrow |= !(constant(operands.get(0)) < constant(operands.get(1)));
+            } else {
+                objects.add(expression);
+                instruction(FALLBACK, objects.size() - 1, 0, 1);
+                mayThrow = true;
+            }
+        }
+
+        private void emitAll(List<Expression> operands) {
+            for (Expression operand : operands) {
+                emit(operand);
+            }
+        }
+
+        // A term of a sum that may throw is compiled separately, so that an exception makes
+        // just that term 0.
+        private void emitTerm(Expression term) {
+            CompiledExpression compiled = compile(term, slots);
+
+            if (compiled.mayThrow) {
+                objects.add(compiled);
+                instruction(GUARDED, objects.size() - 1, 0, 1);
+            } else {
+                emit(term);
+            }
+        }
+
+        private void instruction(int op, int arg, int pops, int pushes) {
+            ops.add(op);
+            args.add(arg);
+            depth += pushes - pops;
+            maxDepth = Math.max(maxDepth, depth + pops);
+        }
+
+        private static double constant(Expression expression) {
+            return expression instanceof ConstantExpression ? expression.evaluate(null) : Double.NaN;
+        }
+    }
+
+    private static final class IntList {
+        private int[] values = new int[16];
+        private int size = 0;
+
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, 2 * size);
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    private static final class DoubleList {
+        private double[] values = new double[16];
+        private int size = 0;
+
+        void add(double value) {
+            if (size == values.length) values = Arrays.copyOf(values, 2 * size);
+            values[size++] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        double[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
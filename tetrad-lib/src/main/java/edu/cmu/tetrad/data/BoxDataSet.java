@@ -256,7 +256,7 @@ public final class BoxDataSet implements DataSet, TetradSerializable {
      */
     public final void setDouble(int row, int column, double value) {
         try {
-            dataBox.set(row, column, value);
+            dataBox.setDouble(row, column, value);
         } catch (Exception e) {
             if (row < 0 || column < 0) {
                 throw new IllegalArgumentException(
@@ -266,7 +266,7 @@ public final class BoxDataSet implements DataSet, TetradSerializable {
             int newRows = Math.max(row + 1, dataBox.numRows());
             int newCols = Math.max(column + 1, dataBox.numCols());
             resize(newRows, newCols);
-            dataBox.set(row, column, value);
+            dataBox.setDouble(row, column, value);
         }
     }
 
@@ -867,13 +867,7 @@ public final class BoxDataSet implements DataSet, TetradSerializable {
      * integer, or DiscreteVariable.MISSING_VALUE if the value is missing.
      */
     public final int getInt(int row, int column) {
-        Number value = dataBox.get(row, column);
-
-        if (value == null) {
-            return DiscreteVariable.MISSING_VALUE;
-        } else {
-            return value.intValue();
-        }
+        return dataBox.getInt(row, column);
     }
 
     /**
@@ -883,13 +877,7 @@ public final class BoxDataSet implements DataSet, TetradSerializable {
      * returned.
      */
     public final double getDouble(int row, int column) {
-        Number value = dataBox.get(row, column);
-
-        if (value == null) {
-            return ContinuousVariable.getDoubleMissingValue();
-        } else {
-            return value.doubleValue();
-        }
+        return dataBox.getDouble(row, column);
     }
 
 //    /**
@@ -1011,12 +999,7 @@ public final class BoxDataSet implements DataSet, TetradSerializable {
 
         for (int i = 0; i < dataBox.numRows(); i++) {
             for (int j = 0; j < dataBox.numCols(); j++) {
-                Number number = dataBox.get(i, j);
-                if (number == null) {
-                    copy.set(i, j, Double.NaN);
-                } else {
-                    copy.set(i, j, number.doubleValue());
-                }
+                copy.set(i, j, dataBox.getDouble(i, j));
             }
         }
 
@@ -1270,11 +1253,7 @@ public final class BoxDataSet implements DataSet, TetradSerializable {
 
     //===============================PRIVATE METHODS=====================//
     private void setIntPrivate(int row, int col, int value) {
-        if (value == -99) {
-            dataBox.set(row, col, null);
-        } else {
-            dataBox.set(row, col, value);
-        }
+        dataBox.setInt(row, col, value);
     }
 
     /**
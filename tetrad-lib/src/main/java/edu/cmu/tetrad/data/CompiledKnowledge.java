@@ -0,0 +1,156 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable snapshot of background knowledge compiled against a fixed list
+ * of variables. Forbidden and required edges are stored as one bitset per
+ * tail variable, indexed by the position of the head variable in the list, so
+ * that searches can check knowledge by int index without string lookups or
+ * scans over rules.
+ * <p>
+ * A snapshot does not track later edits to the knowledge it was compiled from;
+ * Knowledge2 discards its cached snapshot whenever it is modified, so callers
+ * should compile again at the start of each search.
+ */
+public final class CompiledKnowledge {
+
+    // The variables, in index order.
+    private final List<Node> variables;
+
+    // forbidden[i].get(j) iff variables[i] --> variables[j] is forbidden. Rows may be null.
+    private final BitSet[] forbidden;
+
+    // required[i].get(j) iff variables[i] --> variables[j] is required. Rows may be null.
+    private final BitSet[] required;
+
+    // True if no edge at all is forbidden or required.
+    private final boolean empty;
+
+    CompiledKnowledge(List<Node> variables, BitSet[] forbidden, BitSet[] required) {
+        if (forbidden.length != variables.size() || required.length != variables.size()) {
+            throw new IllegalArgumentException("Expecting one row per variable.");
+        }
+
+        this.variables = Collections.unmodifiableList(new ArrayList<>(variables));
+        this.forbidden = forbidden;
+        this.required = required;
+
+        boolean empty = true;
+
+        for (int i = 0; i < variables.size(); i++) {
+            if ((forbidden[i] != null && !forbidden[i].isEmpty())
+                    || (required[i] != null && !required[i].isEmpty())) {
+                empty = false;
+                break;
+            }
+        }
+
+        this.empty = empty;
+    }
+
+    /**
+     * Compiles the given knowledge against the given variables. Knowledge2
+     * is compiled directly from its rules (and the result cached); any other
+     * implementation is queried pair by pair by name.
+     */
+    public static CompiledKnowledge compile(IKnowledge knowledge, List<Node> variables) {
+        if (knowledge == null) {
+            throw new NullPointerException("Knowledge was not provided.");
+        }
+
+        if (knowledge instanceof Knowledge2) {
+            return ((Knowledge2) knowledge).compile(variables);
+        }
+
+        int n = variables.size();
+        BitSet[] forbidden = new BitSet[n];
+        BitSet[] required = new BitSet[n];
+
+        if (!knowledge.isEmpty()) {
+            for (int i = 0; i < n; i++) {
+                String name1 = variables.get(i).getName();
+
+                for (int j = 0; j < n; j++) {
+                    if (i == j) continue;
+                    String name2 = variables.get(j).getName();
+
+                    if (knowledge.isForbidden(name1, name2)) {
+                        if (forbidden[i] == null) forbidden[i] = new BitSet(n);
+                        forbidden[i].set(j);
+                    }
+
+                    if (knowledge.isRequired(name1, name2)) {
+                        if (required[i] == null) required[i] = new BitSet(n);
+                        required[i].set(j);
+                    }
+                }
+            }
+        }
+
+        return new CompiledKnowledge(variables, forbidden, required);
+    }
+
+    /**
+     * @return true iff the edge variables[i] --> variables[j] is forbidden.
+     */
+    public boolean isForbidden(int i, int j) {
+        BitSet row = forbidden[i];
+        return row != null && row.get(j);
+    }
+
+    /**
+     * @return true iff the edge variables[i] --> variables[j] is required.
+     */
+    public boolean isRequired(int i, int j) {
+        BitSet row = required[i];
+        return row != null && row.get(j);
+    }
+
+    /**
+     * @return true iff no edge between variables[i] and variables[j] is required.
+     */
+    public boolean noEdgeRequired(int i, int j) {
+        return !(isRequired(i, j) || isRequired(j, i));
+    }
+
+    /**
+     * @return true if no edge is forbidden or required.
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * @return the variables this snapshot was compiled against, in index order.
+     */
+    public List<Node> getVariables() {
+        return variables;
+    }
+}
@@ -99,6 +99,19 @@ public class CovarianceMatrix implements ICovarianceMatrix {
      * @throws IllegalArgumentException if this is not a continuous data set.
      */
     public CovarianceMatrix(DataSet dataSet) {
+        this(dataSet, false);
+    }
+
+    /**
+     * Constructs a new covariance matrix from the given data set. If blocked
+     * is true, the matrix is computed by DataUtils.covDemeanedBlocked(), which
+     * works through cache-sized tiles of the matrix in parallel and is much
+     * faster for large numbers of variables; otherwise row i of the matrix is
+     * computed by one task.
+     *
+     * @throws IllegalArgumentException if this is not a continuous data set.
+     */
+    public CovarianceMatrix(DataSet dataSet, boolean blocked) {
         if (!dataSet.isContinuous()) {
             throw new IllegalArgumentException("Not a continuous data set.");
         }
@@ -108,6 +121,24 @@ public class CovarianceMatrix implements ICovarianceMatrix {
         this.variables = Collections.unmodifiableList(dataSet.getVariables());
         this.sampleSize = dataSet.getNumRows();
 
+        // For a resampled view, the covariances are computed from its distinct rows, weighted by
+        // the number of times each is used, without expanding the sample.
+        if (dataSet instanceof BoxDataSet && ((BoxDataSet) dataSet).getDataBox() instanceof ResampledDataBox) {
+            ResampledDataBox box = (ResampledDataBox) ((BoxDataSet) dataSet).getDataBox();
+            int[] weights = box.getMultiplicities();
+
+            if (weights != null) {
+                double[][] distinct = new double[variables.size()][];
+
+                for (int j = 0; j < variables.size(); j++) {
+                    distinct[j] = box.getDistinctDoubleColumn(j);
+                }
+
+                this.matrix = DataUtils.covWeighted(distinct, weights);
+                return;
+            }
+        }
+
         if (dataSet instanceof BoxDataSet) {
 
             DataBox box = ((BoxDataSet) dataSet).getDataBox().copy();
@@ -140,6 +171,12 @@ public class CovarianceMatrix implements ICovarianceMatrix {
         }
 
         TetradVector means = DataUtils.means(vectors);
+        DataUtils.demean(vectors, means);
+
+        if (blocked) {
+            this.matrix = DataUtils.covDemeanedBlocked(vectors);
+            return;
+        }
 
         int NTHREADS = Runtime.getRuntime().availableProcessors() * 10;
         int _chunk = variables.size() / NTHREADS + 1;
@@ -268,11 +305,6 @@ public class CovarianceMatrix implements ICovarianceMatrix {
 
         RestOfThemTask task2 = new RestOfThemTask(chunk, 0, variables.size());
         ForkJoinPoolInstance.getInstance().getPool().invoke(task2);
-
-        DataUtils.demean(vectors, means);
-
-        this.variables = Collections.unmodifiableList(dataSet.getVariables());
-        this.sampleSize = dataSet.getNumRows();
     }
 
     /**
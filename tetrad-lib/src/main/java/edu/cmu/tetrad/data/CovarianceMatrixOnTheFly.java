@@ -29,6 +29,7 @@ import org.apache.commons.math3.linear.RealMatrix;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.nio.DoubleBuffer;
 import java.text.NumberFormat;
 import java.util.*;
 import java.util.concurrent.RecursiveTask;
@@ -101,6 +102,16 @@ public class CovarianceMatrixOnTheFly implements ICovarianceMatrix {
 
     private double[] variances;
 
+    // For data mapped from disk, the columns are read in place rather than copied into vectors,
+    // and centered on the fly with these means.
+    private MappedDataBox mappedBox = null;
+    private double[] means = null;
+
+    // For a resampled view, vectors holds its distinct rows, each used the number of times given
+    // by weights; distinctIndices gives the distinct row for each row of the view.
+    private int[] weights = null;
+    private int[] distinctIndices = null;
+
 
     //=============================CONSTRUCTORS=========================//
 
@@ -173,12 +184,50 @@ public class CovarianceMatrixOnTheFly implements ICovarianceMatrix {
 
                 TetradVector means = DataUtils.means(vectors);
                 DataUtils.demean(vectors, means);
+            } else if (box instanceof ResampledDataBox && ((ResampledDataBox) box).isView()) {
+                if (verbose) {
+                    System.out.println("Getting distinct rows from ResampledDataBox");
+                }
+
+                ResampledDataBox resampled = (ResampledDataBox) box;
+                weights = resampled.getMultiplicities();
+                distinctIndices = resampled.getDistinctIndices();
+                vectors = new double[variables.size()][];
+
+                for (int i = 0; i < variables.size(); i++) {
+                    vectors[i] = resampled.getDistinctDoubleColumn(i);
+                }
+
+                TetradVector means = DataUtils.weightedMeans(vectors, weights);
+                DataUtils.demean(vectors, means);
+            } else if (box instanceof MappedDataBox && ((MappedDataBox) box).isContinuous()) {
+                if (verbose) {
+                    System.out.println("Reading columns from MappedDataBox");
+                }
+
+                mappedBox = (MappedDataBox) box;
+                means = new double[variables.size()];
+
+                for (int i = 0; i < variables.size(); i++) {
+                    DoubleBuffer v1 = mappedBox.getDoubleBuffer(i);
+                    double sum = 0.0;
+                    int count = 0;
+
+                    for (int k = 0; k < sampleSize; k++) {
+                        double x = v1.get(k);
+                        if (Double.isNaN(x)) continue;
+                        sum += x;
+                        count++;
+                    }
+
+                    means[i] = sum / count;
+                }
             }
 
 
         }
 
-        if (vectors == null) {
+        if (vectors == null && mappedBox == null) {
             if (verbose) {
                 System.out.println("Copying data");
             }
@@ -231,6 +280,16 @@ public class CovarianceMatrixOnTheFly implements ICovarianceMatrix {
             protected Boolean compute() {
                 if (to - from <= chunk) {
                     for (int i = from; i < to; i++) {
+                        if (mappedBox != null) {
+                            variances[i] = mappedValue(i, i, null);
+                            continue;
+                        }
+
+                        if (weights != null) {
+                            variances[i] = weightedValue(i, i, null);
+                            continue;
+                        }
+
                         double d = 0.0D;
 
                         int count = 0;
@@ -450,6 +509,14 @@ public class CovarianceMatrixOnTheFly implements ICovarianceMatrix {
             return variances[i];
         }
 
+        if (mappedBox != null) {
+            return mappedValue(i, j, null);
+        }
+
+        if (weights != null) {
+            return weightedValue(i, j, null);
+        }
+
         double d = 0.0D;
 
         double[] v1 = vectors[i];
@@ -475,6 +542,14 @@ public class CovarianceMatrixOnTheFly implements ICovarianceMatrix {
 //            return variances[i];
 //        }
 
+        if (mappedBox != null) {
+            return mappedValue(i, j, rows);
+        }
+
+        if (weights != null) {
+            return weightedValue(i, j, rows);
+        }
+
         double d = 0.0D;
 
         double[] v1 = vectors[i];
@@ -751,6 +826,61 @@ public class CovarianceMatrixOnTheFly implements ICovarianceMatrix {
         clearSelection();
     }
 
+    // The covariance of columns i and j of the mapped data over the given rows (all rows if null),
+    // skipping missing values.
+    private double mappedValue(int i, int j, int[] rows) {
+        DoubleBuffer v1 = mappedBox.getDoubleBuffer(i);
+        DoubleBuffer v2 = mappedBox.getDoubleBuffer(j);
+        double m1 = means[i];
+        double m2 = means[j];
+        int n = rows == null ? sampleSize : rows.length;
+        double d = 0.0D;
+        int count = 0;
+
+        for (int r = 0; r < n; r++) {
+            int k = rows == null ? r : rows[r];
+            double a = v1.get(k);
+            double b = v2.get(k);
+            if (Double.isNaN(a)) continue;
+            if (Double.isNaN(b)) continue;
+
+            d += (a - m1) * (b - m2);
+            count++;
+        }
+
+        return d / (count - 1);
+    }
+
+    // The covariance of columns i and j of resampled data over the given rows of the view (all rows
+    // if null), skipping missing values. The vectors are the demeaned distinct rows.
+    private double weightedValue(int i, int j, int[] rows) {
+        double[] v1 = vectors[i];
+        double[] v2 = vectors[j];
+        double d = 0.0D;
+        int count = 0;
+
+        if (rows == null) {
+            for (int k = 0; k < weights.length; k++) {
+                if (Double.isNaN(v1[k])) continue;
+                if (Double.isNaN(v2[k])) continue;
+
+                d += weights[k] * v1[k] * v2[k];
+                count += weights[k];
+            }
+        } else {
+            for (int r : rows) {
+                int k = distinctIndices[r];
+                if (Double.isNaN(v1[k])) continue;
+                if (Double.isNaN(v2[k])) continue;
+
+                d += v1[k] * v2[k];
+                count++;
+            }
+        }
+
+        return d / (count - 1);
+    }
+
     private Set<Node> getSelectedVariables() {
         return selectedVariables;
     }
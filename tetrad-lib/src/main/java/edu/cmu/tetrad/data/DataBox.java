@@ -58,6 +58,67 @@ public interface DataBox extends TetradSerializable {
      */
     Number get(int row, int col);
 
+    /**
+     * @return the value at the given row and column as a double, without
+     * boxing. If the value is missing, Double.NaN is returned.
+     */
+    double getDouble(int row, int col);
+
+    /**
+     * Sets the value at the given row and column to the given double, without
+     * boxing. A value of Double.NaN is interpreted as a missing value.
+     */
+    void setDouble(int row, int col, double value);
+
+    /**
+     * @return the value at the given row and column as an int, without
+     * boxing. If the value is missing, DiscreteVariable.MISSING_VALUE (-99) is
+     * returned.
+     */
+    int getInt(int row, int col);
+
+    /**
+     * Sets the value at the given row and column to the given int, without
+     * boxing. A value of DiscreteVariable.MISSING_VALUE (-99) is interpreted as
+     * a missing value.
+     */
+    void setInt(int row, int col, int value);
+
+    /**
+     * @return the given column as doubles, with missing values as Double.NaN.
+     * If the box stores the column as a double array, that array is returned
+     * without copying and must not be modified; otherwise the values are
+     * copied into <code>column</code>, or into a new array if
+     * <code>column</code> is null or shorter than numRows(), which is
+     * returned.
+     */
+    default double[] getDoubleColumn(int col, double[] column) {
+        if (column == null || column.length < numRows()) column = new double[numRows()];
+
+        for (int i = 0; i < numRows(); i++) {
+            column[i] = getDouble(i, col);
+        }
+
+        return column;
+    }
+
+    /**
+     * @return the given column as ints, with missing values as -99. If the
+     * box stores the column as an int array, that array is returned without
+     * copying and must not be modified; otherwise the values are copied into
+     * <code>column</code>, or into a new array if <code>column</code> is null
+     * or shorter than numRows(), which is returned.
+     */
+    default int[] getIntColumn(int col, int[] column) {
+        if (column == null || column.length < numRows()) column = new int[numRows()];
+
+        for (int i = 0; i < numRows(); i++) {
+            column[i] = getInt(i, col);
+        }
+
+        return column;
+    }
+
     /**
      * @return a copy of this data box.
      */
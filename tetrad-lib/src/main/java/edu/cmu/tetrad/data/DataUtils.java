@@ -36,6 +36,7 @@ import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -1109,6 +1110,32 @@ public final class DataUtils {
         return means;
     }
 
+    /**
+     * Column major data, with the number of times each row is used. Computes the mean of each
+     * column with each row repeated that many times, skipping missing values.
+     */
+    public static TetradVector weightedMeans(double[][] data, int[] weights) {
+        TetradVector means = new TetradVector(data.length);
+
+        for (int j = 0; j < means.size(); j++) {
+            double sum = 0.0;
+            int count = 0;
+
+            for (int k = 0; k < weights.length; k++) {
+                if (Double.isNaN(data[j][k])) {
+                    continue;
+                }
+
+                sum += weights[k] * data[j][k];
+                count += weights[k];
+            }
+
+            means.set(j, sum / count);
+        }
+
+        return means;
+    }
+
     public static void demean(TetradMatrix data, TetradVector means) {
         for (int j = 0; j < data.columns(); j++) {
             for (int i = 0; i < data.rows(); i++) {
@@ -1155,6 +1182,253 @@ public final class DataUtils {
 //        return prod.scalarMult(1.0 / (data.rows() - 1));
     }
 
+    /**
+     * Column major data, already demeaned. Computes the covariance matrix of
+     * the columns in parallel, in square tiles of columns over strips of rows
+     * small enough to stay in cache, skipping missing values pairwise as the
+     * CovarianceMatrix constructor does.
+     */
+    public static TetradMatrix covDemeanedBlocked(final double[][] data) {
+        final int p = data.length;
+        final int n = p == 0 ? 0 : data[0].length;
+        final double[][] cov = new double[p][p];
+        final boolean[] missing = new boolean[p];
+
+        for (int j = 0; j < p; j++) {
+            for (int i = 0; i < n; i++) {
+                if (Double.isNaN(data[j][i])) {
+                    missing[j] = true;
+                    break;
+                }
+            }
+        }
+
+        final int tile = 64;
+        final int strip = 2048;
+        final int numTiles = (p + tile - 1) / tile;
+        final List<int[]> tiles = new ArrayList<>();
+
+        for (int a = 0; a < numTiles; a++) {
+            for (int b = 0; b <= a; b++) {
+                tiles.add(new int[]{a * tile, b * tile});
+            }
+        }
+
+        class TileTask extends RecursiveTask<Boolean> {
+            private static final long serialVersionUID = 23L;
+
+            private final int from;
+            private final int to;
+
+            private TileTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected Boolean compute() {
+                if (to - from > 1) {
+                    int mid = (from + to) / 2;
+                    TileTask left = new TileTask(from, mid);
+                    TileTask right = new TileTask(mid, to);
+                    left.fork();
+                    right.compute();
+                    left.join();
+                    return true;
+                }
+
+                int i0 = tiles.get(from)[0];
+                int j0 = tiles.get(from)[1];
+                int i1 = Math.min(i0 + tile, p);
+                int j1 = Math.min(j0 + tile, p);
+                double[][] sums = new double[i1 - i0][j1 - j0];
+                int[][] counts = new int[i1 - i0][j1 - j0];
+
+                for (int r0 = 0; r0 < n; r0 += strip) {
+                    int r1 = Math.min(r0 + strip, n);
+
+                    for (int i = i0; i < i1; i++) {
+                        double[] v1 = data[i];
+                        double[] s = sums[i - i0];
+                        int jMax = Math.min(j1, i + 1);
+                        int j = j0;
+
+                        if (!missing[i]) {
+
+                            // Four columns at a time, reading v1 once for all of them.
+                            for (; j + 3 < jMax; j += 4) {
+                                if (missing[j] || missing[j + 1] || missing[j + 2] || missing[j + 3]) break;
+
+                                double[] w0 = data[j];
+                                double[] w1 = data[j + 1];
+                                double[] w2 = data[j + 2];
+                                double[] w3 = data[j + 3];
+                                double d0 = 0, d1 = 0, d2 = 0, d3 = 0;
+
+                                for (int k = r0; k < r1; k++) {
+                                    double x = v1[k];
+                                    d0 += x * w0[k];
+                                    d1 += x * w1[k];
+                                    d2 += x * w2[k];
+                                    d3 += x * w3[k];
+                                }
+
+                                s[j - j0] += d0;
+                                s[j + 1 - j0] += d1;
+                                s[j + 2 - j0] += d2;
+                                s[j + 3 - j0] += d3;
+                            }
+                        }
+
+                        for (; j < jMax; j++) {
+                            double[] v2 = data[j];
+                            double d = 0.0;
+
+                            if (missing[i] || missing[j]) {
+                                int count = 0;
+
+                                for (int k = r0; k < r1; k++) {
+                                    if (Double.isNaN(v1[k]) || Double.isNaN(v2[k])) continue;
+                                    d += v1[k] * v2[k];
+                                    count++;
+                                }
+
+                                counts[i - i0][j - j0] += count - (r1 - r0);
+                            } else {
+                                for (int k = r0; k < r1; k++) {
+                                    d += v1[k] * v2[k];
+                                }
+                            }
+
+                            s[j - j0] += d;
+                        }
+                    }
+                }
+
+                for (int i = i0; i < i1; i++) {
+                    for (int j = j0; j < Math.min(j1, i + 1); j++) {
+                        double v = sums[i - i0][j - j0] / (n + counts[i - i0][j - j0] - 1);
+                        cov[i][j] = v;
+                        cov[j][i] = v;
+                    }
+                }
+
+                return true;
+            }
+        }
+
+        if (!tiles.isEmpty()) {
+            ForkJoinPoolInstance.getInstance().getPool().invoke(new TileTask(0, tiles.size()));
+        }
+
+        return new TetradMatrix(cov);
+    }
+
+    /**
+     * Column major data for distinct rows, with the number of times each row is used, as for the
+     * distinct rows of a bootstrap sample. Computes the covariance matrix of the data with each
+     * row repeated that many times, without repeating them, skipping missing values pairwise as
+     * the CovarianceMatrix constructor does. The data is demeaned in place.
+     */
+    public static TetradMatrix covWeighted(final double[][] data, final int[] weights) {
+        final int p = data.length;
+        final int m = weights.length;
+        int n = 0;
+
+        for (int w : weights) n += w;
+
+        boolean missing = false;
+
+        for (int j = 0; j < p && !missing; j++) {
+            for (int k = 0; k < m; k++) {
+                if (Double.isNaN(data[j][k])) {
+                    missing = true;
+                    break;
+                }
+            }
+        }
+
+        demean(data, weightedMeans(data, weights));
+
+        if (!missing) {
+
+            // With each row scaled by the square root of its weight, the products summed by
+            // covDemeanedBlocked are the weighted ones; only the divisor needs correcting.
+            double[] roots = new double[m];
+            for (int k = 0; k < m; k++) roots[k] = Math.sqrt(weights[k]);
+
+            for (int j = 0; j < p; j++) {
+                for (int k = 0; k < m; k++) {
+                    data[j][k] *= roots[k];
+                }
+            }
+
+            TetradMatrix cov = covDemeanedBlocked(data);
+            double factor = (m - 1) / (double) (n - 1);
+
+            for (int i = 0; i < p; i++) {
+                for (int j = 0; j < p; j++) {
+                    cov.set(i, j, cov.get(i, j) * factor);
+                }
+            }
+
+            return cov;
+        }
+
+        final double[][] cov = new double[p][p];
+
+        class RowTask extends RecursiveTask<Boolean> {
+            private static final long serialVersionUID = 23L;
+
+            private final int from;
+            private final int to;
+
+            private RowTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected Boolean compute() {
+                if (to - from > 1) {
+                    int mid = (from + to) / 2;
+                    RowTask left = new RowTask(from, mid);
+                    RowTask right = new RowTask(mid, to);
+                    left.fork();
+                    right.compute();
+                    left.join();
+                    return true;
+                }
+
+                double[] v1 = data[from];
+
+                for (int j = 0; j <= from; j++) {
+                    double[] v2 = data[j];
+                    double d = 0.0;
+                    int count = 0;
+
+                    for (int k = 0; k < m; k++) {
+                        if (Double.isNaN(v1[k]) || Double.isNaN(v2[k])) continue;
+                        d += weights[k] * v1[k] * v2[k];
+                        count += weights[k];
+                    }
+
+                    double v = d / (count - 1);
+                    cov[from][j] = v;
+                    cov[j][from] = v;
+                }
+
+                return true;
+            }
+        }
+
+        if (p > 0) {
+            ForkJoinPoolInstance.getInstance().getPool().invoke(new RowTask(0, p));
+        }
+
+        return new TetradMatrix(cov);
+    }
+
     public static TetradMatrix cov(TetradMatrix data) {
 
 
@@ -1445,6 +1719,29 @@ public final class DataUtils {
         return ColtDataSet.makeData(data.getVariables(), data.getDoubleData().getSelection(rows, cols));
     }
 
+    /**
+     * @return a sample with replacement with the given sample size from the
+     * given dataset, as a view of its rows that copies no data (see
+     * ResampledDataBox). Data sets not stored in a data box are copied, as by
+     * getBootstrapSample.
+     */
+    public static DataSet getBootstrapView(DataSet data, int sampleSize) {
+        if (!(data instanceof BoxDataSet)) {
+            return getBootstrapSample(data, sampleSize);
+        }
+
+        int actualSampleSize = data.getNumRows();
+
+        int[] rows = new int[sampleSize];
+
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = RandomUtil.getInstance().nextInt(actualSampleSize);
+        }
+
+        DataBox box = new ResampledDataBox(((BoxDataSet) data).getDataBox(), rows);
+        return new BoxDataSet(box, data.getVariables());
+    }
+
     /**
      * @return a sample without replacement with the given sample size from the
      * given dataset. May return a sample of less than the given size; makes
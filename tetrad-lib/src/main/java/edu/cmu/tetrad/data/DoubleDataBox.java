@@ -113,6 +113,42 @@ public class DoubleDataBox implements DataBox {
         }
     }
 
+    /**
+     * @return the value at the given row and column as a double; missing
+     * values are Double.NaN.
+     */
+    public double getDouble(int row, int col) {
+        return data[row][col];
+    }
+
+    /**
+     * Sets the value at the given row and column to the given double.
+     */
+    public void setDouble(int row, int col, double value) {
+        synchronized (data) {
+            data[row][col] = value;
+        }
+    }
+
+    /**
+     * @return the value at the given row and column, cast to int, or -99 if
+     * the value is missing (Double.NaN).
+     */
+    public int getInt(int row, int col) {
+        double datum = data[row][col];
+        return Double.isNaN(datum) ? DiscreteVariable.MISSING_VALUE : (int) datum;
+    }
+
+    /**
+     * Sets the value at the given row and column to the given int; -99 is
+     * stored as missing (Double.NaN).
+     */
+    public void setInt(int row, int col, int value) {
+        synchronized (data) {
+            data[row][col] = value == DiscreteVariable.MISSING_VALUE ? Double.NaN : value;
+        }
+    }
+
     /**
      * @return a copy of this data box.
      */
@@ -121,7 +157,7 @@ public class DoubleDataBox implements DataBox {
 
         for (int i = 0; i < numRows(); i++) {
             for (int j = 0; j < numCols(); j++) {
-                box.set(i, j, get(i, j));
+                box.setDouble(i, j, getDouble(i, j));
             }
         }
 
@@ -147,7 +183,7 @@ public class DoubleDataBox implements DataBox {
 
         for (int i = 0; i < rows.length; i++) {
             for (int j = 0; j < cols.length; j++) {
-                _dataBox.set(i, j, get(rows[i], cols[j]));
+                _dataBox.setDouble(i, j, getDouble(rows[i], cols[j]));
             }
         }
 
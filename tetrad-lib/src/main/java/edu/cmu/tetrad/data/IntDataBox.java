@@ -112,6 +112,42 @@ public class IntDataBox implements DataBox {
         }
     }
 
+    /**
+     * @return the value at the given row and column as a double, or
+     * Double.NaN if the value is missing (-99).
+     */
+    public double getDouble(int row, int col) {
+        int datum = data[row][col];
+        return datum == -99 ? Double.NaN : datum;
+    }
+
+    /**
+     * Sets the value at the given row and column to the given double, cast to
+     * int. Double.NaN is stored as missing (-99).
+     */
+    public void setDouble(int row, int col, double value) {
+        synchronized (data) {
+            data[row][col] = Double.isNaN(value) ? -99 : (int) value;
+        }
+    }
+
+    /**
+     * @return the value at the given row and column as an int; missing values
+     * are -99.
+     */
+    public int getInt(int row, int col) {
+        return data[row][col];
+    }
+
+    /**
+     * Sets the value at the given row and column to the given int.
+     */
+    public void setInt(int row, int col, int value) {
+        synchronized (data) {
+            data[row][col] = value;
+        }
+    }
+
     /**
      * @return a copy of this data box.
      */
@@ -120,7 +156,7 @@ public class IntDataBox implements DataBox {
 
         for (int i = 0; i < numRows(); i++) {
             for (int j = 0; j < numCols(); j++) {
-                box.set(i, j, get(i, j));
+                box.setInt(i, j, getInt(i, j));
             }
         }
 
@@ -146,7 +182,7 @@ public class IntDataBox implements DataBox {
 
         for (int i = 0; i < rows.length; i++) {
             for (int j = 0; j < cols.length; j++) {
-                _dataBox.set(i, j, get(rows[i], cols[j]));
+                _dataBox.setInt(i, j, getInt(rows[i], cols[j]));
             }
         }
 
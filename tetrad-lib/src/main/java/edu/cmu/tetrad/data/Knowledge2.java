@@ -67,6 +67,9 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
 
     private Map<String, MyNode> namesToVars = new HashMap<>();
 
+    // The most recently compiled snapshot; discarded whenever the knowledge is edited.
+    private transient volatile CompiledKnowledge compiled;
+
     // Wraps a variable name so that it has object identity. For speed.
     public static class MyNode implements Comparable, TetradSerializable {
 
@@ -168,6 +171,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      * is a non-negative integer.
      */
     public final void addToTier(int tier, String spec) {
+        invalidate();
         addVariable(spec);
 
         if (tier < 0) {
@@ -227,6 +231,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      * Removes the knowledge group at the given index.
      */
     public void removeKnowledgeGroup(int index) {
+        invalidate();
         OrderedPair<Set<MyNode>> old = knowledgeGroupRules.get(knowledgeGroups.get(index));
 
         forbiddenRulesSpecs.remove(old);
@@ -240,6 +245,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      * setRequired with patterns. Needed for the interface.
      */
     public void addKnowledgeGroup(KnowledgeGroup group) {
+        invalidate();
         this.knowledgeGroups.add(group);
 
         OrderedPair<Set<MyNode>> o = getGroupRule(group);
@@ -256,6 +262,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      * Legacy, do not use.
      */
     public void setKnowledgeGroup(int index, KnowledgeGroup group) {
+        invalidate();
         OrderedPair<Set<MyNode>> o = getGroupRule(group);
         OrderedPair<Set<MyNode>> old = knowledgeGroupRules.get(knowledgeGroups.get(index));
 
@@ -712,6 +719,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      */
     @Override
     public final void setForbidden(String spec1, String spec2) {
+        invalidate();
         addVariable(spec1);
         addVariable(spec2);
 
@@ -733,6 +741,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      */
     @Override
     public final void removeForbidden(String spec1, String spec2) {
+        invalidate();
         spec1 = checkSpec(spec1);
         spec2 = checkSpec(spec2);
 
@@ -752,6 +761,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      */
     @Override
     public final void setRequired(String spec1, String spec2) {
+        invalidate();
         addVariable(spec1);
         addVariable(spec2);
 
@@ -784,6 +794,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      * Marks the edge var1 --> var2 as not required.
      */
     public final void removeRequired(String spec1, String spec2) {
+        invalidate();
         spec1 = checkSpec(spec1);
         spec2 = checkSpec(spec2);
 
@@ -799,6 +810,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      * Removes the given variable from all tiers.
      */
     public final void removeFromTiers(String spec) {
+        invalidate();
         for (Set<MyNode> tier : tierSpecs) {
             tier.remove(getVar(spec));
         }
@@ -809,6 +821,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      * given tier, or cancels this forbidding.
      */
     public final void setTierForbiddenWithin(int tier, boolean forbidden) {
+        invalidate();
         ensureTiers(tier);
         Set<MyNode> _tier = tierSpecs.get(tier);
         OrderedPair<Set<MyNode>> o = new OrderedPair<>(_tier, _tier);
@@ -840,6 +853,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
 
     private void ensureTiers(int tier) {
         for (int i = tierSpecs.size(); i <= tier; i++) {
+            invalidate();
             tierSpecs.add(new LinkedHashSet<MyNode>());
 
             for (int j = 0; j < i; j++) {
@@ -875,6 +889,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      * Removes explicit knowledge and tier information.
      */
     public final void clear() {
+        invalidate();
         this.forbiddenRulesSpecs = new ArrayList<>();
         this.requiredRulesSpecs = new ArrayList<>();
         this.tierSpecs = new ArrayList<>();
@@ -953,6 +968,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      * Sets the variable in a given tier to the specified list.
      */
     public void setTier(int tier, List<String> vars) {
+        invalidate();
         ensureTiers(tier);
         Set<MyNode> _tier = tierSpecs.get(tier);
         if (_tier != null) {
@@ -968,6 +984,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      * Adds the given variable name to knowledge. Duplicates are ignored.
      */
     public void addVariable(String varName) {
+        invalidate();
         if (!namesToVars.containsKey(varName) && checkVarName(varName)) {
             MyNode e = new MyNode(varName);
             myNodes.add(e);
@@ -979,6 +996,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      * Removes the given variable from the list of myNodes and all rules.
      */
     public void removeVariable(String name) {
+        invalidate();
         if (!checkVarName(name)) {
             throw new IllegalArgumentException("Bad variable name: " + name);
         }
@@ -1000,6 +1018,37 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         }
     }
 
+    /**
+     * Compiles this knowledge into an immutable bitset snapshot indexed by
+     * position in the given variable list; variables are matched by name. The
+     * snapshot is cached until the knowledge is next edited.
+     */
+    public CompiledKnowledge compile(List<Node> variables) {
+        CompiledKnowledge _compiled = this.compiled;
+
+        if (_compiled != null && _compiled.getVariables().equals(variables)) {
+            return _compiled;
+        }
+
+        int n = variables.size();
+        Map<MyNode, Integer> indices = new HashMap<>();
+
+        for (int i = 0; i < n; i++) {
+            MyNode node = getVar(variables.get(i).getName());
+            if (node != null) indices.put(node, i);
+        }
+
+        BitSet[] forbidden = new BitSet[n];
+        BitSet[] required = new BitSet[n];
+
+        setBits(forbiddenRulesSpecs, indices, forbidden);
+        setBits(requiredRulesSpecs, indices, required);
+
+        _compiled = new CompiledKnowledge(variables, forbidden, required);
+        this.compiled = _compiled;
+        return _compiled;
+    }
+
     /**
      * @return a copy of the list of variable, in alphabetical order.
      */
@@ -1027,6 +1076,28 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         return new OrderedPair<>(fromExtent, toExtent);
     }
 
+    private void invalidate() {
+        this.compiled = null;
+    }
+
+    private void setBits(List<OrderedPair<Set<MyNode>>> rules, Map<MyNode, Integer> indices, BitSet[] rows) {
+        int n = rows.length;
+
+        for (OrderedPair<Set<MyNode>> rule : rules) {
+            for (MyNode s1 : rule.getFirst()) {
+                Integer i = indices.get(s1);
+                if (i == null) continue;
+
+                for (MyNode s2 : rule.getSecond()) {
+                    Integer j = indices.get(s2);
+                    if (j == null || j.equals(i)) continue;
+                    if (rows[i] == null) rows[i] = new BitSet(n);
+                    rows[i].set(j);
+                }
+            }
+        }
+    }
+
     private boolean checkVarName(String name) {
         java.util.regex.Pattern pattern = java.util.regex.Pattern.compile("[A-Za-z0-9:_\\-\\.]+");
         Matcher matcher = pattern.matcher(name);
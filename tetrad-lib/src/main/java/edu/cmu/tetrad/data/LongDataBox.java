@@ -112,6 +112,42 @@ public class LongDataBox implements DataBox {
         }
     }
 
+    /**
+     * @return the value at the given row and column as a double, or
+     * Double.NaN if the value is missing (-99).
+     */
+    public double getDouble(int row, int col) {
+        long datum = data[row][col];
+        return datum == -99L ? Double.NaN : datum;
+    }
+
+    /**
+     * Sets the value at the given row and column to the given double, cast to
+     * long. Double.NaN is stored as missing (-99).
+     */
+    public void setDouble(int row, int col, double value) {
+        synchronized (data) {
+            data[row][col] = Double.isNaN(value) ? -99L : (long) value;
+        }
+    }
+
+    /**
+     * @return the value at the given row and column as an int; missing values
+     * are -99.
+     */
+    public int getInt(int row, int col) {
+        return (int) data[row][col];
+    }
+
+    /**
+     * Sets the value at the given row and column to the given int.
+     */
+    public void setInt(int row, int col, int value) {
+        synchronized (data) {
+            data[row][col] = (long) value;
+        }
+    }
+
     /**
      * @return a copy of this data box.
      */
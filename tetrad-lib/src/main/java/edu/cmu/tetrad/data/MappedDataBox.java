@@ -0,0 +1,771 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.TetradMatrix;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Stores a 2D array of continuous and discrete data in a file on disk, one
+ * column after another, and maps each column into memory with
+ * FileChannel.map(), so that data sets larger than the heap can be searched
+ * without being loaded. The operating system pages columns in and out as they
+ * are used. Continuous columns are stored as doubles, with Double.NaN as the
+ * missing value marker; discrete columns are stored as ints, with -99 as the
+ * missing value marker.
+ * <p>
+ * The file holds the variables as well as the data, so a data set may be
+ * written out once, for instance from the output of DataReader.parseTabular(),
+ * with writeDataSet() and then reopened any number of times with
+ * readDataSet(). A covariance matrix may be stored along with the data, or
+ * in place of it, and read back with getCovarianceMatrix() or
+ * readCovarianceMatrix().
+ * <p>
+ * The format is: the int magic number 0x54444d42, the int version (currently
+ * 2), the int number of rows and the int number of columns; from version 2, the
+ * int flags (1 if a covariance matrix is included) and, if a covariance matrix
+ * is included, its int sample size; then for each column a byte type (0 for
+ * continuous, 1 for discrete), the UTF name, and for discrete columns the int
+ * number of categories and the UTF category names, all as written by
+ * DataOutputStream. Then, starting at the next multiple of 8 bytes, each column
+ * in turn in little endian order, each padded to a multiple of 8 bytes, and
+ * last the covariance matrix, if any, as little endian doubles in row-major
+ * order. Each column and the covariance matrix must be smaller than 2 GB.
+ * Version 1 files, which have no flags, are still read.
+ * <p>
+ * CovarianceMatrixOnTheFly and BDeuScore read mapped columns in place through
+ * getDoubleBuffer() and getIntBuffer(). copy(), like() and viewSelection()
+ * return in-memory MixedDataBoxes.
+ */
+public class MappedDataBox implements DataBox {
+    static final long serialVersionUID = 23L;
+
+    private static final int MAGIC = 0x54444d42;
+    private static final int VERSION = 2;
+    private static final int HAS_COVARIANCE = 1;
+    private static final byte CONTINUOUS = 0;
+    private static final byte DISCRETE = 1;
+
+    /**
+     * The path of the file.
+     *
+     * @serial Cannot be null.
+     */
+    private final String path;
+
+    /**
+     * True if the file was mapped for writing as well as reading.
+     *
+     * @serial
+     */
+    private final boolean writable;
+
+    /**
+     * The offset in the file of the first column.
+     *
+     * @serial Range >= 0.
+     */
+    private final long dataStart;
+
+    /**
+     * The variables, in column order.
+     *
+     * @serial Cannot be null.
+     */
+    private final List<Node> variables;
+
+    /**
+     * The number of rows.
+     *
+     * @serial Range >= 0.
+     */
+    private final int numRows;
+
+    /**
+     * The sample size of the stored covariance matrix, or -1 if there is none.
+     *
+     * @serial Range >= -1.
+     */
+    private final int covarianceSampleSize;
+
+    // The mapped continuous columns, null for discrete columns.
+    private transient DoubleBuffer[] continuousColumns;
+
+    // The mapped discrete columns, null for continuous columns.
+    private transient IntBuffer[] discreteColumns;
+
+    // The mapped covariance matrix, if any.
+    private transient DoubleBuffer covariance;
+
+    // For discrete columns whose variable orders its categories differently from the file, the
+    // variable's index for each code in the file and the reverse; otherwise null.
+    private transient int[][] toVariable;
+    private transient int[][] toFile;
+
+    //=============================CONSTRUCTORS=========================//
+
+    /**
+     * Maps the data in the given file, which must have been written by
+     * writeDataSet() or writeCovarianceMatrix().
+     *
+     * @param file     The file.
+     * @param writable True if the data may be changed, in which case changes
+     *                 are written through to the file.
+     */
+    public MappedDataBox(File file, boolean writable) throws IOException {
+        this.path = file.getAbsolutePath();
+        this.writable = writable;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int[] header = readHeaderStart(in, file);
+            int version = header[0];
+            this.numRows = header[1];
+            this.covarianceSampleSize = header[3];
+            this.variables = readVariables(in, header[2], null);
+
+            if (version < VERSION) {
+                this.dataStart = align(headerSize(variables, -1) - 4);
+            } else {
+                this.dataStart = align(headerSize(variables, covarianceSampleSize));
+            }
+        }
+
+        map();
+    }
+
+    /**
+     * Generates a simple exemplar of this class to test serialization.
+     */
+    public static BoxDataSet serializableInstance() {
+        return new BoxDataSet(new ShortDataBox(4, 4), null);
+    }
+
+    //============================PUBLIC METHODS=========================//
+
+    /**
+     * Writes the given data set to the given file in the format read by this
+     * class. The data set is read one column at a time and streamed out, so
+     * no second copy of it is made in memory. Variables must be continuous or
+     * discrete.
+     */
+    public static void writeDataSet(DataSet dataSet, File file) throws IOException {
+        write(dataSet, dataSet.getVariables(), dataSet.getNumRows(), null, file);
+    }
+
+    /**
+     * Writes the given data set to the given file along with the given
+     * covariance matrix, which must be over variables with the same names.
+     */
+    public static void writeDataSet(DataSet dataSet, ICovarianceMatrix covariances, File file) throws IOException {
+        if (!dataSet.getVariableNames().equals(covariances.getVariableNames())) {
+            throw new IllegalArgumentException("The covariance matrix must be over the variables of the data set.");
+        }
+
+        write(dataSet, dataSet.getVariables(), dataSet.getNumRows(), covariances, file);
+    }
+
+    /**
+     * Writes the given covariance matrix, with no data, to the given file.
+     */
+    public static void writeCovarianceMatrix(ICovarianceMatrix covariances, File file) throws IOException {
+        write(null, covariances.getVariables(), 0, covariances, file);
+    }
+
+    /**
+     * @return a data set over the data in the given file, mapped read-only.
+     */
+    public static DataSet readDataSet(File file) throws IOException {
+        MappedDataBox box = new MappedDataBox(file, false);
+        return new BoxDataSet(box, box.getVariables());
+    }
+
+    /**
+     * @return the covariance matrix stored in the given file.
+     * @throws IllegalArgumentException if the file holds no covariance matrix.
+     */
+    public static ICovarianceMatrix readCovarianceMatrix(File file) throws IOException {
+        return new MappedDataBox(file, false).getCovarianceMatrix();
+    }
+
+    /**
+     * @return true iff the file holds a covariance matrix.
+     */
+    public boolean hasCovarianceMatrix() {
+        return covarianceSampleSize != -1;
+    }
+
+    /**
+     * @return the covariance matrix stored in the file, copied into memory.
+     * @throws IllegalArgumentException if the file holds no covariance matrix.
+     */
+    public ICovarianceMatrix getCovarianceMatrix() {
+        if (!hasCovarianceMatrix()) {
+            throw new IllegalArgumentException("No covariance matrix was stored in " + path);
+        }
+
+        int n = variables.size();
+        double[][] values = new double[n][n];
+        DoubleBuffer buffer = covariance.duplicate();
+
+        for (int i = 0; i < n; i++) {
+            buffer.get(values[i]);
+        }
+
+        return new CovarianceMatrix(new ArrayList<>(variables), new TetradMatrix(values), covarianceSampleSize);
+    }
+
+    /**
+     * @return the number of rows in this data box.
+     */
+    public int numRows() {
+        return numRows;
+    }
+
+    /**
+     * @return the number of columns in this data box.
+     */
+    public int numCols() {
+        return variables.size();
+    }
+
+    /**
+     * @return the variables of the columns, as read from the file.
+     */
+    public List<Node> getVariables() {
+        return Collections.unmodifiableList(variables);
+    }
+
+    /**
+     * Sets the value at the given row/column to the given Number value. The
+     * value used is number.doubleValue() for continuous columns and
+     * number.intValue() for discrete columns.
+     */
+    public void set(int row, int col, Number value) {
+        if (continuousColumns[col] != null) {
+            setDouble(row, col, value == null ? Double.NaN : value.doubleValue());
+        } else {
+            setInt(row, col, value == null ? -99 : value.intValue());
+        }
+    }
+
+    /**
+     * @return the Number value at the given row and column. If the value is
+     * missing, null is returned.
+     */
+    public Number get(int row, int col) {
+        if (continuousColumns[col] != null) {
+            double v = continuousColumns[col].get(row);
+            return Double.isNaN(v) ? null : v;
+        } else {
+            int v = fromFile(col, discreteColumns[col].get(row));
+            return v == -99 ? null : v;
+        }
+    }
+
+    /**
+     * @return the value at the given row and column as a double; missing
+     * values are Double.NaN.
+     */
+    public double getDouble(int row, int col) {
+        if (continuousColumns[col] != null) {
+            return continuousColumns[col].get(row);
+        } else {
+            int v = fromFile(col, discreteColumns[col].get(row));
+            return v == -99 ? Double.NaN : v;
+        }
+    }
+
+    /**
+     * Sets the value at the given row and column to the given double, cast to
+     * int for discrete columns.
+     */
+    public void setDouble(int row, int col, double value) {
+        if (continuousColumns[col] != null) {
+            continuousColumns[col].put(row, value);
+        } else {
+            discreteColumns[col].put(row, toFile(col, Double.isNaN(value) ? -99 : (int) value));
+        }
+    }
+
+    /**
+     * @return the value at the given row and column as an int; missing values
+     * are -99.
+     */
+    public int getInt(int row, int col) {
+        if (continuousColumns[col] != null) {
+            double v = continuousColumns[col].get(row);
+            return Double.isNaN(v) ? -99 : (int) v;
+        } else {
+            return fromFile(col, discreteColumns[col].get(row));
+        }
+    }
+
+    /**
+     * Sets the value at the given row and column to the given int.
+     */
+    public void setInt(int row, int col, int value) {
+        if (continuousColumns[col] != null) {
+            continuousColumns[col].put(row, value == -99 ? Double.NaN : value);
+        } else {
+            discreteColumns[col].put(row, toFile(col, value));
+        }
+    }
+
+    /**
+     * @return the given column, copied into <code>column</code> if it is long
+     * enough, as doubles.
+     */
+    public double[] getDoubleColumn(int col, double[] column) {
+        if (column == null || column.length < numRows) column = new double[numRows];
+
+        if (continuousColumns[col] != null) {
+            continuousColumns[col].duplicate().get(column, 0, numRows);
+        } else {
+            for (int i = 0; i < numRows; i++) {
+                column[i] = getDouble(i, col);
+            }
+        }
+
+        return column;
+    }
+
+    /**
+     * @return the given column, copied into <code>column</code> if it is long
+     * enough, as ints.
+     */
+    public int[] getIntColumn(int col, int[] column) {
+        if (column == null || column.length < numRows) column = new int[numRows];
+
+        if (discreteColumns[col] != null) {
+            discreteColumns[col].duplicate().get(column, 0, numRows);
+
+            if (toVariable[col] != null) {
+                for (int i = 0; i < numRows; i++) {
+                    column[i] = fromFile(col, column[i]);
+                }
+            }
+        } else {
+            for (int i = 0; i < numRows; i++) {
+                column[i] = getInt(i, col);
+            }
+        }
+
+        return column;
+    }
+
+    /**
+     * @return true if every column is continuous, so that getDoubleBuffer()
+     * is not null for any column.
+     */
+    public boolean isContinuous() {
+        for (DoubleBuffer column : continuousColumns) {
+            if (column == null) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the mapped buffer for the given continuous column, read with
+     * absolute get(int) methods. Null if the column is discrete.
+     */
+    public DoubleBuffer getDoubleBuffer(int col) {
+        return continuousColumns[col] == null ? null : continuousColumns[col].asReadOnlyBuffer();
+    }
+
+    /**
+     * @return the mapped buffer for the given discrete column, read with
+     * absolute get(int) methods. Null if the column is continuous. The codes
+     * are those in the file, which index the categories in the order they were
+     * written. The variable may order the same categories differently, since
+     * DiscreteVariable reuses stored category lists, so the buffer should be
+     * used only where relabeling the categories does not matter, as for counts.
+     */
+    public IntBuffer getIntBuffer(int col) {
+        return discreteColumns[col] == null ? null : discreteColumns[col].asReadOnlyBuffer();
+    }
+
+    /**
+     * @return a copy of this data box, in memory.
+     */
+    public DataBox copy() {
+        MixedDataBox box = new MixedDataBox(new ArrayList<>(variables), numRows);
+
+        for (int j = 0; j < numCols(); j++) {
+            for (int i = 0; i < numRows; i++) {
+                box.setDouble(i, j, getDouble(i, j));
+            }
+        }
+
+        return box;
+    }
+
+    /**
+     * @return a MixedDataBox, in memory, with the same dimensions.
+     */
+    public DataBox like() {
+        int[] rows = new int[numRows()];
+        int[] cols = new int[numCols()];
+
+        for (int i = 0; i < numRows(); i++) rows[i] = i;
+        for (int j = 0; j < numCols(); j++) cols[j] = j;
+
+        return viewSelection(rows, cols);
+    }
+
+    @Override
+    public DataBox viewSelection(int[] rows, int[] cols) {
+        List<Node> newVars = new ArrayList<>();
+
+        for (int c : cols) {
+            newVars.add(variables.get(c));
+        }
+
+        DataBox _dataBox = new MixedDataBox(newVars, rows.length);
+
+        for (int i = 0; i < rows.length; i++) {
+            for (int j = 0; j < cols.length; j++) {
+                _dataBox.setDouble(i, j, getDouble(rows[i], cols[j]));
+            }
+        }
+
+        return _dataBox;
+    }
+
+    //===============================PRIVATE METHODS=====================//
+
+    private void map() throws IOException {
+        setRecoding(readFileCategories());
+
+        int numCols = variables.size();
+        this.continuousColumns = new DoubleBuffer[numCols];
+        this.discreteColumns = new IntBuffer[numCols];
+
+        File file = new File(path);
+        long position = dataStart;
+
+        FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+
+        try (FileChannel channel = new RandomAccessFile(file, writable ? "rw" : "r").getChannel()) {
+            for (int j = 0; j < numCols; j++) {
+                boolean continuous = variables.get(j) instanceof ContinuousVariable;
+                long size = columnSize(continuous, numRows);
+                checkColumnSize(size, variables.get(j));
+
+                if (position + size > channel.size()) {
+                    throw new IOException("Mapped data file is truncated: " + path);
+                }
+
+                MappedByteBuffer buffer = channel.map(mode, position, size);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+                if (continuous) {
+                    continuousColumns[j] = buffer.asDoubleBuffer();
+                } else {
+                    discreteColumns[j] = buffer.asIntBuffer();
+                }
+
+                position += size;
+            }
+
+            if (hasCovarianceMatrix()) {
+                long size = 8L * numCols * numCols;
+                checkColumnSize(size, null);
+
+                if (position + size > channel.size()) {
+                    throw new IOException("Mapped data file is truncated: " + path);
+                }
+
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                covariance = buffer.asDoubleBuffer();
+            }
+        }
+    }
+
+    private static void write(DataSet dataSet, List<Node> variables, int numRows, ICovarianceMatrix covariances,
+                              File file) throws IOException {
+        int covarianceSampleSize = covariances == null ? -1 : covariances.getSampleSize();
+        long headerSize;
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            writeHeader(out, numRows, variables, covarianceSampleSize);
+            out.flush();
+            headerSize = out.size();
+        }
+
+        try (FileChannel channel = new RandomAccessFile(file, "rw").getChannel()) {
+            long position = align(headerSize);
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+
+            for (int j = 0; j < variables.size(); j++) {
+                boolean continuous = variables.get(j) instanceof ContinuousVariable;
+                long columnSize = columnSize(continuous, numRows);
+                checkColumnSize(columnSize, variables.get(j));
+                buffer.clear();
+
+                for (int i = 0; i < numRows; i++) {
+                    if (buffer.remaining() < 8) {
+                        position += flush(channel, buffer, position);
+                    }
+
+                    if (continuous) {
+                        buffer.putDouble(dataSet.getDouble(i, j));
+                    } else {
+                        buffer.putInt(dataSet.getInt(i, j));
+                    }
+                }
+
+                for (long k = (continuous ? 8L : 4L) * numRows; k < columnSize; k++) {
+                    if (!buffer.hasRemaining()) {
+                        position += flush(channel, buffer, position);
+                    }
+
+                    buffer.put((byte) 0);
+                }
+
+                position += flush(channel, buffer, position);
+            }
+
+            if (covariances != null) {
+                int n = variables.size();
+                checkColumnSize(8L * n * n, null);
+
+                for (int i = 0; i < n; i++) {
+                    for (int j = 0; j < n; j++) {
+                        if (buffer.remaining() < 8) {
+                            position += flush(channel, buffer, position);
+                        }
+
+                        buffer.putDouble(covariances.getValue(i, j));
+                    }
+                }
+
+                position += flush(channel, buffer, position);
+            }
+
+            channel.truncate(position);
+        }
+    }
+
+    private static void writeHeader(DataOutputStream out, int numRows, List<Node> variables,
+                                    int covarianceSampleSize) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(numRows);
+        out.writeInt(variables.size());
+        out.writeInt(covarianceSampleSize == -1 ? 0 : HAS_COVARIANCE);
+
+        if (covarianceSampleSize != -1) {
+            out.writeInt(covarianceSampleSize);
+        }
+
+        writeVariables(out, variables);
+    }
+
+    // Reads the header up to the variables, returning the version, number of rows, number of
+    // columns and covariance sample size (-1 if there is no covariance matrix).
+    private static int[] readHeaderStart(DataInputStream in, File file) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a mapped data file: " + file);
+        }
+
+        int version = in.readInt();
+
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported mapped data file version " + version + ": " + file);
+        }
+
+        int numRows = in.readInt();
+        int numCols = in.readInt();
+        int flags = version >= 2 ? in.readInt() : 0;
+        int covarianceSampleSize = (flags & HAS_COVARIANCE) != 0 ? in.readInt() : -1;
+        return new int[]{version, numRows, numCols, covarianceSampleSize};
+    }
+
+    // The categories of each column in the order written in the file, null for continuous columns.
+    private List<List<String>> readFileCategories() throws IOException {
+        File file = new File(path);
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int[] header = readHeaderStart(in, file);
+            List<List<String>> categories = new ArrayList<>();
+            readVariables(in, header[2], categories);
+            return categories;
+        }
+    }
+
+    // Compares the file's order of the categories of each discrete column with its variable's.
+    private void setRecoding(List<List<String>> fileCategories) throws IOException {
+        int numCols = variables.size();
+        this.toVariable = new int[numCols][];
+        this.toFile = new int[numCols][];
+
+        for (int j = 0; j < numCols; j++) {
+            if (!(variables.get(j) instanceof DiscreteVariable)) continue;
+
+            List<String> file = fileCategories.get(j);
+            List<String> variable = ((DiscreteVariable) variables.get(j)).getCategories();
+
+            if (file.equals(variable)) continue;
+
+            if (!new HashSet<>(file).equals(new HashSet<>(variable))) {
+                throw new IOException("Categories of " + variables.get(j) + " are " + variable
+                        + " but in the file are " + file);
+            }
+
+            toVariable[j] = new int[file.size()];
+            toFile[j] = new int[file.size()];
+
+            for (int k = 0; k < file.size(); k++) {
+                int index = variable.indexOf(file.get(k));
+                toVariable[j][k] = index;
+                toFile[j][index] = k;
+            }
+        }
+    }
+
+    // The variable's code for a code in the file.
+    private int fromFile(int col, int code) {
+        int[] recode = toVariable[col];
+        return recode == null || code < 0 || code >= recode.length ? code : recode[code];
+    }
+
+    // The file's code for a code of the variable.
+    private int toFile(int col, int code) {
+        int[] recode = toFile[col];
+        return recode == null || code < 0 || code >= recode.length ? code : recode[code];
+    }
+
+    // Reads the variables, adding the categories of each, in file order, to the given list if
+    // it is not null.
+    private static List<Node> readVariables(DataInputStream in, int numCols, List<List<String>> fileCategories)
+            throws IOException {
+        List<Node> variables = new ArrayList<>();
+
+        for (int j = 0; j < numCols; j++) {
+            byte type = in.readByte();
+            String name = in.readUTF();
+
+            if (type == CONTINUOUS) {
+                variables.add(new ContinuousVariable(name));
+                if (fileCategories != null) fileCategories.add(null);
+            } else if (type == DISCRETE) {
+                int numCategories = in.readInt();
+                List<String> categories = new ArrayList<>();
+
+                for (int k = 0; k < numCategories; k++) {
+                    categories.add(in.readUTF());
+                }
+
+                variables.add(new DiscreteVariable(name, categories));
+                if (fileCategories != null) fileCategories.add(categories);
+            } else {
+                throw new IOException("Unrecognized column type " + type + " for column " + j);
+            }
+        }
+
+        return variables;
+    }
+
+    private static void writeVariables(DataOutputStream out, List<Node> variables) throws IOException {
+        for (Node node : variables) {
+            if (node instanceof ContinuousVariable) {
+                out.writeByte(CONTINUOUS);
+                out.writeUTF(node.getName());
+            } else if (node instanceof DiscreteVariable) {
+                out.writeByte(DISCRETE);
+                out.writeUTF(node.getName());
+
+                List<String> categories = ((DiscreteVariable) node).getCategories();
+                out.writeInt(categories.size());
+
+                for (String category : categories) {
+                    out.writeUTF(category);
+                }
+            } else {
+                throw new IllegalArgumentException("Only continuous and discrete variables can be written: " + node);
+            }
+        }
+    }
+
+    // The size of the current version's header, found by writing it to a counting stream.
+    private static long headerSize(List<Node> variables, int covarianceSampleSize) throws IOException {
+        DataOutputStream out = new DataOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        });
+
+        writeHeader(out, 0, variables, covarianceSampleSize);
+        return out.size();
+    }
+
+    private static long columnSize(boolean continuous, int numRows) {
+        return align((continuous ? 8L : 4L) * numRows);
+    }
+
+    // The variable is null for the covariance matrix.
+    private static void checkColumnSize(long size, Node variable) {
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException((variable == null ? "Covariance matrix" : "Column for " + variable)
+                    + " is too large to be mapped: " + size + " bytes.");
+        }
+    }
+
+    private static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    // Writes the contents of the buffer at the given position and clears it, returning the number of bytes written.
+    private static int flush(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.flip();
+        int size = buffer.remaining();
+
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+
+        buffer.clear();
+        return size;
+    }
+
+    /**
+     * Maps the file again after deserialization.
+     */
+    private void readObject(ObjectInputStream s) throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        map();
+    }
+}
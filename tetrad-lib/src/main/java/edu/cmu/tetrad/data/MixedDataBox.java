@@ -185,6 +185,97 @@ public class MixedDataBox implements DataBox {
         throw new IllegalArgumentException("Indices out of range.");
     }
 
+    /**
+     *
+     * @return the value at the given row and column as a double. Missing
+     * values are Double.NaN, for discrete columns as well.
+     */
+    @Override
+    public double getDouble(int row, int col) {
+        if (continuousData[col] != null) {
+            return continuousData[col][row];
+        } else if (discreteData[col] != null) {
+            int v = discreteData[col][row];
+            return v == -99 ? Double.NaN : v;
+        }
+
+        throw new IllegalArgumentException("Indices out of range.");
+    }
+
+    /**
+     * Sets the value at the given row and column to the given double, cast to
+     * int for discrete columns.
+     */
+    @Override
+    public void setDouble(int row, int col, double value) {
+        if (continuousData[col] != null) {
+            continuousData[col][row] = value;
+        } else if (discreteData[col] != null) {
+            discreteData[col][row] = Double.isNaN(value) ? -99 : (int) value;
+        } else {
+            throw new IllegalArgumentException("Indices out of bounds.");
+        }
+    }
+
+    /**
+     *
+     * @return the value at the given row and column as an int. Missing values
+     * are -99, for continuous columns as well.
+     */
+    @Override
+    public int getInt(int row, int col) {
+        if (continuousData[col] != null) {
+            double v = continuousData[col][row];
+            return Double.isNaN(v) ? -99 : (int) v;
+        } else if (discreteData[col] != null) {
+            return discreteData[col][row];
+        }
+
+        throw new IllegalArgumentException("Indices out of range.");
+    }
+
+    /**
+     * Sets the value at the given row and column to the given int.
+     */
+    @Override
+    public void setInt(int row, int col, int value) {
+        if (continuousData[col] != null) {
+            continuousData[col][row] = value == -99 ? Double.NaN : value;
+        } else if (discreteData[col] != null) {
+            discreteData[col][row] = value;
+        } else {
+            throw new IllegalArgumentException("Indices out of bounds.");
+        }
+    }
+
+    /**
+     *
+     * @return the stored array for a continuous column, without copying, or
+     * a discrete column copied into <code>column</code> if it is long enough.
+     */
+    @Override
+    public double[] getDoubleColumn(int col, double[] column) {
+        if (continuousData[col] != null) {
+            return continuousData[col];
+        }
+
+        return DataBox.super.getDoubleColumn(col, column);
+    }
+
+    /**
+     *
+     * @return the stored array for a discrete column, without copying, or a
+     * continuous column copied into <code>column</code> if it is long enough.
+     */
+    @Override
+    public int[] getIntColumn(int col, int[] column) {
+        if (discreteData[col] != null) {
+            return discreteData[col];
+        }
+
+        return DataBox.super.getIntColumn(col, column);
+    }
+
     /**
      *
      * @return a copy of this continuousData box.
@@ -195,7 +286,7 @@ public class MixedDataBox implements DataBox {
 
         for (int i = 0; i < numRows(); i++) {
             for (int j = 0; j < numCols(); j++) {
-                box.set(i, j, get(i, j));
+                box.setDouble(i, j, getDouble(i, j));
             }
         }
 
@@ -248,7 +339,7 @@ public class MixedDataBox implements DataBox {
 
         for (int i = 0; i < rows.length; i++) {
             for (int j = 0; j < cols.length; j++) {
-                _dataBox.set(i, j, get(rows[i], cols[j]));
+                _dataBox.setDouble(i, j, getDouble(rows[i], cols[j]));
             }
         }
 
@@ -0,0 +1,290 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Holds the columns of a discrete data set packed into byte arrays, or short or int arrays
+ * where a variable has too many categories for that, and counts the cells of contingency
+ * tables over them. The cell index of a row is built up one column at a time over all rows,
+ * in mixed radix with the first column given most significant, and rows missing a value in
+ * any of the columns are skipped. Counting uses tables kept for each thread, so any number
+ * of threads may count at once.
+ */
+public final class PackedDiscreteData {
+
+    // Marks a missing value in a packed column.
+    private static final int MISSING = -1;
+
+    private final byte[][] bytes;
+    private final short[][] shorts;
+    private final int[][] ints;
+
+    private final int[] numCategories;
+    private final boolean[] missing;
+
+    // For a resampled view, the columns hold its distinct rows and this the number of
+    // times each is used; otherwise null.
+    private final int[] weights;
+
+    private final int numRows;
+
+    private final ThreadLocal<int[]> keys = new ThreadLocal<>();
+    private final ThreadLocal<int[]> counts = new ThreadLocal<>();
+    private final ThreadLocal<int[]> marginals = new ThreadLocal<>();
+
+    /**
+     * Packs the columns of the given data set, all of whose variables must be discrete.
+     */
+    public PackedDiscreteData(DataSet dataSet) {
+        List<Node> variables = dataSet.getVariables();
+        int numColumns = variables.size();
+
+        DataBox box = dataSet instanceof BoxDataSet ? ((BoxDataSet) dataSet).getDataBox() : null;
+        ResampledDataBox resampled = box instanceof ResampledDataBox && ((ResampledDataBox) box).isView()
+                ? (ResampledDataBox) box : null;
+
+        this.weights = resampled == null ? null : resampled.getMultiplicities();
+        this.numRows = weights == null ? dataSet.getNumRows() : weights.length;
+        this.bytes = new byte[numColumns][];
+        this.shorts = new short[numColumns][];
+        this.ints = new int[numColumns][];
+        this.numCategories = new int[numColumns];
+        this.missing = new boolean[numColumns];
+
+        int[] buffer = new int[numRows];
+
+        for (int j = 0; j < numColumns; j++) {
+            if (!(variables.get(j) instanceof DiscreteVariable)) {
+                throw new IllegalArgumentException("Not a discrete variable: " + variables.get(j));
+            }
+
+            numCategories[j] = ((DiscreteVariable) variables.get(j)).getNumCategories();
+            int[] column;
+
+            if (resampled != null) {
+                column = resampled.getDistinctIntColumn(j);
+            } else if (box != null) {
+                column = box.getIntColumn(j, buffer);
+            } else {
+                column = buffer;
+
+                for (int i = 0; i < numRows; i++) {
+                    column[i] = dataSet.getInt(i, j);
+                }
+            }
+
+            pack(j, column);
+        }
+    }
+
+    private void pack(int j, int[] column) {
+        int dim = numCategories[j];
+
+        if (dim <= Byte.MAX_VALUE) {
+            byte[] packed = new byte[numRows];
+
+            for (int i = 0; i < numRows; i++) {
+                int value = column[i];
+                if (value < 0) missing[j] = true;
+                packed[i] = (byte) (value < 0 ? MISSING : value);
+            }
+
+            bytes[j] = packed;
+        } else if (dim <= Short.MAX_VALUE) {
+            short[] packed = new short[numRows];
+
+            for (int i = 0; i < numRows; i++) {
+                int value = column[i];
+                if (value < 0) missing[j] = true;
+                packed[i] = (short) (value < 0 ? MISSING : value);
+            }
+
+            shorts[j] = packed;
+        } else {
+            int[] packed = new int[numRows];
+
+            for (int i = 0; i < numRows; i++) {
+                int value = column[i];
+                if (value < 0) missing[j] = true;
+                packed[i] = value < 0 ? MISSING : value;
+            }
+
+            ints[j] = packed;
+        }
+    }
+
+    /**
+     * @return the number of categories of the variable in the given column.
+     */
+    public int getNumCategories(int column) {
+        return numCategories[column];
+    }
+
+    /**
+     * @return true if the given column has a missing value.
+     */
+    public boolean hasMissing(int column) {
+        return missing[column];
+    }
+
+    /**
+     * @return the number of cells in the table over the given columns.
+     */
+    public int getNumCells(int[] columns) {
+        long numCells = 1;
+
+        for (int column : columns) {
+            numCells *= numCategories[column];
+
+            if (numCells > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many cells to count over " + columns.length + " variables.");
+            }
+        }
+
+        return (int) numCells;
+    }
+
+    /**
+     * Counts the rows falling in each cell of the table over the given columns. The count for
+     * values v0, v1, ..., of those columns is at ((v0 * d1 + v1) * d2 + v2)..., where d1, d2,
+     * ..., are their numbers of categories. The array returned is reused by the next count on
+     * the same thread and may be longer than the table.
+     */
+    public int[] count(int[] columns) {
+        int numCells = getNumCells(columns);
+        int[] keys = scratch(this.keys, numRows);
+
+        for (int c = 0; c < columns.length; c++) {
+            addColumn(keys, columns[c], c == 0);
+        }
+
+        int[] counts = scratch(this.counts, numCells);
+        Arrays.fill(counts, 0, numCells, 0);
+
+        if (columns.length == 0) {
+            counts[0] = weights == null ? numRows : sum(weights);
+            return counts;
+        }
+
+        if (weights == null) {
+            for (int i = 0; i < numRows; i++) {
+                int key = keys[i];
+                if (key >= 0) counts[key]++;
+            }
+        } else {
+            for (int i = 0; i < numRows; i++) {
+                int key = keys[i];
+                if (key >= 0) counts[key] += weights[i];
+            }
+        }
+
+        return counts;
+    }
+
+    /**
+     * Sums a table laid out as outer x middle x inner, as count returns it, over its middle
+     * index, giving a table laid out as outer x inner. The array returned is reused by the
+     * next marginalization on the same thread and may be longer than the table.
+     */
+    public int[] marginalize(int[] counts, int outer, int middle, int inner) {
+        int[] marginal = scratch(this.marginals, outer * inner);
+        Arrays.fill(marginal, 0, outer * inner, 0);
+
+        for (int o = 0; o < outer; o++) {
+            for (int m = 0; m < middle; m++) {
+                int from = (o * middle + m) * inner;
+                int to = o * inner;
+
+                for (int k = 0; k < inner; k++) {
+                    marginal[to + k] += counts[from + k];
+                }
+            }
+        }
+
+        return marginal;
+    }
+
+    // Folds the given column into the cell index of each row; a row missing a value gets -1.
+    private void addColumn(int[] keys, int column, boolean first) {
+        int dim = numCategories[column];
+
+        if (bytes[column] != null) {
+            byte[] values = bytes[column];
+
+            if (first) {
+                for (int i = 0; i < numRows; i++) keys[i] = values[i];
+            } else {
+                for (int i = 0; i < numRows; i++) {
+                    int key = keys[i];
+                    int value = values[i];
+                    keys[i] = (key | value) < 0 ? MISSING : key * dim + value;
+                }
+            }
+        } else if (shorts[column] != null) {
+            short[] values = shorts[column];
+
+            if (first) {
+                for (int i = 0; i < numRows; i++) keys[i] = values[i];
+            } else {
+                for (int i = 0; i < numRows; i++) {
+                    int key = keys[i];
+                    int value = values[i];
+                    keys[i] = (key | value) < 0 ? MISSING : key * dim + value;
+                }
+            }
+        } else {
+            int[] values = ints[column];
+
+            if (first) {
+                System.arraycopy(values, 0, keys, 0, numRows);
+            } else {
+                for (int i = 0; i < numRows; i++) {
+                    int key = keys[i];
+                    int value = values[i];
+                    keys[i] = (key | value) < 0 ? MISSING : key * dim + value;
+                }
+            }
+        }
+    }
+
+    private static int[] scratch(ThreadLocal<int[]> local, int length) {
+        int[] array = local.get();
+
+        if (array == null || array.length < length) {
+            array = new int[Math.max(length, 1)];
+            local.set(array);
+        }
+
+        return array;
+    }
+
+    private static int sum(int[] weights) {
+        int sum = 0;
+        for (int w : weights) sum += w;
+        return sum;
+    }
+}
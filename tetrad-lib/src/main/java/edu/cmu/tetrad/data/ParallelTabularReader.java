@@ -0,0 +1,942 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+import edu.cmu.tetrad.util.TetradLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Reads a tabular data file in parallel. The file is memory-mapped and split
+ * into byte ranges that end on line breaks. The ranges are scanned in parallel
+ * once to count their rows and infer the types of their columns, and then
+ * parsed in parallel directly into the primitive column arrays of the returned
+ * data set, so the file is never copied onto the heap and only the array of
+ * the inferred type is allocated for each column. Numbers of up to 15
+ * significant digits are parsed from the bytes, without making strings of
+ * them; longer numbers and category names are decoded to strings.
+ * <p>
+ * Variable types are inferred per range and merged afterwards, using the same
+ * rules as DataReader: a column all of whose values are numbers is continuous
+ * unless all of them are integers with at most maxIntegralDiscrete distinct
+ * values, and every other column is discrete, with its distinct values sorted
+ * as categories. A column with no values at all is continuous. Discrete
+ * columns are coded by range and then recoded against the merged categories.
+ * A row with more tokens than there are variables is an error; a row with
+ * fewer is padded with missing values.
+ * <p>
+ * Only the plain tabular layout is handled: an optional row of variable names
+ * followed by data rows, with comment lines and blank lines skipped. Files with
+ * /variables, /data or /knowledge sections, case IDs or known variables should
+ * be read with DataReader.
+ */
+public final class ParallelTabularReader {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+    // Powers of ten that are exact as doubles.
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // Token kinds returned by Tokenizer.parse().
+    private static final int MISSING = 0;
+    private static final int INTEGRAL = 1;
+    private static final int NUMERIC = 2;
+    private static final int NON_NUMERIC = 3;
+
+    /**
+     * A set of characters that in any combination makes up a delimiter.
+     */
+    private DelimiterType delimiterType = DelimiterType.WHITESPACE;
+
+    /**
+     * True iff variable names are listed in the first row.
+     */
+    private boolean varNamesSupplied = true;
+
+    /**
+     * The initial segment of a line that is to be considered a comment line.
+     */
+    private String commentMarker = "//";
+
+    /**
+     * A character that sets off quoted strings.
+     */
+    private char quoteChar = '"';
+
+    /**
+     * Missing values will be marked either by this string or by an empty
+     * string.
+     */
+    private String missingValueMarker = "*";
+
+    /**
+     * Integral columns with up to this many distinct values will be parsed as
+     * discrete; otherwise, continuous.
+     */
+    private int maxIntegralDiscrete = 0;
+
+    /**
+     * The largest number of bytes of the file parsed by a single task.
+     */
+    private int chunkSize = 1 << 26;
+
+    /**
+     * The tetrad logger.
+     */
+    private final TetradLogger logger = TetradLogger.getInstance();
+
+    /**
+     * Constructs a new reader.
+     */
+    public ParallelTabularReader() {
+    }
+
+    //============================PUBLIC METHODS=========================//
+
+    public void setDelimiter(DelimiterType delimiterType) {
+        if (delimiterType == null) {
+            throw new NullPointerException();
+        }
+
+        this.delimiterType = delimiterType;
+    }
+
+    public void setVariablesSupplied(boolean varNamesSupplied) {
+        this.varNamesSupplied = varNamesSupplied;
+    }
+
+    public void setCommentMarker(String commentMarker) {
+        if (commentMarker == null) {
+            throw new NullPointerException("Cannot be null.");
+        }
+
+        this.commentMarker = commentMarker;
+    }
+
+    public void setQuoteChar(char quoteChar) {
+        this.quoteChar = quoteChar;
+    }
+
+    public void setMissingValueMarker(String missingValueMarker) {
+        if (missingValueMarker == null) {
+            throw new NullPointerException("Cannot be null.");
+        }
+
+        this.missingValueMarker = missingValueMarker;
+    }
+
+    public void setMaxIntegralDiscrete(int maxIntegralDiscrete) {
+        if (maxIntegralDiscrete < -1) {
+            throw new IllegalArgumentException("Must be >= -1: " + maxIntegralDiscrete);
+        }
+
+        this.maxIntegralDiscrete = maxIntegralDiscrete;
+    }
+
+    /**
+     * Sets the largest number of bytes of the file parsed by a single task;
+     * the default is 64 MB. Small files are split more finely so that all
+     * processors are used.
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 1 || chunkSize > (1 << 30)) {
+            throw new IllegalArgumentException("Chunk size must be in [1, 2^30]: " + chunkSize);
+        }
+
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Parses the given file for a tabular data set. The result is backed by a
+     * VerticalDoubleDataBox if all of the variables are continuous and by a
+     * MixedDataBox otherwise.
+     *
+     * @throws IOException if the file cannot be read.
+     */
+    public DataSet parseTabular(File file) throws IOException {
+        try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+            long length = channel.size();
+
+            if (length == 0) {
+                throw new IllegalArgumentException("Data source is empty.");
+            }
+
+            // Read the variable names from the first line.
+            MappedByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    Math.min(length, Integer.MAX_VALUE));
+            Tokenizer tokenizer = new Tokenizer(head);
+            int[] line = new int[2];
+            int position = 0;
+            int headerLines = 0;
+
+            do {
+                if (position >= head.limit()) {
+                    throw new IllegalArgumentException("Data source is empty.");
+                }
+
+                position = tokenizer.nextLine(position, head.limit(), line);
+                headerLines++;
+            } while (line[0] == -1);
+
+            if (tokenizer.startsWith(line[0], line[1], "/")) {
+                throw new IllegalArgumentException("Sectioned data files (/variables, /data, /knowledge) "
+                        + "should be read with DataReader.");
+            }
+
+            List<String> varNames = new ArrayList<>();
+            tokenizer.reset(line[0], line[1]);
+
+            while (tokenizer.hasMoreTokens()) {
+                tokenizer.nextToken();
+
+                if (varNamesSupplied) {
+                    String name = tokenizer.getString();
+
+                    if ("".equals(name)) {
+                        throw new IllegalArgumentException("Expected variable name, got empty token.");
+                    }
+
+                    if (varNames.contains(name)) {
+                        throw new IllegalArgumentException("Duplicate variable name (" + name + ").");
+                    }
+
+                    varNames.add(name);
+                } else {
+                    varNames.add("X" + (varNames.size() + 1));
+                }
+            }
+
+            long dataStart = varNamesSupplied ? position : line[0];
+            int linesBefore = varNamesSupplied ? headerLines : headerLines - 1;
+
+            List<Chunk> chunks = split(channel, dataStart, length);
+
+            // Count rows, so that each chunk can write straight into its rows of the columns, and
+            // record for each chunk what kinds of values each column holds.
+            Columns columns = new Columns(varNames.size());
+            invokeAll(chunks, Phase.SCAN, columns);
+
+            int numRows = 0;
+            int numLines = linesBefore;
+
+            for (Chunk chunk : chunks) {
+                if (chunk.badLine != -1) {
+                    throw new IllegalArgumentException("Line " + (numLines + chunk.badLine + 1)
+                            + ": Too many tokens; expected " + varNames.size()
+                            + " tokens but got " + chunk.badTokens + " tokens.");
+                }
+
+                chunk.rowOffset = numRows;
+                numRows += chunk.numRows;
+                numLines += chunk.numLines;
+            }
+
+            this.logger.log("info", "\nNumber of data rows = " + numRows);
+
+            // Merge the chunks' type inferences.
+            List<Node> variables = new ArrayList<>();
+            boolean anyDiscrete = false;
+
+            for (int j = 0; j < varNames.size(); j++) {
+                boolean present = false;
+                boolean numeric = true;
+                boolean integral = true;
+                Set<Integer> distinct = new HashSet<>();
+
+                for (Chunk chunk : chunks) {
+                    present |= chunk.present[j];
+                    numeric &= chunk.numeric[j];
+                    integral &= chunk.integral[j];
+
+                    if (distinct != null && chunk.distinct.get(j) != null) {
+                        distinct.addAll(chunk.distinct.get(j));
+                    } else {
+                        distinct = null;
+                    }
+                }
+
+                boolean tooManyDiscreteValues = distinct == null || distinct.size() > maxIntegralDiscrete;
+
+                if (!present || (numeric && (!integral || tooManyDiscreteValues))) {
+                    columns.continuous[j] = new double[numRows];
+                    variables.add(new ContinuousVariable(varNames.get(j)));
+                } else {
+                    columns.discrete[j] = new int[numRows];
+                    variables.add(null);
+                    anyDiscrete = true;
+                }
+            }
+
+            // Parse the continuous values and code the discrete values by chunk.
+            invokeAll(chunks, Phase.FILL, columns);
+
+            if (anyDiscrete) {
+
+                // Recode the discrete values against the sorted categories.
+                for (int j = 0; j < varNames.size(); j++) {
+                    if (variables.get(j) != null) continue;
+
+                    Set<String> strings = new HashSet<>();
+
+                    for (Chunk chunk : chunks) {
+                        strings.addAll(chunk.categories.get(j));
+                    }
+
+                    List<String> categories = new ArrayList<>(strings);
+                    Collections.sort(categories);
+
+                    // The variable may take the order of a stored list with the same
+                    // categories, so code against its categories rather than the sorted ones.
+                    DiscreteVariable var = new DiscreteVariable(varNames.get(j), categories);
+                    List<String> varCategories = var.getCategories();
+                    Map<String, Integer> indices = new HashMap<>();
+
+                    for (int k = 0; k < varCategories.size(); k++) {
+                        indices.put(varCategories.get(k), k);
+                    }
+
+                    for (Chunk chunk : chunks) {
+                        List<String> local = chunk.categories.get(j);
+                        chunk.recode[j] = new int[local.size()];
+
+                        for (int k = 0; k < local.size(); k++) {
+                            chunk.recode[j][k] = indices.get(local.get(k));
+                        }
+                    }
+
+                    variables.set(j, var);
+                }
+
+                invokeAll(chunks, Phase.RECODE, columns);
+            }
+
+            for (Node node : variables) {
+                if (node instanceof ContinuousVariable) {
+                    this.logger.log("info", node + " --> Continuous");
+                } else {
+                    this.logger.log("info", node + " --> " + ((DiscreteVariable) node).getCategories());
+                }
+            }
+
+            DataBox box = anyDiscrete || variables.isEmpty()
+                    ? new MixedDataBox(variables, numRows, columns.continuous, columns.discrete)
+                    : new VerticalDoubleDataBox(columns.continuous);
+
+            DataSet dataSet = new BoxDataSet(box, variables);
+            dataSet.setName(file.getName());
+
+            this.logger.log("info", "\nData set loaded!");
+            this.logger.reset();
+            return dataSet;
+        }
+    }
+
+    //===============================PRIVATE METHODS=====================//
+
+    // Splits the data into chunks, each ending just after a line break or at the end of the file.
+    private List<Chunk> split(FileChannel channel, long start, long length) throws IOException {
+        int parallelism = ForkJoinPoolInstance.getInstance().getPool().getParallelism();
+        long size = Math.max(1 << 16, Math.min(chunkSize, (length - start) / (4 * parallelism) + 1));
+
+        List<Chunk> chunks = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 13);
+
+        while (start < length) {
+            long end = Math.min(length, start + size);
+
+            // Advance past the next line break at or after end - 1.
+            long position = end - 1;
+
+            SCAN:
+            while (position < length) {
+                buffer.clear();
+                int n = channel.read(buffer, position);
+
+                if (n <= 0) {
+                    break;
+                }
+
+                for (int i = 0; i < n; i++) {
+                    if (buffer.get(i) == '\n') {
+                        position += i + 1;
+                        break SCAN;
+                    }
+                }
+
+                position += n;
+            }
+
+            end = Math.min(position, length);
+
+            if (end - start > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Line too long to be mapped, starting at byte " + start);
+            }
+
+            chunks.add(new Chunk(channel, start, (int) (end - start)));
+            start = end;
+        }
+
+        return chunks;
+    }
+
+    private void invokeAll(List<Chunk> chunks, final Phase phase, final Columns columns) throws IOException {
+        List<Callable<Void>> tasks = new ArrayList<>();
+
+        for (final Chunk chunk : chunks) {
+            tasks.add(new Callable<Void>() {
+                public Void call() throws IOException {
+                    chunk.run(phase, columns);
+                    return null;
+                }
+            });
+        }
+
+        List<Future<Void>> futures = ForkJoinPoolInstance.getInstance().getPool().invokeAll(tasks);
+
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) throw (IOException) cause;
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+
+    private enum Phase {SCAN, FILL, RECODE}
+
+    // The column arrays of the data set, filled in place by the chunks. Each column has an array
+    // of its type only.
+    private static class Columns {
+        private final double[][] continuous;
+        private final int[][] discrete;
+
+        Columns(int numCols) {
+            continuous = new double[numCols][];
+            discrete = new int[numCols][];
+        }
+    }
+
+    // A range of lines of the file, with what its parse found out about each column.
+    private class Chunk {
+        private final FileChannel channel;
+        private final long start;
+        private final int size;
+
+        private int numRows;
+        private int numLines;
+        private int rowOffset;
+
+        // The first line in the chunk with too many tokens, or -1, and its number of tokens.
+        private int badLine = -1;
+        private int badTokens;
+
+        private boolean[] present;
+        private boolean[] numeric;
+        private boolean[] integral;
+        private List<Set<Integer>> distinct;
+        private List<List<String>> categories;
+        private List<Map<String, Integer>> codes;
+        private int[][] recode;
+
+        Chunk(FileChannel channel, long start, int size) {
+            this.channel = channel;
+            this.start = start;
+            this.size = size;
+        }
+
+        void run(Phase phase, Columns columns) throws IOException {
+            if (phase == Phase.RECODE) {
+                recode(columns);
+                return;
+            }
+
+            Tokenizer tokenizer = new Tokenizer(channel.map(FileChannel.MapMode.READ_ONLY, start, size));
+            int[] line = new int[2];
+            int position = 0;
+            int row = rowOffset;
+
+            if (phase == Phase.SCAN) {
+                allocateStats(columns.continuous.length);
+            } else {
+                allocateCategories(columns.discrete);
+            }
+
+            while (position < size) {
+                position = tokenizer.nextLine(position, size, line);
+
+                if (phase == Phase.SCAN) {
+                    if (line[0] != -1) {
+                        scanRow(tokenizer, line);
+                        numRows++;
+                    }
+
+                    numLines++;
+                } else if (line[0] != -1) {
+                    fillRow(tokenizer, line, columns, row++);
+                }
+            }
+        }
+
+        private void allocateStats(int numCols) {
+            present = new boolean[numCols];
+            numeric = new boolean[numCols];
+            integral = new boolean[numCols];
+            distinct = new ArrayList<>();
+            Arrays.fill(numeric, true);
+            Arrays.fill(integral, true);
+
+            for (int j = 0; j < numCols; j++) {
+                distinct.add(new HashSet<Integer>());
+            }
+        }
+
+        private void allocateCategories(int[][] discrete) {
+            categories = new ArrayList<>();
+            codes = new ArrayList<>();
+            recode = new int[discrete.length][];
+
+            for (int[] column : discrete) {
+                categories.add(column == null ? null : new ArrayList<String>());
+                codes.add(column == null ? null : new HashMap<String, Integer>());
+            }
+        }
+
+        private void scanRow(Tokenizer tokenizer, int[] line) {
+            tokenizer.reset(line[0], line[1]);
+            int col = 0;
+
+            for (; tokenizer.hasMoreTokens(); col++) {
+                tokenizer.nextToken();
+
+                if (col >= present.length) continue;
+
+                // A column known not to be numeric needs no more parsing.
+                if (!numeric[col]) continue;
+
+                int kind = tokenizer.parse();
+
+                if (kind == MISSING) continue;
+
+                present[col] = true;
+
+                if (kind == INTEGRAL) {
+                    Set<Integer> values = distinct.get(col);
+
+                    if (values != null) {
+                        values.add((int) tokenizer.getValue());
+
+                        if (values.size() > maxIntegralDiscrete) {
+                            distinct.set(col, null);
+                        }
+                    }
+                } else {
+                    integral[col] = false;
+                    distinct.set(col, null);
+
+                    if (kind == NON_NUMERIC) {
+                        numeric[col] = false;
+                    }
+                }
+            }
+
+            if (col > present.length && badLine == -1) {
+                badLine = numLines;
+                badTokens = col;
+            }
+        }
+
+        private void fillRow(Tokenizer tokenizer, int[] line, Columns columns, int row) {
+            double[][] continuous = columns.continuous;
+            int[][] discrete = columns.discrete;
+
+            tokenizer.reset(line[0], line[1]);
+            int col = 0;
+
+            for (; col < continuous.length && tokenizer.hasMoreTokens(); col++) {
+                tokenizer.nextToken();
+
+                if (continuous[col] != null) {
+                    continuous[col][row] = tokenizer.parse() == MISSING ? Double.NaN : tokenizer.getValue();
+                    continue;
+                }
+
+                if (tokenizer.isMissing()) {
+                    discrete[col][row] = -99;
+                    continue;
+                }
+
+                String value = tokenizer.getString();
+                Integer index = codes.get(col).get(value);
+
+                if (index == null) {
+                    index = categories.get(col).size();
+                    categories.get(col).add(value);
+                    codes.get(col).put(value, index);
+                }
+
+                discrete[col][row] = index;
+            }
+
+            for (; col < continuous.length; col++) {
+                if (continuous[col] != null) {
+                    continuous[col][row] = Double.NaN;
+                } else {
+                    discrete[col][row] = -99;
+                }
+            }
+        }
+
+        private void recode(Columns columns) {
+            for (int j = 0; j < columns.discrete.length; j++) {
+                int[] column = columns.discrete[j];
+                int[] map = recode[j];
+
+                if (column == null) continue;
+
+                for (int i = rowOffset; i < rowOffset + numRows; i++) {
+                    if (column[i] != -99) {
+                        column[i] = map[column[i]];
+                    }
+                }
+            }
+        }
+    }
+
+    // Splits lines of a mapped buffer into tokens the way Lineizer and RegexTokenizer do, without
+    // making strings of them.
+    private class Tokenizer {
+        private final ByteBuffer buffer;
+        private final byte[] comment = commentMarker.getBytes(UTF8);
+        private final byte[] missing = missingValueMarker.getBytes(UTF8);
+        private final boolean whitespace = delimiterType == DelimiterType.WHITESPACE;
+        private final byte delimiter = (byte) delimiterType.getPattern().pattern().charAt(0);
+        private final byte quote = (byte) quoteChar;
+        private byte[] scratch = new byte[64];
+
+        private int position;
+        private int end;
+        private boolean finalTokenParsed;
+        private int tokenStart;
+        private int tokenEnd;
+        private double value;
+
+        Tokenizer(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        // Finds the line starting at position, storing its bounds in line, or -1 in line[0] if it
+        // is blank or a comment. Returns the start of the next line.
+        int nextLine(int position, int limit, int[] line) {
+            int end = position;
+
+            while (end < limit && buffer.get(end) != '\n') {
+                end++;
+            }
+
+            int next = end + 1;
+
+            if (end > position && buffer.get(end - 1) == '\r') {
+                end--;
+            }
+
+            if (end == position || startsWith(position, end, commentMarker)) {
+                line[0] = -1;
+            } else {
+                line[0] = position;
+                line[1] = end;
+            }
+
+            return next;
+        }
+
+        boolean startsWith(int start, int end, String prefix) {
+            byte[] bytes = prefix.equals(commentMarker) ? comment : prefix.getBytes(UTF8);
+            if (end - start < bytes.length) return false;
+
+            for (int i = 0; i < bytes.length; i++) {
+                if (buffer.get(start + i) != bytes[i]) return false;
+            }
+
+            return true;
+        }
+
+        void reset(int start, int end) {
+            this.position = start;
+            this.end = end;
+            this.finalTokenParsed = false;
+
+            while (position < end && buffer.get(position) == ' ') {
+                position++;
+            }
+        }
+
+        boolean hasMoreTokens() {
+            return !finalTokenParsed;
+        }
+
+        void nextToken() {
+            int from;
+
+            if (position < end && buffer.get(position) == quote) {
+                int close = position + 1;
+
+                while (close < end && buffer.get(close) != quote) {
+                    close++;
+                }
+
+                tokenStart = position + 1;
+                tokenEnd = close;
+                from = Math.min(close + 1, end);
+            } else {
+                tokenStart = position;
+                tokenEnd = -1;
+                from = position;
+            }
+
+            int d = from;
+
+            while (d < end && !isDelimiter(buffer.get(d))) {
+                d++;
+            }
+
+            if (tokenEnd == -1) {
+                tokenEnd = d;
+            }
+
+            if (d == end) {
+                finalTokenParsed = true;
+                position = end;
+            } else {
+                position = d + 1;
+
+                if (whitespace) {
+                    while (position < end && isDelimiter(buffer.get(position))) {
+                        position++;
+                    }
+                }
+            }
+
+            while (tokenStart < tokenEnd && (buffer.get(tokenStart) & 0xff) <= ' ') tokenStart++;
+            while (tokenEnd > tokenStart && (buffer.get(tokenEnd - 1) & 0xff) <= ' ') tokenEnd--;
+        }
+
+        private boolean isDelimiter(byte b) {
+            if (whitespace) {
+                return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+            } else {
+                return b == delimiter;
+            }
+        }
+
+        boolean isMissing() {
+            int length = tokenEnd - tokenStart;
+            if (length == 0) return true;
+            if (length != missing.length) return false;
+
+            for (int i = 0; i < length; i++) {
+                if (buffer.get(tokenStart + i) != missing[i]) return false;
+            }
+
+            return true;
+        }
+
+        // Classifies the current token, leaving its value in getValue() if it is a number.
+        int parse() {
+            if (isMissing()) {
+                return MISSING;
+            }
+
+            int i = tokenStart;
+            boolean negative = false;
+            byte first = buffer.get(i);
+
+            if (first == '-' || first == '+') {
+                negative = first == '-';
+                i++;
+            }
+
+            long v = 0;
+            int digits = tokenEnd - i;
+            boolean integral = digits > 0 && digits <= 10;
+
+            for (; integral && i < tokenEnd; i++) {
+                byte b = buffer.get(i);
+
+                if (b < '0' || b > '9') {
+                    integral = false;
+                } else {
+                    v = 10 * v + (b - '0');
+                }
+            }
+
+            if (integral) {
+                v = negative ? -v : v;
+
+                if (v >= Integer.MIN_VALUE && v <= Integer.MAX_VALUE) {
+                    value = v;
+                    return INTEGRAL;
+                }
+            }
+
+            int kind = parseDecimal();
+            if (kind != -1) return kind;
+
+            try {
+                value = Double.parseDouble(decode(LATIN1));
+                return NUMERIC;
+            } catch (NumberFormatException e) {
+                value = Double.NaN;
+                return NON_NUMERIC;
+            }
+        }
+
+        // Parses a decimal number, [+-]digits[.digits][(e|E)[+-]digits], from the bytes of the
+        // current token, if it has at most 15 significant digits and a small enough exponent that
+        // one multiplication or division by an exact power of ten rounds it correctly. Returns
+        // NON_NUMERIC for a token that cannot start a number, or -1 if Double.parseDouble has to
+        // decide.
+        private int parseDecimal() {
+            int i = tokenStart;
+            boolean negative = false;
+            byte b = buffer.get(i);
+
+            if (b == '-' || b == '+') {
+                negative = b == '-';
+                if (++i == tokenEnd) return NON_NUMERIC;
+                b = buffer.get(i);
+            }
+
+            // Double.parseDouble also reads NaN and Infinity.
+            if ((b < '0' || b > '9') && b != '.') {
+                return b == 'N' || b == 'I' ? -1 : NON_NUMERIC;
+            }
+
+            long mantissa = 0;
+            int significant = 0;
+            int exponent = 0;
+            boolean digits = false;
+            boolean point = false;
+
+            for (; i < tokenEnd; i++) {
+                b = buffer.get(i);
+
+                if (b == '.' && !point) {
+                    point = true;
+                    continue;
+                }
+
+                if (b < '0' || b > '9') break;
+
+                digits = true;
+                if (point) exponent--;
+
+                if (mantissa == 0 && b == '0') continue;
+                if (++significant > 15) return -1;
+                mantissa = 10 * mantissa + (b - '0');
+            }
+
+            if (!digits) return -1;
+
+            if (i < tokenEnd && (b == 'e' || b == 'E')) {
+                if (++i == tokenEnd) return -1;
+                boolean negativeExponent = false;
+                b = buffer.get(i);
+
+                if (b == '-' || b == '+') {
+                    negativeExponent = b == '-';
+                    if (++i == tokenEnd) return -1;
+                }
+
+                int e = 0;
+
+                for (; i < tokenEnd; i++) {
+                    b = buffer.get(i);
+                    if (b < '0' || b > '9') return -1;
+                    if (e > 1000) return -1;
+                    e = 10 * e + (b - '0');
+                }
+
+                exponent += negativeExponent ? -e : e;
+            }
+
+            if (i < tokenEnd) return -1;
+
+            double v;
+
+            if (mantissa == 0) {
+                v = 0.0;
+            } else if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+                v = mantissa * POWERS_OF_TEN[exponent];
+            } else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+                v = mantissa / POWERS_OF_TEN[-exponent];
+            } else {
+                return -1;
+            }
+
+            value = negative ? -v : v;
+            return NUMERIC;
+        }
+
+        double getValue() {
+            return value;
+        }
+
+        String getString() {
+            return decode(UTF8);
+        }
+
+        private String decode(Charset charset) {
+            int length = tokenEnd - tokenStart;
+
+            if (scratch.length < length) {
+                scratch = new byte[2 * length];
+            }
+
+            for (int i = 0; i < length; i++) {
+                scratch[i] = buffer.get(tokenStart + i);
+            }
+
+            return new String(scratch, 0, length, charset);
+        }
+    }
+}
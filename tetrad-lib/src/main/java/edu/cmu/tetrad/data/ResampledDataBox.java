@@ -0,0 +1,319 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+/**
+ * A view of a data box in which row i is row rows[i] of the underlying box, as for a bootstrap
+ * sample drawn with replacement. No data is copied; reads go to the underlying box. The view
+ * also gives the distinct underlying rows it uses, each with the number of times it is used, so
+ * that statistics such as covariances and cell counts can be computed from weighted rows.
+ * <p>
+ * The underlying box is never modified. The first write to the view copies the selected rows
+ * into a box of the underlying type, and the view reads and writes that copy from then on.
+ *
+ * @see DataUtils#getBootstrapView
+ */
+public class ResampledDataBox implements DataBox {
+    static final long serialVersionUID = 23L;
+
+    /**
+     * The underlying box.
+     */
+    private final DataBox box;
+
+    /**
+     * The row of the underlying box for each row of this view.
+     */
+    private final int[] rows;
+
+    /**
+     * The copy of the selected rows made on the first write, or null if there has been no write.
+     */
+    private volatile DataBox copy;
+
+    /**
+     * The distinct rows of the underlying box used by this view, in increasing order, and the
+     * number of times each is used. Computed when first asked for.
+     */
+    private transient int[] distinctRows;
+    private transient int[] multiplicities;
+
+    /**
+     * For each row of this view, the index of its underlying row in distinctRows.
+     */
+    private transient int[] distinctIndices;
+
+    /**
+     * Constructs a view of the given rows of the given box. Rows may repeat.
+     */
+    public ResampledDataBox(DataBox box, int[] rows) {
+        if (box == null) throw new NullPointerException("Box must not be null.");
+        if (rows == null) throw new NullPointerException("Rows must not be null.");
+
+        for (int row : rows) {
+            if (row < 0 || row >= box.numRows()) {
+                throw new IllegalArgumentException("Row out of range: " + row);
+            }
+        }
+
+        this.box = box;
+        this.rows = rows;
+    }
+
+    /**
+     * Generates a simple exemplar of this class to test serialization.
+     */
+    public static BoxDataSet serializableInstance() {
+        return new BoxDataSet(new ResampledDataBox(new ShortDataBox(4, 4), new int[]{0, 0, 2, 3}), null);
+    }
+
+    /**
+     * @return the number of rows in this view.
+     */
+    public int numRows() {
+        return rows.length;
+    }
+
+    /**
+     * @return the number of columns in this view.
+     */
+    public int numCols() {
+        return box.numCols();
+    }
+
+    /**
+     * @return true if this is still a view of the underlying box--that is, it has not been written.
+     */
+    public boolean isView() {
+        return copy == null;
+    }
+
+    /**
+     * @return the underlying box, or null if this is no longer a view.
+     */
+    public DataBox getUnderlyingBox() {
+        return copy == null ? box : null;
+    }
+
+    /**
+     * @return the distinct rows of the underlying box used by this view, in increasing order, or
+     * null if this is no longer a view. The array must not be modified.
+     */
+    public int[] getDistinctRows() {
+        if (copy != null) return null;
+        countRows();
+        return distinctRows;
+    }
+
+    /**
+     * @return the number of times each of getDistinctRows() is used, or null if this is no longer
+     * a view. The multiplicities sum to numRows(). The array must not be modified.
+     */
+    public int[] getMultiplicities() {
+        if (copy != null) return null;
+        countRows();
+        return multiplicities;
+    }
+
+    /**
+     * @return for each row of this view, the index of its underlying row in getDistinctRows(), or
+     * null if this is no longer a view. The array must not be modified.
+     */
+    public int[] getDistinctIndices() {
+        if (copy != null) return null;
+        countRows();
+        return distinctIndices;
+    }
+
+    /**
+     * @return the values of the given column in getDistinctRows(), as doubles, with missing values
+     * as Double.NaN, or null if this is no longer a view.
+     */
+    public double[] getDistinctDoubleColumn(int col) {
+        int[] distinctRows = getDistinctRows();
+        if (distinctRows == null) return null;
+
+        double[] column = new double[distinctRows.length];
+
+        for (int k = 0; k < distinctRows.length; k++) {
+            column[k] = box.getDouble(distinctRows[k], col);
+        }
+
+        return column;
+    }
+
+    /**
+     * @return the values of the given column in getDistinctRows(), as ints, with missing values as
+     * -99, or null if this is no longer a view.
+     */
+    public int[] getDistinctIntColumn(int col) {
+        int[] distinctRows = getDistinctRows();
+        if (distinctRows == null) return null;
+
+        int[] column = new int[distinctRows.length];
+
+        for (int k = 0; k < distinctRows.length; k++) {
+            column[k] = box.getInt(distinctRows[k], col);
+        }
+
+        return column;
+    }
+
+    public void set(int row, int col, Number value) {
+        materialize().set(row, col, value);
+    }
+
+    public Number get(int row, int col) {
+        DataBox copy = this.copy;
+        return copy == null ? box.get(rows[row], col) : copy.get(row, col);
+    }
+
+    public double getDouble(int row, int col) {
+        DataBox copy = this.copy;
+        return copy == null ? box.getDouble(rows[row], col) : copy.getDouble(row, col);
+    }
+
+    public void setDouble(int row, int col, double value) {
+        materialize().setDouble(row, col, value);
+    }
+
+    public int getInt(int row, int col) {
+        DataBox copy = this.copy;
+        return copy == null ? box.getInt(rows[row], col) : copy.getInt(row, col);
+    }
+
+    public void setInt(int row, int col, int value) {
+        materialize().setInt(row, col, value);
+    }
+
+    /**
+     * @return the given column, copied into <code>column</code> if it is long enough, as doubles.
+     */
+    public double[] getDoubleColumn(int col, double[] column) {
+        DataBox copy = this.copy;
+        if (copy != null) return copy.getDoubleColumn(col, column);
+
+        if (column == null || column.length < rows.length) column = new double[rows.length];
+
+        for (int i = 0; i < rows.length; i++) {
+            column[i] = box.getDouble(rows[i], col);
+        }
+
+        return column;
+    }
+
+    /**
+     * @return the given column, copied into <code>column</code> if it is long enough, as ints.
+     */
+    public int[] getIntColumn(int col, int[] column) {
+        DataBox copy = this.copy;
+        if (copy != null) return copy.getIntColumn(col, column);
+
+        if (column == null || column.length < rows.length) column = new int[rows.length];
+
+        for (int i = 0; i < rows.length; i++) {
+            column[i] = box.getInt(rows[i], col);
+        }
+
+        return column;
+    }
+
+    /**
+     * @return a copy of the rows of this view, in a box of the underlying type.
+     */
+    public DataBox copy() {
+        DataBox copy = this.copy;
+        return copy == null ? box.viewSelection(rows, allColumns()) : copy.copy();
+    }
+
+    /**
+     * @return a new box of missing values with the dimensions of this view, which shares
+     * nothing with the underlying box.
+     */
+    public DataBox like() {
+        return new DoubleDataBox(numRows(), numCols());
+    }
+
+    public DataBox viewSelection(int[] rows, int[] cols) {
+        DataBox copy = this.copy;
+        if (copy != null) return copy.viewSelection(rows, cols);
+
+        int[] _rows = new int[rows.length];
+
+        for (int i = 0; i < rows.length; i++) {
+            _rows[i] = this.rows[rows[i]];
+        }
+
+        return box.viewSelection(_rows, cols);
+    }
+
+    //==============================PRIVATE METHODS=========================//
+
+    // The copy of the selected rows that writes go to, so that the underlying box is not written.
+    private synchronized DataBox materialize() {
+        if (copy == null) {
+            copy = box.viewSelection(rows, allColumns());
+        }
+
+        return copy;
+    }
+
+    private synchronized void countRows() {
+        if (distinctRows != null) return;
+
+        int[] counts = new int[box.numRows()];
+        int numDistinct = 0;
+
+        for (int row : rows) {
+            if (counts[row]++ == 0) numDistinct++;
+        }
+
+        int[] distinct = new int[numDistinct];
+        int[] multiplicities = new int[numDistinct];
+        int k = 0;
+
+        // From here on counts[row] is the index of row in distinct.
+        for (int row = 0; row < counts.length; row++) {
+            if (counts[row] > 0) {
+                distinct[k] = row;
+                multiplicities[k] = counts[row];
+                counts[row] = k++;
+            }
+        }
+
+        int[] indices = new int[rows.length];
+
+        for (int i = 0; i < rows.length; i++) {
+            indices[i] = counts[rows[i]];
+        }
+
+        this.multiplicities = multiplicities;
+        this.distinctIndices = indices;
+        this.distinctRows = distinct;
+    }
+
+    private int[] allColumns() {
+        int[] cols = new int[box.numCols()];
+        for (int j = 0; j < cols.length; j++) cols[j] = j;
+        return cols;
+    }
+}
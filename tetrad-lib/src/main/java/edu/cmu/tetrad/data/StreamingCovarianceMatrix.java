@@ -0,0 +1,679 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.NumberFormatUtil;
+import edu.cmu.tetrad.util.TetradMatrix;
+
+import java.text.NumberFormat;
+import java.util.*;
+
+/**
+ * A covariance matrix accumulated from rows of data as they arrive, so that
+ * the data never has to be held in memory. Rows may be added one at a time or
+ * in batches; each batch is reduced to its means and co-moments and folded
+ * into the running totals with the pairwise update of Chan, Golub and LeVeque,
+ * which is numerically stable in the way Welford's update is. Accumulators
+ * built separately, for instance on different threads or over different
+ * shards of a data set, may be combined with merge().
+ * <p>
+ * The covariances reported are always those of the rows added so far, with
+ * the sample size equal to the number of those rows; snapshot() hands out a
+ * fixed CovarianceMatrix copy that may be used while accumulation continues.
+ * If the matrix or sample size is set directly, the accumulator continues as
+ * though it had seen that many rows with those covariances and its current
+ * means. Missing values are not supported. An
+ * accumulator is not safe for concurrent updates; give each thread its own
+ * and merge them.
+ */
+public class StreamingCovarianceMatrix implements ICovarianceMatrix {
+    static final long serialVersionUID = 23L;
+
+    /**
+     * The name of the covariance matrix.
+     *
+     * @serial May be null.
+     */
+    private String name;
+
+    /**
+     * The variables (in order) for this covariance matrix.
+     *
+     * @serial Cannot be null.
+     */
+    private List<Node> variables;
+
+    /**
+     * The number of rows accumulated.
+     *
+     * @serial Range >= 0.
+     */
+    private long count = 0;
+
+    /**
+     * The means of the rows accumulated.
+     *
+     * @serial Cannot be null.
+     */
+    private double[] means;
+
+    /**
+     * The sums of products of deviations from the means, packed lower
+     * triangle first, row by row.
+     *
+     * @serial Cannot be null.
+     */
+    private double[] comoments;
+
+    /**
+     * The list of selected variables.
+     *
+     * @serial Cannot be null.
+     */
+    private Set<Node> selectedVariables = new HashSet<>();
+
+    /**
+     * The knowledge for this data.
+     *
+     * @serial Cannot be null.
+     */
+    private IKnowledge knowledge = new Knowledge2();
+
+    //=============================CONSTRUCTORS=========================//
+
+    /**
+     * Constructs an empty accumulator over the given continuous variables.
+     */
+    public StreamingCovarianceMatrix(List<Node> variables) {
+        for (Node node : variables) {
+            if (!(node instanceof ContinuousVariable)) {
+                throw new IllegalArgumentException("Not a continuous variable: " + node);
+            }
+        }
+
+        int n = variables.size();
+        this.variables = Collections.unmodifiableList(new ArrayList<>(variables));
+        this.means = new double[n];
+        this.comoments = new double[n * (n + 1) / 2];
+    }
+
+    /**
+     * Copy constructor.
+     */
+    public StreamingCovarianceMatrix(StreamingCovarianceMatrix covMatrix) {
+        this.name = covMatrix.name;
+        this.variables = covMatrix.variables;
+        this.count = covMatrix.count;
+        this.means = Arrays.copyOf(covMatrix.means, covMatrix.means.length);
+        this.comoments = Arrays.copyOf(covMatrix.comoments, covMatrix.comoments.length);
+        this.knowledge = covMatrix.knowledge.copy();
+    }
+
+    /**
+     * Generates a simple exemplar of this class to test serialization.
+     */
+    public static StreamingCovarianceMatrix serializableInstance() {
+        List<Node> variables = new ArrayList<>();
+        variables.add(new ContinuousVariable("X"));
+        StreamingCovarianceMatrix cov = new StreamingCovarianceMatrix(variables);
+        cov.addRow(new double[]{1});
+        cov.addRow(new double[]{2});
+        return cov;
+    }
+
+    //============================PUBLIC METHODS=========================//
+
+    /**
+     * Adds one row of data, with a value for each variable in order.
+     */
+    public void addRow(double[] row) {
+        checkRow(row);
+        count++;
+
+        int n = means.length;
+        double[] delta = new double[n];
+
+        for (int i = 0; i < n; i++) {
+            delta[i] = row[i] - means[i];
+            means[i] += delta[i] / count;
+        }
+
+        int k = 0;
+
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j <= i; j++) {
+                comoments[k++] += delta[i] * (row[j] - means[j]);
+            }
+        }
+    }
+
+    /**
+     * Adds a batch of rows, each with a value for each variable in order.
+     */
+    public void addRows(double[][] rows) {
+        int n = means.length;
+        double[] batchMeans = new double[n];
+
+        for (double[] row : rows) {
+            checkRow(row);
+
+            for (int i = 0; i < n; i++) {
+                batchMeans[i] += row[i];
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            batchMeans[i] /= rows.length;
+        }
+
+        double[] batchComoments = new double[comoments.length];
+        double[] centered = new double[n];
+
+        for (double[] row : rows) {
+            for (int i = 0; i < n; i++) {
+                centered[i] = row[i] - batchMeans[i];
+            }
+
+            int k = 0;
+
+            for (int i = 0; i < n; i++) {
+                double c = centered[i];
+
+                for (int j = 0; j <= i; j++) {
+                    batchComoments[k++] += c * centered[j];
+                }
+            }
+        }
+
+        combine(rows.length, batchMeans, batchComoments);
+    }
+
+    /**
+     * Adds the rows of the given data set, which must have the same variables,
+     * by name and in order, in batches.
+     */
+    public void addDataSet(DataSet dataSet) {
+        if (!dataSet.getVariableNames().equals(getVariableNames())) {
+            throw new IllegalArgumentException("The data set must have the variables of this matrix.");
+        }
+
+        int batchSize = 1000;
+        int n = means.length;
+
+        for (int start = 0; start < dataSet.getNumRows(); start += batchSize) {
+            int end = Math.min(start + batchSize, dataSet.getNumRows());
+            double[][] rows = new double[end - start][n];
+
+            for (int r = start; r < end; r++) {
+                for (int i = 0; i < n; i++) {
+                    rows[r - start][i] = dataSet.getDouble(r, i);
+                }
+            }
+
+            addRows(rows);
+        }
+    }
+
+    /**
+     * Folds the rows accumulated by the given matrix, which must be over
+     * variables with the same names, into this one. The given matrix is not
+     * changed.
+     */
+    public void merge(StreamingCovarianceMatrix other) {
+        if (!other.getVariableNames().equals(getVariableNames())) {
+            throw new IllegalArgumentException("Only matrices over the same variables can be merged.");
+        }
+
+        combine(other.count, other.means, other.comoments);
+    }
+
+    /**
+     * @return a covariance matrix holding the covariances of the rows added so
+     * far, unaffected by rows added later.
+     * @throws IllegalStateException if no rows have been added.
+     */
+    public CovarianceMatrix snapshot() {
+        if (count == 0) {
+            throw new IllegalStateException("No rows have been added.");
+        }
+
+        CovarianceMatrix cov = new CovarianceMatrix(variables, getMatrix(), getSampleSize());
+        cov.setName(name);
+        cov.setKnowledge(knowledge);
+        return cov;
+    }
+
+    /**
+     * @return the means of the rows added so far.
+     */
+    public double[] getMeans() {
+        return Arrays.copyOf(means, means.length);
+    }
+
+    /**
+     * @return the list of variables (unmodifiable).
+     */
+    public final List<Node> getVariables() {
+        return this.variables;
+    }
+
+    /**
+     * @return the variable names, in order.
+     */
+    public final List<String> getVariableNames() {
+        List<String> names = new ArrayList<>();
+
+        for (Node variable : getVariables()) {
+            names.add(variable.getName());
+        }
+
+        return names;
+    }
+
+    /**
+     * @return the variable name at the given index.
+     */
+    public final String getVariableName(int index) {
+        if (index >= getVariables().size()) {
+            throw new IllegalArgumentException("Index out of range: " + index);
+        }
+
+        return getVariables().get(index).getName();
+    }
+
+    /**
+     * @return the dimension of the covariance matrix.
+     */
+    public final int getDimension() {
+        return variables.size();
+    }
+
+    /**
+     * @return the number of rows added so far.
+     */
+    public final int getSampleSize() {
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Sample size too large for an int: " + count);
+        }
+
+        return (int) count;
+    }
+
+    public final String getName() {
+        return this.name;
+    }
+
+    public final void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the knowledge associated with this data.
+     */
+    public final IKnowledge getKnowledge() {
+        return this.knowledge.copy();
+    }
+
+    /**
+     * Associates knowledge with this data.
+     */
+    public final void setKnowledge(IKnowledge knowledge) {
+        if (knowledge == null) {
+            throw new NullPointerException();
+        }
+
+        this.knowledge = knowledge.copy();
+    }
+
+    /**
+     * @return a snapshot of the covariances of the given variables, in the
+     * given order.
+     */
+    public final ICovarianceMatrix getSubmatrix(int[] indices) {
+        List<Node> submatrixVars = new ArrayList<>();
+
+        for (int index : indices) {
+            submatrixVars.add(variables.get(index));
+        }
+
+        return new CovarianceMatrix(submatrixVars, getSelection(indices, indices), getSampleSize());
+    }
+
+    public final ICovarianceMatrix getSubmatrix(List<String> submatrixVarNames) {
+        return getSubmatrix(submatrixVarNames.toArray(new String[submatrixVarNames.size()]));
+    }
+
+    /**
+     * @return a snapshot of the covariances of the given variables, in the
+     * given order.
+     */
+    public final ICovarianceMatrix getSubmatrix(String[] submatrixVarNames) {
+        int[] indices = new int[submatrixVarNames.length];
+        List<String> names = getVariableNames();
+
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = names.indexOf(submatrixVarNames[i]);
+
+            if (indices[i] == -1) {
+                throw new IllegalArgumentException("Not a variable of this matrix: " + submatrixVarNames[i]);
+            }
+        }
+
+        return getSubmatrix(indices);
+    }
+
+    /**
+     * @return the covariance of variables i and j over the rows added so far,
+     * or NaN if fewer than two rows have been added.
+     */
+    public final double getValue(int i, int j) {
+        if (count < 2) {
+            return Double.NaN;
+        }
+
+        int k = i >= j ? i * (i + 1) / 2 + j : j * (j + 1) / 2 + i;
+        return comoments[k] / (count - 1);
+    }
+
+    /**
+     * Sets the covariances of the rows added so far, which must be a
+     * symmetric matrix of the dimension of this one.
+     *
+     * @throws IllegalStateException if fewer than two rows have been added, in
+     *                               which case set the sample size first.
+     */
+    public void setMatrix(TetradMatrix matrix) {
+        int n = getDimension();
+
+        if (matrix.rows() != n || matrix.columns() != n) {
+            throw new IllegalArgumentException("Expecting a " + n + " x " + n + " matrix.");
+        }
+
+        if (!matrix.isSymmetric(1e-10)) {
+            throw new IllegalArgumentException("Matrix is not symmetric.");
+        }
+
+        checkSampleSize();
+        int k = 0;
+
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j <= i; j++) {
+                comoments[k++] = matrix.get(i, j) * (count - 1);
+            }
+        }
+    }
+
+    /**
+     * Sets the number of rows taken to have been added, keeping the
+     * covariances, which are zero if fewer than two rows had been added.
+     */
+    public final void setSampleSize(int sampleSize) {
+        if (sampleSize <= 0) {
+            throw new IllegalArgumentException("Sample size must be > 0.");
+        }
+
+        double scale = count < 2 ? 0.0 : (sampleSize - 1) / (double) (count - 1);
+
+        for (int k = 0; k < comoments.length; k++) {
+            comoments[k] *= scale;
+        }
+
+        count = sampleSize;
+    }
+
+    /**
+     * @return the size of the square matrix.
+     */
+    public final int getSize() {
+        return getDimension();
+    }
+
+    /**
+     * @return the covariances of the rows added so far, as a new matrix.
+     */
+    public final TetradMatrix getMatrix() {
+        int n = getDimension();
+        TetradMatrix matrix = new TetradMatrix(n, n);
+
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j <= i; j++) {
+                double value = getValue(i, j);
+                matrix.set(i, j, value);
+                matrix.set(j, i, value);
+            }
+        }
+
+        return matrix;
+    }
+
+    public final void select(Node variable) {
+        if (variables.contains(variable)) {
+            selectedVariables.add(variable);
+        }
+    }
+
+    public final void clearSelection() {
+        selectedVariables.clear();
+    }
+
+    public final boolean isSelected(Node variable) {
+        if (variable == null) {
+            throw new NullPointerException("Null variable. Try again.");
+        }
+
+        return selectedVariables.contains(variable);
+    }
+
+    public final List<String> getSelectedVariableNames() {
+        List<String> selectedVariableNames = new LinkedList<>();
+
+        for (Node variable : selectedVariables) {
+            selectedVariableNames.add(variable.getName());
+        }
+
+        return selectedVariableNames;
+    }
+
+    /**
+     * Prints out the matrix
+     */
+    public final String toString() {
+        NumberFormat nf = NumberFormatUtil.getInstance().getNumberFormat();
+
+        StringBuilder buf = new StringBuilder();
+
+        int numVars = getVariableNames().size();
+        buf.append(count).append("\n");
+
+        for (int i = 0; i < numVars; i++) {
+            buf.append(getVariableNames().get(i)).append("\t");
+        }
+
+        buf.append("\n");
+
+        for (int j = 0; j < numVars; j++) {
+            for (int i = 0; i <= j; i++) {
+                buf.append(nf.format(getValue(i, j))).append("\t");
+            }
+            buf.append("\n");
+        }
+
+        return buf.toString();
+    }
+
+    @Override
+    public boolean isContinuous() {
+        return true;
+    }
+
+    @Override
+    public boolean isDiscrete() {
+        return false;
+    }
+
+    @Override
+    public boolean isMixed() {
+        return false;
+    }
+
+    public Node getVariable(String name) {
+        for (Node variable : getVariables()) {
+            if (name.equals(variable.getName())) {
+                return variable;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public DataModel copy() {
+        return new StreamingCovarianceMatrix(this);
+    }
+
+    /**
+     * Sets the covariance of variables i and j, and of j and i.
+     *
+     * @throws IllegalStateException if fewer than two rows have been added.
+     */
+    @Override
+    public void setValue(int i, int j, double v) {
+        checkSampleSize();
+        int k = i >= j ? i * (i + 1) / 2 + j : j * (j + 1) / 2 + i;
+        comoments[k] = v * (count - 1);
+    }
+
+    /**
+     * Keeps only the given variables, in the given order, with their means and
+     * co-moments, so that accumulation may continue over rows of just those
+     * variables.
+     */
+    @Override
+    public void removeVariables(List<String> remaining) {
+        List<String> names = getVariableNames();
+        int[] indices = new int[remaining.size()];
+
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = names.indexOf(remaining.get(i));
+
+            if (indices[i] == -1) {
+                throw new IllegalArgumentException("Not a variable of this matrix: " + remaining.get(i));
+            }
+        }
+
+        int n = indices.length;
+        List<Node> _variables = new ArrayList<>();
+        double[] _means = new double[n];
+        double[] _comoments = new double[n * (n + 1) / 2];
+        int k = 0;
+
+        for (int i = 0; i < n; i++) {
+            _variables.add(variables.get(indices[i]));
+            _means[i] = means[indices[i]];
+
+            for (int j = 0; j <= i; j++) {
+                int a = indices[i];
+                int b = indices[j];
+                _comoments[k++] = comoments[a >= b ? a * (a + 1) / 2 + b : b * (b + 1) / 2 + a];
+            }
+        }
+
+        this.variables = Collections.unmodifiableList(_variables);
+        this.means = _means;
+        this.comoments = _comoments;
+        clearSelection();
+    }
+
+    public void setVariables(List<Node> variables) {
+        if (variables.size() != this.variables.size()) {
+            throw new IllegalArgumentException("Wrong # of variables.");
+        }
+
+        this.variables = Collections.unmodifiableList(new ArrayList<>(variables));
+    }
+
+    @Override
+    public TetradMatrix getSelection(int[] rows, int[] cols) {
+        TetradMatrix m = new TetradMatrix(rows.length, cols.length);
+
+        for (int i = 0; i < rows.length; i++) {
+            for (int j = 0; j < cols.length; j++) {
+                m.set(i, j, getValue(rows[i], cols[j]));
+            }
+        }
+
+        return m;
+    }
+
+    //========================PRIVATE METHODS============================//
+
+    // Folds in nb rows with the given means and co-moments about those means.
+    private void combine(long nb, double[] batchMeans, double[] batchComoments) {
+        if (nb == 0) {
+            return;
+        }
+
+        long na = count;
+        long n = na + nb;
+        double f = (double) na * nb / n;
+        int p = means.length;
+        double[] delta = new double[p];
+
+        for (int i = 0; i < p; i++) {
+            delta[i] = batchMeans[i] - means[i];
+        }
+
+        int k = 0;
+
+        for (int i = 0; i < p; i++) {
+            for (int j = 0; j <= i; j++) {
+                comoments[k] += batchComoments[k] + delta[i] * delta[j] * f;
+                k++;
+            }
+        }
+
+        for (int i = 0; i < p; i++) {
+            means[i] += delta[i] * nb / n;
+        }
+
+        count = n;
+    }
+
+    private void checkSampleSize() {
+        if (count < 2) {
+            throw new IllegalStateException("Set a sample size of at least 2 before setting covariances.");
+        }
+    }
+
+    private void checkRow(double[] row) {
+        if (row.length != means.length) {
+            throw new IllegalArgumentException("Expecting " + means.length + " values, got " + row.length);
+        }
+
+        for (double value : row) {
+            if (Double.isNaN(value)) {
+                throw new IllegalArgumentException("Missing values are not supported.");
+            }
+        }
+    }
+}
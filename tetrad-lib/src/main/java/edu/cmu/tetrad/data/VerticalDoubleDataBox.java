@@ -125,6 +125,49 @@ public class VerticalDoubleDataBox implements DataBox {
         return data;
     }
 
+    /**
+     * @return the value at the given row and column as a double; missing
+     * values are Double.NaN.
+     */
+    public double getDouble(int row, int col) {
+        return data[col][row];
+    }
+
+    /**
+     * Sets the value at the given row and column to the given double.
+     */
+    public void setDouble(int row, int col, double value) {
+        synchronized (data[col]) {
+            data[col][row] = value;
+        }
+    }
+
+    /**
+     * @return the value at the given row and column, cast to int, or -99 if
+     * the value is missing (Double.NaN).
+     */
+    public int getInt(int row, int col) {
+        double datum = data[col][row];
+        return Double.isNaN(datum) ? DiscreteVariable.MISSING_VALUE : (int) datum;
+    }
+
+    /**
+     * Sets the value at the given row and column to the given int; -99 is
+     * stored as missing (Double.NaN).
+     */
+    public void setInt(int row, int col, int value) {
+        synchronized (data[col]) {
+            data[col][row] = value == DiscreteVariable.MISSING_VALUE ? Double.NaN : value;
+        }
+    }
+
+    /**
+     * @return the stored array for the given column, without copying.
+     */
+    public double[] getDoubleColumn(int col, double[] column) {
+        return data[col];
+    }
+
     /**
      * @return a copy of this data box.
      */
@@ -157,7 +200,7 @@ public class VerticalDoubleDataBox implements DataBox {
 
         for (int i = 0; i < rows.length; i++) {
             for (int j = 0; j < cols.length; j++) {
-                _dataBox.set(i, j, get(rows[i], cols[j]));
+                _dataBox.setDouble(i, j, getDouble(rows[i], cols[j]));
             }
         }
 
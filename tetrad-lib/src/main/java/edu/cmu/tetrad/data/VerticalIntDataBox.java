@@ -129,6 +129,49 @@ public class VerticalIntDataBox implements DataBox {
         return data;
     }
 
+    /**
+     * @return the value at the given row and column as a double, or
+     * Double.NaN if the value is missing (-99).
+     */
+    public double getDouble(int row, int col) {
+        int datum = data[col][row];
+        return datum == -99 ? Double.NaN : datum;
+    }
+
+    /**
+     * Sets the value at the given row and column to the given double, cast to
+     * int. Double.NaN is stored as missing (-99).
+     */
+    public void setDouble(int row, int col, double value) {
+        synchronized (data[col]) {
+            data[col][row] = Double.isNaN(value) ? -99 : (int) value;
+        }
+    }
+
+    /**
+     * @return the value at the given row and column as an int; missing values
+     * are -99.
+     */
+    public int getInt(int row, int col) {
+        return data[col][row];
+    }
+
+    /**
+     * Sets the value at the given row and column to the given int.
+     */
+    public void setInt(int row, int col, int value) {
+        synchronized (data[col]) {
+            data[col][row] = value;
+        }
+    }
+
+    /**
+     * @return the stored array for the given column, without copying.
+     */
+    public int[] getIntColumn(int col, int[] column) {
+        return data[col];
+    }
+
     /**
      * @return a copy of this data box.
      */
@@ -163,7 +206,7 @@ public class VerticalIntDataBox implements DataBox {
 
         for (int i = 0; i < rows.length; i++) {
             for (int j = 0; j < cols.length; j++) {
-                _dataBox.set(i, j, get(rows[i], cols[j]));
+                _dataBox.setInt(i, j, getInt(rows[i], cols[j]));
             }
         }
 
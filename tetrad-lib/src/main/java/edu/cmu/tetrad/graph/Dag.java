@@ -397,7 +397,7 @@ public final class Dag implements Graph {
     }
 
     public boolean isAncestorOf(Node node1, Node node2) {
-        return node1 == node2 || GraphUtils.existsDirectedPathFromToBreathFirst(node1, node2, this);
+        return getGraph().isAncestorOf(node1, node2);
     }
 
     public boolean isDirectedFromTo(Node node1, Node node2) {
@@ -438,7 +438,7 @@ public final class Dag implements Graph {
     }
 
     public boolean isDescendentOf(Node node1, Node node2) {
-        return node1 == node2 || GraphUtils.existsDirectedPathFromToBreathFirst(node2, node1, this);
+        return getGraph().isAncestorOf(node2, node1);
     }
 
     public boolean removeEdge(Node node1, Node node2) {
@@ -26,6 +26,7 @@ import edu.cmu.tetrad.util.TetradSerializable;
 import java.awt.*;
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -59,6 +60,10 @@ public class Edge implements TetradSerializable, Comparable {
 
     private List<EdgeTypeProbability> edgeTypeProbabilities = new ArrayList<>();
 
+	// Graphs caching structure that depends on this edge; told when an endpoint
+	// is changed in place. Held weakly, since edges are shared between copies.
+	private transient List<WeakReference<EdgeListGraph>> owners = null;
+
 	// =========================CONSTRUCTORS============================//
 
 	/**
@@ -142,10 +147,58 @@ public class Edge implements TetradSerializable, Comparable {
 
 	public final void setEndpoint1(Endpoint e) {
 		this.endpoint1 = e;
+		endpointsChanged();
 	}
 
 	public final void setEndpoint2(Endpoint e) {
 		this.endpoint2 = e;
+		endpointsChanged();
+	}
+
+	/**
+	 * Registers a graph to be told when an endpoint of this edge is changed in
+	 * place.
+	 */
+	synchronized void addOwner(EdgeListGraph graph) {
+		if (owners == null) {
+			owners = new ArrayList<>(2);
+		}
+
+		for (int i = owners.size() - 1; i >= 0; i--) {
+			EdgeListGraph owner = owners.get(i).get();
+
+			if (owner == graph) {
+				return;
+			} else if (owner == null) {
+				owners.remove(i);
+			}
+		}
+
+		owners.add(new WeakReference<>(graph));
+	}
+
+	private void endpointsChanged() {
+		List<EdgeListGraph> graphs = new ArrayList<>(2);
+
+		synchronized (this) {
+			if (owners == null) {
+				return;
+			}
+
+			for (int i = owners.size() - 1; i >= 0; i--) {
+				EdgeListGraph owner = owners.get(i).get();
+
+				if (owner == null) {
+					owners.remove(i);
+				} else {
+					graphs.add(owner);
+				}
+			}
+		}
+
+		for (EdgeListGraph graph : graphs) {
+			graph.edgeReoriented(this);
+		}
 	}
 
 	/**
@@ -275,17 +275,60 @@ public class EdgeListGraph implements Graph, TripleClassifier {
         return addEdge(Edges.bidirectedEdge(node1, node2));
     }
 
+    /**
+     * Checks for a directed cycle by trying to order the nodes topologically
+     * (Kahn's algorithm); a cycle exists iff some node is never freed of
+     * parents. Linear in the number of nodes and edges.
+     */
     public boolean existsDirectedCycle() {
-        for (Node node : getNodes()) {
-            if (GraphUtils.existsDirectedPathFromToBreathFirst(node, node, this)) {
-                return true;
+        Map<Node, Integer> inDegree = new HashMap<>();
+        Map<Node, List<Node>> children = new HashMap<>();
+
+        for (Node node : nodes) {
+            inDegree.put(node, 0);
+        }
+
+        for (Edge edge : edgesSet) {
+            if (!Edges.isDirectedEdge(edge)) continue;
+
+            Node tail = Edges.getDirectedEdgeTail(edge);
+            Node head = Edges.getDirectedEdgeHead(edge);
+
+            List<Node> _children = children.get(tail);
+
+            if (_children == null) {
+                _children = new ArrayList<>(4);
+                children.put(tail, _children);
             }
 
-//            if (existsDirectedPathFromTo(node, node)) {
-//                return true;
-//            }
+            _children.add(head);
+            Integer d = inDegree.get(head);
+            inDegree.put(head, d == null ? 1 : d + 1);
         }
-        return false;
+
+        Deque<Node> free = new ArrayDeque<>();
+
+        for (Map.Entry<Node, Integer> entry : inDegree.entrySet()) {
+            if (entry.getValue() == 0) free.add(entry.getKey());
+        }
+
+        int ordered = 0;
+
+        while (!free.isEmpty()) {
+            Node node = free.poll();
+            ordered++;
+
+            List<Node> _children = children.get(node);
+            if (_children == null) continue;
+
+            for (Node child : _children) {
+                int d = inDegree.get(child) - 1;
+                inDegree.put(child, d);
+                if (d == 0) free.add(child);
+            }
+        }
+
+        return ordered < inDegree.size();
     }
 
     public boolean isDirectedFromTo(Node node1, Node node2) {
@@ -564,24 +607,25 @@ public class EdgeListGraph implements Graph, TripleClassifier {
 //        return b;
 //    }
 
-    protected Map<Node, Set<Node>> ancestors = null;
+    // Ancestor sets of the nodes queried through isAncestorOf. Kept current as directed edges are
+    // added; dropped when a directed edge or node is removed or an edge of this graph is reoriented
+    // in place. The sets are never changed once cached; an added edge replaces them.
+    protected transient volatile Map<Node, Set<Node>> ancestors = null;
 
     /**
-     * Determines whether one node is an ancestor of another.
+     * Determines whether one node is an ancestor of another. Ancestor sets are
+     * cached until the graph changes in a way that can shrink them.
      */
     public boolean isAncestorOf(Node node1, Node node2) {
-        return getAncestors(Collections.singletonList(node2)).contains(node1);
-//        if (ancestors == null) {
-//            ancestors = new HashMap<>();
-//        }
-//
-//        if (ancestors.get(node2) != null) {
-//            return ancestors.get(node2).contains(node1);
-//        }
-//
-//        ancestors.put(node2, new HashSet<>(getAncestors(Collections.singletonList(node2))));
-//
-//        return ancestors.get(node2).contains(node1);
+        Map<Node, Set<Node>> ancestors = getAncestorCache();
+        Set<Node> _ancestors = ancestors.get(node2);
+
+        if (_ancestors == null) {
+            _ancestors = new HashSet<>(getAncestors(Collections.singletonList(node2)));
+            ancestors.putIfAbsent(node2, _ancestors);
+        }
+
+        return _ancestors.contains(node1);
     }
 
     public boolean possibleAncestor(Node node1, Node node2) {
@@ -632,7 +676,7 @@ public class EdgeListGraph implements Graph, TripleClassifier {
      * Determines whether one node is a descendent of another.
      */
     public boolean isDescendentOf(Node node1, Node node2) {
-        return (node1 == node2) || isProperDescendentOf(node1, node2);
+        return isAncestorOf(node2, node1);
     }
 
     /**
@@ -1206,7 +1250,7 @@ public class EdgeListGraph implements Graph, TripleClassifier {
             }
         }
 
-        ancestors = null;
+        ancestorsEdgeAdded(edge);
         getPcs().firePropertyChange("edgeAdded", null, edge);
         return true;
     }
@@ -1337,6 +1381,7 @@ public class EdgeListGraph implements Graph, TripleClassifier {
     public void fullyConnect(Endpoint endpoint) {
         edgesSet.clear();
         edgeLists.clear();
+        ancestors = null;
 
         for (Node node : nodes) {
             edgeLists.put(node, new ArrayList<Edge>(4));
@@ -1418,6 +1463,7 @@ public class EdgeListGraph implements Graph, TripleClassifier {
         }
 
         edgeLists.clear();
+        ancestors = null;
     }
 
     /**
@@ -1452,7 +1498,7 @@ public class EdgeListGraph implements Graph, TripleClassifier {
         highlightedEdges.remove(edge);
         stuffRemovedSinceLastTripleAccess = true;
 
-        ancestors = null;
+        ancestorsEdgeRemoved(edge);
         getPcs().firePropertyChange("edgeRemoved", edge, null);
         return true;
     }
@@ -1516,6 +1562,7 @@ public class EdgeListGraph implements Graph, TripleClassifier {
         nodes.remove(node);
         namesHash.remove(node.getName());
         stuffRemovedSinceLastTripleAccess = true;
+        ancestors = null;
 
         getPcs().firePropertyChange("nodeRemoved", node, null);
         return changed;
@@ -1748,15 +1795,92 @@ public class EdgeListGraph implements Graph, TripleClassifier {
     }
 
 
+    // Returns the ancestor cache, starting a new one if there is none. Starting one registers this
+    // graph with its edges, so that reorienting one of them in place drops the cache.
+    private synchronized Map<Node, Set<Node>> getAncestorCache() {
+        Map<Node, Set<Node>> ancestors = this.ancestors;
+
+        if (ancestors == null) {
+            for (Edge edge : getEdges()) {
+                edge.addOwner(this);
+            }
+
+            ancestors = new ConcurrentHashMap<>();
+            this.ancestors = ancestors;
+        }
+
+        return ancestors;
+    }
+
+    /**
+     * Called by an edge of this graph when one of its endpoints is changed in
+     * place; ancestor sets may shrink, so the cache is dropped.
+     */
+    void edgeReoriented(Edge edge) {
+        ancestors = null;
+    }
+
+    /**
+     * Updates the ancestor cache for an added edge. Only a directed edge
+     * tail --> head changes ancestry; the ancestors of tail are added to every
+     * cached set that contains head.
+     */
+    void ancestorsEdgeAdded(Edge edge) {
+        Map<Node, Set<Node>> ancestors = this.ancestors;
+
+        if (ancestors == null) {
+            return;
+        }
+
+        edge.addOwner(this);
+
+        if (ancestors.isEmpty() || !Edges.isDirectedEdge(edge)) {
+            return;
+        }
+
+        Node tail = Edges.getDirectedEdgeTail(edge);
+        Node head = Edges.getDirectedEdgeHead(edge);
+        Set<Node> tailAncestors = null;
+
+        for (Map.Entry<Node, Set<Node>> entry : ancestors.entrySet()) {
+            Set<Node> _ancestors = entry.getValue();
+
+            if (_ancestors.contains(head)) {
+                if (tailAncestors == null) {
+                    tailAncestors = new HashSet<>(getAncestors(Collections.singletonList(tail)));
+                }
+
+                // Readers may hold the old set, so it is replaced rather than changed.
+                Set<Node> updated = new HashSet<>(_ancestors);
+                updated.addAll(tailAncestors);
+                ancestors.replace(entry.getKey(), _ancestors, updated);
+            }
+        }
+    }
+
+    /**
+     * Updates the ancestor cache for a removed edge. Removing a directed edge
+     * may shrink ancestor sets, so the cache is dropped.
+     */
+    void ancestorsEdgeRemoved(Edge edge) {
+        if (Edges.isDirectedEdge(edge)) {
+            ancestors = null;
+        }
+    }
+
+    // Iterative, so that long chains in large graphs do not overflow the stack.
     private void collectAncestorsVisit(Node node, Set<Node> ancestors) {
         if (ancestors.contains(node)) return;
 
+        Deque<Node> stack = new ArrayDeque<>();
         ancestors.add(node);
-        List<Node> parents = getParents(node);
+        stack.push(node);
 
-        if (!parents.isEmpty()) {
-            for (Node parent : parents) {
-                collectAncestorsVisit(parent, ancestors);
+        while (!stack.isEmpty()) {
+            for (Node parent : getParents(stack.pop())) {
+                if (ancestors.add(parent)) {
+                    stack.push(parent);
+                }
             }
         }
     }
@@ -233,7 +233,7 @@ public class EdgeListGraphSingleConnections extends EdgeListGraph implements Tri
      * Determines whether one node is a descendent of another.
      */
     public boolean isDescendentOf(Node node1, Node node2) {
-        return node1 == node2 || GraphUtils.existsDirectedPathFromToBreathFirst(node2, node1, this);
+        return isAncestorOf(node2, node1);
 //        return (node1 == node2) || isProperDescendentOf(node1, node2);
     }
 
@@ -314,6 +314,7 @@ public class EdgeListGraphSingleConnections extends EdgeListGraph implements Tri
         edgeLists.put(edge.getNode2(), edgeList2);
 
         edgesSet.add(edge);
+        ancestorsEdgeAdded(edge);
 
         return true;
     }
@@ -403,6 +404,7 @@ public class EdgeListGraphSingleConnections extends EdgeListGraph implements Tri
 
         edgeLists.put(edge.getNode1(), edgeList1);
         edgeLists.put(edge.getNode2(), edgeList2);
+        ancestorsEdgeRemoved(edge);
 
         getPcs().firePropertyChange("edgeRemoved", edge, null);
         return true;
@@ -437,6 +439,7 @@ public class EdgeListGraphSingleConnections extends EdgeListGraph implements Tri
         nodes.remove(node);
         namesHash.remove(node.getName());
         stuffRemovedSinceLastTripleAccess = true;
+        ancestors = null;
 
         getPcs().firePropertyChange("nodeRemoved", node, null);
         return changed;
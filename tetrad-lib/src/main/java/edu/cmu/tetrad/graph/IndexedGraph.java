@@ -0,0 +1,500 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.graph;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.*;
+
+/**
+ * An EdgeListGraph for search-time use that keeps, alongside the edge lists,
+ * an index from each node to a dense int id and, for each id, a sorted array
+ * of adjacent ids with the connecting edges in parallel. Adjacency, endpoint,
+ * parent and child queries are answered by a binary search over the adjacent
+ * ids instead of a walk over copied edge lists, and callers that hold ids can
+ * iterate adjacencies without allocating.
+ * <p>
+ * At most one edge is allowed between any pair of nodes; adding an edge
+ * between nodes that are already adjacent throws an exception unless it is
+ * the same edge. Endpoints are read from the stored edges rather than copied,
+ * since some searches reorient edges in place. Use the copy constructor or
+ * toEdgeListGraph() to convert to and from EdgeListGraph.
+ */
+public class IndexedGraph extends EdgeListGraph {
+    static final long serialVersionUID = 23L;
+
+    // Node to id; ids are positions in the node list.
+    private transient Map<Node, Integer> indices;
+
+    // Id to node.
+    private transient Node[] idNodes;
+
+    // For each id, the ids adjacent to it, sorted, in the first degree[id] slots.
+    private transient int[][] adjacent;
+
+    // For each id, the edges to the nodes in adjacent[id], in parallel.
+    private transient Edge[][] adjacentEdges;
+
+    // For each id, the number of adjacent ids.
+    private transient int[] degree;
+
+    //==============================CONSTUCTORS===========================//
+
+    /**
+     * Constructs a new (empty) graph.
+     */
+    public IndexedGraph() {
+        super();
+        reindex();
+    }
+
+    /**
+     * Constructs a graph with the nodes and edges of the given graph. Fails if
+     * the given graph has more than one edge between a pair of nodes.
+     */
+    public IndexedGraph(Graph graph) throws IllegalArgumentException {
+        this();
+
+        if (graph == null) {
+            throw new NullPointerException("Graph must not be null.");
+        }
+
+        transferNodesAndEdges(graph);
+        this.ambiguousTriples = graph.getAmbiguousTriples();
+        this.underLineTriples = graph.getUnderLines();
+        this.dottedUnderLineTriples = graph.getDottedUnderlines();
+
+        for (Edge edge : graph.getEdges()) {
+            if (graph.isHighlighted(edge)) {
+                setHighlighted(edge, true);
+            }
+        }
+
+        setPag(graph.isPag());
+        setPattern(graph.isPattern());
+    }
+
+    /**
+     * Constructs a new graph, with no edges, over the given nodes.
+     */
+    public IndexedGraph(List<Node> nodes) {
+        this();
+
+        if (nodes == null) {
+            throw new NullPointerException();
+        }
+
+        for (Node node : nodes) {
+            if (!addNode(node)) {
+                throw new IllegalArgumentException();
+            }
+        }
+    }
+
+    /**
+     * Generates a simple exemplar of this class to test serialization.
+     */
+    public static IndexedGraph serializableInstance() {
+        return new IndexedGraph();
+    }
+
+    //===============================PUBLIC METHODS========================//
+
+    /**
+     * @return a copy of this graph as a plain EdgeListGraph.
+     */
+    public EdgeListGraph toEdgeListGraph() {
+        return new EdgeListGraph(this);
+    }
+
+    /**
+     * @return the id of the given node, or -1 if it is not in the graph.
+     */
+    public int getIndex(Node node) {
+        Integer index = indices.get(node);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @return the node with the given id.
+     */
+    public Node getNode(int index) {
+        return idNodes[index];
+    }
+
+    /**
+     * @return the number of nodes adjacent to the node with id i.
+     */
+    public int getNumAdjacent(int i) {
+        return degree[i];
+    }
+
+    /**
+     * @return the id of the k'th node adjacent to the node with id i, in
+     * increasing order of id, for 0 <= k < getNumAdjacent(i).
+     */
+    public int getAdjacent(int i, int k) {
+        if (k >= degree[i]) throw new IndexOutOfBoundsException("" + k);
+        return adjacent[i][k];
+    }
+
+    /**
+     * @return the edge to the k'th node adjacent to the node with id i.
+     */
+    public Edge getAdjacentEdge(int i, int k) {
+        if (k >= degree[i]) throw new IndexOutOfBoundsException("" + k);
+        return adjacentEdges[i][k];
+    }
+
+    /**
+     * @return true iff the nodes with ids i and j are adjacent.
+     */
+    public boolean isAdjacentTo(int i, int j) {
+        return find(i, j) >= 0;
+    }
+
+    /**
+     * @return the edge between the nodes with ids i and j, or null if there is none.
+     */
+    public Edge getEdge(int i, int j) {
+        int k = find(i, j);
+        return k < 0 ? null : adjacentEdges[i][k];
+    }
+
+    /**
+     * @return the endpoint at node j of the edge between the nodes with ids i
+     * and j, or null if there is no such edge.
+     */
+    public Endpoint getEndpoint(int i, int j) {
+        int k = find(i, j);
+        return k < 0 ? null : adjacentEdges[i][k].getProximalEndpoint(idNodes[j]);
+    }
+
+    /**
+     * @return true iff i --> j.
+     */
+    public boolean isParentOf(int i, int j) {
+        int k = find(i, j);
+        if (k < 0) return false;
+        Edge edge = adjacentEdges[i][k];
+        Node node = idNodes[i];
+        return edge.getProximalEndpoint(node) == Endpoint.TAIL
+                && edge.getDistalEndpoint(node) == Endpoint.ARROW;
+    }
+
+    public boolean isAdjacentTo(Node node1, Node node2) {
+        Integer i = node1 == null ? null : indices.get(node1);
+        Integer j = node2 == null ? null : indices.get(node2);
+        return i != null && j != null && find(i, j) >= 0;
+    }
+
+    public Edge getEdge(Node node1, Node node2) {
+        Integer i = indices.get(node1);
+        Integer j = indices.get(node2);
+        if (i == null || j == null) return null;
+        return getEdge(i, j);
+    }
+
+    public List<Edge> getEdges(Node node1, Node node2) {
+        Edge edge = getEdge(node1, node2);
+        if (edge == null) return new ArrayList<>();
+        List<Edge> edges = new ArrayList<>(1);
+        edges.add(edge);
+        return edges;
+    }
+
+    public Endpoint getEndpoint(Node node1, Node node2) {
+        Edge edge = getEdge(node1, node2);
+        return edge == null ? null : edge.getProximalEndpoint(node2);
+    }
+
+    public boolean isParentOf(Node node1, Node node2) {
+        Integer i = indices.get(node1);
+        Integer j = indices.get(node2);
+        return i != null && j != null && isParentOf(i, j);
+    }
+
+    public boolean isChildOf(Node node1, Node node2) {
+        return isParentOf(node2, node1);
+    }
+
+    public boolean isDirectedFromTo(Node node1, Node node2) {
+        Edge edge = getEdge(node1, node2);
+        return edge != null && edge.pointsTowards(node2);
+    }
+
+    public boolean isUndirectedFromTo(Node node1, Node node2) {
+        Edge edge = getEdge(node1, node2);
+        return edge != null && edge.getEndpoint1() == Endpoint.TAIL && edge.getEndpoint2() == Endpoint.TAIL;
+    }
+
+    public boolean isDefNoncollider(Node node1, Node node2, Node node3) {
+        Edge edge1 = getEdge(node1, node2);
+        Edge edge2 = getEdge(node3, node2);
+
+        if (edge1 != null && edge1.pointsTowards(node1)) return true;
+        if (edge2 != null && edge2.pointsTowards(node3)) return true;
+
+        return edge1 != null && edge2 != null
+                && edge1.getProximalEndpoint(node2) == Endpoint.CIRCLE
+                && edge2.getProximalEndpoint(node2) == Endpoint.CIRCLE
+                && !isAdjacentTo(node1, node2);
+    }
+
+    public List<Node> getAdjacentNodes(Node node) {
+        Integer i = indices.get(node);
+        if (i == null) return new ArrayList<>();
+
+        List<Node> adj = new ArrayList<>(degree[i]);
+
+        for (int k = 0; k < degree[i]; k++) {
+            adj.add(idNodes[adjacent[i][k]]);
+        }
+
+        return adj;
+    }
+
+    public List<Node> getParents(Node node) {
+        return getNodesInto(node, Endpoint.ARROW, Endpoint.TAIL);
+    }
+
+    public List<Node> getChildren(Node node) {
+        return getNodesInto(node, Endpoint.TAIL, Endpoint.ARROW);
+    }
+
+    public List<Node> getNodesInTo(Node node, Endpoint endpoint) {
+        return getNodesInto(node, endpoint, null);
+    }
+
+    public List<Node> getNodesOutTo(Node node, Endpoint endpoint) {
+        return getNodesInto(node, null, endpoint);
+    }
+
+    public int getIndegree(Node node) {
+        return getParents(node).size();
+    }
+
+    public int getOutdegree(Node node) {
+        return getChildren(node).size();
+    }
+
+    public int getDegree(Node node) {
+        Integer i = indices.get(node);
+        return i == null ? 0 : degree[i];
+    }
+
+    public boolean containsNode(Node node) {
+        return indices.containsKey(node);
+    }
+
+    public synchronized boolean addNode(Node node) {
+        if (node == null) {
+            throw new NullPointerException();
+        }
+
+        if (indices.containsKey(node)) return true;
+
+        if (!super.addNode(node)) {
+            return false;
+        }
+
+        int id = nodes.size() - 1;
+
+        if (id >= idNodes.length) {
+            int capacity = Math.max(2 * idNodes.length, 16);
+            idNodes = Arrays.copyOf(idNodes, capacity);
+            adjacent = Arrays.copyOf(adjacent, capacity);
+            adjacentEdges = Arrays.copyOf(adjacentEdges, capacity);
+            degree = Arrays.copyOf(degree, capacity);
+        }
+
+        indices.put(node, id);
+        idNodes[id] = node;
+        adjacent[id] = new int[4];
+        adjacentEdges[id] = new Edge[4];
+        degree[id] = 0;
+        return true;
+    }
+
+    public synchronized boolean addEdge(Edge edge) {
+        if (edge == null) throw new NullPointerException();
+
+        Integer i = indices.get(edge.getNode1());
+        Integer j = indices.get(edge.getNode2());
+
+        if (i == null || j == null) {
+            throw new NullPointerException("Can't add an edge unless both " +
+                    "nodes are in the graph: " + edge);
+        }
+
+        Edge existing = getEdge(i, j);
+
+        if (existing != null) {
+            if (existing.equals(edge)) return true;
+            throw new IllegalArgumentException("Already adjacent: " + existing);
+        }
+
+        if (!super.addEdge(edge)) {
+            return false;
+        }
+
+        insert(i, j, edge);
+        if (!i.equals(j)) insert(j, i, edge);
+        return true;
+    }
+
+    public synchronized boolean removeEdge(Edge edge) {
+        if (!super.removeEdge(edge)) {
+            return false;
+        }
+
+        int i = indices.get(edge.getNode1());
+        int j = indices.get(edge.getNode2());
+        delete(i, j);
+        if (i != j) delete(j, i);
+        return true;
+    }
+
+    public synchronized boolean removeNode(Node node) {
+        if (!indices.containsKey(node)) {
+            return false;
+        }
+
+        boolean changed = super.removeNode(node);
+        reindex();
+        return changed;
+    }
+
+    public synchronized void clear() {
+        super.clear();
+        edgesSet.clear();
+        reindex();
+    }
+
+    public synchronized void fullyConnect(Endpoint endpoint) {
+        for (int i = 0; i < nodes.size(); i++) degree[i] = 0;
+        super.fullyConnect(endpoint);
+    }
+
+    public void setNodes(List<Node> nodes) {
+        super.setNodes(nodes);
+        reindex();
+    }
+
+    //===============================PRIVATE METHODS======================//
+
+    // Nodes adjacent to node whose edge has the given endpoints at node and at the adjacent
+    // node; a null endpoint matches anything.
+    private List<Node> getNodesInto(Node node, Endpoint proximal, Endpoint distal) {
+        Integer i = indices.get(node);
+        if (i == null) return new ArrayList<>();
+
+        List<Node> nodes = new ArrayList<>(4);
+
+        for (int k = 0; k < degree[i]; k++) {
+            Edge edge = adjacentEdges[i][k];
+
+            if ((proximal == null || edge.getProximalEndpoint(node) == proximal)
+                    && (distal == null || edge.getDistalEndpoint(node) == distal)) {
+                nodes.add(idNodes[adjacent[i][k]]);
+            }
+        }
+
+        return nodes;
+    }
+
+    // Position of j among the nodes adjacent to i, or a negative number if not adjacent.
+    private int find(int i, int j) {
+        return Arrays.binarySearch(adjacent[i], 0, degree[i], j);
+    }
+
+    private void insert(int i, int j, Edge edge) {
+        int d = degree[i];
+        int k = -(find(i, j) + 1);
+
+        if (d == adjacent[i].length) {
+            adjacent[i] = Arrays.copyOf(adjacent[i], 2 * d);
+            adjacentEdges[i] = Arrays.copyOf(adjacentEdges[i], 2 * d);
+        }
+
+        System.arraycopy(adjacent[i], k, adjacent[i], k + 1, d - k);
+        System.arraycopy(adjacentEdges[i], k, adjacentEdges[i], k + 1, d - k);
+        adjacent[i][k] = j;
+        adjacentEdges[i][k] = edge;
+        degree[i] = d + 1;
+    }
+
+    private void delete(int i, int j) {
+        int k = find(i, j);
+        if (k < 0) return;
+        int d = degree[i];
+
+        System.arraycopy(adjacent[i], k + 1, adjacent[i], k, d - k - 1);
+        System.arraycopy(adjacentEdges[i], k + 1, adjacentEdges[i], k, d - k - 1);
+        adjacentEdges[i][d - 1] = null;
+        degree[i] = d - 1;
+    }
+
+    // Rebuilds the index from the node list and the edge set.
+    private void reindex() {
+        int n = nodes.size();
+        int capacity = Math.max(n, 16);
+
+        indices = new HashMap<>();
+        idNodes = new Node[capacity];
+        adjacent = new int[capacity][];
+        adjacentEdges = new Edge[capacity][];
+        degree = new int[capacity];
+
+        for (int i = 0; i < n; i++) {
+            Node node = nodes.get(i);
+            indices.put(node, i);
+            idNodes[i] = node;
+            adjacent[i] = new int[4];
+            adjacentEdges[i] = new Edge[4];
+        }
+
+        for (Edge edge : edgesSet) {
+            Integer i = indices.get(edge.getNode1());
+            Integer j = indices.get(edge.getNode2());
+            if (i == null || j == null || find(i, j) >= 0) continue;
+            insert(i, j, edge);
+            if (!i.equals(j)) insert(j, i, edge);
+        }
+    }
+
+    /**
+     * Adds semantic checks to the default deserialization method. This method
+     * must have the standard signature for a readObject method, and the body of
+     * the method must begin with "s.defaultReadObject();". Other than that, any
+     * semantic checks can be specified and do not need to stay the same from
+     * version to version. A readObject method of this form may be added to any
+     * class, even if Tetrad sessions were previously saved out using a version
+     * of the class that didn't include it. (That's what the
+     * "s.defaultReadObject();" is for. See J. Bloch, Effective Java, for help.
+     */
+    private void readObject(ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        reindex();
+    }
+}
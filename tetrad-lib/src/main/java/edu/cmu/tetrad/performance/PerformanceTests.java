@@ -28,6 +28,8 @@ import edu.cmu.tetrad.graph.*;
 import edu.cmu.tetrad.search.*;
 import edu.cmu.tetrad.sem.LargeScaleSimulation;
 import edu.cmu.tetrad.util.RandomUtil;
+import edu.cmu.tetrad.util.StatUtils;
+import edu.cmu.tetrad.util.TetradMatrix;
 import edu.cmu.tetrad.util.TextTable;
 import org.junit.Test;
 
@@ -2279,6 +2281,207 @@ public class PerformanceTests {
         return dag;
     }
 
+    /**
+     * Compares the time per partial correlation of copying a submatrix out of the covariance matrix and inverting
+     * it (the path IndTestFisherZ used to take) with reading the covariance matrix directly into a reused
+     * workspace, for conditioning sets of size 0 through 8.
+     */
+    public void testPartialCorrelation(int numVars, int numCases, int numTests) {
+        init(new File("long.partialcorrelation." + numVars + "." + numCases + ".txt"),
+                "Compares partial correlation paths");
+
+        Graph graph = makeDag(numVars, 1);
+        LargeScaleSimulation simulator = new LargeScaleSimulation(graph);
+        DataSet data = simulator.simulateDataFisher(numCases);
+        ICovarianceMatrix cov = new CovarianceMatrix(data);
+
+        int maxZ = 8;
+        int[][][] choices = new int[maxZ + 1][numTests][];
+
+        for (int k = 0; k <= maxZ; k++) {
+            for (int t = 0; t < numTests; t++) {
+                List<Integer> indices = new ArrayList<>();
+                for (int i = 0; i < numVars; i++) indices.add(i);
+                Collections.shuffle(indices);
+                choices[k][t] = new int[k + 2];
+                for (int i = 0; i < k + 2; i++) choices[k][t][i] = indices.get(i);
+            }
+        }
+
+        TextTable table = new TextTable(maxZ + 2, 4);
+        table.setToken(0, 0, "|Z|");
+        table.setToken(0, 1, "Submatrix (ns)");
+        table.setToken(0, 2, "Workspace (ns)");
+        table.setToken(0, 3, "Speedup");
+
+        NumberFormat nf = new DecimalFormat("0.0");
+        double[] work = new double[maxZ * (maxZ + 2)];
+        int[] z = new int[maxZ];
+        double sum = 0.0;
+
+        for (int k = 0; k <= maxZ; k++) {
+            long[] times = new long[2];
+
+            // The first round warms up the JIT and is not recorded.
+            for (int round = 0; round < 2; round++) {
+                long start = System.nanoTime();
+
+                for (int t = 0; t < numTests; t++) {
+                    sum += StatUtils.partialCorrelation(cov.getSubmatrix(choices[k][t]).getMatrix());
+                }
+
+                long middle = System.nanoTime();
+
+                for (int t = 0; t < numTests; t++) {
+                    int[] choice = choices[k][t];
+                    System.arraycopy(choice, 2, z, 0, k);
+                    sum += StatUtils.partialCorrelation(cov, choice[0], choice[1], z, k, work);
+                }
+
+                long end = System.nanoTime();
+
+                times[0] = middle - start;
+                times[1] = end - middle;
+            }
+
+            table.setToken(k + 1, 0, Integer.toString(k));
+            table.setToken(k + 1, 1, nf.format(times[0] / (double) numTests));
+            table.setToken(k + 1, 2, nf.format(times[1] / (double) numTests));
+            table.setToken(k + 1, 3, nf.format(times[0] / (double) times[1]));
+        }
+
+        out.println(table);
+        out.println("(Checksum " + sum + ")");
+        out.close();
+    }
+
+    public void testCovariance(int numVars, int numCases) {
+        init(new File("long.covariance." + numVars + "." + numCases + ".txt"),
+                "Compares covariance matrix computations");
+
+        Graph graph = makeDag(numVars, 1);
+        LargeScaleSimulation simulator = new LargeScaleSimulation(graph);
+        DataSet data = simulator.simulateDataFisher(numCases);
+
+        String[] names = {"CovarianceMatrix", "CovarianceMatrix (blocked)", "CovarianceMatrixOnTheFly"};
+        TetradMatrix[] matrices = new TetradMatrix[names.length];
+        long[] times = new long[names.length];
+
+        // The first round warms up the JIT and is not recorded.
+        for (int round = 0; round < 2; round++) {
+            for (int m = 0; m < names.length; m++) {
+                long start = System.currentTimeMillis();
+
+                if (m == 0) {
+                    matrices[m] = new CovarianceMatrix(data).getMatrix();
+                } else if (m == 1) {
+                    matrices[m] = new CovarianceMatrix(data, true).getMatrix();
+                } else {
+                    matrices[m] = new CovarianceMatrixOnTheFly(data.copy()).getMatrix();
+                }
+
+                times[m] = System.currentTimeMillis() - start;
+            }
+        }
+
+        TextTable table = new TextTable(names.length + 1, 3);
+        table.setToken(0, 0, "Method");
+        table.setToken(0, 1, "Time (ms)");
+        table.setToken(0, 2, "Max |difference|");
+
+        for (int m = 0; m < names.length; m++) {
+            double max = 0.0;
+
+            for (int i = 0; i < numVars; i++) {
+                for (int j = 0; j < numVars; j++) {
+                    max = Math.max(max, Math.abs(matrices[m].get(i, j) - matrices[0].get(i, j)));
+                }
+            }
+
+            table.setToken(m + 1, 0, names[m]);
+            table.setToken(m + 1, 1, Long.toString(times[m]));
+            table.setToken(m + 1, 2, Double.toString(max));
+        }
+
+        out.println("# vars = " + numVars + " # cases = " + numCases);
+        out.println(table);
+        out.close();
+    }
+
+    public void testGraphCycles(int numVars, double edgeFactor) {
+        init(new File("long.graphcycles." + numVars + "." + edgeFactor + ".txt"),
+                "Compares cycle checks and ancestor queries");
+
+        Graph graph = new EdgeListGraph(makeDag(numVars, edgeFactor));
+        List<Node> nodes = graph.getNodes();
+        int numQueries = 10000;
+
+        RandomUtil.getInstance().setSeed(3828382L);
+        Node[][] queries = new Node[numQueries][2];
+
+        for (int q = 0; q < numQueries; q++) {
+            queries[q][0] = nodes.get(RandomUtil.getInstance().nextInt(nodes.size()));
+            queries[q][1] = nodes.get(RandomUtil.getInstance().nextInt(nodes.size()));
+        }
+
+        // Breadth first search from every node, as existsDirectedCycle used to do.
+        long start = System.currentTimeMillis();
+        boolean cycleBfs = false;
+
+        for (Node node : nodes) {
+            if (GraphUtils.existsDirectedPathFromToBreathFirst(node, node, graph)) {
+                cycleBfs = true;
+                break;
+            }
+        }
+
+        long timeBfs = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        boolean cycleTopological = graph.existsDirectedCycle();
+        long timeTopological = System.currentTimeMillis() - start;
+
+        // Ancestor sets recomputed for each query, as isAncestorOf used to do.
+        start = System.currentTimeMillis();
+        int countRecomputed = 0;
+
+        for (Node[] query : queries) {
+            if (graph.getAncestors(Collections.singletonList(query[1])).contains(query[0])) countRecomputed++;
+        }
+
+        long timeRecomputed = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        int countCached = 0;
+
+        for (Node[] query : queries) {
+            if (graph.isAncestorOf(query[0], query[1])) countCached++;
+        }
+
+        long timeCached = System.currentTimeMillis() - start;
+
+        TextTable table = new TextTable(5, 3);
+        table.setToken(0, 0, "Method");
+        table.setToken(0, 1, "Time (ms)");
+        table.setToken(0, 2, "Result");
+        table.setToken(1, 0, "Cycle check, BFS from each node");
+        table.setToken(1, 1, Long.toString(timeBfs));
+        table.setToken(1, 2, Boolean.toString(cycleBfs));
+        table.setToken(2, 0, "Cycle check, topological");
+        table.setToken(2, 1, Long.toString(timeTopological));
+        table.setToken(2, 2, Boolean.toString(cycleTopological));
+        table.setToken(3, 0, numQueries + " ancestor queries, recomputed");
+        table.setToken(3, 1, Long.toString(timeRecomputed));
+        table.setToken(3, 2, Integer.toString(countRecomputed));
+        table.setToken(4, 0, numQueries + " ancestor queries, cached");
+        table.setToken(4, 1, Long.toString(timeCached));
+        table.setToken(4, 2, Integer.toString(countCached));
+
+        out.println("# vars = " + numVars + " edge factor = " + edgeFactor);
+        out.println(table);
+        out.close();
+    }
+
     @Test
     public void printGraphDegrees() {
         int numVars = 30000;
@@ -2327,6 +2530,30 @@ public class PerformanceTests {
                     performanceTests.testGfci(numVars, edgeFactor);
                     break;
                 }
+                case "Covariance": {
+                    final int numVars = Integer.parseInt(args[1]);
+                    final int numCases = Integer.parseInt(args[2]);
+                    performanceTests.testCovariance(numVars, numCases);
+                    break;
+                }
+                case "GraphCycles": {
+                    final int numVars = Integer.parseInt(args[1]);
+                    final double edgeFactor = Double.parseDouble(args[2]);
+                    performanceTests.testGraphCycles(numVars, edgeFactor);
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("Not a configuration!");
+            }
+        } else if (args.length == 4) {
+            switch (args[0]) {
+                case "PartialCorrelation": {
+                    final int numVars = Integer.parseInt(args[1]);
+                    final int numCases = Integer.parseInt(args[2]);
+                    final int numTests = Integer.parseInt(args[3]);
+                    performanceTests.testPartialCorrelation(numVars, numCases, numTests);
+                    break;
+                }
                 default:
                     throw new IllegalArgumentException("Not a configuration!");
             }
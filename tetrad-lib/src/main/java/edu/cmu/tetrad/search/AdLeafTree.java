@@ -3,8 +3,6 @@ package edu.cmu.tetrad.search;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.DiscreteVariable;
 import edu.cmu.tetrad.graph.Node;
-import org.apache.commons.collections4.iterators.CollatingIterator;
-import org.apache.commons.collections4.map.HashedMap;
 
 import java.util.*;
 
@@ -14,6 +12,10 @@ import java.util.*;
  * on the same data.
  * </p>
  * Continuous variables in the data set are ignored.
+ * </p>
+ * The rows of each cell are kept as an int array. The cells for the most
+ * recently used sets of variables are cached, and the cells for a set are
+ * found by splitting those for the set without its last variable.
  *
  * @author Joseph Ramsey
  */
@@ -22,9 +24,6 @@ public class AdLeafTree {
     // The data set the tree is for.
     private DataSet dataSet;
 
-    // Contains the root of the tree.
-    private List<Vary> baseCase;
-
     // Indices of variables.
     private Map<Node, Integer> nodesHash;
 
@@ -34,6 +33,20 @@ public class AdLeafTree {
     // Dimensions of the discrete variables (otherwise 0).
     private int[] dims;
 
+    // The maximum number of sets of variables whose cells are cached.
+    private int cacheSize = 1000;
+
+    // The cells for sets of variables, keyed by their sorted column indices, least recently used first.
+    private final Map<Key, int[][]> cells = new LinkedHashMap<Key, int[][]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, int[][]> eldest) {
+            return size() > cacheSize;
+        }
+    };
+
+    // The one cell for no variables, all of the rows.
+    private final int[][] all;
+
     public AdLeafTree(DataSet dataSet) {
         this.dataSet = dataSet;
 
@@ -62,6 +75,28 @@ public class AdLeafTree {
             nodesHash.put(v, j);
         }
 
+        all = new int[1][dataSet.getNumRows()];
+        for (int i = 0; i < dataSet.getNumRows(); i++) all[0][i] = i;
+    }
+
+    /**
+     * Finds the rows in each cell of the given variables, with rows missing a value
+     * for any of them left out. Counts are the lengths of the row arrays. The arrays
+     * are shared and must not be modified.
+     *
+     * @param A A list of discrete variables.
+     * @return The rows for each combination of values of the variables, in order of
+     * the columns of the variables in the data, the first varied most slowly.
+     */
+    public int[][] getCellRows(List<DiscreteVariable> A) {
+        int[] cols = new int[A.size()];
+
+        for (int i = 0; i < A.size(); i++) {
+            cols[i] = nodesHash.get(A.get(i));
+        }
+
+        Arrays.sort(cols);
+        return getCells(cols, cols.length);
     }
 
     /**
@@ -73,30 +108,12 @@ public class AdLeafTree {
      * and so on, to the last variable.
      */
     public List<List<Integer>> getCellLeaves(List<DiscreteVariable> A) {
-        Collections.sort(A, new Comparator<DiscreteVariable>() {
-
-            @Override
-            public int compare(DiscreteVariable o1, DiscreteVariable o2) {
-                return Integer.compare(nodesHash.get(o1), nodesHash.get(o2));
-            }
-        });
-
-        if (baseCase == null) {
-            Vary vary = new Vary();
-            this.baseCase = new ArrayList<>();
-            baseCase.add(vary);
-        }
-
-        List<Vary> varies = baseCase;
-
-        for (DiscreteVariable v : A) {
-            varies = getVaries(varies, nodesHash.get(v));
-        }
+        sort(A);
 
         List<List<Integer>> rows = new ArrayList<>();
 
-        for (Vary vary : varies) {
-            rows.addAll(vary.getRows());
+        for (int[] cell : getCellRows(A)) {
+            rows.add(toList(cell));
         }
 
         return rows;
@@ -111,33 +128,21 @@ public class AdLeafTree {
      * and so on, to the last variable.
      */
     public List<List<List<Integer>>> getCellLeaves(List<DiscreteVariable> A, DiscreteVariable B) {
-        Collections.sort(A, new Comparator<DiscreteVariable>() {
-
-            @Override
-            public int compare(DiscreteVariable o1, DiscreteVariable o2) {
-                return Integer.compare(nodesHash.get(o1), nodesHash.get(o2));
-            }
-        });
+        sort(A);
 
-        if (baseCase == null) {
-            Vary vary = new Vary();
-            this.baseCase = new ArrayList<>();
-            baseCase.add(vary);
-        }
-
-        List<Vary> varies = baseCase;
-
-        for (DiscreteVariable v : A) {
-            varies = getVaries(varies, nodesHash.get(v));
-        }
+        int b = nodesHash.get(B);
+        int[][] split = split(getCellRows(A), b);
 
         List<List<List<Integer>>> rows = new ArrayList<>();
 
-        for (Vary vary : varies) {
-            for (int i = 0; i < vary.getNumCategories(); i++) {
-                Vary subvary = vary.getSubvary(nodesHash.get(B), i);
-                rows.add(subvary.getRows());
+        for (int c = 0; c < split.length; c += dims[b]) {
+            List<List<Integer>> subrows = new ArrayList<>();
+
+            for (int k = 0; k < dims[b]; k++) {
+                subrows.add(toList(split[c + k]));
             }
+
+            rows.add(subrows);
         }
 
         return rows;
@@ -145,77 +150,106 @@ public class AdLeafTree {
 
     public void setColumn(DiscreteVariable var, int[] col) {
         discreteData[dataSet.getColumn(var)] = col;
+
+        synchronized (cells) {
+            cells.clear();
+        }
     }
 
-    private List<Vary> getVaries(List<Vary> varies, int v) {
-        List<Vary> _varies = new ArrayList<>();
+    /**
+     * Sets the maximum number of sets of variables whose cells are kept for reuse. By
+     * default 1000.
+     */
+    public void setCacheSize(int cacheSize) {
+        if (cacheSize < 0) throw new IllegalArgumentException("Cache size must be >= 0: " + cacheSize);
+        this.cacheSize = cacheSize;
+    }
+
+    private void sort(List<DiscreteVariable> A) {
+        Collections.sort(A, new Comparator<DiscreteVariable>() {
 
-        for (Vary vary : varies) {
-            for (int i = 0; i < vary.getNumCategories(); i++) {
-                _varies.add(vary.getSubvary(v, i));
+            @Override
+            public int compare(DiscreteVariable o1, DiscreteVariable o2) {
+                return Integer.compare(nodesHash.get(o1), nodesHash.get(o2));
             }
+        });
+    }
+
+    // The cells for the first n of the given sorted columns.
+    private int[][] getCells(int[] cols, int n) {
+        if (n == 0) {
+            return all;
         }
 
-        return _varies;
-    }
+        Key key = new Key(Arrays.copyOf(cols, n));
 
-    private class Vary {
-        int col;
-        int numCategories;
-        List<List<Integer>> rows = new ArrayList<>();
-        List<Map<Integer, Vary>> subVaries = new ArrayList<>();
+        synchronized (cells) {
+            int[][] _cells = cells.get(key);
+            if (_cells != null) return _cells;
+        }
 
-        // Base case.
-        public Vary() {
-            List<Integer> _rows = new ArrayList<>();
-            for (int i = 0; i < dataSet.getNumRows(); i++) {
-                _rows.add(i);
-            }
+        int[][] _cells = split(getCells(cols, n - 1), cols[n - 1]);
 
-            subVaries.add(new HashMap<Integer, Vary>());
-            numCategories = 1;
-            rows.add(_rows);
-            subVaries = new ArrayList<>();
-            subVaries.add(new HashMap<Integer, Vary>());
+        synchronized (cells) {
+            cells.put(key, _cells);
         }
 
-        public Vary(int col, int numCategories, List<Integer> supRows, int[][] discreteData) {
-            this.col = col;
-            this.numCategories = numCategories;
+        return _cells;
+    }
+
+    // Splits each of the given cells by the values of the given column, dropping rows where it is missing.
+    private int[][] split(int[][] cells, int col) {
+        int dim = dims[col];
+        int[] data = discreteData[col];
+        int[][] split = new int[cells.length * dim][];
+        int[] counts = new int[dim];
 
-            for (int i = 0; i < numCategories; i++) {
-                rows.add(new ArrayList<Integer>());
+        for (int c = 0; c < cells.length; c++) {
+            Arrays.fill(counts, 0);
+
+            for (int row : cells[c]) {
+                int value = data[row];
+                if (value != -99) counts[value]++;
             }
 
-            for (int i = 0; i < numCategories; i++) {
-                subVaries.add(new HashedMap<Integer, Vary>());
+            for (int k = 0; k < dim; k++) {
+                split[c * dim + k] = new int[counts[k]];
             }
 
-            for (int i : supRows) {
-                int index = discreteData[col][i];
-                if (index != -99) {
-                    rows.get(index).add(i);
-                }
+            Arrays.fill(counts, 0);
+
+            for (int row : cells[c]) {
+                int value = data[row];
+                if (value != -99) split[c * dim + value][counts[value]++] = row;
             }
         }
 
-        public List<List<Integer>> getRows() {
-            return rows;
-        }
+        return split;
+    }
+
+    private static List<Integer> toList(int[] cell) {
+        List<Integer> rows = new ArrayList<>(cell.length);
+        for (int row : cell) rows.add(row);
+        return rows;
+    }
 
-        public Vary getSubvary(int w, int cat) {
-            Vary vary = subVaries.get(cat).get(w);
+    private static final class Key {
+        private final int[] cols;
+        private final int hashCode;
 
-            if (vary == null) {
-                vary = new Vary(w, dims[w], rows.get(cat), discreteData);
-                subVaries.get(cat).put(w, vary);
-            }
+        private Key(int[] cols) {
+            this.cols = cols;
+            this.hashCode = Arrays.hashCode(cols);
+        }
 
-            return vary;
+        @Override
+        public int hashCode() {
+            return hashCode;
         }
 
-        public int getNumCategories() {
-            return numCategories;
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(cols, ((Key) o).cols);
         }
     }
 }
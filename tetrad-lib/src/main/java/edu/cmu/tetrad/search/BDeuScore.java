@@ -25,6 +25,7 @@ import edu.cmu.tetrad.data.*;
 import edu.cmu.tetrad.graph.Node;
 import org.apache.commons.math3.special.Gamma;
 
+import java.nio.IntBuffer;
 import java.util.List;
 
 /**
@@ -32,7 +33,12 @@ import java.util.List;
  */
 public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
     private List<Node> variables;
-    private int[][] data;
+
+    // The columns of data, packed for counting; null if the data is in a MappedDataBox.
+    private PackedDiscreteData data;
+
+    // The columns of data mapped from disk, read in place; null unless the data is in a MappedDataBox.
+    private IntBuffer[] mappedData;
     private int sampleSize;
 
     private double samplePrior = 1;
@@ -45,34 +51,25 @@ public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
             throw new NullPointerException("Data was not provided.");
         }
 
-        if (dataSet instanceof BoxDataSet) {
-            DataBox dataBox = ((BoxDataSet) dataSet).getDataBox();
-
-            this.variables = dataSet.getVariables();
-
-            if (!(dataBox instanceof VerticalIntDataBox)) {
-                dataBox = new VerticalIntDataBox(dataBox);
-            }
-
-            VerticalIntDataBox box = (VerticalIntDataBox) dataBox;
+        this.variables = dataSet.getVariables();
+        DataBox dataBox = dataSet instanceof BoxDataSet ? ((BoxDataSet) dataSet).getDataBox() : null;
 
-            data = box.getVariableVectors();
-            this.sampleSize = dataSet.getNumRows();
-        } else {
-            data = new int[dataSet.getNumColumns()][];
-            this.variables = dataSet.getVariables();
+        if (dataBox instanceof MappedDataBox) {
+            mappedData = new IntBuffer[dataSet.getNumColumns()];
 
             for (int j = 0; j < dataSet.getNumColumns(); j++) {
-                data[j] = new int[dataSet.getNumRows()];
+                mappedData[j] = ((MappedDataBox) dataBox).getIntBuffer(j);
 
-                for (int i = 0; i < dataSet.getNumRows(); i++) {
-                    data[j][i] = dataSet.getInt(i, j);
+                if (mappedData[j] == null) {
+                    throw new IllegalArgumentException("Not a discrete variable: " + variables.get(j));
                 }
             }
-
-            this.sampleSize = dataSet.getNumRows();
+        } else {
+            data = new PackedDiscreteData(dataSet);
         }
 
+        this.sampleSize = dataSet.getNumRows();
+
         final List<Node> variables = dataSet.getVariables();
         numCategories = new int[variables.size()];
         for (int i = 0; i < variables.size(); i++) {
@@ -104,54 +101,39 @@ public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
             r *= dims[p];
         }
 
-        // Conditional cell coefs of data for node given parents(node).
-        int n_jk[][] = new int[r][c];
-        int n_j[] = new int[r];
-
-        int[] parentValues = new int[parents.length];
+        // Conditional cell coefs of data for node given parents(node), at [j * c + k].
+        int[] n_jk;
 
-        int[][] myParents = new int[parents.length][];
-        for (int i = 0; i < parents.length; i++) {
-            myParents[i] = data[parents[i]];
+        if (mappedData != null) {
+            n_jk = new int[r * c];
+            countMapped(node, parents, dims, c, n_jk);
+        } else {
+            n_jk = data.count(append(parents, node));
         }
 
-        int[] myChild = data[node];
-
-
-        ROW:
-        for (int i = 0; i < sampleSize; i++) {
-            for (int p = 0; p < parents.length; p++) {
-                if (myParents[p][i] == -99) continue ROW;
-                parentValues[p] = myParents[p][i];
-            }
-
-            int childValue = myChild[i];
-
-            if (childValue == -99) {
-                continue ROW;
-//                throw new IllegalStateException("Please remove or impute missing " +
-//                        "values (record " + i + " column " + i + ")");
-            }
-
-            int rowIndex = getRowIndex(dims, parentValues);
-
-            n_jk[rowIndex][childValue]++;
-            n_j[rowIndex]++;
-        }
+        return score(parents.length, n_jk, r, c);
+    }
 
-        //Finally, compute the score
+    // The score for a node with the given number of parents, from its counts for each parent state and value.
+    private double score(int numParents, int[] n_jk, int r, int c) {
         double score = 0.0;
 
-        score += getPriorForStructure(parents.length);
+        score += getPriorForStructure(numParents);
 
         final double cellPrior = getSamplePrior() / (c * r);
         final double rowPrior = getSamplePrior() / r;
 
         for (int j = 0; j < r; j++) {
-            score -= Gamma.logGamma(rowPrior + n_j[j]);
+            int n_j = 0;
+
+            for (int k = 0; k < c; k++) {
+                n_j += n_jk[j * c + k];
+            }
+
+            score -= Gamma.logGamma(rowPrior + n_j);
 
             for (int k = 0; k < c; k++) {
-                score += Gamma.logGamma(cellPrior + n_jk[j][k]);
+                score += Gamma.logGamma(cellPrior + n_jk[j * c + k]);
             }
         }
 
@@ -161,20 +143,69 @@ public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
         return score;
     }
 
+    // Counts the cells from the mapped buffers.
+    private void countMapped(int node, int[] parents, int[] dims, int c, int[] n_jk) {
+        int[] parentValues = new int[parents.length];
+
+        IntBuffer[] myParents = new IntBuffer[parents.length];
+        for (int i = 0; i < parents.length; i++) {
+            myParents[i] = mappedData[parents[i]];
+        }
+
+        IntBuffer myChild = mappedData[node];
+
+        ROW:
+        for (int i = 0; i < sampleSize; i++) {
+            for (int p = 0; p < parents.length; p++) {
+                int parentValue = myParents[p].get(i);
+                if (parentValue == -99) continue ROW;
+                parentValues[p] = parentValue;
+            }
+
+            int childValue = myChild.get(i);
+
+            if (childValue == -99) {
+                continue;
+            }
+
+            int rowIndex = getRowIndex(dims, parentValues);
+
+            n_jk[rowIndex * c + childValue]++;
+        }
+    }
+
     private double getPriorForStructure(int numParents) {
         double e = getStructurePrior();
-        int vm = data.length - 1;
+        int vm = variables.size() - 1;
         return numParents * Math.log(e / (vm)) + (vm - numParents) * Math.log(1.0 - (e / (vm)));
     }
 
     @Override
     public double localScoreDiff(int x, int y, int[] z) {
-        return localScore(y, append(z, x)) - localScore(y, z);
+
+        // With nothing missing for x, the counts for y given z are margins of those for y given
+        // z and x, so one pass over the data gives both.
+        if (mappedData != null || data.hasMissing(x)) {
+            return localScore(y, append(z, x)) - localScore(y, z);
+        }
+
+        int c = numCategories[y];
+        int d = numCategories[x];
+        int r = 1;
+
+        for (int p = 0; p < z.length; p++) {
+            r *= numCategories[z[p]];
+        }
+
+        int[] n_jk = data.count(append(append(z, x), y));
+        double with = score(z.length + 1, n_jk, r * d, c);
+        double without = score(z.length, data.marginalize(n_jk, r, d, c), r, c);
+        return with - without;
     }
 
     @Override
     public double localScoreDiff(int x, int y) {
-        return localScore(y, x) - localScore(y);
+        return localScoreDiff(x, y, new int[0]);
     }
 
     int[] append(int[] parents, int extra) {
@@ -186,7 +186,7 @@ public final class BayesUpdaterClassifier
         }
 
         //Create an updater for the instantiated Bayes net.
-        BayesUpdater bayesUpdater = new RowSummingExactUpdater(getBayesIm());
+        BayesUpdater bayesUpdater = new JunctionTreeUpdater(getBayesIm());
 
         //Get the raw data from the dataset to be classified, the number
         //of variables and the number of cases.
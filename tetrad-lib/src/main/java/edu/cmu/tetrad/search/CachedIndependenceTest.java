@@ -0,0 +1,390 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.DataModel;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.ICovarianceMatrix;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.TetradMatrix;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Wraps an independence test, remembering the result of each test done so that a repeated
+ * test is not redone. Results are keyed by x, y and the conditioning set, in either order of
+ * x and y and any order of the conditioning set. This helps the PC family of searches, which
+ * repeat tests between the adjacency and orientation phases, and a search run on the same
+ * data after another, for instance CPC after PC, if the same wrapper is given to both.
+ * <p>
+ * The decision, p-value and score of a test are remembered together with the alpha they were
+ * found at, since the scale of the score differs from test to test and may depend on alpha.
+ * After alpha is changed, a test is done again by the wrapped test unless it was done before
+ * at the new alpha, so that in a sweep over alpha the scores compared by a search always come
+ * from the wrapped test at the current alpha. The results may be saved to a file and loaded
+ * for a later session on the same variables.
+ * <p>
+ * Results are stored with their exact keys, so that a hash collision is a miss rather than a
+ * wrong result. Tests not remembered are passed to the wrapped test without locking, so if the
+ * wrapper is used from several threads, the wrapped test must allow that, as for the concurrent
+ * adjacency searches.
+ *
+ * @see ConcurrentScoreCache
+ */
+public class CachedIndependenceTest implements IndependenceTest {
+
+    // Tags for the kinds of results remembered for a test.
+    private static final int DECISION = 0;
+    private static final int P_VALUE = 1;
+    private static final int SCORE = 2;
+
+    // The wrapped test.
+    private final IndependenceTest test;
+
+    // The names of the variables indexed in keys, which are those of the test wrapped at first.
+    private final List<String> variableNames;
+
+    // The index of each variable, for keys.
+    private final Map<Node, Integer> indices;
+
+    // Decisions, p-values and scores, each keyed by its kind, alpha and the test.
+    private final ConcurrentScoreCache results;
+
+    // The p-value and score of the last test done.
+    private double pValue = Double.NaN;
+    private double score = Double.NaN;
+
+    /**
+     * Wraps the given test, remembering up to a million results.
+     */
+    public CachedIndependenceTest(IndependenceTest test) {
+        this(test, 1000000);
+    }
+
+    /**
+     * Wraps the given test.
+     *
+     * @param capacity The maximum number of tests whose results are remembered.
+     */
+    public CachedIndependenceTest(IndependenceTest test, int capacity) {
+        if (test == null) throw new NullPointerException("Test must not be null.");
+
+        this.test = test;
+        this.variableNames = new ArrayList<>(test.getVariableNames());
+        this.indices = new HashMap<>();
+        this.results = new ConcurrentScoreCache(3 * capacity, 4 * Runtime.getRuntime().availableProcessors(), true);
+
+        List<Node> variables = test.getVariables();
+
+        for (int i = 0; i < variables.size(); i++) {
+            indices.put(variables.get(i), i);
+        }
+    }
+
+    // Wraps a test over some of the variables of the given wrapper, sharing its results.
+    private CachedIndependenceTest(IndependenceTest test, CachedIndependenceTest parent) {
+        this.test = test;
+        this.variableNames = parent.variableNames;
+        this.indices = parent.indices;
+        this.results = parent.results;
+    }
+
+    /**
+     * @return A wrapper of the subset test of the wrapped test, which shares the results
+     * remembered by this wrapper. Saving either saves the results of both.
+     */
+    public IndependenceTest indTestSubset(List<Node> vars) {
+        return new CachedIndependenceTest(test.indTestSubset(vars), this);
+    }
+
+    public boolean isIndependent(Node x, Node y, List<Node> z) {
+        double alpha = getAlpha();
+        int[] exactKey = exactKey(DECISION, alpha, x, y, z);
+
+        if (exactKey == null) {
+            boolean independent = test.isIndependent(x, y, z);
+            setLast(test.getPValue(), test.getScore());
+            return independent;
+        }
+
+        int[] pValueKey = retagged(P_VALUE, exactKey);
+        int[] scoreKey = retagged(SCORE, exactKey);
+
+        double independent = results.get(key(exactKey), exactKey);
+
+        if (!Double.isNaN(independent)) {
+            double _pValue = results.get(key(pValueKey), pValueKey);
+            double _score = results.get(key(scoreKey), scoreKey);
+
+            if (!Double.isNaN(_pValue) && !Double.isNaN(_score)) {
+                setLast(_pValue, _score);
+                return independent == 1.0;
+            }
+        }
+
+        boolean _independent = test.isIndependent(x, y, z);
+        double _pValue = test.getPValue();
+        double _score = test.getScore();
+
+        setLast(_pValue, _score);
+
+        results.put(key(exactKey), exactKey, _independent ? 1.0 : 0.0);
+        results.put(key(pValueKey), pValueKey, _pValue);
+        results.put(key(scoreKey), scoreKey, _score);
+
+        return _independent;
+    }
+
+    public boolean isIndependent(Node x, Node y, Node... z) {
+        return isIndependent(x, y, Arrays.asList(z));
+    }
+
+    public boolean isDependent(Node x, Node y, List<Node> z) {
+        return !isIndependent(x, y, z);
+    }
+
+    public boolean isDependent(Node x, Node y, Node... z) {
+        return isDependent(x, y, Arrays.asList(z));
+    }
+
+    /**
+     * @return The p-value of the last test done.
+     */
+    public synchronized double getPValue() {
+        return pValue;
+    }
+
+    /**
+     * @return The score of the last test done.
+     */
+    public synchronized double getScore() {
+        return score;
+    }
+
+    public List<Node> getVariables() {
+        return test.getVariables();
+    }
+
+    public Node getVariable(String name) {
+        return test.getVariable(name);
+    }
+
+    public List<String> getVariableNames() {
+        return test.getVariableNames();
+    }
+
+    public boolean determines(List<Node> z, Node y) {
+        return test.determines(z, y);
+    }
+
+    public double getAlpha() {
+        return test.getAlpha();
+    }
+
+    /**
+     * Sets alpha for the wrapped test. Results found at other values of alpha are kept.
+     */
+    public void setAlpha(double alpha) {
+        test.setAlpha(alpha);
+    }
+
+    public DataModel getData() {
+        return test.getData();
+    }
+
+    public ICovarianceMatrix getCov() {
+        return test.getCov();
+    }
+
+    public List<DataSet> getDataSets() {
+        return test.getDataSets();
+    }
+
+    public int getSampleSize() {
+        return test.getSampleSize();
+    }
+
+    public List<TetradMatrix> getCovMatrices() {
+        return test.getCovMatrices();
+    }
+
+    /**
+     * @return The wrapped test.
+     */
+    public IndependenceTest getTest() {
+        return test;
+    }
+
+    /**
+     * @return The results remembered, for their hit and miss counts. A miss is a test done by
+     * the wrapped test.
+     */
+    public ConcurrentScoreCache getCache() {
+        return results;
+    }
+
+    /**
+     * Writes the results remembered to the given file, each with its kind, alpha and the indices
+     * of its variables.
+     */
+    public void save(File file) throws IOException {
+        final List<int[]> exactKeys = new ArrayList<>();
+        final List<Double> values = new ArrayList<>();
+
+        results.forEach(new ConcurrentScoreCache.ExactEntryConsumer() {
+            public void accept(long key, int[] exactKey, double value) {
+                exactKeys.add(exactKey);
+                values.add(value);
+            }
+        });
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            writeVariableNames(out);
+            out.writeInt(exactKeys.size());
+
+            for (int i = 0; i < exactKeys.size(); i++) {
+                int[] exactKey = exactKeys.get(i);
+                out.writeInt(exactKey.length);
+
+                for (int index : exactKey) {
+                    out.writeInt(index);
+                }
+
+                out.writeDouble(values.get(i));
+            }
+        }
+    }
+
+    /**
+     * Reads results from a file written by save() for a test over the same variables, in the
+     * same order, adding them to those remembered. The data should be the same as well, though
+     * this cannot be checked.
+     */
+    public void load(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int numVariables = in.readInt();
+
+            if (numVariables != variableNames.size()) {
+                throw new IOException("Expecting " + variableNames.size() + " variables but found " + numVariables);
+            }
+
+            for (String name : variableNames) {
+                String _name = in.readUTF();
+
+                if (!name.equals(_name)) {
+                    throw new IOException("Expecting variable " + name + " but found " + _name);
+                }
+            }
+
+            int count = in.readInt();
+
+            for (int i = 0; i < count; i++) {
+                int length = in.readInt();
+
+                if (length < 5 || length > variableNames.size() + 3) {
+                    throw new IOException("Expecting 5 to " + (variableNames.size() + 3)
+                            + " ints for a result but found " + length);
+                }
+
+                int[] exactKey = new int[length];
+
+                for (int j = 0; j < length; j++) {
+                    exactKey[j] = in.readInt();
+                }
+
+                if (exactKey[0] < DECISION || exactKey[0] > SCORE) {
+                    throw new IOException("Unrecognized kind of result: " + exactKey[0]);
+                }
+
+                for (int j = 3; j < length; j++) {
+                    if (exactKey[j] < 0 || exactKey[j] >= variableNames.size()) {
+                        throw new IOException("Variable index out of range: " + exactKey[j]);
+                    }
+                }
+
+                double value = in.readDouble();
+                results.put(key(exactKey), exactKey, value);
+            }
+        }
+    }
+
+    public String toString() {
+        return test.toString();
+    }
+
+    //=============================PRIVATE METHODS=========================//
+
+    private synchronized void setLast(double pValue, double score) {
+        this.pValue = pValue;
+        this.score = score;
+    }
+
+    // The exact key for a result of the test: the kind of result, the high and low halves of
+    // the bits of alpha, the smaller and larger of the indices of x and y, and the sorted
+    // indices of z; or null if a variable is not known.
+    private int[] exactKey(int tag, double alpha, Node x, Node y, List<Node> z) {
+        Integer _x = indices.get(x);
+        Integer _y = indices.get(y);
+
+        if (_x == null || _y == null) return null;
+
+        int[] _z = new int[z.size()];
+
+        for (int i = 0; i < z.size(); i++) {
+            Integer index = indices.get(z.get(i));
+            if (index == null) return null;
+            _z[i] = index;
+        }
+
+        long bits = Double.doubleToLongBits(alpha);
+        return ConcurrentScoreCache.exactKey(_z, tag, (int) (bits >>> 32), (int) bits,
+                Math.min(_x, _y), Math.max(_x, _y));
+    }
+
+    // The hash key for the given exact key.
+    private static long key(int[] exactKey) {
+        int[] z = Arrays.copyOfRange(exactKey, 5, exactKey.length);
+        long key = ConcurrentScoreCache.key(ConcurrentScoreCache.key(exactKey[3], z), exactKey[4]);
+
+        for (int i = 0; i < 3; i++) {
+            key = ConcurrentScoreCache.key(key, exactKey[i]);
+        }
+
+        return key;
+    }
+
+    // The exact key for another kind of result of the same test at the same alpha.
+    private static int[] retagged(int tag, int[] exactKey) {
+        int[] retagged = exactKey.clone();
+        retagged[0] = tag;
+        return retagged;
+    }
+
+    private void writeVariableNames(DataOutputStream out) throws IOException {
+        out.writeInt(variableNames.size());
+
+        for (String name : variableNames) {
+            out.writeUTF(name);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.graph.Node;
+
+import java.util.List;
+
+import static edu.cmu.tetrad.search.ConcurrentScoreCache.key;
+
+/**
+ * Wraps a score so that local scores and local score differences are looked up in a
+ * ConcurrentScoreCache before being calculated. Any score can be wrapped, and the wrapped
+ * score may be called from multiple threads, as FGES does. If the cache is verified, each
+ * lookup also compares the exact node indices, so that hash collisions cannot return the
+ * wrong score.
+ *
+ * @see ConcurrentScoreCache
+ */
+public class CachedScore implements Score {
+
+    // The score being cached.
+    private final Score score;
+
+    // The cache.
+    private final ConcurrentScoreCache cache;
+
+    private static final int[] NONE = new int[0];
+
+    /**
+     * Wraps the given score with a cache of at most the given number of entries.
+     */
+    public CachedScore(Score score, int capacity) {
+        this(score, new ConcurrentScoreCache(capacity));
+    }
+
+    /**
+     * Wraps the given score with the given cache. The cache should not be shared with other scores.
+     */
+    public CachedScore(Score score, ConcurrentScoreCache cache) {
+        if (score == null) {
+            throw new NullPointerException("Score must not be null.");
+        }
+
+        if (cache == null) {
+            throw new NullPointerException("Cache must not be null.");
+        }
+
+        this.score = score;
+        this.cache = cache;
+    }
+
+    @Override
+    public double localScore(int node, int... parents) {
+        long key = key(node, parents);
+        int[] exactKey = exact(parents, 0, node);
+        double s = cache.get(key, exactKey);
+
+        if (Double.isNaN(s)) {
+            s = score.localScore(node, parents);
+            cache.put(key, exactKey, s);
+        }
+
+        return s;
+    }
+
+    @Override
+    public double localScoreDiff(int x, int y, int[] z) {
+        long key = key(key(y, z), x);
+        int[] exactKey = exact(z, 1, y, x);
+        double s = cache.get(key, exactKey);
+
+        if (Double.isNaN(s)) {
+            s = score.localScoreDiff(x, y, z);
+            cache.put(key, exactKey, s);
+        }
+
+        return s;
+    }
+
+    @Override
+    public double localScoreDiff(int x, int y) {
+        long key = key(key(y, x), -1);
+        int[] exactKey = exact(NONE, 2, y, x);
+        double s = cache.get(key, exactKey);
+
+        if (Double.isNaN(s)) {
+            s = score.localScoreDiff(x, y);
+            cache.put(key, exactKey, s);
+        }
+
+        return s;
+    }
+
+    @Override
+    public double localScore(int node, int parent) {
+        long key = key(node, parent);
+        int[] exactKey = exact(NONE, 3, node, parent);
+        double s = cache.get(key, exactKey);
+
+        if (Double.isNaN(s)) {
+            s = score.localScore(node, parent);
+            cache.put(key, exactKey, s);
+        }
+
+        return s;
+    }
+
+    @Override
+    public double localScore(int node) {
+        long key = key(node);
+        int[] exactKey = exact(NONE, 4, node);
+        double s = cache.get(key, exactKey);
+
+        if (Double.isNaN(s)) {
+            s = score.localScore(node);
+            cache.put(key, exactKey, s);
+        }
+
+        return s;
+    }
+
+    // The exact key, tagged with the kind of quantity, if the cache is verified; otherwise null.
+    private int[] exact(int[] set, int... fixed) {
+        return cache.isVerified() ? ConcurrentScoreCache.exactKey(set, fixed) : null;
+    }
+
+    @Override
+    public List<Node> getVariables() {
+        return score.getVariables();
+    }
+
+    @Override
+    public boolean isEffectEdge(double bump) {
+        return score.isEffectEdge(bump);
+    }
+
+    @Override
+    public int getSampleSize() {
+        return score.getSampleSize();
+    }
+
+    @Override
+    public Node getVariable(String targetName) {
+        return score.getVariable(targetName);
+    }
+
+    @Override
+    public int getMaxDegree() {
+        return score.getMaxDegree();
+    }
+
+    @Override
+    public boolean determines(List<Node> z, Node y) {
+        return score.determines(z, y);
+    }
+
+    /**
+     * @return The wrapped score.
+     */
+    public Score getScore() {
+        return score;
+    }
+
+    /**
+     * @return The cache, from which hit and miss counts may be read.
+     */
+    public ConcurrentScoreCache getCache() {
+        return cache;
+    }
+}
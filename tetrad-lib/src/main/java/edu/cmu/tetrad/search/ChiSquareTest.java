@@ -21,15 +21,12 @@
 
 package edu.cmu.tetrad.search;
 
-import edu.cmu.tetrad.data.CellTable;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.DiscreteVariable;
-import edu.cmu.tetrad.util.CombinationIterator;
+import edu.cmu.tetrad.data.PackedDiscreteData;
 import edu.cmu.tetrad.util.ProbUtils;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 
 /**
  * Calculates marginal chi square test results for a discrete dataset.
@@ -50,9 +47,9 @@ public class ChiSquareTest {
     private int[] dims;
 
     /**
-     * Stores the data in the form of a cell table.
+     * The data, packed for counting cells.
      */
-    private CellTable cellTable;
+    private final PackedDiscreteData data;
 
     /**
      * The significance level of the test.
@@ -83,8 +80,7 @@ public class ChiSquareTest {
 
         this.dataSet = dataSet;
         this.alpha = alpha;
-        this.cellTable = new CellTable(null);
-        this.getCellTable().setMissingValue(DiscreteVariable.MISSING_VALUE);
+        this.data = new PackedDiscreteData(dataSet);
     }
 
     /**
@@ -92,59 +88,134 @@ public class ChiSquareTest {
      * by summing up chi square and degrees of freedom for each conditional table in turn, where rows or columns that
      * consist entirely of zeros have been removed.
      */
-    public synchronized ChiSquareTest.Result calcChiSquare(int[] testIndices) {
+    public ChiSquareTest.Result calcChiSquare(int[] testIndices) {
+        double[] sums = sumConditionalTables(testIndices);
+        double xSquare = sums[0];
+        int df = (int) sums[1];
 
-        // Reset the cell table for the columns referred to in
-        // 'testIndices.' Do cell coefs for those columns.
-        this.getCellTable().addToTable(getDataSet(), testIndices);
+        // If df == 0, return indep.
+        // Actually if you don't know one way or the other, you should return dependent. jdramsey 12/22/2015
+        if (df == 0) {
+            double pValue = 1.0;
+            boolean indep = true;
+            return new ChiSquareTest.Result(xSquare, pValue, df, indep);
+        }
+
+        double pValue = 1.0 - ProbUtils.chisqCdf(xSquare, df);
+        boolean indep = (pValue > this.getAlpha());
+        return new ChiSquareTest.Result(xSquare, pValue, df, indep);
+    }
+
+    /**
+     * @param testIndices An array of indices for variables in the dataset supplied in the constructor.
+     * @param p           The probability that some marginal for some table dominates. A good value is 0.99.
+     * @return True if the variable at index 0 is determined by the variables at the other indices.
+     */
+    public boolean isDetermined(int[] testIndices, double p) {
+
+        // Count cells for the columns referred to in 'testIndices',
+        // with the conditioning variables first, so that each
+        // conditional table is a contiguous block of counts.
+        int[] columns = new int[testIndices.length];
+        System.arraycopy(testIndices, 1, columns, 0, testIndices.length - 1);
+        columns[testIndices.length - 1] = testIndices[0];
+
+        int numValues = getDims()[testIndices[0]];
+        int numTables = data.getNumCells(columns) / numValues;
+        int[] counts = data.count(columns);
+
+        for (int t = 0; t < numTables; t++) {
+            int offset = t * numValues;
+            long total = 0;
+
+            for (int i = 0; i < numValues; i++) {
+                total += counts[offset + i];
+            }
+
+            if (total == 0) {
+                continue;
+            }
+
+            boolean dominates = false;
 
-        // Indicator arrays to tell the cell table which margins
-        // to calculate. For x _||_ y | z1, z2, ..., we want to
-        // calculate the margin for x, the margin for y, and the
-        // margin for x and y. (These will be used later.)
-        int[] firstVar = new int[]{0};
-        int[] secondVar = new int[]{1};
-        int[] bothVars = new int[]{0, 1};
+            for (int i = 0; i < numValues; i++) {
+                long numi = counts[offset + i];
+
+                if ((double) numi / total >= p) {
+                    dominates = true;
+                }
+            }
+
+            if (!dominates) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Sums chi square and degrees of freedom over the conditional crosstabulation tables for 0 _||_ 1 | 2, 3, ...max,
+     * where rows or columns that consist entirely of zeros have been removed. The counts for all of the tables are
+     * taken in one pass over the data.
+     *
+     * @return the sum of chi square and the sum of degrees of freedom, in that order.
+     */
+    double[] sumConditionalTables(int[] testIndices) {
+
+        // Count cells for the columns referred to in 'testIndices',
+        // with the conditioning variables first, so that each
+        // conditional table is a contiguous block of counts, by
+        // row and then column.
+        int[] columns = new int[testIndices.length];
+        System.arraycopy(testIndices, 2, columns, 0, testIndices.length - 2);
+        columns[testIndices.length - 2] = testIndices[0];
+        columns[testIndices.length - 1] = testIndices[1];
+
+        int numRows = getDims()[testIndices[0]];
+        int numCols = getDims()[testIndices[1]];
+        int numTables = data.getNumCells(columns) / (numRows * numCols);
+        int[] counts = data.count(columns);
 
         double xSquare = 0.0;
         int df = 0;
 
-        int[] condDims = new int[testIndices.length - 2];
-        System.arraycopy(selectFromArray(getDims(), testIndices), 2, condDims, 0,
-                condDims.length);
-
-        int[] coords = new int[testIndices.length];
-        int numRows = this.getCellTable().getNumValues(0);
-        int numCols = this.getCellTable().getNumValues(1);
+        long[] sumRows = new long[numRows];
+        long[] sumCols = new long[numCols];
 
         boolean[] attestedRows = new boolean[numRows];
         boolean[] attestedCols = new boolean[numCols];
 
-        CombinationIterator combinationIterator =
-                new CombinationIterator(condDims);
+        double[] e = new double[numRows * numCols];
+        long[] o = new long[numRows * numCols];
+
+        for (int t = 0; t < numTables; t++) {
+            int offset = t * numRows * numCols;
 
-        while (combinationIterator.hasNext()) {
-            int[] combination = (int[]) combinationIterator.next();
+            Arrays.fill(sumRows, 0);
+            Arrays.fill(sumCols, 0);
+
+            for (int i = 0; i < numRows; i++) {
+                for (int j = 0; j < numCols; j++) {
+                    int observed = counts[offset + i * numCols + j];
+                    sumRows[i] += observed;
+                    sumCols[j] += observed;
+                }
+            }
 
-            System.arraycopy(combination, 0, coords, 2, combination.length);
             Arrays.fill(attestedRows, true);
             Arrays.fill(attestedCols, true);
 
-            long total = 0;// this.getCellTable().calcMargin(coords, bothVars);
+            long total = 0;
 
             double _xSquare = 0.0;
-
-            List<Double> e = new ArrayList<>();
-            List<Long> o = new ArrayList<>();
+            int numCells = 0;
 
             for (int i = 0; i < numRows; i++) {
                 for (int j = 0; j < numCols; j++) {
-                    coords[0] = i;
-                    coords[1] = j;
-
-                    long sumRow = this.getCellTable().calcMargin(coords, secondVar);
-                    long sumCol = this.getCellTable().calcMargin(coords, firstVar);
-                    long observed = (int) this.getCellTable().getValue(coords);
+                    long sumRow = sumRows[i];
+                    long sumCol = sumCols[j];
+                    long observed = counts[offset + i * numCols + j];
 
                     boolean skip = false;
 
@@ -164,14 +235,15 @@ public class ChiSquareTest {
 
                     total += observed;
 
-                    e.add((double) sumCol * sumRow);
-                    o.add(observed);
+                    e[numCells] = (double) sumCol * sumRow;
+                    o[numCells] = observed;
+                    numCells++;
                 }
             }
 
-            for (int i = 0; i < o.size(); i++) {
-                double expected = e.get(i) / (double) total;
-                _xSquare += Math.pow(o.get(i) - expected, 2.0) / expected;
+            for (int i = 0; i < numCells; i++) {
+                double expected = e[i] / (double) total;
+                _xSquare += Math.pow(o[i] - expected, 2.0) / expected;
             }
 
             if (total == 0) {
@@ -201,74 +273,7 @@ public class ChiSquareTest {
             }
         }
 
-        // If df == 0, return indep.
-        // Actually if you don't know one way or the other, you should return dependent. jdramsey 12/22/2015
-        if (df == 0) {
-            double pValue = 1.0;
-            boolean indep = true;
-            return new ChiSquareTest.Result(xSquare, pValue, df, indep);
-        }
-
-        double pValue = 1.0 - ProbUtils.chisqCdf(xSquare, df);
-        boolean indep = (pValue > this.getAlpha());
-        return new ChiSquareTest.Result(xSquare, pValue, df, indep);
-    }
-
-    /**
-     * @param testIndices An array of indices for variables in the dataset supplied in the constructor.
-     * @param p           The probability that some marginal for some table dominates. A good value is 0.99.
-     * @return True if the variable at index 0 is determined by the variables at the other indices.
-     */
-    public boolean isDetermined(int[] testIndices, double p) {
-
-        // Reset the cell table for the columns referred to in
-        // 'testIndices.' Do cell coefs for those columns.
-        this.getCellTable().addToTable(getDataSet(), testIndices);
-
-        // Indicator arrays to tell the cell table which margins
-        // to calculate. For x _||_ y | z1, z2, ..., we want to
-        // calculate the margin for x, the margin for y, and the
-        // margin for x and y. (These will be used later.)
-        int[] firstVar = new int[]{0};
-
-        int[] condDims = new int[testIndices.length - 1];
-        System.arraycopy(selectFromArray(getDims(), testIndices), 1, condDims, 0,
-                condDims.length);
-
-        int[] coords = new int[testIndices.length];
-        int numValues = this.getCellTable().getNumValues(0);
-
-        CombinationIterator combinationIterator =
-                new CombinationIterator(condDims);
-
-        while (combinationIterator.hasNext()) {
-            int[] combination = (int[]) combinationIterator.next();
-            System.arraycopy(combination, 0, coords, 1, combination.length);
-
-            long total = this.getCellTable().calcMargin(coords, firstVar);
-
-            if (total == 0) {
-                continue;
-            }
-
-            boolean dominates = false;
-
-            for (int i = 0; i < numValues; i++) {
-                coords[0] = i;
-
-                long numi = this.getCellTable().getValue(coords);
-
-                if ((double) numi / total >= p) {
-                    dominates = true;
-                }
-            }
-
-            if (!dominates) {
-                return false;
-            }
-        }
-
-        return true;
+        return new double[]{xSquare, df};
     }
 
 //    /**
@@ -389,10 +394,6 @@ public class ChiSquareTest {
         return dims;
     }
 
-    public CellTable getCellTable() {
-        return cellTable;
-    }
-
     //===============================CLASSES==============================//
 
     /**
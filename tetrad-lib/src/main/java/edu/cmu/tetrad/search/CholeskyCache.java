@@ -0,0 +1,356 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.ICovarianceMatrix;
+import org.apache.commons.math3.linear.SingularMatrixException;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps Cholesky factors of covariance submatrices for recently used parent sets, so that
+ * residual variances of a child given its parents can be calculated without inverting the
+ * parent covariance matrix from scratch each time. Factors are keyed by sorted parent arrays.
+ * When a parent set differs from a cached one by a single parent, the new factor is obtained
+ * by appending a row to the cached factor (adding a parent) or by deleting a row and applying
+ * a rank-one update to the trailing block (removing a parent), each in O(p^2) time rather than
+ * the O(p^3) it takes to factor or invert the matrix directly.
+ * <p>
+ * Factors are immutable once built, so the cache may be shared by threads scoring in parallel.
+ */
+public class CholeskyCache {
+
+    // The covariance matrix the factors are taken from.
+    private final ICovarianceMatrix covariances;
+
+    // Least recently used map from sorted parent sets to factors.
+    private final Map<Key, Factor> factors;
+
+    // The factor most recently used for each child, so that single-parent additions or removals
+    // in a search step can be found without looking through the cache.
+    private final Factor[] lastFactor;
+
+    /**
+     * Constructs a cache over the given covariance matrix.
+     *
+     * @param covariances The covariance matrix.
+     * @param capacity    The maximum number of factors to keep.
+     */
+    public CholeskyCache(ICovarianceMatrix covariances, final int capacity) {
+        if (covariances == null) {
+            throw new NullPointerException("Covariance matrix must not be null.");
+        }
+
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+        }
+
+        this.covariances = covariances;
+        this.lastFactor = new Factor[covariances.getDimension()];
+        this.factors = new LinkedHashMap<Key, Factor>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Factor> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the residual variance of variable i regressed on the given parents, that is,
+     * cov(i, i) - cov(i, P) cov(P, P)^-1 cov(P, i).
+     *
+     * @throws SingularMatrixException if cov(P, P) is not positive definite.
+     */
+    public double residualVariance(int i, int[] parents) {
+        Factor factor = getFactor(i, parents);
+        int p = factor.order.length;
+
+        // Forward substitution: w = L^-1 cov(P, i); the explained variance is w'w.
+        double[] w = new double[p];
+        double explained = 0.0;
+
+        for (int r = 0; r < p; r++) {
+            double sum = covariances.getValue(factor.order[r], i);
+            int row = r * (r + 1) / 2;
+
+            for (int c = 0; c < r; c++) {
+                sum -= factor.l[row + c] * w[c];
+            }
+
+            w[r] = sum / factor.l[row + r];
+            explained += w[r] * w[r];
+        }
+
+        return covariances.getValue(i, i) - explained;
+    }
+
+    /**
+     * Removes all cached factors.
+     */
+    public void clear() {
+        synchronized (factors) {
+            factors.clear();
+        }
+
+        Arrays.fill(lastFactor, null);
+    }
+
+    /**
+     * @return The number of factors currently cached.
+     */
+    public int size() {
+        synchronized (factors) {
+            return factors.size();
+        }
+    }
+
+    //=============================PRIVATE METHODS=========================//
+
+    private Factor getFactor(int i, int[] parents) {
+        int[] sorted = Arrays.copyOf(parents, parents.length);
+        Arrays.sort(sorted);
+        Key key = new Key(sorted);
+
+        Factor factor;
+
+        synchronized (factors) {
+            factor = factors.get(key);
+        }
+
+        if (factor == null) {
+            factor = fromLast(lastFactor[i], sorted);
+        }
+
+        if (factor == null) {
+            factor = fromCachedSubset(sorted);
+        }
+
+        if (factor == null) {
+            factor = Factor.EMPTY;
+
+            for (int parent : sorted) {
+                factor = append(factor, parent);
+            }
+        }
+
+        synchronized (factors) {
+            factors.put(key, factor);
+        }
+
+        lastFactor[i] = factor;
+        return factor;
+    }
+
+    // Builds the factor for the given sorted parents from the last factor used for the same child,
+    // if the two differ by exactly one parent.
+    private Factor fromLast(Factor last, int[] sorted) {
+        if (last == null) {
+            return null;
+        }
+
+        int[] lastSorted = last.sorted;
+
+        if (lastSorted.length + 1 == sorted.length) {
+            int extra = extraElement(sorted, lastSorted);
+            return extra == -1 ? null : append(last, extra);
+        } else if (lastSorted.length == sorted.length + 1) {
+            int extra = extraElement(lastSorted, sorted);
+            return extra == -1 ? null : remove(last, extra);
+        }
+
+        return null;
+    }
+
+    // Builds the factor for the given sorted parents by extending a cached factor for one of its
+    // subsets of size one smaller.
+    private Factor fromCachedSubset(int[] sorted) {
+        if (sorted.length == 0) {
+            return null;
+        }
+
+        int[] subset = new int[sorted.length - 1];
+
+        for (int k = 0; k < sorted.length; k++) {
+            System.arraycopy(sorted, 0, subset, 0, k);
+            System.arraycopy(sorted, k + 1, subset, k, sorted.length - k - 1);
+
+            Factor factor;
+
+            synchronized (factors) {
+                factor = factors.get(new Key(subset));
+            }
+
+            if (factor != null) {
+                return append(factor, sorted[k]);
+            }
+        }
+
+        return null;
+    }
+
+    // Returns the single element of the sorted array larger that is missing from the sorted
+    // array smaller, or -1 if larger is not smaller plus one element.
+    private static int extraElement(int[] larger, int[] smaller) {
+        int extra = -1;
+        int j = 0;
+
+        for (int v : larger) {
+            if (j < smaller.length && smaller[j] == v) {
+                j++;
+            } else if (extra == -1) {
+                extra = v;
+            } else {
+                return -1;
+            }
+        }
+
+        return j == smaller.length ? extra : -1;
+    }
+
+    // Adds variable x as a last row of the factor. O(p^2).
+    private Factor append(Factor factor, int x) {
+        int p = factor.order.length;
+        double[] l = Arrays.copyOf(factor.l, (p + 1) * (p + 2) / 2);
+        int row = p * (p + 1) / 2;
+        double d = covariances.getValue(x, x);
+
+        for (int r = 0; r < p; r++) {
+            double sum = covariances.getValue(factor.order[r], x);
+            int _row = r * (r + 1) / 2;
+
+            for (int c = 0; c < r; c++) {
+                sum -= l[_row + c] * l[row + c];
+            }
+
+            l[row + r] = sum / l[_row + r];
+            d -= l[row + r] * l[row + r];
+        }
+
+        if (!(d > 0)) {
+            throw new SingularMatrixException();
+        }
+
+        l[row + p] = Math.sqrt(d);
+
+        int[] order = Arrays.copyOf(factor.order, p + 1);
+        order[p] = x;
+        return new Factor(order, l);
+    }
+
+    // Deletes variable x from the factor. The rows below x lose their entries in x's column, which
+    // is folded back into the trailing block by a rank-one update. O(p^2).
+    private static Factor remove(Factor factor, int x) {
+        int p = factor.order.length;
+        int k = -1;
+
+        for (int r = 0; r < p; r++) {
+            if (factor.order[r] == x) {
+                k = r;
+                break;
+            }
+        }
+
+        if (k == -1) {
+            return null;
+        }
+
+        double[] l = new double[(p - 1) * p / 2];
+        int[] order = new int[p - 1];
+        double[] v = new double[p - 1];
+
+        for (int r = 0, _r = 0; r < p; r++) {
+            if (r == k) continue;
+            order[_r] = factor.order[r];
+
+            int row = r * (r + 1) / 2;
+            int _row = _r * (_r + 1) / 2;
+
+            for (int c = 0, _c = 0; c <= r; c++) {
+                if (c == k) {
+                    v[_r] = factor.l[row + c];
+                    continue;
+                }
+
+                l[_row + _c++] = factor.l[row + c];
+            }
+
+            _r++;
+        }
+
+        // Rank-one update of rows k and below with the deleted column.
+        for (int j = k; j < p - 1; j++) {
+            int jj = j * (j + 1) / 2 + j;
+            double ljj = l[jj];
+            double r = Math.hypot(ljj, v[j]);
+            double cos = r / ljj;
+            double sin = v[j] / ljj;
+            l[jj] = r;
+
+            for (int i = j + 1; i < p - 1; i++) {
+                int ij = i * (i + 1) / 2 + j;
+                l[ij] = (l[ij] + sin * v[i]) / cos;
+                v[i] = cos * v[i] - sin * l[ij];
+            }
+        }
+
+        return new Factor(order, l);
+    }
+
+    // A lower triangular Cholesky factor, packed by rows, of the covariance matrix over the
+    // variables in the given order.
+    private static final class Factor {
+        static final Factor EMPTY = new Factor(new int[0], new double[0]);
+
+        final int[] order;
+        final int[] sorted;
+        final double[] l;
+
+        Factor(int[] order, double[] l) {
+            this.order = order;
+            this.sorted = Arrays.copyOf(order, order.length);
+            Arrays.sort(this.sorted);
+            this.l = l;
+        }
+    }
+
+    private static final class Key {
+        private final int[] parents;
+        private final int hashCode;
+
+        Key(int[] parents) {
+            this.parents = Arrays.copyOf(parents, parents.length);
+            this.hashCode = Arrays.hashCode(this.parents);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(parents, ((Key) o).parents);
+        }
+    }
+}
@@ -0,0 +1,478 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, thread-safe map from (variable, parents) to score, stored in primitive arrays so
+ * that no keys or values are boxed. Each entry is identified by a 64-bit hash of the variable
+ * and the set of parents; the hash does not depend on the order in which the parents are given,
+ * so there is no need to sort them. Two different keys colliding in all 64 bits is assumed not
+ * to happen in practice, unless the cache is constructed as verified, in which case each entry
+ * also keeps its exact key, from exactKey(), and a lookup whose exact key differs is a miss.
+ * <p>
+ * The table is split into lock stripes, each an open-addressing table with linear probing. When
+ * a stripe is full, an entry is evicted using the CLOCK (second chance) policy. Hit, miss and
+ * eviction counts are kept so that the capacity can be sized.
+ *
+ * @see CachedScore
+ */
+public class ConcurrentScoreCache {
+
+    // Marks an empty slot; hashes that come out as 0 are mapped to 1.
+    private static final long EMPTY = 0L;
+
+    private final Stripe[] stripes;
+    private final int stripeShift;
+    private final int capacity;
+    private final boolean verified;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructs a cache holding at most approximately the given number of entries, with a
+     * number of lock stripes suited to the number of processors.
+     */
+    public ConcurrentScoreCache(int capacity) {
+        this(capacity, 4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a cache holding at most approximately the given number of entries.
+     *
+     * @param capacity   The maximum number of entries, rounded up to a multiple of the number
+     *                   of stripes.
+     * @param numStripes The number of independently locked stripes, rounded up to a power of 2.
+     */
+    public ConcurrentScoreCache(int capacity, int numStripes) {
+        this(capacity, numStripes, false);
+    }
+
+    /**
+     * Constructs a cache holding at most approximately the given number of entries.
+     *
+     * @param capacity   The maximum number of entries, rounded up to a multiple of the number
+     *                   of stripes.
+     * @param numStripes The number of independently locked stripes, rounded up to a power of 2.
+     * @param verified   True if entries keep their exact keys, so that hash collisions are
+     *                   detected, at the cost of an array per entry.
+     */
+    public ConcurrentScoreCache(int capacity, int numStripes, boolean verified) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+        }
+
+        if (numStripes < 1) {
+            throw new IllegalArgumentException("Number of stripes must be at least 1: " + numStripes);
+        }
+
+        int _numStripes = ceilPowerOfTwo(numStripes);
+        int perStripe = (capacity + _numStripes - 1) / _numStripes;
+
+        this.stripes = new Stripe[_numStripes];
+        this.stripeShift = 64 - Integer.numberOfTrailingZeros(_numStripes);
+        this.capacity = perStripe * _numStripes;
+        this.verified = verified;
+
+        for (int s = 0; s < _numStripes; s++) {
+            stripes[s] = new Stripe(perStripe, verified);
+        }
+    }
+
+    /**
+     * Returns the cached score for the given key, or NaN if there is none.
+     *
+     * @param key A key obtained from one of the key() methods.
+     */
+    public double get(long key) {
+        return get(key, null);
+    }
+
+    /**
+     * Returns the cached score for the given key, or NaN if there is none. In a verified cache,
+     * a score stored under a different exact key is not returned.
+     *
+     * @param key      A key obtained from one of the key() methods.
+     * @param exactKey The exact key, from exactKey(), which is ignored unless the cache is verified.
+     */
+    public double get(long key, int[] exactKey) {
+        key = nonEmpty(key);
+        double value = stripe(key).get(key, verified ? exactKey : null);
+
+        if (Double.isNaN(value)) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+
+        return value;
+    }
+
+    /**
+     * Stores a score for the given key. NaN scores are not stored, since NaN is returned
+     * for keys that are not found.
+     *
+     * @param key A key obtained from one of the key() methods.
+     */
+    public void put(long key, double score) {
+        put(key, null, score);
+    }
+
+    /**
+     * Stores a score for the given key, replacing any entry with the same key, whatever its exact key.
+     *
+     * @param key      A key obtained from one of the key() methods.
+     * @param exactKey The exact key, from exactKey(), which is ignored unless the cache is verified.
+     */
+    public void put(long key, int[] exactKey, double score) {
+        if (Double.isNaN(score)) return;
+        key = nonEmpty(key);
+        if (stripe(key).put(key, verified ? exactKey : null, score)) evictions.increment();
+    }
+
+    /**
+     * @return The key for the given variable and parents, independent of the order of the parents.
+     */
+    public static long key(int node, int[] parents) {
+        long sum = 0L;
+
+        for (int parent : parents) {
+            sum += mix(parent + 0x9E3779B97F4A7C15L);
+        }
+
+        return combine(node, parents.length, sum);
+    }
+
+    /**
+     * @return The key for the given variable with a single parent; equal to key(node, new int[]{parent}).
+     */
+    public static long key(int node, int parent) {
+        return combine(node, 1, mix(parent + 0x9E3779B97F4A7C15L));
+    }
+
+    /**
+     * @return The key for the given variable with no parents; equal to key(node, new int[0]).
+     */
+    public static long key(int node) {
+        return combine(node, 0, 0L);
+    }
+
+    /**
+     * @return The key for a quantity other than a local score that depends on the given key and
+     * an extra index, for instance a score difference for adding x to the parents of a node.
+     */
+    public static long key(long key, int extra) {
+        return mix(key ^ mix(extra + 0xC2B2AE3D27D4EB4FL));
+    }
+
+    /**
+     * @return The exact key for the given set of indices, in any order, following the given
+     * fixed indices, for instance a tag for the kind of quantity and a node. Two exact keys are
+     * equal just in case the fixed indices are equal and the sets are equal.
+     */
+    public static int[] exactKey(int[] set, int... fixed) {
+        int[] exactKey = new int[fixed.length + set.length];
+        System.arraycopy(fixed, 0, exactKey, 0, fixed.length);
+        System.arraycopy(set, 0, exactKey, fixed.length, set.length);
+        Arrays.sort(exactKey, fixed.length, exactKey.length);
+        return exactKey;
+    }
+
+    /**
+     * @return True if entries keep their exact keys.
+     */
+    public boolean isVerified() {
+        return verified;
+    }
+
+    /**
+     * @return The number of lookups that found a score.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return The number of lookups that found no score.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return The number of entries that have been evicted to make room for new ones.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return The maximum number of entries the cache will hold.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The number of entries currently in the cache.
+     */
+    public int size() {
+        int size = 0;
+
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.count;
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * Removes all entries and resets the counters.
+     */
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            stripe.clear();
+        }
+
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    /**
+     * Passes each entry to the given consumer, one stripe at a time. Entries added or evicted
+     * meanwhile may or may not be passed.
+     */
+    public void forEach(EntryConsumer consumer) {
+        for (Stripe stripe : stripes) {
+            stripe.forEach(consumer);
+        }
+    }
+
+    /**
+     * Passes each entry with its exact key, null if it has none, to the given consumer, one
+     * stripe at a time.
+     */
+    public void forEach(ExactEntryConsumer consumer) {
+        for (Stripe stripe : stripes) {
+            stripe.forEach(consumer);
+        }
+    }
+
+    /**
+     * Receives the entries of a cache.
+     */
+    public interface EntryConsumer {
+        void accept(long key, double value);
+    }
+
+    /**
+     * Receives the entries of a cache with their exact keys.
+     */
+    public interface ExactEntryConsumer {
+        void accept(long key, int[] exactKey, double value);
+    }
+
+    public String toString() {
+        return "ConcurrentScoreCache size = " + size() + " capacity = " + capacity
+                + " hits = " + getHits() + " misses = " + getMisses() + " evictions = " + getEvictions();
+    }
+
+    //=============================PRIVATE METHODS=========================//
+
+    private Stripe stripe(long key) {
+        return stripes.length == 1 ? stripes[0] : stripes[(int) (key >>> stripeShift)];
+    }
+
+    private static int ceilPowerOfTwo(int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    private static long nonEmpty(long key) {
+        return key == EMPTY ? 1L : key;
+    }
+
+    private static long combine(int node, int numParents, long parentSum) {
+        return mix(mix(node + 0xBF58476D1CE4E5B9L) ^ (parentSum + numParents * 0x94D049BB133111EBL));
+    }
+
+    // The finalization step of MurmurHash3.
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // One lock stripe: a linear probing table kept at most half full, with CLOCK reference bits.
+    private static final class Stripe {
+        private final long[] keys;
+        private final double[] values;
+        private final boolean[] referenced;
+
+        // The exact keys, if the cache is verified.
+        private final int[][] exactKeys;
+        private final int mask;
+        private final int maxCount;
+        private int count = 0;
+        private int hand = 0;
+
+        Stripe(int maxCount, boolean verified) {
+            int size = ceilPowerOfTwo(2 * maxCount);
+            this.keys = new long[size];
+            this.values = new double[size];
+            this.referenced = new boolean[size];
+            this.exactKeys = verified ? new int[size][] : null;
+            this.mask = size - 1;
+            this.maxCount = maxCount;
+        }
+
+        synchronized double get(long key, int[] exactKey) {
+            for (int i = slot(key); ; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    if (exactKeys != null && !Arrays.equals(exactKeys[i], exactKey)) {
+                        return Double.NaN;
+                    }
+
+                    referenced[i] = true;
+                    return values[i];
+                }
+
+                if (keys[i] == EMPTY) {
+                    return Double.NaN;
+                }
+            }
+        }
+
+        // Returns true if an entry was evicted.
+        synchronized boolean put(long key, int[] exactKey, double value) {
+            int i = slot(key);
+
+            for (; keys[i] != EMPTY; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    if (exactKeys != null) exactKeys[i] = exactKey;
+                    values[i] = value;
+                    referenced[i] = true;
+                    return false;
+                }
+            }
+
+            boolean evicted = false;
+
+            if (count == maxCount) {
+                evict();
+                evicted = true;
+
+                // Deletion may have shifted entries, so probe again for a free slot.
+                i = slot(key);
+
+                while (keys[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+            }
+
+            keys[i] = key;
+            values[i] = value;
+            referenced[i] = false;
+            if (exactKeys != null) exactKeys[i] = exactKey;
+            count++;
+            return evicted;
+        }
+
+        synchronized void forEach(EntryConsumer consumer) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != EMPTY) consumer.accept(keys[i], values[i]);
+            }
+        }
+
+        synchronized void forEach(ExactEntryConsumer consumer) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != EMPTY) consumer.accept(keys[i], exactKeys == null ? null : exactKeys[i], values[i]);
+            }
+        }
+
+        synchronized void clear() {
+            Arrays.fill(keys, EMPTY);
+            if (exactKeys != null) Arrays.fill(exactKeys, null);
+            Arrays.fill(referenced, false);
+            count = 0;
+            hand = 0;
+        }
+
+        private int slot(long key) {
+            return (int) key & mask;
+        }
+
+        // Advances the clock hand, giving referenced entries a second chance, and deletes the
+        // first unreferenced entry found.
+        private void evict() {
+            while (true) {
+                int i = hand;
+                hand = (hand + 1) & mask;
+
+                if (keys[i] == EMPTY) continue;
+
+                if (referenced[i]) {
+                    referenced[i] = false;
+                } else {
+                    delete(i);
+                    return;
+                }
+            }
+        }
+
+        // Backward shift deletion for linear probing, so that no tombstones are needed.
+        private void delete(int i) {
+            int j = i;
+
+            while (true) {
+                j = (j + 1) & mask;
+
+                if (keys[j] == EMPTY) break;
+
+                int k = slot(keys[j]);
+
+                // Move the entry at j back to i unless its home slot k lies cyclically in (i, j].
+                if ((j > i && (k <= i || k > j)) || (j < i && (k <= i && k > j))) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    referenced[i] = referenced[j];
+                    if (exactKeys != null) exactKeys[i] = exactKeys[j];
+                    i = j;
+                }
+            }
+
+            keys[i] = EMPTY;
+            referenced[i] = false;
+            if (exactKeys != null) exactKeys[i] = null;
+            count--;
+        }
+    }
+}
@@ -25,7 +25,6 @@
         import edu.cmu.tetrad.graph.Node;
         import edu.cmu.tetrad.util.TetradMatrix;
         import org.apache.commons.math3.linear.RealMatrix;
-        import org.apache.commons.math3.stat.correlation.Covariance;
         import org.apache.commons.math3.util.FastMath;
 
         import java.util.*;
@@ -66,9 +65,6 @@ public class ConditionalGaussianLikelihood {
     // Multiplier on degrees of freedom for the continuous portion of those degrees.
     private double penaltyDiscount = 1;
 
-    // "Cell" consisting of all rows.
-    private final ArrayList<Integer> all;
-
     // Discretize the parents
     private boolean discretize = false;
 
@@ -137,10 +133,6 @@ public class ConditionalGaussianLikelihood {
 
         this.dataSet = useErsatzVariables();
         this.adTree = new AdLeafTree(this.dataSet);
-
-        all = new ArrayList<>();
-        for (int i = 0; i < dataSet.getNumRows(); i++) all.add(i);
-
     }
 
     private DataSet useErsatzVariables() {
@@ -266,11 +258,14 @@ public class ConditionalGaussianLikelihood {
 
         double c1 = 0, c2 = 0;
 
-        List<List<Integer>> cells = adTree.getCellLeaves(A);
+        int[][] cells = adTree.getCellRows(A);
         //List<List<Integer>> cells = partition(A);
 
-        for (List<Integer> cell : cells) {
-            int a = cell.size();
+        // Covariance over all rows, for cells too small to estimate their own.
+        TetradMatrix allCov = null;
+
+        for (int[] cell : cells) {
+            int a = cell.length;
             if (a == 0) continue;
 
             if (A.size() > 0) {
@@ -282,11 +277,11 @@ public class ConditionalGaussianLikelihood {
 
                     // Determinant will be zero if data are linearly dependent.
                     if (a > continuousCols.length + 5) {
-                        TetradMatrix cov = cov(getSubsample(continuousCols, cell));
+                        TetradMatrix cov = cov(continuousCols, cell);
                         c2 += a * gaussianLikelihood(k, cov);
                     } else {
-                        TetradMatrix cov = cov(getSubsample(continuousCols, all));
-                        c2 += a * gaussianLikelihood(k, cov);
+                        if (allCov == null) allCov = cov(continuousCols, null);
+                        c2 += a * gaussianLikelihood(k, allCov);
                     }
                 } catch (Exception e) {
                     // No contribution.
@@ -322,21 +317,44 @@ public class ConditionalGaussianLikelihood {
         return 2.0 * sum;
     }
 
-    private TetradMatrix cov(TetradMatrix x) {
-        return new TetradMatrix(new Covariance(x.getRealMatrix(), true).getCovarianceMatrix());
-    }
+    // Bias-corrected covariance of the continuous mixedVariables over the rows of the given cell,
+    // or over all rows if the cell is null, read straight from the columns.
+    private TetradMatrix cov(int[] continuousCols, int[] cell) {
+        int k = continuousCols.length;
+        int n = cell == null ? mixedDataSet.getNumRows() : cell.length;
+        double[] means = new double[k];
 
-    // Subsample of the continuous mixedVariables conditioning on the given cell.
-    private TetradMatrix getSubsample(int[] continuousCols, List<Integer> cell) {
-        TetradMatrix subset = new TetradMatrix(cell.size(), continuousCols.length);
+        for (int j = 0; j < k; j++) {
+            double[] col = continuousData[continuousCols[j]];
+            double sum = 0.0;
+
+            for (int i = 0; i < n; i++) {
+                sum += col[cell == null ? i : cell[i]];
+            }
+
+            means[j] = sum / n;
+        }
+
+        double[][] cov = new double[k][k];
+
+        for (int j1 = 0; j1 < k; j1++) {
+            double[] col1 = continuousData[continuousCols[j1]];
+
+            for (int j2 = 0; j2 <= j1; j2++) {
+                double[] col2 = continuousData[continuousCols[j2]];
+                double sum = 0.0;
+
+                for (int i = 0; i < n; i++) {
+                    int row = cell == null ? i : cell[i];
+                    sum += (col1[row] - means[j1]) * (col2[row] - means[j2]);
+                }
 
-        for (int i = 0; i < cell.size(); i++) {
-            for (int j = 0; j < continuousCols.length; j++) {
-                subset.set(i, j, continuousData[continuousCols[j]][cell.get(i)]);
+                cov[j1][j2] = sum / (n - 1);
+                cov[j2][j1] = cov[j1][j2];
             }
         }
 
-        return subset;
+        return new TetradMatrix(cov);
     }
 
     // Degrees of freedom for a discrete distribution is the product of the number of categories for each
@@ -23,15 +23,21 @@ package edu.cmu.tetrad.search;
 
 import edu.cmu.tetrad.data.*;
 import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
 import edu.cmu.tetrad.util.TetradMatrix;
 import org.apache.commons.math3.distribution.ChiSquaredDistribution;
 
 import java.util.*;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Implements a test for simultaneously zero tetrads in Bollen, K. (1990). "Outlier screening and distribution-free test
  * for vanishing tetrads." Sociological Methods and Research 19, 80-92 and Bollen and Ting, Confirmatory Tetrad
  * Analysis.
+ * <p>
+ * When a data set is given, the fourth moments needed for the test are computed as needed and cached, so that tests
+ * of overlapping tetrads share them. The cache is bounded and thread-safe, and getPValues tests many sets of tetrads in
+ * parallel using it.
  *
  * @author Joseph Ramsey
  */
@@ -42,12 +48,13 @@ public class DeltaTetradTest {
     private ICovarianceMatrix cov;
     private int df;
     private double chisq;
-    //    private double[][][][] fourthMoment;
-//    private int numVars;
-//    private double[] means;
     private List<Node> variables;
     private Map<Node, Integer> variablesHash;
-//    private boolean cacheFourthMoments = false;
+    private boolean cacheFourthMoments = true;
+    private int fourthMomentCacheSize = 1000000;
+
+    // Fourth moments keyed by their sorted indices; created on first use.
+    private ConcurrentScoreCache fourthMoments;
 
 
     // As input we require a data set and a list of non-redundant Tetrads.
@@ -116,11 +123,6 @@ public class DeltaTetradTest {
         }
     }
 
-//    private void initializeForthMomentMatrix(List<Node> variables) {
-//        int n = variables.size();
-//        fourthMoment = new double[n][n][n][n];
-//    }
-
     /**
      * Takes a list of tetrads for the given data set and returns the chi square value for the test. We assume that the
      * tetrads are non-redundant; if not, a matrix exception will be thrown.
@@ -130,74 +132,127 @@ public class DeltaTetradTest {
      */
     public double calcChiSquare(Tetrad... tetrads) {
         this.df = tetrads.length;
+        this.chisq = chiSquare(tetrads);
+        return this.chisq;
+    }
+
+    /**
+     * @return the p value for the most recent test.
+     */
+    public double getPValue() {
+        double cdf = new ChiSquaredDistribution(this.df).cumulativeProbability(this.chisq);
+        return 1.0 - cdf;
+    }
+
+    public double getPValue(Tetrad... tetrads) {
+        calcChiSquare(tetrads);
+        return getPValue();
+    }
+
+    /**
+     * Tests each of the given sets of tetrads, in parallel.
+     *
+     * @param tetrads A list of sets of non-redundant tetrads.
+     * @return The p value for each set, in order. Does not change the result of getPValue().
+     */
+    public double[] getPValues(final List<Tetrad[]> tetrads) {
+        final double[] pValues = new double[tetrads.size()];
+        final int chunk = Math.max(1, tetrads.size()
+                / (4 * ForkJoinPoolInstance.getInstance().getPool().getParallelism()));
 
-        // Need a list of symbolic covariances--i.e. covariances that appear in tetrads.
-        Set<Sigma> boldSigmaSet = new LinkedHashSet<>();
-        List<Sigma> boldSigma = new ArrayList<>();
+        class PValueTask extends RecursiveAction {
+            private static final long serialVersionUID = 23L;
 
-        for (Tetrad tetrad : tetrads) {
-            boldSigmaSet.add(new Sigma(tetrad.getI(), tetrad.getK()));
-            boldSigmaSet.add(new Sigma(tetrad.getI(), tetrad.getL()));
-            boldSigmaSet.add(new Sigma(tetrad.getJ(), tetrad.getK()));
-            boldSigmaSet.add(new Sigma(tetrad.getJ(), tetrad.getL()));
+            private final int from;
+            private final int to;
+
+            private PValueTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from <= chunk) {
+                    for (int i = from; i < to; i++) {
+                        Tetrad[] _tetrads = tetrads.get(i);
+                        double cdf = new ChiSquaredDistribution(_tetrads.length)
+                                .cumulativeProbability(chiSquare(_tetrads));
+                        pValues[i] = 1.0 - cdf;
+                    }
+                } else {
+                    int mid = (from + to) / 2;
+                    invokeAll(new PValueTask(from, mid), new PValueTask(mid, to));
+                }
+            }
         }
 
-        for (Sigma sigma : boldSigmaSet) {
-            boldSigma.add(sigma);
+        ForkJoinPoolInstance.getInstance().getPool().invoke(new PValueTask(0, tetrads.size()));
+        return pValues;
+    }
+
+    /**
+     * Sets whether fourth moments are cached; by default they are.
+     */
+    public void setCacheFourthMoments(boolean cacheFourthMoments) {
+        this.cacheFourthMoments = cacheFourthMoments;
+    }
+
+    /**
+     * Sets the maximum number of fourth moments cached; by default 1,000,000. The cache is cleared.
+     */
+    public synchronized void setFourthMomentCacheSize(int fourthMomentCacheSize) {
+        if (fourthMomentCacheSize < 1) {
+            throw new IllegalArgumentException("Cache size must be at least 1: " + fourthMomentCacheSize);
         }
 
-        // Need a matrix of variances and covariances of sample covariances.
-        TetradMatrix sigma_ss = new TetradMatrix(boldSigma.size(), boldSigma.size());
+        this.fourthMomentCacheSize = fourthMomentCacheSize;
+        this.fourthMoments = null;
+    }
 
-        for (int i = 0; i < boldSigma.size(); i++) {
-            for (int j = 0; j < boldSigma.size(); j++) {
-                Sigma sigmaef = boldSigma.get(i);
-                Sigma sigmagh = boldSigma.get(j);
+    // The T statistic for the given tetrads; uses no mutable state, so may be called concurrently.
+    private double chiSquare(Tetrad[] tetrads) {
 
-                Node e = sigmaef.getA();
-                Node f = sigmaef.getB();
-                Node g = sigmagh.getA();
-                Node h = sigmagh.getB();
+        // Need a list of symbolic covariances--i.e. covariances that appear in tetrads--as pairs of indices.
+        int[] e = new int[4 * tetrads.length];
+        int[] f = new int[4 * tetrads.length];
+        int numSigmas = 0;
 
-                if (cov != null && cov instanceof CorrelationMatrix) {
+        int[][] indices = new int[tetrads.length][];
 
-//                Assumes multinormality. Using formula 23. (Not implementing formula 22 because that case
-//                does not come up.)
-                    double rr = 0.5 * (sxy(e, f) * sxy(g, h))
-                            * (sxy(e, g) * sxy(e, g) + sxy(e, h) * sxy(e, h) + sxy(f, g) * sxy(f, g) + sxy(f, h) * sxy(f, h))
-                            + sxy(e, g) * sxy(f, h) + sxy(e, h) * sxy(f, g)
-                            - sxy(e, f) * (sxy(f, g) * sxy(f, h) + sxy(e, g) * sxy(e, h))
-                            - sxy(g, h) * (sxy(f, g) * sxy(e, g) + sxy(f, h) * sxy(e, h));
-
-                    sigma_ss.set(i, j, rr);
-                } else if (cov != null && dataSet == null) {
-
-                    // Assumes multinormality--see p. 160.
-                    double _ss = sxy(e, g) * sxy(f, h) - sxy(e, h) * sxy(f, g);   // + or -? Different advise. + in the code.
-                    sigma_ss.set(i, j, _ss);
-                } else {
-                    double _ss = sxyzw(e, f, g, h) - sxy(e, f) * sxy(g, h);
-                    sigma_ss.set(i, j, _ss);
-                }
+        for (int t = 0; t < tetrads.length; t++) {
+            Tetrad tetrad = tetrads[t];
+            int i = variablesHash.get(tetrad.getI());
+            int j = variablesHash.get(tetrad.getJ());
+            int k = variablesHash.get(tetrad.getK());
+            int l = variablesHash.get(tetrad.getL());
+            indices[t] = new int[]{i, j, k, l};
+
+            numSigmas = addSigma(e, f, numSigmas, i, k);
+            numSigmas = addSigma(e, f, numSigmas, i, l);
+            numSigmas = addSigma(e, f, numSigmas, j, k);
+            numSigmas = addSigma(e, f, numSigmas, j, l);
+        }
+
+        // Need a matrix of variances and covariances of sample covariances.
+        TetradMatrix sigma_ss = new TetradMatrix(numSigmas, numSigmas);
+
+        for (int i = 0; i < numSigmas; i++) {
+            for (int j = i; j < numSigmas; j++) {
+                double _ss = sigmaSs(e[i], f[i], e[j], f[j]);
+                sigma_ss.set(i, j, _ss);
+                sigma_ss.set(j, i, _ss);
             }
         }
 
         // Need a matrix of of population estimates of partial derivatives of tetrads
-        // with respect to covariances in boldSigma.w
-        TetradMatrix del = new TetradMatrix(boldSigma.size(), tetrads.length);
+        // with respect to covariances in boldSigma.
+        TetradMatrix del = new TetradMatrix(numSigmas, tetrads.length);
 
-        for (int i = 0; i < boldSigma.size(); i++) {
+        for (int i = 0; i < numSigmas; i++) {
             for (int j = 0; j < tetrads.length; j++) {
-                Sigma sigma = boldSigma.get(i);
-                Tetrad tetrad = tetrads[j];
-
-                Node e = tetrad.getI();
-                Node f = tetrad.getJ();
-                Node g = tetrad.getK();
-                Node h = tetrad.getL();
-
-                double derivative = getDerivative(e, f, g, h, sigma.getA(), sigma.getB());
-                del.set(i, j, derivative);
+                int[] t = indices[j];
+                del.set(i, j, getDerivative(t[0], t[1], t[2], t[3], e[i], f[i]));
             }
         }
 
@@ -205,19 +260,8 @@ public class DeltaTetradTest {
         TetradMatrix t = new TetradMatrix(tetrads.length, 1);
 
         for (int i = 0; i < tetrads.length; i++) {
-            Tetrad tetrad = tetrads[i];
-
-            Node e = tetrad.getI();
-            Node f = tetrad.getJ();
-            Node g = tetrad.getK();
-            Node h = tetrad.getL();
-
-            double d1 = sxy(e, f);
-            double d2 = sxy(g, h);
-            double d3 = sxy(e, g);
-            double d4 = sxy(f, h);
-
-            double value = d1 * d2 - d3 * d4;
+            int[] _t = indices[i];
+            double value = sxy(_t[0], _t[1]) * sxy(_t[2], _t[3]) - sxy(_t[0], _t[2]) * sxy(_t[1], _t[3]);
             t.set(i, 0, value);
         }
 
@@ -229,96 +273,82 @@ public class DeltaTetradTest {
         TetradMatrix v0 = sigma_tt.inverse();
         TetradMatrix v1 = t.transpose().times(v0);
         TetradMatrix v2 = v1.times(t);
-        double chisq = N * v2.get(0, 0);
+        return N * v2.get(0, 0);
+    }
 
-        this.chisq = chisq;
+    // Adds the covariance of a and b to the list unless it is there already.
+    private static int addSigma(int[] e, int[] f, int numSigmas, int a, int b) {
+        for (int s = 0; s < numSigmas; s++) {
+            if ((e[s] == a && f[s] == b) || (e[s] == b && f[s] == a)) {
+                return numSigmas;
+            }
+        }
 
-        return chisq;
+        e[numSigmas] = a;
+        f[numSigmas] = b;
+        return numSigmas + 1;
     }
 
-    /**
-     * @return the p value for the most recent test.
-     */
-    public double getPValue() {
-        double cdf = new ChiSquaredDistribution(this.df).cumulativeProbability(this.chisq);
-        return 1.0 - cdf;
-    }
+    // The asymptotic covariance of the sample covariances of e and f and of g and h.
+    private double sigmaSs(int e, int f, int g, int h) {
+        if (cov != null && cov instanceof CorrelationMatrix) {
 
-    public double getPValue(Tetrad... tetrads) {
-        calcChiSquare(tetrads);
-        return getPValue();
+//                Assumes multinormality. Using formula 23. (Not implementing formula 22 because that case
+//                does not come up.)
+            return 0.5 * (sxy(e, f) * sxy(g, h))
+                    * (sxy(e, g) * sxy(e, g) + sxy(e, h) * sxy(e, h) + sxy(f, g) * sxy(f, g) + sxy(f, h) * sxy(f, h))
+                    + sxy(e, g) * sxy(f, h) + sxy(e, h) * sxy(f, g)
+                    - sxy(e, f) * (sxy(f, g) * sxy(f, h) + sxy(e, g) * sxy(e, h))
+                    - sxy(g, h) * (sxy(f, g) * sxy(e, g) + sxy(f, h) * sxy(e, h));
+        } else if (cov != null && dataSet == null) {
+
+            // Assumes multinormality--see p. 160.
+            return sxy(e, g) * sxy(f, h) - sxy(e, h) * sxy(f, g);   // + or -? Different advise. + in the code.
+        } else {
+            if (dataSet == null) {
+                throw new IllegalArgumentException("To calculate sxyzw, tabular data is needed.");
+            }
+
+            return getForthMoment(e, f, g, h) - sxy(e, f) * sxy(g, h);
+        }
     }
 
-    private double sxyzw(Node e, Node f, Node g, Node h) {
-        if (dataSet == null) {
-            throw new IllegalArgumentException("To calculate sxyzw, tabular data is needed.");
+    private double getForthMoment(int x, int y, int z, int w) {
+        if (!cacheFourthMoments) {
+            return sxyzw(x, y, z, w);
         }
 
-        int x = variablesHash.get(e);
-        int y = variablesHash.get(f);
-        int z = variablesHash.get(g);
-        int w = variablesHash.get(h);
+        // The moment is symmetric in its arguments, so key it by the sorted indices, which are
+        // also kept as the exact key so that a hash collision is a miss.
+        int[] sorted = {x, y, z, w};
+        Arrays.sort(sorted);
+        long key = ConcurrentScoreCache.key(sorted[0], new int[]{sorted[1], sorted[2], sorted[3]});
+
+        ConcurrentScoreCache cache = getFourthMoments();
+        double sxyzw = cache.get(key, sorted);
 
-        return getForthMoment(x, y, z, w);
+        if (Double.isNaN(sxyzw)) {
+            sxyzw = sxyzw(x, y, z, w);
+            cache.put(key, sorted, sxyzw);
+        }
+
+        return sxyzw;
     }
 
-//    private void setForthMoment(int x, int y, int z, int w, double sxyzw) {
-//        fourthMoment[x][y][z][w] = sxyzw;
-//        fourthMoment[x][y][w][z] = sxyzw;
-//        fourthMoment[x][w][z][y] = sxyzw;
-//        fourthMoment[x][w][y][z] = sxyzw;
-//        fourthMoment[x][z][y][w] = sxyzw;
-//        fourthMoment[x][z][w][y] = sxyzw;
-//
-//        fourthMoment[y][x][z][w] = sxyzw;
-//        fourthMoment[y][x][w][z] = sxyzw;
-//        fourthMoment[y][z][x][w] = sxyzw;
-//        fourthMoment[y][z][w][x] = sxyzw;
-//        fourthMoment[y][w][x][z] = sxyzw;
-//        fourthMoment[y][w][z][x] = sxyzw;
-//
-//        fourthMoment[z][x][y][w] = sxyzw;
-//        fourthMoment[z][x][w][y] = sxyzw;
-//        fourthMoment[z][y][x][w] = sxyzw;
-//        fourthMoment[z][y][w][x] = sxyzw;
-//        fourthMoment[z][w][x][y] = sxyzw;
-//        fourthMoment[z][w][y][x] = sxyzw;
-//
-//        fourthMoment[w][x][y][z] = sxyzw;
-//        fourthMoment[w][x][z][y] = sxyzw;
-//        fourthMoment[w][y][x][z] = sxyzw;
-//        fourthMoment[w][y][z][x] = sxyzw;
-//        fourthMoment[w][z][x][y] = sxyzw;
-//        fourthMoment[w][z][y][x] = sxyzw;
-//    }
+    private synchronized ConcurrentScoreCache getFourthMoments() {
+        if (fourthMoments == null) {
+            fourthMoments = new ConcurrentScoreCache(fourthMomentCacheSize,
+                    4 * Runtime.getRuntime().availableProcessors(), true);
+        }
 
-    private double getForthMoment(int x, int y, int z, int w) {
-//        if (cacheFourthMoments) {
-//            if (fourthMoment == null) {
-//                initializeForthMomentMatrix(dataSet.getVariable());
-//            }
-//
-//            double sxyzw = fourthMoment[x][y][z][w];
-//
-//            if (sxyzw == 0.0) {
-//                sxyzw = sxyzw(x, y, z, w);
-////                setForthMoment(x, y, z, w, sxyzw);
-//            }
-//
-//            return sxyzw;
-//        } else {
-        return sxyzw(x, y, z, w);
-//        }
+        return fourthMoments;
     }
 
     /**
      * If using a covariance matrix or a correlation matrix, just returns the lookups. Otherwise calculates the
      * covariance.
      */
-    private double sxy(Node _node1, Node _node2) {
-        int i = variablesHash.get(_node1);
-        int j = variablesHash.get(_node2);
-
+    private double sxy(int i, int j) {
         if (cov != null) {
             return cov.getValue(i, j);
         } else {
@@ -328,7 +358,7 @@ public class DeltaTetradTest {
         }
     }
 
-    private double getDerivative(Node node1, Node node2, Node node3, Node node4, Node a, Node b) {
+    private double getDerivative(int node1, int node2, int node3, int node4, int a, int b) {
         if (node1 == a && node2 == b) {
             return sxy(node3, node4);
         }
@@ -364,45 +394,6 @@ public class DeltaTetradTest {
         return 0.0;
     }
 
-//    public void setCacheFourthMoments(boolean cacheFourthMoments) {
-//        this.cacheFourthMoments = cacheFourthMoments;
-//    }
-
-    private static class Sigma {
-        private Node a;
-        private Node b;
-
-        public Sigma(Node a, Node b) {
-            this.a = a;
-            this.b = b;
-        }
-
-        public Node getA() {
-            return a;
-        }
-
-        public Node getB() {
-            return b;
-        }
-
-        public boolean equals(Object o) {
-            if (!(o instanceof Sigma)) {
-                throw new IllegalArgumentException();
-            }
-
-            Sigma _o = (Sigma) o;
-            return (_o.getA().equals(getA()) && _o.getB().equals(getB())) || (_o.getB().equals(getA()) && _o.getA().equals(getB()));
-        }
-
-        public int hashCode() {
-            return a.hashCode() + b.hashCode();
-        }
-
-        public String toString() {
-            return "Sigma(" + getA() + ", " + getB() + ")";
-        }
-    }
-
     private double sxyzw(int x, int y, int z, int w) {
         double sxyzw = 0.0;
 
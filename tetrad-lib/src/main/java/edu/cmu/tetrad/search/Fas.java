@@ -21,6 +21,7 @@
 
 package edu.cmu.tetrad.search;
 
+import edu.cmu.tetrad.data.CompiledKnowledge;
 import edu.cmu.tetrad.data.IKnowledge;
 import edu.cmu.tetrad.data.Knowledge2;
 import edu.cmu.tetrad.graph.*;
@@ -66,6 +67,12 @@ public class Fas implements IFas {
      */
     private IKnowledge knowledge = new Knowledge2();
 
+    /**
+     * The knowledge compiled against the search nodes, with the index of each node into it.
+     */
+    private CompiledKnowledge compiledKnowledge;
+    private Map<Node, Integer> nodeIndices;
+
     /**
      * The maximum number of variables conditioned on in any conditional independence test. If the depth is -1, it will
      * be taken to be the maximum value, which is 1000. Otherwise, it should be set to a non-negative integer.
@@ -173,6 +180,8 @@ public class Fas implements IFas {
             adjacencies.put(node, new TreeSet<Node>());
         }
 
+        compileKnowledge(nodes);
+
         for (int d = 0; d <= _depth; d++) {
             boolean more;
 
@@ -224,6 +233,8 @@ public class Fas implements IFas {
             adjacencies.put(node, new TreeSet<Node>());
         }
 
+        compileKnowledge(nodes);
+
         for (int d = 0; d <= _depth; d++) {
             boolean more;
 
@@ -310,7 +321,7 @@ public class Fas implements IFas {
                 }
 
                 boolean noEdgeRequired =
-                        knowledge.noEdgeRequired(x.getName(), y.getName());
+                        compiledKnowledge.noEdgeRequired(nodeIndices.get(x), nodeIndices.get(y));
 
 
                 if (independent && noEdgeRequired) {
@@ -361,11 +372,11 @@ public class Fas implements IFas {
     }
 
     private boolean forbiddenEdge(Node x, Node y) {
-        String name1 = x.getName();
-        String name2 = y.getName();
+        int i = nodeIndices.get(x);
+        int j = nodeIndices.get(y);
 
-        if (knowledge.isForbidden(name1, name2) &&
-                knowledge.isForbidden(name2, name1)) {
+        if (compiledKnowledge.isForbidden(i, j) &&
+                compiledKnowledge.isForbidden(j, i)) {
 //            this.logger.log("edgeRemoved", "Removed " + Edges.undirectedEdge(x, y) + " because it was " +
 //                    "forbidden by background knowledge.");
             System.out.println(Edges.undirectedEdge(x, y) + " because it was " +
@@ -395,7 +406,7 @@ public class Fas implements IFas {
             for (Node y : adjx) {
                 List<Node> _adjx = new ArrayList<>(adjacencies.get(x));
                 _adjx.remove(y);
-                List<Node> ppx = possibleParents(x, _adjx, knowledge);
+                List<Node> ppx = possibleParents(x, _adjx);
 
                 if (ppx.size() >= depth) {
                     ChoiceGenerator cg = new ChoiceGenerator(ppx.size(), depth);
@@ -428,7 +439,7 @@ public class Fas implements IFas {
                         }
 
                         boolean noEdgeRequired =
-                                knowledge.noEdgeRequired(x.getName(), y.getName());
+                                compiledKnowledge.noEdgeRequired(nodeIndices.get(x), nodeIndices.get(y));
 
                         if (independent && noEdgeRequired) {
                             adjacencies.get(x).remove(y);
@@ -452,15 +463,14 @@ public class Fas implements IFas {
         return freeDegree(nodes, adjacencies) > depth;
     }
 
-    private List<Node> possibleParents(Node x, List<Node> adjx,
-                                       IKnowledge knowledge) {
+    private List<Node> possibleParents(Node x, List<Node> adjx) {
         List<Node> possibleParents = new LinkedList<>();
-        String _x = x.getName();
+        int _x = nodeIndices.get(x);
 
         for (Node z : adjx) {
-            String _z = z.getName();
+            int _z = nodeIndices.get(z);
 
-            if (possibleParentOf(_z, _x, knowledge)) {
+            if (possibleParentOf(_z, _x)) {
                 possibleParents.add(z);
             }
         }
@@ -468,8 +478,18 @@ public class Fas implements IFas {
         return possibleParents;
     }
 
-    private boolean possibleParentOf(String z, String x, IKnowledge knowledge) {
-        return !knowledge.isForbidden(z, x) && !knowledge.isRequired(x, z);
+    private boolean possibleParentOf(int z, int x) {
+        return !compiledKnowledge.isForbidden(z, x) && !compiledKnowledge.isRequired(x, z);
+    }
+
+    // Compiles the knowledge against the search nodes so it can be checked by index.
+    private void compileKnowledge(List<Node> nodes) {
+        compiledKnowledge = CompiledKnowledge.compile(knowledge, nodes);
+        nodeIndices = new HashMap<>();
+
+        for (int i = 0; i < nodes.size(); i++) {
+            nodeIndices.put(nodes.get(i), i);
+        }
     }
 
     public int getNumIndependenceTests() {
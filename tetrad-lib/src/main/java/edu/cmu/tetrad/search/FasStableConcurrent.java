@@ -21,6 +21,7 @@ package edu.cmu.tetrad.search;
 // Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
 ///////////////////////////////////////////////////////////////////////////////
 
+import edu.cmu.tetrad.data.CompiledKnowledge;
 import edu.cmu.tetrad.data.IKnowledge;
 import edu.cmu.tetrad.data.Knowledge2;
 import edu.cmu.tetrad.graph.*;
@@ -60,6 +61,12 @@ public class FasStableConcurrent implements IFas {
      */
     private IKnowledge knowledge = new Knowledge2();
 
+    /**
+     * The knowledge compiled against the search nodes, with the index of each node into it.
+     */
+    private CompiledKnowledge compiledKnowledge;
+    private Map<Node, Integer> nodeIndices;
+
     /**
      * The maximum number of variables conditioned on in any conditional independence test. If the depth is -1, it will
      * be taken to be the maximum value, which is 1000. Otherwise, it should be set to a non-negative integer.
@@ -160,6 +167,8 @@ public class FasStableConcurrent implements IFas {
         }
 
 
+        compileKnowledge(nodes);
+
         for (int d = 0; d <= _depth; d++) {
             boolean more;
 
@@ -304,7 +313,7 @@ public class FasStableConcurrent implements IFas {
                             numIndependenceTests++;
 
                             boolean noEdgeRequired =
-                                    knowledge.noEdgeRequired(x.getName(), y.getName());
+                                    compiledKnowledge.noEdgeRequired(nodeIndices.get(x), nodeIndices.get(y));
 
                             if (independent && noEdgeRequired) {
                                 if (recordSepsets && !sepsets.isReturnEmptyIfNotSet()) {
@@ -351,11 +360,11 @@ public class FasStableConcurrent implements IFas {
     }
 
     private boolean forbiddenEdge(Node x, Node y) {
-        String name1 = x.getName();
-        String name2 = y.getName();
+        int i = nodeIndices.get(x);
+        int j = nodeIndices.get(y);
 
-        if (knowledge.isForbidden(name1, name2) &&
-                knowledge.isForbidden(name2, name1)) {
+        if (compiledKnowledge.isForbidden(i, j) &&
+                compiledKnowledge.isForbidden(j, i)) {
             if (verbose) {
                 this.logger.log("edgeRemoved", "Removed " + Edges.undirectedEdge(x, y) + " because it was " +
                         "forbidden by background knowledge.");
@@ -440,7 +449,7 @@ public class FasStableConcurrent implements IFas {
                             List<Node> _adjx = new ArrayList<>(adjx);
 
                             _adjx.remove(y);
-                            List<Node> ppx = possibleParents(x, _adjx, knowledge);
+                            List<Node> ppx = possibleParents(x, _adjx);
 
                             if (ppx.size() >= depth) {
                                 ChoiceGenerator cg = new ChoiceGenerator(ppx.size(), depth);
@@ -464,7 +473,7 @@ public class FasStableConcurrent implements IFas {
                                     }
 
                                     boolean noEdgeRequired =
-                                            knowledge.noEdgeRequired(x.getName(), y.getName());
+                                            compiledKnowledge.noEdgeRequired(nodeIndices.get(x), nodeIndices.get(y));
 
                                     if (independent && noEdgeRequired) {
                                         adjacencies.get(x).remove(y);
@@ -515,15 +524,14 @@ public class FasStableConcurrent implements IFas {
         return freeDegree(nodes, adjacencies) > depth;
     }
 
-    private List<Node> possibleParents(Node x, List<Node> adjx,
-                                       IKnowledge knowledge) {
+    private List<Node> possibleParents(Node x, List<Node> adjx) {
         List<Node> possibleParents = new LinkedList<>();
-        String _x = x.getName();
+        int _x = nodeIndices.get(x);
 
         for (Node z : adjx) {
-            String _z = z.getName();
+            int _z = nodeIndices.get(z);
 
-            if (possibleParentOf(_z, _x, knowledge)) {
+            if (possibleParentOf(_z, _x)) {
                 possibleParents.add(z);
             }
         }
@@ -531,8 +539,18 @@ public class FasStableConcurrent implements IFas {
         return possibleParents;
     }
 
-    private boolean possibleParentOf(String z, String x, IKnowledge knowledge) {
-        return !knowledge.isForbidden(z, x) && !knowledge.isRequired(x, z);
+    private boolean possibleParentOf(int z, int x) {
+        return !compiledKnowledge.isForbidden(z, x) && !compiledKnowledge.isRequired(x, z);
+    }
+
+    // Compiles the knowledge against the search nodes so it can be checked by index.
+    private void compileKnowledge(List<Node> nodes) {
+        compiledKnowledge = CompiledKnowledge.compile(knowledge, nodes);
+        nodeIndices = new HashMap<>();
+
+        for (int i = 0; i < nodes.size(); i++) {
+            nodeIndices.put(nodes.get(i), i);
+        }
     }
 
     public int getNumIndependenceTests() {
@@ -136,6 +136,18 @@ public final class Fges implements GraphSearch, GraphScorer {
     // Map from variables to their column indices in the data set.
     private ConcurrentMap<Node, Integer> hashIndices;
 
+    // The knowledge compiled against the score's variables, indexed as hashIndices.
+    private CompiledKnowledge compiledKnowledge;
+
+    // True if the insert evaluations of each forward reevaluation round are batched.
+    private boolean batchForwardEvaluation = false;
+
+    // The maximum number of score differences kept between batched forward rounds.
+    private int forwardCacheCapacity = 1000000;
+
+    // Score differences shared by the batched forward rounds of one search.
+    private ConcurrentScoreCache forwardCache;
+
     // The static ForkJoinPool instance.
     private ForkJoinPool pool = ForkJoinPoolInstance.getInstance().getPool();
 
@@ -193,7 +205,7 @@ public final class Fges implements GraphSearch, GraphScorer {
             throw new NullPointerException();
         }
         setScore(score);
-        this.graph = new EdgeListGraphSingleConnections(getVariables());
+        this.graph = new IndexedGraph(getVariables());
     }
 
     //==========================PUBLIC METHODS==========================//
@@ -225,17 +237,21 @@ public final class Fges implements GraphSearch, GraphScorer {
 
         lookupArrows = new ConcurrentHashMap<>();
         final List<Node> nodes = new ArrayList<>(variables);
-        graph = new EdgeListGraphSingleConnections(nodes);
+        graph = new IndexedGraph(nodes);
 
         if (adjacencies != null) {
             adjacencies = GraphUtils.replaceNodes(adjacencies, nodes);
         }
 
         if (initialGraph != null) {
-            graph = new EdgeListGraphSingleConnections(initialGraph);
-            graph = GraphUtils.replaceNodes(graph, nodes);
+            graph = new IndexedGraph(GraphUtils.replaceNodes(initialGraph, nodes));
         }
 
+        buildIndexing(score.getVariables());
+        compiledKnowledge = CompiledKnowledge.compile(knowledge, score.getVariables());
+        forwardCache = batchForwardEvaluation ? new ConcurrentScoreCache(forwardCacheCapacity,
+                4 * Runtime.getRuntime().availableProcessors(), true) : null;
+
         addRequiredEdges(graph);
 
         if (faithfulnessAssumed) {
@@ -520,6 +536,30 @@ public final class Fges implements GraphSearch, GraphScorer {
         this.symmetricFirstStep = symmetricFirstStep;
     }
 
+    public boolean isBatchForwardEvaluation() {
+        return batchForwardEvaluation;
+    }
+
+    /**
+     * True if the insert evaluations of each forward reevaluation round should be collected,
+     * deduplicated by (x, y, parents) and scored in parallel against a cache shared by the rounds
+     * of the search. Default false.
+     */
+    public void setBatchForwardEvaluation(boolean batchForwardEvaluation) {
+        this.batchForwardEvaluation = batchForwardEvaluation;
+    }
+
+    /**
+     * The maximum number of score differences cached across batched forward rounds.
+     */
+    public void setForwardCacheCapacity(int forwardCacheCapacity) {
+        if (forwardCacheCapacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + forwardCacheCapacity);
+        }
+
+        this.forwardCacheCapacity = forwardCacheCapacity;
+    }
+
     //===========================PRIVATE METHODS========================//
     //Sets the discrete scoring function to use.
     private void setScore(Score totalScore) {
@@ -573,7 +613,7 @@ public final class Fges implements GraphSearch, GraphScorer {
                     Node x = nodes.get(j);
 
                     if (existsKnowledge()) {
-                        if (getKnowledge().isForbidden(x.getName(), y.getName()) && getKnowledge().isForbidden(y.getName(), x.getName())) {
+                        if (isForbidden(x, y) && isForbidden(y, x)) {
                             continue;
                         }
 
@@ -761,7 +801,7 @@ public final class Fges implements GraphSearch, GraphScorer {
                             }
 
                             if (existsKnowledge()) {
-                                if (getKnowledge().isForbidden(x.getName(), y.getName()) && getKnowledge().isForbidden(y.getName(), x.getName())) {
+                                if (isForbidden(x, y) && isForbidden(y, x)) {
                                     continue;
                                 }
 
@@ -870,7 +910,7 @@ public final class Fges implements GraphSearch, GraphScorer {
                             }
 
                             if (existsKnowledge()) {
-                                if (getKnowledge().isForbidden(x.getName(), y.getName()) && getKnowledge().isForbidden(y.getName(), x.getName())) {
+                                if (isForbidden(x, y) && isForbidden(y, x)) {
                                     continue;
                                 }
 
@@ -1071,9 +1111,23 @@ public final class Fges implements GraphSearch, GraphScorer {
 
     // Returns true if knowledge is not empty.
     private boolean existsKnowledge() {
+        if (compiledKnowledge != null) {
+            return !compiledKnowledge.isEmpty();
+        }
+
         return !knowledge.isEmpty();
     }
 
+    // Looks up x --> y in the compiled knowledge by index.
+    private boolean isForbidden(Node x, Node y) {
+        return compiledKnowledge.isForbidden(hashIndices.get(x), hashIndices.get(y));
+    }
+
+    // Looks up x --- y in the compiled knowledge by index.
+    private boolean noEdgeRequired(Node x, Node y) {
+        return compiledKnowledge.noEdgeRequired(hashIndices.get(x), hashIndices.get(y));
+    }
+
     // Initiaizes the sorted arrows lists for the backward search.
     private void initializeArrowsBackward() {
         for (Edge edge : graph.getEdges()) {
@@ -1081,7 +1135,7 @@ public final class Fges implements GraphSearch, GraphScorer {
             Node y = edge.getNode2();
 
             if (existsKnowledge()) {
-                if (!getKnowledge().noEdgeRequired(x.getName(), y.getName())) {
+                if (!noEdgeRequired(x, y)) {
                     continue;
                 }
             }
@@ -1105,6 +1159,8 @@ public final class Fges implements GraphSearch, GraphScorer {
 
     // Calcuates new arrows based on changes in the graph for the forward search.
     private void reevaluateForward(final Set<Node> nodes, final Arrow arrow) {
+        final Queue<ForwardCandidate> batch = batchForwardEvaluation ? new ConcurrentLinkedQueue<ForwardCandidate>() : null;
+
         class AdjTask extends RecursiveTask<Boolean> {
 
             private final List<Node> nodes;
@@ -1167,7 +1223,7 @@ public final class Fges implements GraphSearch, GraphScorer {
 
                             if (!graph.isAdjacentTo(w, x)) {
                                 clearArrow(w, x);
-                                calculateArrowsForward(w, x);
+                                calculateArrowsForward(w, x, batch);
                             }
                         }
                     }
@@ -1190,10 +1246,122 @@ public final class Fges implements GraphSearch, GraphScorer {
 
         final AdjTask task = new AdjTask(getMinChunk(nodes.size()), new ArrayList<>(nodes), 0, nodes.size());
         pool.invoke(task);
+
+        if (batch != null) {
+            scoreForwardBatch(batch);
+        }
+    }
+
+    // An insert evaluation collected for a batched forward round. Candidates are equal when they
+    // ask for the same score difference, that is, when their exact (y, x, sorted parents) keys match.
+    private static class ForwardCandidate {
+        private final Node a;
+        private final Node b;
+        private final Set<Node> naYX;
+        private final Set<Node> T;
+        private final int x;
+        private final int y;
+        private final int[] parents;
+        private final int[] exactKey;
+        private final long key;
+        private double bump = Double.NaN;
+
+        private ForwardCandidate(Node a, Node b, Set<Node> naYX, Set<Node> T, int x, int y, int[] parents) {
+            this.a = a;
+            this.b = b;
+            this.naYX = naYX;
+            this.T = T;
+            this.x = x;
+            this.y = y;
+            this.parents = parents;
+            this.exactKey = ConcurrentScoreCache.exactKey(parents, y, x);
+            this.key = ConcurrentScoreCache.key(ConcurrentScoreCache.key(y, parents), x);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (key ^ (key >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ForwardCandidate && Arrays.equals(exactKey, ((ForwardCandidate) o).exactKey);
+        }
+    }
+
+    // Scores the distinct evaluations of a forward round in parallel and adds the resulting arrows.
+    private void scoreForwardBatch(Queue<ForwardCandidate> batch) {
+        final Map<ForwardCandidate, ForwardCandidate> distinct = new HashMap<>();
+
+        for (ForwardCandidate candidate : batch) {
+            if (!distinct.containsKey(candidate)) {
+                distinct.put(candidate, candidate);
+            }
+        }
+
+        final List<ForwardCandidate> toScore = new ArrayList<>(distinct.values());
+
+        class ScoreTask extends RecursiveTask<Boolean> {
+            private final int chunk;
+            private final int from;
+            private final int to;
+
+            public ScoreTask(int chunk, int from, int to) {
+                this.chunk = chunk;
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected Boolean compute() {
+                if (to - from <= chunk) {
+                    for (int i = from; i < to; i++) {
+                        ForwardCandidate candidate = toScore.get(i);
+                        double bump = forwardCache.get(candidate.key, candidate.exactKey);
+
+                        if (Double.isNaN(bump)) {
+                            bump = score.localScoreDiff(candidate.x, candidate.y, candidate.parents);
+                            forwardCache.put(candidate.key, candidate.exactKey, bump);
+                        }
+
+                        candidate.bump = bump;
+                    }
+
+                    return true;
+                } else {
+                    int mid = (to + from) / 2;
+
+                    ScoreTask left = new ScoreTask(chunk, from, mid);
+                    ScoreTask right = new ScoreTask(chunk, mid, to);
+
+                    left.fork();
+                    right.compute();
+                    left.join();
+
+                    return true;
+                }
+            }
+        }
+
+        pool.invoke(new ScoreTask(getMinChunk(toScore.size()), 0, toScore.size()));
+
+        for (ForwardCandidate candidate : batch) {
+            double bump = distinct.get(candidate).bump;
+
+            if (bump > 0) {
+                addArrow(candidate.a, candidate.b, candidate.naYX, candidate.T, bump);
+            }
+        }
     }
 
     // Calculates the new arrows for an a->b edge.
     private void calculateArrowsForward(Node a, Node b) {
+        calculateArrowsForward(a, b, null);
+    }
+
+    // Calculates the new arrows for an a->b edge. If batch is not null, the insert evaluations are
+    // added to it to be scored later instead of being scored here.
+    private void calculateArrowsForward(Node a, Node b, Queue<ForwardCandidate> batch) {
         if (mode == Mode.heuristicSpeedup && !effectEdgesGraph.isAdjacentTo(a, b)) {
             return;
         }
@@ -1207,7 +1375,7 @@ public final class Fges implements GraphSearch, GraphScorer {
         }
 
         if (existsKnowledge()) {
-            if (getKnowledge().isForbidden(a.getName(), b.getName())) {
+            if (isForbidden(a, b)) {
                 return;
             }
         }
@@ -1219,9 +1387,12 @@ public final class Fges implements GraphSearch, GraphScorer {
 
         List<Node> TNeighbors = getTNeighbors(a, b);
 
-        Set<Set<Node>> previousCliques = new HashSet<>();
-        previousCliques.add(new HashSet<Node>());
-        Set<Set<Node>> newCliques = new HashSet<>();
+        // The T subsets whose union with naYX is a clique, as bits over the positions in TNeighbors.
+        // Since T is disjoint from naYX, union contains a previous clique just in case T contains
+        // the previous T.
+        List<BitSet> previousCliques = new ArrayList<>();
+        previousCliques.add(new BitSet());
+        List<BitSet> newCliques = new ArrayList<>();
 
         FOR:
         for (int i = 0; i <= TNeighbors.size(); i++) {
@@ -1229,15 +1400,19 @@ public final class Fges implements GraphSearch, GraphScorer {
             int[] choice;
 
             while ((choice = gen.next()) != null) {
-                Set<Node> T = GraphUtils.asSet(choice, TNeighbors);
+                BitSet bits = new BitSet(TNeighbors.size());
 
-                Set<Node> union = new HashSet<>(naYX);
-                union.addAll(T);
+                for (int c : choice) {
+                    bits.set(c);
+                }
 
                 boolean foundAPreviousClique = false;
 
-                for (Set<Node> clique : previousCliques) {
-                    if (union.containsAll(clique)) {
+                for (BitSet clique : previousCliques) {
+                    BitSet rest = (BitSet) clique.clone();
+                    rest.andNot(bits);
+
+                    if (rest.isEmpty()) {
                         foundAPreviousClique = true;
                         break;
                     }
@@ -1247,10 +1422,33 @@ public final class Fges implements GraphSearch, GraphScorer {
                     break FOR;
                 }
 
+                Set<Node> T = GraphUtils.asSet(choice, TNeighbors);
+
+                Set<Node> union = new HashSet<>(naYX);
+                union.addAll(T);
+
                 if (!isClique(union)) {
                     continue;
                 }
-                newCliques.add(union);
+                newCliques.add(bits);
+
+                if (batch != null) {
+                    union.addAll(graph.getParents(b));
+
+                    if (union.contains(b)) {
+                        throw new IllegalArgumentException();
+                    }
+
+                    int[] parents = new int[union.size()];
+                    int count = 0;
+
+                    for (Node parent : union) {
+                        parents[count++] = hashIndices.get(parent);
+                    }
+
+                    batch.add(new ForwardCandidate(a, b, naYX, T, hashIndices.get(a), hashIndices.get(b), parents));
+                    continue;
+                }
 
                 double bump = insertEval(a, b, T, naYX, hashIndices);
 
@@ -1265,7 +1463,7 @@ public final class Fges implements GraphSearch, GraphScorer {
             }
 
             previousCliques = newCliques;
-            newCliques = new HashSet<>();
+            newCliques = new ArrayList<>();
         }
     }
 
@@ -1346,7 +1544,7 @@ public final class Fges implements GraphSearch, GraphScorer {
     // Calculates the arrows for the removal in the backward direction.
     private void calculateArrowsBackward(Node a, Node b) {
         if (existsKnowledge()) {
-            if (!getKnowledge().noEdgeRequired(a.getName(), b.getName())) {
+            if (!noEdgeRequired(a, b)) {
                 return;
             }
         }
@@ -1655,12 +1853,12 @@ public final class Fges implements GraphSearch, GraphScorer {
         boolean violatesKnowledge = false;
 
         if (existsKnowledge()) {
-            if (knowledge.isForbidden(x.getName(), y.getName())) {
+            if (isForbidden(x, y)) {
                 violatesKnowledge = true;
             }
 
             for (Node t : T) {
-                if (knowledge.isForbidden(t.getName(), y.getName())) {
+                if (isForbidden(t, y)) {
                     violatesKnowledge = true;
                 }
             }
@@ -1678,11 +1876,11 @@ public final class Fges implements GraphSearch, GraphScorer {
 
         if (existsKnowledge()) {
             for (Node h : H) {
-                if (knowledge.isForbidden(x.getName(), h.getName())) {
+                if (isForbidden(x, h)) {
                     violatesKnowledge = true;
                 }
 
-                if (knowledge.isForbidden(y.getName(), h.getName())) {
+                if (isForbidden(y, h)) {
                     violatesKnowledge = true;
                 }
             }
@@ -1786,7 +1984,7 @@ public final class Fges implements GraphSearch, GraphScorer {
     // forbidden.
     private boolean validSetByKnowledge(Node y, Set<Node> subset) {
         for (Node node : subset) {
-            if (getKnowledge().isForbidden(node.getName(), y.getName())) {
+            if (isForbidden(node, y)) {
                 return false;
             }
         }
@@ -287,26 +287,18 @@ public class FindOneFactorClusters {
 
             if (zeroCorr(triple)) continue;
 
-            for (int o : allVariables) {
-                if (Thread.currentThread().isInterrupted()) {
-                    break;
-                }
+            List<List<Integer>> quartets = new ArrayList<>();
 
+            for (int o : allVariables) {
                 if (triple.contains(o)) {
                     continue;
                 }
 
-                List<Integer> quartet = quartet(n1, n2, n3, o);
-
-                boolean vanishes = vanishes(quartet);
-
-                if (!vanishes) {
-                    continue CHOICE;
-                }
+                quartets.add(quartet(n1, n2, n3, o));
+            }
 
-//                if (!(avgSumLnP(quartet) > -20)) {
-//                    continue CHOICE;
-//                }
+            if (!allVanish(quartets)) {
+                continue CHOICE;
             }
 
             HashSet<Integer> _cluster = new HashSet<>(triple);
@@ -957,6 +949,8 @@ public class FindOneFactorClusters {
         }
 
         if (vanishes(quartet)) {
+            List<List<Integer>> quartets = new ArrayList<>();
+
             for (int o : allVariables()) {
                 if (quartet.contains(o)) continue;
 
@@ -964,18 +958,11 @@ public class FindOneFactorClusters {
                     List<Integer> _quartet = new ArrayList<>(quartet);
                     _quartet.remove(quartet.get(i));
                     _quartet.add(o);
-
-//                    if (zeroCorr(_quartet)) {
-//                        continue;
-//                    }
-
-                    if (!(vanishes(_quartet))) {
-                        return false;
-                    }
+                    quartets.add(_quartet);
                 }
             }
 
-            return true;
+            return allVanish(quartets);
         }
 
         return false;
@@ -1154,10 +1141,7 @@ public class FindOneFactorClusters {
 
     private boolean vanishes(int x, int y, int z, int w) {
         if (testType == TestType.TETRAD_DELTA) {
-            Tetrad t1 = new Tetrad(variables.get(x), variables.get(y), variables.get(z), variables.get(w));
-            Tetrad t2 = new Tetrad(variables.get(x), variables.get(y), variables.get(w), variables.get(z));
-
-            return test.getPValue(t1, t2) > alpha;
+            return test.getPValue(tetrads(x, y, z, w)) > alpha;
         } else if (testType == TestType.TETRAD_WISHART) {
             return test2.tetradPValue(x, y, z, w) > alpha && test2.tetradPValue(x, y, w, z) > alpha;
         }
@@ -1165,6 +1149,44 @@ public class FindOneFactorClusters {
         throw new IllegalArgumentException("Only the delta and wishart tests are being used: " + testType);
     }
 
+    // The two tetrads tested for a quartet.
+    private Tetrad[] tetrads(int x, int y, int z, int w) {
+        Tetrad t1 = new Tetrad(variables.get(x), variables.get(y), variables.get(z), variables.get(w));
+        Tetrad t2 = new Tetrad(variables.get(x), variables.get(y), variables.get(w), variables.get(z));
+        return new Tetrad[]{t1, t2};
+    }
+
+    // True if every one of the quartets vanishes. With the delta test, the quartets are tested in
+    // parallel a chunk at a time, stopping at the first chunk with one that does not vanish.
+    private boolean allVanish(List<List<Integer>> quartets) {
+        if (testType != TestType.TETRAD_DELTA) {
+            for (List<Integer> quartet : quartets) {
+                if (Thread.currentThread().isInterrupted()) break;
+                if (!vanishes(quartet)) return false;
+            }
+
+            return true;
+        }
+
+        int chunk = 4 * ForkJoinPoolInstance.getInstance().getPool().getParallelism();
+
+        for (int from = 0; from < quartets.size(); from += chunk) {
+            if (Thread.currentThread().isInterrupted()) break;
+
+            List<Tetrad[]> tetrads = new ArrayList<>();
+
+            for (List<Integer> q : quartets.subList(from, Math.min(quartets.size(), from + chunk))) {
+                tetrads.add(tetrads(q.get(0), q.get(1), q.get(2), q.get(3)));
+            }
+
+            for (double p : test.getPValues(tetrads)) {
+                if (!(p > alpha)) return false;
+            }
+        }
+
+        return true;
+    }
+
     private Graph convertSearchGraphNodes(Set<Set<Node>> clusters) {
         Graph graph = new EdgeListGraph(variables);
 
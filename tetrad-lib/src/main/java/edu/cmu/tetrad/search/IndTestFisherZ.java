@@ -87,6 +87,7 @@ public final class IndTestFisherZ implements IndependenceTest {
     private double cutoff = Double.NaN;
     private double rho;
     private NormalDistribution normal = new NormalDistribution(0, 1);
+    private static final ThreadLocal<Workspace> workspaces = ThreadLocal.withInitial(Workspace::new);
 
     //==========================CONSTRUCTORS=============================//
 
@@ -212,12 +213,28 @@ public final class IndTestFisherZ implements IndependenceTest {
 
             return -a / Math.sqrt(b * c);
         } else {
-            int[] indices = new int[z.size() + 2];
-            indices[0] = indexMap.get(x);
-            indices[1] = indexMap.get(y);
-            for (int i = 0; i < z.size(); i++) indices[i + 2] = indexMap.get(z.get(i));
-            TetradMatrix submatrix = covMatrix.getSubmatrix(indices).getMatrix();
-            return StatUtils.partialCorrelation(submatrix);
+            Workspace workspace = workspaces.get();
+            int[] indices = workspace.indices(z.size());
+            for (int i = 0; i < z.size(); i++) indices[i] = indexMap.get(z.get(i));
+            return StatUtils.partialCorrelation(covMatrix, indexMap.get(x), indexMap.get(y), indices, z.size(),
+                    workspace.work(z.size()));
+        }
+    }
+
+    // Scratch arrays for partialCorrelation, one set per thread, grown as needed, so that
+    // tests called from parallel searches allocate nothing.
+    private static final class Workspace {
+        private int[] indices = new int[8];
+        private double[] work = new double[8 * 10];
+
+        int[] indices(int numZ) {
+            if (indices.length < numZ) indices = new int[2 * numZ];
+            return indices;
+        }
+
+        double[] work(int numZ) {
+            if (work.length < numZ * (numZ + 2)) work = new double[2 * numZ * (2 * numZ + 2)];
+            return work;
         }
     }
 
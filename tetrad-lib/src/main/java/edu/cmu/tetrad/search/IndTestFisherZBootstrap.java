@@ -70,14 +70,11 @@ public class IndTestFisherZBootstrap implements IndependenceTest {
         setAlpha(alpha);
 
         this.numBootstrapSamples = numBootstrapSamples;
-        TetradMatrix[] bootstrapSamples = new TetradMatrix[numBootstrapSamples];
         this.tests = new IndependenceTest[numBootstrapSamples];
 
         for (int i = 0; i < numBootstrapSamples; i++) {
-            TetradMatrix fullData = dataSet.getDoubleData();
-            bootstrapSamples[i] = DataUtils.getBootstrapSample(fullData, bootstrapSampleSize);
-            tests[i] = new IndTestFisherZ(bootstrapSamples[i], dataSet.getVariables(), alpha);
-
+            DataSet bootstrapSample = DataUtils.getBootstrapView(dataSet, bootstrapSampleSize);
+            tests[i] = new IndTestFisherZ(bootstrapSample, alpha);
         }
 
     }
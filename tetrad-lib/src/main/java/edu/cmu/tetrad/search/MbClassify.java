@@ -215,7 +215,7 @@ public class MbClassify implements DiscreteClassifier {
                 this.prior);
         BayesIm bayesIm = DirichletEstimator.estimate(prior, trainDataSubset);
 
-        RowSummingExactUpdater updater = new RowSummingExactUpdater(bayesIm);
+        JunctionTreeUpdater updater = new JunctionTreeUpdater(bayesIm);
 
         //The subset dataset of the dataset to be classified containing
         //the variables in the Markov blanket.
@@ -69,6 +69,9 @@ public class SemBicScore implements Score {
 
     private Map<String, Integer> indexMap;
 
+    // Cached Cholesky factors of parent covariance matrices, or null if scores are to be
+    // calculated by inverting the parent covariance matrix directly.
+    private CholeskyCache choleskyCache = null;
 
     /**
      * Constructs the score using a covariance matrix.
@@ -91,12 +94,16 @@ public class SemBicScore implements Score {
         for (int p : parents) if (forbidden.contains(p)) return Double.NaN;
 
         try {
-            double s2 = getCovariances().getValue(i, i);
-            int p = parents.length;
-
-            TetradMatrix covxx = getSelection(getCovariances(), parents, parents);
-            TetradVector covxy = getSelection(getCovariances(), parents, new int[]{i}).getColumn(0);
-            s2 -= covxx.inverse().times(covxy).dotProduct(covxy);
+            double s2;
+
+            if (choleskyCache != null) {
+                s2 = choleskyCache.residualVariance(i, parents);
+            } else {
+                s2 = getCovariances().getValue(i, i);
+                TetradMatrix covxx = getSelection(getCovariances(), parents, parents);
+                TetradVector covxy = getSelection(getCovariances(), parents, new int[]{i}).getColumn(0);
+                s2 -= covxx.inverse().times(covxy).dotProduct(covxy);
+            }
 
             if (s2 <= 0) {
                 if (isVerbose()) {
@@ -264,6 +271,30 @@ public class SemBicScore implements Score {
         this.ignoreLinearDependent = ignoreLinearDependent;
     }
 
+    /**
+     * True iff Cholesky factors of parent covariance matrices are cached and updated as parents
+     * are added or removed, rather than inverting the parent covariance matrix for each score.
+     */
+    public boolean isUseCholeskyCache() {
+        return choleskyCache != null;
+    }
+
+    /**
+     * Turns the Cholesky factor cache on or off, keeping at most the given number of factors.
+     *
+     * @see CholeskyCache
+     */
+    public void setUseCholeskyCache(boolean useCholeskyCache, int capacity) {
+        this.choleskyCache = useCholeskyCache ? new CholeskyCache(getCovariances(), capacity) : null;
+    }
+
+    /**
+     * Turns the Cholesky factor cache on or off, keeping at most 10,000 factors.
+     */
+    public void setUseCholeskyCache(boolean useCholeskyCache) {
+        setUseCholeskyCache(useCholeskyCache, 10000);
+    }
+
     public void setOut(PrintStream out) {
         this.out = out;
     }
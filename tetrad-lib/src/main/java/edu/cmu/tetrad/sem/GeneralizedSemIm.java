@@ -21,6 +21,7 @@
 
 package edu.cmu.tetrad.sem;
 
+import edu.cmu.tetrad.calculator.expression.CompiledExpression;
 import edu.cmu.tetrad.calculator.expression.Context;
 import edu.cmu.tetrad.calculator.expression.Expression;
 import edu.cmu.tetrad.calculator.parser.ExpressionLexer;
@@ -415,27 +416,22 @@ public class GeneralizedSemIm implements IM, Simulator, TetradSerializable {
      * @return the simulated data set.
      */
     public DataSet simulateDataRecursive(int sampleSize, boolean latentDataSaved) {
-        final Map<String, Double> variableValues = new HashMap<>();
-
-        Context context = new Context() {
-            public Double getValue(String term) {
-                Double value = parameterValues.get(term);
-
-                if (value != null) {
-                    return value;
-                }
-
-                value = variableValues.get(term);
-
-                if (value != null) {
-                    return value;
-                }
+        return simulateDataRecursive(sampleSize, 1, latentDataSaved);
+    }
 
-                throw new IllegalArgumentException("No value recorded for '" + term + "'");
-            }
-        };
+    /**
+     * Simulates data as simulateDataRecursive(sampleSize, latentDataSaved) does, but evaluates
+     * each expression for a batch of rows at a time, which is faster for large simulations.
+     * Random values are then drawn in a different order, so for a given seed the data differ
+     * from those simulated a row at a time (a batch size of 1), though not in distribution.
+     *
+     * @param sampleSize > 0.
+     * @param batchSize  > 0; the number of rows simulated at a time.
+     * @return the simulated data set.
+     */
+    public DataSet simulateDataRecursive(int sampleSize, int batchSize, boolean latentDataSaved) {
+        if (batchSize < 1) throw new IllegalArgumentException("Batch size must be >= 1: " + batchSize);
 
-        List<Node> variables = pm.getNodes();
         List<Node> continuousVariables = new LinkedList<>();
         List<Node> nonErrorVariables = pm.getVariableNodes();
 
@@ -449,63 +445,81 @@ public class GeneralizedSemIm implements IM, Simulator, TetradSerializable {
             }
         }
 
-        DataSet fullDataSet = new ColtDataSet(sampleSize, continuousVariables);
-
-        // Create some index arrays to hopefully speed up the simulation.
         SemGraph graph = pm.getGraph();
         List<Node> tierOrdering = graph.getFullTierOrdering();
 
-        int[] tierIndices = new int[variables.size()];
+        // Parameters take the first slots and nodes the rest, in tier order. Each expression is
+        // compiled before the nodes after it are added, so that referring to one of them fails
+        // as it would by name.
+        List<String> parameters = new ArrayList<>(parameterValues.keySet());
+        int numParameters = parameters.size();
+        Map<String, Integer> slots = new HashMap<>();
 
-        for (int i = 0; i < tierIndices.length; i++) {
-            tierIndices[i] = nonErrorVariables.indexOf(tierOrdering.get(i));
+        for (int i = 0; i < numParameters; i++) {
+            slots.put(parameters.get(i), i);
         }
 
-        int[][] _parents = new int[variables.size()][];
-
-        for (int i = 0; i < variables.size(); i++) {
-            Node node = variables.get(i);
-            List<Node> parents = graph.getParents(node);
+        CompiledExpression[] expressions = new CompiledExpression[tierOrdering.size()];
+        int[] tierIndices = new int[tierOrdering.size()];
 
-            _parents[i] = new int[parents.size()];
+        for (int tier = 0; tier < tierOrdering.size(); tier++) {
+            Node node = tierOrdering.get(tier);
+            expressions[tier] = CompiledExpression.compile(pm.getNodeExpression(node), slots);
+            tierIndices[tier] = nonErrorVariables.indexOf(node);
 
-            for (int j = 0; j < parents.size(); j++) {
-                Node _parent = parents.get(j);
-                _parents[i][j] = variables.indexOf(_parent);
+            if (!slots.containsKey(node.getName())) {
+                slots.put(node.getName(), numParameters + tier);
             }
         }
 
+        double[][] all = new double[continuousVariables.size()][sampleSize];
+
         // Do the simulation.
-        for (int row = 0; row < sampleSize; row++) {
-            variableValues.clear();
+        if (batchSize == 1) {
+            double[] values = new double[numParameters + tierOrdering.size()];
 
-            for (int tier = 0; tier < tierOrdering.size(); tier++) {
-                Node node = tierOrdering.get(tier);
-                Expression expression = pm.getNodeExpression(node);
-                double value = expression.evaluate(context);
-                variableValues.put(node.getName(), value);
+            for (int i = 0; i < numParameters; i++) {
+                values[i] = parameterValues.get(parameters.get(i));
+            }
 
-                int col = tierIndices[tier];
+            for (int row = 0; row < sampleSize; row++) {
+                for (int tier = 0; tier < expressions.length; tier++) {
+                    double value = expressions[tier].evaluate(values);
+                    values[numParameters + tier] = value;
 
-                if (col == -1) {
-                    continue;
+                    int col = tierIndices[tier];
+
+                    if (col != -1) {
+                        all[col][row] = value;
+                    }
                 }
+            }
+        } else {
+            int size = Math.min(batchSize, sampleSize);
+            double[][] columns = new double[numParameters + tierOrdering.size()][size];
 
-//                if (isSimulatePositiveDataOnly() && value < 0) {
-//                    row--;
-//                    continue ROW;
-//                }
+            for (int i = 0; i < numParameters; i++) {
+                Arrays.fill(columns[i], parameterValues.get(parameters.get(i)));
+            }
+
+            for (int from = 0; from < sampleSize; from += size) {
+                int n = Math.min(size, sampleSize - from);
 
-//                if (!Double.isNaN(selfLoopCoef) && row > 0) {
-//                    value += selfLoopCoef * fullDataSet.getDouble(row - 1, col);
-//                }
+                for (int tier = 0; tier < expressions.length; tier++) {
+                    double[] column = columns[numParameters + tier];
+                    expressions[tier].evaluate(columns, 0, n, column);
 
-//                value = min(max(value, -5.), 5.);
+                    int col = tierIndices[tier];
 
-                fullDataSet.setDouble(row, col, value);
+                    if (col != -1) {
+                        System.arraycopy(column, 0, all[col], from, n);
+                    }
+                }
             }
         }
 
+        DataSet fullDataSet = new BoxDataSet(new VerticalDoubleDataBox(all), continuousVariables);
+
         if (latentDataSaved) {
             return fullDataSet;
         } else {
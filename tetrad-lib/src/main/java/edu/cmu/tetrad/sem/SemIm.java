@@ -1314,6 +1314,10 @@ public final class SemIm implements IM, ISemIm, TetradSerializable {
         }
     }
 
+    public ScoreType getScoreType() {
+        return scoreType;
+    }
+
     public void setScoreType(ScoreType scoreType) {
         if (scoreType == null) {
             scoreType = ScoreType.Fgls;
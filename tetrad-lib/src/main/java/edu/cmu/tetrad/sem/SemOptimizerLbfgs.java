@@ -0,0 +1,638 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.sem;
+
+import edu.cmu.tetrad.data.DataUtils;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.graph.SemGraph;
+import edu.cmu.tetrad.util.RandomUtil;
+import edu.cmu.tetrad.util.TetradLogger;
+import edu.cmu.tetrad.util.TetradMatrix;
+
+import java.util.List;
+
+/**
+ * Optimizes a SEM by minimizing its fitting function (FML or FGLS, whichever the SEM uses)
+ * with L-BFGS, using the analytic gradient of the fitting function with respect to the free
+ * parameters. The value and gradient are computed together from one Cholesky decomposition
+ * of the implied covariance matrix, so each step costs about as much as one evaluation of
+ * the fitting function.
+ * <p>
+ * The search starts from the regression estimates if the model has no latent variables,
+ * and otherwise from the current parameter values of the SEM; each restart after the first
+ * starts from random values, as for SemOptimizerPowell.
+ */
+public class SemOptimizerLbfgs implements SemOptimizer {
+    static final long serialVersionUID = 23L;
+
+    // The smallest value a variance may take.
+    private static final double MIN_VARIANCE = 1e-10;
+
+    private int numRestarts = 0;
+
+    // The number of past steps used to approximate the inverse Hessian.
+    private int memory = 10;
+
+    // The search stops when the largest gradient component is less than this.
+    private double tolerance = 1e-8;
+
+    private int maxIterations = 1000;
+
+    //=========================CONSTRUCTORS============================//
+
+    /**
+     * Blank constructor.
+     */
+    public SemOptimizerLbfgs() {
+    }
+
+    /**
+     * Generates a simple exemplar of this class to test serialization.
+     */
+    public static SemOptimizerLbfgs serializableInstance() {
+        return new SemOptimizerLbfgs();
+    }
+
+    //=========================PUBLIC METHODS==========================//
+
+    public void optimize(SemIm semIm) {
+        TetradMatrix sampleCovar = semIm.getSampleCovar();
+
+        if (sampleCovar == null) {
+            throw new NullPointerException("Sample covar has not been set.");
+        }
+
+        if (DataUtils.containsMissingValue(sampleCovar)) {
+            throw new IllegalArgumentException("Please remove or impute missing values.");
+        }
+
+        FittingFunction function = new FittingFunction(semIm);
+
+        double min = Double.POSITIVE_INFINITY;
+        double[] point = null;
+
+        for (int count = 0; count < numRestarts + 1; count++) {
+            double[] p = count == 0 ? startingPoint(semIm, function) : randomPoint(semIm.getFreeParameters());
+            double value = minimize(function, p);
+
+            if (value < min) {
+                min = value;
+                point = p;
+            }
+        }
+
+        if (point == null) {
+            throw new IllegalArgumentException("The fitting function could not be evaluated at any starting point.");
+        }
+
+        semIm.setFreeParamValues(point);
+
+        TetradLogger.getInstance().log("optimization", semIm.getScoreType() + " = " + semIm.getScore());
+    }
+
+    @Override
+    public void setNumRestarts(int numRestarts) {
+        this.numRestarts = numRestarts;
+    }
+
+    @Override
+    public int getNumRestarts() {
+        return numRestarts;
+    }
+
+    /**
+     * Sets the number of past steps used to approximate the inverse Hessian. By default 10.
+     */
+    public void setMemory(int memory) {
+        if (memory < 1) throw new IllegalArgumentException("Memory must be at least 1: " + memory);
+        this.memory = memory;
+    }
+
+    /**
+     * Sets the size of the largest gradient component below which the search stops. By
+     * default 1e-8.
+     */
+    public void setTolerance(double tolerance) {
+        if (tolerance < 0) throw new IllegalArgumentException("Tolerance must be >= 0: " + tolerance);
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Sets the maximum number of iterations for each start. By default 1000.
+     */
+    public void setMaxIterations(int maxIterations) {
+        if (maxIterations < 1) throw new IllegalArgumentException("Max iterations must be at least 1: " + maxIterations);
+        this.maxIterations = maxIterations;
+    }
+
+    public String toString() {
+        return "Sem Optimizer L-BFGS";
+    }
+
+    //=========================PRIVATE METHODS==========================//
+
+    private double[] startingPoint(SemIm semIm, FittingFunction function) {
+        SemGraph graph = semIm.getSemPm().getGraph();
+
+        // The regression optimizer indexes the sample covariance matrix by graph node, so it
+        // only applies if the nodes of the graph are just the measured nodes.
+        if (graph.getNodes().equals(semIm.getMeasuredNodes())) {
+            try {
+                SemIm regression = new SemIm(semIm);
+                new SemOptimizerRegression().optimize(regression);
+                double[] p = regression.getFreeParamValues();
+
+                if (!Double.isInfinite(function.value(p, null))) {
+                    return p;
+                }
+            } catch (RuntimeException e) {
+                // Start from the current values instead.
+            }
+        }
+
+        double[] p = semIm.getFreeParamValues();
+
+        if (Double.isInfinite(function.value(p, null))) {
+            return randomPoint(semIm.getFreeParameters());
+        }
+
+        return p;
+    }
+
+    private double[] randomPoint(List<Parameter> freeParameters) {
+        double[] p = new double[freeParameters.size()];
+
+        for (int i = 0; i < freeParameters.size(); i++) {
+            if (freeParameters.get(i).getType() == ParamType.VAR) {
+                p[i] = RandomUtil.getInstance().nextUniform(0, 1);
+            } else {
+                p[i] = RandomUtil.getInstance().nextUniform(-1, 1);
+            }
+        }
+
+        return p;
+    }
+
+    // Minimizes the function from x, leaving the minimum in x and returning its value. Variances
+    // are kept at or above MIN_VARIANCE by projection; those at the bound with a gradient
+    // pushing them below it are held fixed for the step.
+    private double minimize(FittingFunction function, double[] x) {
+        int n = x.length;
+        boolean[] variance = function.getVariances();
+
+        project(x, variance);
+
+        double[] g = new double[n];
+        double f = function.value(x, g);
+
+        if (Double.isInfinite(f)) return f;
+
+        double[][] s = new double[memory][];
+        double[][] y = new double[memory][];
+        double[] rho = new double[memory];
+        double[] alpha = new double[memory];
+        int k = 0;
+
+        double[] d = new double[n];
+        double[] xNew = new double[n];
+        double[] gNew = new double[n];
+        boolean[] held = new boolean[n];
+
+        for (int iteration = 0; iteration < maxIterations; iteration++) {
+            boolean changed = false;
+
+            for (int i = 0; i < n; i++) {
+                boolean _held = variance[i] && x[i] <= MIN_VARIANCE && g[i] > 0;
+                changed |= _held != held[i];
+                held[i] = _held;
+            }
+
+            // The curvature pairs are for the old free parameters.
+            if (changed) k = 0;
+
+            double gradient = 0.0;
+
+            for (int i = 0; i < n; i++) {
+                if (!held[i]) gradient = Math.max(gradient, Math.abs(g[i]));
+            }
+
+            if (gradient < tolerance) break;
+
+            // Two-loop recursion for d = -H g, over the parameters not held.
+            for (int i = 0; i < n; i++) d[i] = held[i] ? 0.0 : -g[i];
+
+            int m = Math.min(k, memory);
+
+            for (int l = 1; l <= m; l++) {
+                int c = (k - l) % memory;
+                alpha[c] = rho[c] * dot(s[c], d);
+                axpy(-alpha[c], y[c], d);
+            }
+
+            int last = (k - 1) % memory;
+            double gamma = k == 0 ? 1.0 / Math.max(1.0, Math.sqrt(dot(g, g)))
+                    : dot(s[last], y[last]) / dot(y[last], y[last]);
+
+            for (int i = 0; i < n; i++) d[i] *= gamma;
+
+            for (int l = m; l >= 1; l--) {
+                int c = (k - l) % memory;
+                double beta = rho[c] * dot(y[c], d);
+                axpy(alpha[c] - beta, s[c], d);
+            }
+
+            for (int i = 0; i < n; i++) if (held[i]) d[i] = 0.0;
+
+            // Not a descent direction; start again from steepest descent.
+            if (!(dot(g, d) < 0)) {
+                for (int i = 0; i < n; i++) d[i] = held[i] ? 0.0 : -g[i] * gamma;
+                k = 0;
+            }
+
+            // Backtracking line search along the projected path for sufficient decrease;
+            // points where the implied covariance matrix is not positive definite have value
+            // infinity and are backed away from.
+            double step = 1.0;
+            double fNew = Double.POSITIVE_INFINITY;
+
+            for (int tries = 0; tries < 50; tries++) {
+                for (int i = 0; i < n; i++) xNew[i] = x[i] + step * d[i];
+                project(xNew, variance);
+                fNew = function.value(xNew, gNew);
+
+                double decrease = 0.0;
+                for (int i = 0; i < n; i++) decrease += g[i] * (xNew[i] - x[i]);
+
+                if (fNew <= f + 1e-4 * decrease) break;
+                step *= 0.5;
+            }
+
+            if (!(fNew < f)) break;
+
+            int c = k % memory;
+
+            if (s[c] == null) {
+                s[c] = new double[n];
+                y[c] = new double[n];
+            }
+
+            for (int i = 0; i < n; i++) {
+                s[c][i] = xNew[i] - x[i];
+                y[c][i] = gNew[i] - g[i];
+            }
+
+            double sy = dot(s[c], y[c]);
+
+            // Keep the pair only if the curvature condition holds.
+            if (sy > 1e-12 * dot(y[c], y[c])) {
+                rho[c] = 1.0 / sy;
+                k++;
+            }
+
+            System.arraycopy(xNew, 0, x, 0, n);
+            System.arraycopy(gNew, 0, g, 0, n);
+            f = fNew;
+        }
+
+        return f;
+    }
+
+    private static void project(double[] x, boolean[] variance) {
+        for (int i = 0; i < x.length; i++) {
+            if (variance[i] && x[i] < MIN_VARIANCE) x[i] = MIN_VARIANCE;
+        }
+    }
+
+    private static double dot(double[] a, double[] b) {
+        double sum = 0.0;
+        for (int i = 0; i < a.length; i++) sum += a[i] * b[i];
+        return sum;
+    }
+
+    private static void axpy(double a, double[] x, double[] y) {
+        for (int i = 0; i < x.length; i++) y[i] += a * x[i];
+    }
+
+    /**
+     * The fitting function of a SEM and its gradient as functions of the free parameters.
+     * The implied covariance matrix over all variables is A Omega A', where A = (I - B')^-1,
+     * B is the matrix of edge coefficients and Omega the error covariance matrix; Sigma is
+     * its submatrix for the measured variables. If G is the derivative of the fitting
+     * function with respect to Sigma, padded with zeros to all variables, then the derivative
+     * with respect to B is 2 Sigma_all G A and with respect to Omega is A' G A.
+     */
+    static class FittingFunction {
+        private final ParamType[] types;
+        private final int[] rows;
+        private final int[] cols;
+        private final int[] measured;
+        private final boolean fgls;
+
+        // The edge coefficients and error covariances, including fixed parameters.
+        private final double[][] b;
+        private final double[][] omega;
+
+        private final double[][] s;
+        private final double[][] sInv;
+        private final double logDetS;
+
+        FittingFunction(SemIm semIm) {
+            List<Node> variables = semIm.getVariableNodes();
+            List<Parameter> parameters = semIm.getFreeParameters();
+            SemGraph graph = semIm.getSemPm().getGraph();
+
+            types = new ParamType[parameters.size()];
+            rows = new int[parameters.size()];
+            cols = new int[parameters.size()];
+
+            for (int k = 0; k < parameters.size(); k++) {
+                Parameter parameter = parameters.get(k);
+                types[k] = parameter.getType();
+                rows[k] = variables.indexOf(graph.getVarNode(parameter.getNodeA()));
+                cols[k] = variables.indexOf(graph.getVarNode(parameter.getNodeB()));
+            }
+
+            List<Node> measuredNodes = semIm.getMeasuredNodes();
+            measured = new int[measuredNodes.size()];
+
+            for (int i = 0; i < measured.length; i++) {
+                measured[i] = variables.indexOf(measuredNodes.get(i));
+            }
+
+            fgls = semIm.getScoreType() == ScoreType.Fgls;
+            b = semIm.getEdgeCoef().toArray();
+            omega = semIm.getErrCovar().toArray();
+
+            TetradMatrix sampleCovar = semIm.getSampleCovar();
+            s = sampleCovar.toArray();
+
+            double[][] l = cholesky(s);
+
+            if (l == null) {
+                throw new IllegalArgumentException("The sample covariance matrix is not positive definite.");
+            }
+
+            logDetS = logDet(l);
+            sInv = fgls ? inverse(l) : null;
+        }
+
+        /**
+         * @return For each free parameter, whether it is a variance.
+         */
+        boolean[] getVariances() {
+            boolean[] variances = new boolean[types.length];
+            for (int k = 0; k < types.length; k++) variances[k] = types[k] == ParamType.VAR;
+            return variances;
+        }
+
+        /**
+         * Returns the value of the fitting function at the given parameter values, or infinity
+         * if the implied covariance matrix is not positive definite, filling in the gradient
+         * if it is not null.
+         */
+        double value(double[] p, double[] gradient) {
+            int n = b.length;
+            int q = measured.length;
+
+            for (int k = 0; k < p.length; k++) {
+                int i = rows[k];
+                int j = cols[k];
+
+                if (Double.isNaN(p[k]) || Double.isInfinite(p[k])) {
+                    return Double.POSITIVE_INFINITY;
+                }
+
+                if (types[k] == ParamType.COEF) {
+                    b[i][j] = p[k];
+                } else {
+                    if (types[k] == ParamType.VAR && p[k] <= 0.0) {
+                        return Double.POSITIVE_INFINITY;
+                    }
+
+                    omega[i][j] = p[k];
+                    omega[j][i] = p[k];
+                }
+            }
+
+            // A = (I - B')^-1.
+            double[][] a;
+
+            try {
+                double[][] m = new double[n][n];
+
+                for (int i = 0; i < n; i++) {
+                    for (int j = 0; j < n; j++) {
+                        m[i][j] = (i == j ? 1.0 : 0.0) - b[j][i];
+                    }
+                }
+
+                a = new TetradMatrix(m).inverse().toArray();
+            } catch (RuntimeException e) {
+                return Double.POSITIVE_INFINITY;
+            }
+
+            // The rows of A Omega A' for the measured variables; Sigma is their measured columns.
+            double[][] aOmega = new double[q][n];
+
+            for (int r = 0; r < q; r++) {
+                double[] row = a[measured[r]];
+
+                for (int k = 0; k < n; k++) {
+                    double ark = row[k];
+                    if (ark == 0.0) continue;
+                    double[] omegaK = omega[k];
+                    for (int j = 0; j < n; j++) aOmega[r][j] += ark * omegaK[j];
+                }
+            }
+
+            double[][] sigmaRows = new double[q][n];
+
+            for (int r = 0; r < q; r++) {
+                for (int j = 0; j < n; j++) {
+                    sigmaRows[r][j] = dot(aOmega[r], a[j]);
+                }
+            }
+
+            double[][] sigma = new double[q][q];
+
+            for (int r = 0; r < q; r++) {
+                for (int c = 0; c < q; c++) {
+                    sigma[r][c] = sigmaRows[r][measured[c]];
+                }
+            }
+
+            double value;
+            double[][] g;
+
+            if (fgls) {
+                // F = 0.5 tr((I - Sigma S^-1)^2); G = S^-1 Sigma S^-1 - S^-1.
+                double[][] sigmaSInv = times(sigma, sInv);
+                value = 0.0;
+
+                for (int r = 0; r < q; r++) {
+                    for (int c = 0; c < q; c++) {
+                        double drc = (r == c ? 1.0 : 0.0) - sigmaSInv[r][c];
+                        double dcr = (r == c ? 1.0 : 0.0) - sigmaSInv[c][r];
+                        value += 0.5 * drc * dcr;
+                    }
+                }
+
+                if (gradient == null) return value;
+
+                g = times(sInv, sigmaSInv);
+
+                for (int r = 0; r < q; r++) {
+                    for (int c = 0; c < q; c++) {
+                        g[r][c] -= sInv[r][c];
+                    }
+                }
+            } else {
+                // F = log|Sigma| + tr(S Sigma^-1) - log|S| - q; G = Sigma^-1 - Sigma^-1 S Sigma^-1.
+                double[][] l = cholesky(sigma);
+
+                if (l == null) return Double.POSITIVE_INFINITY;
+
+                double[][] sigmaInv = inverse(l);
+                double[][] sigmaInvS = times(sigmaInv, s);
+                double trace = 0.0;
+
+                for (int r = 0; r < q; r++) trace += sigmaInvS[r][r];
+
+                value = logDet(l) + trace - logDetS - q;
+
+                if (gradient == null) return value;
+
+                g = times(sigmaInvS, sigmaInv);
+
+                for (int r = 0; r < q; r++) {
+                    for (int c = 0; c < q; c++) {
+                        g[r][c] = sigmaInv[r][c] - g[r][c];
+                    }
+                }
+            }
+
+            // GA, whose only nonzero rows are those of the measured variables.
+            double[][] ga = new double[q][n];
+
+            for (int r = 0; r < q; r++) {
+                for (int c = 0; c < q; c++) {
+                    double grc = g[r][c];
+                    if (grc == 0.0) continue;
+                    double[] aC = a[measured[c]];
+                    for (int j = 0; j < n; j++) ga[r][j] += grc * aC[j];
+                }
+            }
+
+            for (int k = 0; k < p.length; k++) {
+                int i = rows[k];
+                int j = cols[k];
+                double sum = 0.0;
+
+                if (types[k] == ParamType.COEF) {
+                    // 2 (Sigma_all G A)_ij; Sigma_all is symmetric, so its measured rows give its measured columns.
+                    for (int r = 0; r < q; r++) sum += sigmaRows[r][i] * ga[r][j];
+                    gradient[k] = 2 * sum;
+                } else {
+                    // (A' G A)_ij, counted twice for a covariance, which sets two entries.
+                    for (int r = 0; r < q; r++) sum += a[measured[r]][i] * ga[r][j];
+                    gradient[k] = types[k] == ParamType.VAR ? sum : 2 * sum;
+                }
+            }
+
+            return value;
+        }
+
+        // The lower triangular Cholesky factor, or null if the matrix is not positive definite.
+        private static double[][] cholesky(double[][] m) {
+            int q = m.length;
+            double[][] l = new double[q][q];
+
+            for (int j = 0; j < q; j++) {
+                double d = m[j][j];
+                for (int k = 0; k < j; k++) d -= l[j][k] * l[j][k];
+                if (!(d > 0)) return null;
+                l[j][j] = Math.sqrt(d);
+
+                for (int i = j + 1; i < q; i++) {
+                    double sum = m[i][j];
+                    for (int k = 0; k < j; k++) sum -= l[i][k] * l[j][k];
+                    l[i][j] = sum / l[j][j];
+                }
+            }
+
+            return l;
+        }
+
+        private static double logDet(double[][] l) {
+            double sum = 0.0;
+            for (int i = 0; i < l.length; i++) sum += Math.log(l[i][i]);
+            return 2 * sum;
+        }
+
+        // The inverse of L L' from its Cholesky factor L.
+        private static double[][] inverse(double[][] l) {
+            int q = l.length;
+            double[][] lInv = new double[q][q];
+
+            for (int j = 0; j < q; j++) {
+                lInv[j][j] = 1.0 / l[j][j];
+
+                for (int i = j + 1; i < q; i++) {
+                    double sum = 0.0;
+                    for (int k = j; k < i; k++) sum -= l[i][k] * lInv[k][j];
+                    lInv[i][j] = sum / l[i][i];
+                }
+            }
+
+            double[][] inverse = new double[q][q];
+
+            for (int i = 0; i < q; i++) {
+                for (int j = 0; j <= i; j++) {
+                    double sum = 0.0;
+                    for (int k = i; k < q; k++) sum += lInv[k][i] * lInv[k][j];
+                    inverse[i][j] = sum;
+                    inverse[j][i] = sum;
+                }
+            }
+
+            return inverse;
+        }
+
+        private static double[][] times(double[][] x, double[][] y) {
+            int rows = x.length;
+            int inner = y.length;
+            int cols = y[0].length;
+            double[][] product = new double[rows][cols];
+
+            for (int i = 0; i < rows; i++) {
+                for (int k = 0; k < inner; k++) {
+                    double xik = x[i][k];
+                    if (xik == 0.0) continue;
+                    double[] yk = y[k];
+                    for (int j = 0; j < cols; j++) product[i][j] += xik * yk[j];
+                }
+            }
+
+            return product;
+        }
+    }
+}
@@ -263,6 +263,10 @@ public class ParamDescriptions {
         map.put("probTwoCycle", new ParamDescription(
                 "The probability of creating a 2-cycles in the graph (0 - 1)",
                 0.0, 0.0, 1.0));
+
+        map.put("useCholeskyCache", new ParamDescription(
+                "Yes if Cholesky factors of parent covariance matrices should be cached and updated",
+                false));
     }
 
     public static ParamDescriptions getInstance() {
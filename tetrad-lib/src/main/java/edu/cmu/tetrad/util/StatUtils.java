@@ -26,6 +26,7 @@ import cern.jet.stat.Descriptive;
 import edu.cmu.tetrad.data.BoxDataSet;
 import edu.cmu.tetrad.data.CovarianceMatrix;
 import edu.cmu.tetrad.data.DoubleDataBox;
+import edu.cmu.tetrad.data.ICovarianceMatrix;
 import org.apache.commons.math3.distribution.ChiSquaredDistribution;
 import org.apache.commons.math3.distribution.NormalDistribution;
 import org.apache.commons.math3.linear.SingularMatrixException;
@@ -1790,6 +1791,69 @@ public final class StatUtils {
         return partialCorrelation(covariance.getSelection(selection, selection));
     }
 
+    /**
+     * @return the partial correlation(x, y | z), where x, y and z[0..numZ - 1] are indices
+     * into <code>cov</code>. Values are read from <code>cov</code> directly rather than
+     * copied into a submatrix, and all intermediate results are kept in <code>work</code>,
+     * which must have length at least numZ * (numZ + 2), so that nothing is allocated.
+     * The partial correlation is calculated from the Cholesky factor of cov(z, z) as the
+     * correlation of the residuals of x and y regressed on z.
+     * @throws SingularMatrixException if cov(z, z) or the residual covariance matrix of x and
+     *                                 y is not positive definite.
+     */
+    public static double partialCorrelation(ICovarianceMatrix cov, int x, int y, int[] z, int numZ,
+                                            double[] work) throws SingularMatrixException {
+        final int k = numZ;
+        final int a = k * k;
+        final int b = a + k;
+
+        // Cholesky factor L of cov(z, z), row-major in work[0, k * k).
+        for (int r = 0; r < k; r++) {
+            for (int c = 0; c <= r; c++) {
+                double sum = cov.getValue(z[r], z[c]);
+
+                for (int t = 0; t < c; t++) {
+                    sum -= work[r * k + t] * work[c * k + t];
+                }
+
+                if (r == c) {
+                    if (!(sum > 0)) throw new SingularMatrixException();
+                    work[r * k + r] = sqrt(sum);
+                } else {
+                    work[r * k + c] = sum / work[c * k + c];
+                }
+            }
+        }
+
+        // L^-1 cov(z, x) in work[a, a + k) and L^-1 cov(z, y) in work[b, b + k).
+        double sxx = cov.getValue(x, x);
+        double syy = cov.getValue(y, y);
+        double sxy = cov.getValue(x, y);
+
+        for (int r = 0; r < k; r++) {
+            double sumX = cov.getValue(z[r], x);
+            double sumY = cov.getValue(z[r], y);
+
+            for (int t = 0; t < r; t++) {
+                sumX -= work[r * k + t] * work[a + t];
+                sumY -= work[r * k + t] * work[b + t];
+            }
+
+            double ax = sumX / work[r * k + r];
+            double ay = sumY / work[r * k + r];
+            work[a + r] = ax;
+            work[b + r] = ay;
+
+            sxx -= ax * ax;
+            syy -= ay * ay;
+            sxy -= ax * ay;
+        }
+
+        if (!(sxx > 0) || !(syy > 0)) throw new SingularMatrixException();
+
+        return sxy / sqrt(sxx * syy);
+    }
+
     public static double logCoshScore(double[] _f) {
         _f = standardizeData(_f);
 
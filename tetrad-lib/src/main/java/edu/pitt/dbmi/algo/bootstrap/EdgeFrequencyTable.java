@@ -0,0 +1,212 @@
+package edu.pitt.dbmi.algo.bootstrap;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.cmu.tetrad.graph.Edge;
+import edu.cmu.tetrad.graph.Edge.Property;
+import edu.cmu.tetrad.graph.EdgeTypeProbability.EdgeType;
+import edu.cmu.tetrad.graph.Endpoint;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Node;
+
+/**
+ * Counts, for each pair of nodes, how many of the graphs added so far have each type of
+ * edge between them, and how many have each edge property. Graphs are folded in as they
+ * are added and not kept, so the table takes the same space however many graphs are
+ * added, and the frequencies may be read at any time. Nodes are matched by name.
+ *
+ *
+ */
+public class EdgeFrequencyTable {
+
+	private static final EdgeType[] TYPES = EdgeType.values();
+
+	private static final Property[] PROPERTIES = Property.values();
+
+	// The nodes, sorted by name, and the index of each by name.
+	private final List<Node> nodes;
+
+	private final Map<String, Integer> indices = new HashMap<>();
+
+	// For each pair, the number of graphs in which the pair is adjacent (in the nil slot)
+	// and the number of edges of each other type, oriented from the earlier node.
+	private final int[] typeCounts;
+
+	private final int[] propertyCounts;
+
+	private int numGraphs = 0;
+
+	public EdgeFrequencyTable(List<Node> nodes) {
+		this.nodes = new ArrayList<>(nodes);
+
+		Collections.sort(this.nodes, new Comparator<Node>() {
+			@Override
+			public int compare(Node node1, Node node2) {
+				return node1.getName().compareTo(node2.getName());
+			}
+		});
+
+		for (int i = 0; i < this.nodes.size(); i++) {
+			indices.put(this.nodes.get(i).getName(), i);
+		}
+
+		int numPairs = this.nodes.size() * (this.nodes.size() - 1) / 2;
+		typeCounts = new int[numPairs * TYPES.length];
+		propertyCounts = new int[numPairs * PROPERTIES.length];
+	}
+
+	/**
+	 * @return the nodes of the table, sorted by name.
+	 */
+	public List<Node> getNodes() {
+		return new ArrayList<>(nodes);
+	}
+
+	/**
+	 * Counts the edges of the given graph, which must contain all of the nodes of the table.
+	 */
+	public synchronized void add(Graph graph) {
+		for (Node node : nodes) {
+			if (graph.getNode(node.getName()) == null) {
+				throw new IllegalArgumentException("Graph does not contain " + node);
+			}
+		}
+
+		BitSet adjacent = new BitSet();
+
+		for (Edge edge : graph.getEdges()) {
+			Integer i = indices.get(edge.getNode1().getName());
+			Integer j = indices.get(edge.getNode2().getName());
+
+			if (i == null || j == null || i.equals(j)) {
+				continue;
+			}
+
+			int pair = pair(i, j);
+
+			if (!adjacent.get(pair)) {
+				adjacent.set(pair);
+				typeCounts[pair * TYPES.length]++;
+			}
+
+			EdgeType type = i < j
+					? type(edge.getEndpoint1(), edge.getEndpoint2())
+					: type(edge.getEndpoint2(), edge.getEndpoint1());
+
+			if (type != null) {
+				typeCounts[pair * TYPES.length + type.ordinal()]++;
+			}
+
+			for (Property property : edge.getProperties()) {
+				propertyCounts[pair * PROPERTIES.length + property.ordinal()]++;
+			}
+		}
+
+		numGraphs++;
+	}
+
+	/**
+	 * @return the number of graphs added so far.
+	 */
+	public synchronized int getNumGraphs() {
+		return numGraphs;
+	}
+
+	/**
+	 * @return the fraction of the graphs added so far that have an edge of the given type
+	 * from node1 to node2, or, for nil, that have no edge between them.
+	 */
+	public synchronized double getProbability(Node node1, Node node2, EdgeType type) {
+		int i = index(node1);
+		int j = index(node2);
+
+		if (i > j) {
+			type = reverse(type);
+		}
+
+		int pair = pair(i, j);
+		int adjacent = typeCounts[pair * TYPES.length];
+
+		if (type == EdgeType.nil) {
+			return (numGraphs - adjacent) / (double) numGraphs;
+		}
+
+		return typeCounts[pair * TYPES.length + type.ordinal()] / (double) numGraphs;
+	}
+
+	/**
+	 * @return for each property found on an edge between the two nodes, the fraction of the
+	 * graphs added so far with that property there, or null if there are none.
+	 */
+	public synchronized Map<Property, Double> getPropertyProbabilities(Node node1, Node node2) {
+		int pair = pair(index(node1), index(node2));
+		Map<Property, Double> probabilities = null;
+
+		for (Property property : PROPERTIES) {
+			int count = propertyCounts[pair * PROPERTIES.length + property.ordinal()];
+
+			if (count > 0) {
+				if (probabilities == null) {
+					probabilities = new HashMap<>();
+				}
+
+				probabilities.put(property, count / (double) numGraphs);
+			}
+		}
+
+		return probabilities;
+	}
+
+	private int index(Node node) {
+		Integer index = indices.get(node.getName());
+
+		if (index == null) {
+			throw new IllegalArgumentException("Not a node in the table: " + node);
+		}
+
+		return index;
+	}
+
+	private static int pair(int i, int j) {
+		if (i > j) {
+			int k = i;
+			i = j;
+			j = k;
+		}
+
+		return j * (j - 1) / 2 + i;
+	}
+
+	private static EdgeType type(Endpoint e1, Endpoint e2) {
+		if (e1 == Endpoint.TAIL && e2 == Endpoint.ARROW) return EdgeType.ta;
+		if (e1 == Endpoint.ARROW && e2 == Endpoint.TAIL) return EdgeType.at;
+		if (e1 == Endpoint.CIRCLE && e2 == Endpoint.ARROW) return EdgeType.ca;
+		if (e1 == Endpoint.ARROW && e2 == Endpoint.CIRCLE) return EdgeType.ac;
+		if (e1 == Endpoint.CIRCLE && e2 == Endpoint.CIRCLE) return EdgeType.cc;
+		if (e1 == Endpoint.ARROW && e2 == Endpoint.ARROW) return EdgeType.aa;
+		if (e1 == Endpoint.TAIL && e2 == Endpoint.TAIL) return EdgeType.tt;
+		return null;
+	}
+
+	private static EdgeType reverse(EdgeType type) {
+		switch (type) {
+		case ta:
+			return EdgeType.at;
+		case at:
+			return EdgeType.ta;
+		case ca:
+			return EdgeType.ac;
+		case ac:
+			return EdgeType.ca;
+		default:
+			return type;
+		}
+	}
+
+}
@@ -3,9 +3,14 @@ package edu.pitt.dbmi.algo.bootstrap;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import edu.cmu.tetrad.algcomparison.algorithm.Algorithm;
 import edu.cmu.tetrad.algcomparison.algorithm.MultiDataSetAlgorithm;
@@ -16,6 +21,7 @@ import edu.cmu.tetrad.data.DataUtils;
 import edu.cmu.tetrad.data.IKnowledge;
 import edu.cmu.tetrad.data.Knowledge2;
 import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
 
 //MP: These libraries are required for multi-threading
 import edu.cmu.tetrad.util.ForkJoinPoolInstance;
@@ -40,10 +46,21 @@ public class GeneralBootstrapSearch {
 	private boolean verbose = false;
 	
 	private List<Graph> PAGs = new ArrayList<>();
-	
+
+	// Whether the graphs are kept as well as counted; without them memory does not grow
+	// with the number of bootstraps.
+	private boolean storeGraphs = true;
+
+	private EdgeFrequencyTable edgeFrequencies = null;
+
 	//private ForkJoinPool pool = null;
 	
-	private final ExecutorService pool;
+	// The pool of the search running in parallel, if any; each search makes its own.
+	private volatile ExecutorService pool = null;
+
+	private final List<Future<Graph>> running = new ArrayList<>();
+
+	private volatile boolean canceled = false;
 	
 	private DataSet data = null;
 	
@@ -66,17 +83,78 @@ public class GeneralBootstrapSearch {
 	public GeneralBootstrapSearch(DataSet data) {
 		this.data = data;
 		//pool = ForkJoinPoolInstance.getInstance().getPool();
-		pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
 	}
 
 	public GeneralBootstrapSearch(List<DataSet> dataSets) {
 		this.dataSets = dataSets;
 		//pool = ForkJoinPoolInstance.getInstance().getPool();
-		pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
 	}
 
-	public void addPAG(Graph pag) {
-		PAGs.add(pag);
+	/**
+	 * Counts the edges of a finished bootstrap graph, keeping it too if graphs are stored.
+	 */
+	public synchronized void addPAG(Graph pag) {
+		if (pag == null) {
+			return;
+		}
+
+		if (edgeFrequencies == null) {
+			edgeFrequencies = new EdgeFrequencyTable(pag.getNodes());
+		}
+
+		edgeFrequencies.add(pag);
+
+		if (storeGraphs) {
+			PAGs.add(pag);
+		}
+
+		if (verbose) {
+			out.println("Sampling Search Result (" + (edgeFrequencies.getNumGraphs() - 1) + "):");
+			out.println(GraphUtils.graphToText(pag));
+			out.println();
+		}
+	}
+
+	/**
+	 * @return the edge frequencies of the bootstrap graphs finished so far, or null if there
+	 *         are none yet. The table fills in while the search runs.
+	 */
+	public synchronized EdgeFrequencyTable getEdgeFrequencies() {
+		return edgeFrequencies;
+	}
+
+	/**
+	 * Sets whether the bootstrap graphs are returned by search() as well as counted. True by
+	 * default.
+	 */
+	public void setStoreGraphs(boolean storeGraphs) {
+		this.storeGraphs = storeGraphs;
+	}
+
+	/**
+	 * Stops a running search. Bootstraps not yet started are not run, and those running are
+	 * interrupted; the graphs finished so far are kept. A search canceled before it starts
+	 * returns at once; setting a new algorithm or data clears the cancel.
+	 */
+	public void cancel() {
+		canceled = true;
+
+		// Cancelling the futures also wakes a search waiting on them.
+		synchronized (running) {
+			for (Future<Graph> future : running) {
+				future.cancel(true);
+			}
+		}
+
+		ExecutorService pool = this.pool;
+
+		if (pool != null) {
+			pool.shutdownNow();
+		}
+	}
+
+	public boolean isCanceled() {
+		return canceled;
 	}
 
 	/*public DataSet getBootstrapDataset(int id) {
@@ -90,11 +168,13 @@ public class GeneralBootstrapSearch {
 	public void setAlgorithm(Algorithm algorithm) {
 		this.algorithm = algorithm;
 		this.multiDataSetAlgorithm = null;
+		this.canceled = false;
 	}
 
 	public void setMultiDataSetAlgorithm(MultiDataSetAlgorithm multiDataSetAlgorithm) {
 		this.multiDataSetAlgorithm = multiDataSetAlgorithm;
 		this.algorithm = null;
+		this.canceled = false;
 	}
 
 	public void setVerbose(boolean verbose) {
@@ -115,6 +195,7 @@ public class GeneralBootstrapSearch {
 
 	public void setData(DataSet data) {
 		this.data = data;
+		this.canceled = false;
 	}
 
 	public DataSet getData() {
@@ -123,6 +204,7 @@ public class GeneralBootstrapSearch {
 
 	public void setDatasets(List<DataSet> dataSets) {
 		this.dataSets = dataSets;
+		this.canceled = false;
 	}
 
 	/**
@@ -159,7 +241,11 @@ public class GeneralBootstrapSearch {
 
 	public List<Graph> search() {
 		
-		PAGs.clear();
+		synchronized (this) {
+			PAGs = new ArrayList<>();
+			edgeFrequencies = null;
+		}
+
 		parameters.set("bootstrapSampleSize", 0);
 		
 		long start, stop;
@@ -169,31 +255,11 @@ public class GeneralBootstrapSearch {
 			if (verbose) {
 				out.println("Running Bootstraps in Sequential Mode, numBoostrap = " + numBootstrap);
 			}
-			for (int i1 = 0; i1 < this.numBootstrap; i1++) {
+			for (int i1 = 0; i1 < this.numBootstrap && !canceled; i1++) {
 				start = System.currentTimeMillis();
 
-				GeneralBootstrapSearchRunnable task = null;
-				
-				if(data != null){
-					DataSet dataSet = DataUtils.getBootstrapSample(data, data.getNumRows()); 
-					task = new GeneralBootstrapSearchRunnable(dataSet, algorithm, parameters, this, verbose);
-					//GeneralBootstrapSearchAction task = new GeneralBootstrapSearchAction(i1, 1, algorithm, parameters, this, verbose);
-				}else{
-					List<DataModel> dataModels = new ArrayList<>();
-					for(DataSet data : dataSets){
-						DataSet dataSet = DataUtils.getBootstrapSample(data, data.getNumRows());
-						dataModels.add(dataSet);
-					}
-					
-					task = new GeneralBootstrapSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this, verbose);
-				}
-	            
-				if(initialGraph != null){
-					task.setInitialGraph(initialGraph);
-				}
-				task.setKnowledge(knowledge);
-				task.run();
-				//task.compute();
+				GeneralBootstrapSearchRunnable task = newTask();
+				addPAG(task.call());
 				
 				stop = System.currentTimeMillis();
 				if (verbose) {
@@ -206,42 +272,62 @@ public class GeneralBootstrapSearch {
 				out.println("Running Bootstraps in Parallel Mode, numBoostrap = " + numBootstrap);
 			}
 
-			//GeneralBootstrapSearchAction task = new GeneralBootstrapSearchAction(0, numBootstrap, algorithm, parameters, this, verbose);
-			//task.setKnowledge(knowledge);
-			//pool.invoke(task);
-			
-			for (int i1 = 0; i1 < this.numBootstrap; i1++) {
-				
-				GeneralBootstrapSearchRunnable task = null;
-				
-				if(data != null){
-					DataSet dataSet = DataUtils.getBootstrapSample(data, data.getNumRows()); 
-					task = new GeneralBootstrapSearchRunnable(dataSet, algorithm, parameters, this, verbose);
-				}else{
-					List<DataModel> dataModels = new ArrayList<>();
-					for(DataSet data : dataSets){
-						DataSet dataSet = DataUtils.getBootstrapSample(data, data.getNumRows());
-						dataModels.add(dataSet);
+			int numThreads = Math.max(1, Math.min(numBootstrap, Runtime.getRuntime().availableProcessors()));
+			ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+			this.pool = pool;
+
+			// No more samples are drawn than there are threads to search them, and each
+			// graph is counted as soon as its search finishes, in whatever order.
+			CompletionService<Graph> completionService = new ExecutorCompletionService<>(pool);
+			int submitted = 0;
+			int finished = 0;
+
+			try {
+				while (submitted < numBootstrap && submitted < numThreads) {
+					submit(completionService);
+					submitted++;
+				}
+
+				while (finished < submitted && !canceled) {
+					Future<Graph> future = completionService.take();
+					finished++;
+
+					synchronized (running) {
+						running.remove(future);
+					}
+
+					if (canceled) {
+						break;
+					}
+
+					addPAG(future.get());
+
+					if (submitted < numBootstrap) {
+						submit(completionService);
+						submitted++;
 					}
-					
-					task = new GeneralBootstrapSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this, verbose);
 				}
-				task.setKnowledge(knowledge);
-				pool.submit(task);
-			}
-			
-			pool.shutdown();
-			
-			while(!pool.isTerminated()){
-				try {
-					Thread.sleep(1000);
-					//out.println("Waiting...");
-				} catch (InterruptedException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
+			} catch (InterruptedException e) {
+				canceled = true;
+				Thread.currentThread().interrupt();
+			} catch (CancellationException e) {
+				// Canceled while the graph was being taken; nothing more to count.
+			} catch (ExecutionException e) {
+				if (!canceled) {
+					throw new RuntimeException(e.getCause());
+				}
+			} finally {
+				synchronized (running) {
+					for (Future<Graph> future : running) {
+						future.cancel(true);
+					}
+
+					running.clear();
 				}
+
+				pool.shutdownNow();
+				this.pool = null;
 			}
-			//out.println("Is terminated: " + pool.isTerminated());
 		}
 		
 		parameters.set("bootstrapping", true);
@@ -249,4 +335,36 @@ public class GeneralBootstrapSearch {
 		return PAGs;
 	}
 
+	private void submit(CompletionService<Graph> completionService) {
+		synchronized (running) {
+			if (!canceled) {
+				running.add(completionService.submit(newTask()));
+			}
+		}
+	}
+
+	// Draws the next bootstrap sample and makes the search task for it.
+	private GeneralBootstrapSearchRunnable newTask() {
+		GeneralBootstrapSearchRunnable task = null;
+
+		if(data != null){
+			DataSet dataSet = DataUtils.getBootstrapView(data, data.getNumRows()); 
+			task = new GeneralBootstrapSearchRunnable(dataSet, algorithm, parameters, this, verbose);
+		}else{
+			List<DataModel> dataModels = new ArrayList<>();
+			for(DataSet data : dataSets){
+				DataSet dataSet = DataUtils.getBootstrapView(data, data.getNumRows());
+				dataModels.add(dataSet);
+			}
+			
+			task = new GeneralBootstrapSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this, verbose);
+		}
+
+		if(initialGraph != null){
+			task.setInitialGraph(initialGraph);
+		}
+		task.setKnowledge(knowledge);
+		return task;
+	}
+
 }
@@ -12,8 +12,6 @@ import edu.cmu.tetrad.util.RandomUtil;
 
 import java.io.PrintStream;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -39,7 +37,7 @@ public class GeneralBootstrapTest {
 	
 	private long seed = -1;
 
-	private List<Graph> PAGs;
+	private EdgeFrequencyTable edgeFrequencies;
 
 	private boolean verbose = false;
 
@@ -182,10 +180,13 @@ public class GeneralBootstrapTest {
 			out.println("Bootstrapping on the " + algorithm.getDescription());
 		}
 
-		PAGs = bootstrapSearch.search();
+		// Only the edge frequencies are needed, so the graphs are not kept.
+		bootstrapSearch.setStoreGraphs(false);
+		bootstrapSearch.search();
+		edgeFrequencies = bootstrapSearch.getEdgeFrequencies();
 
 		if (verbose) {
-			out.println("Bootstrap size is : " + PAGs.size());
+			out.println("Bootstrap size is : " + (edgeFrequencies == null ? 0 : edgeFrequencies.getNumGraphs()));
 		}
 		stop = System.currentTimeMillis();
 		if (verbose) {
@@ -216,31 +217,13 @@ public class GeneralBootstrapTest {
 	}
 
 	private Graph generateBootstrapGraph() {
-		Graph pag = null;
-		out.println("PAGs: " + PAGs.size());
+		out.println("PAGs: " + (edgeFrequencies == null ? 0 : edgeFrequencies.getNumGraphs()));
 		out.println("Ensemble: " + edgeEnsemble);
 		out.println();
-		if(PAGs == null || PAGs.size() == 0)return new EdgeListGraph();
-		
-		int i=0;
-		for (Graph g : PAGs) {
-			if (g != null) {
-				if(pag == null){
-					pag = g;
-				}
-				if(verbose){
-					out.println("Sampling Search Result (" + i + "):");
-					out.println(GraphUtils.graphToText(g));
-					out.println();
-					i++;
-				}
-			}
-		}
-		if(pag==null)return new EdgeListGraph();
+		if(edgeFrequencies == null || edgeFrequencies.getNumGraphs() == 0)return new EdgeListGraph();
 		
 		// Sort nodes by its name for fixing the edge orientation
-		List<Node> nodes = pag.getNodes();
-		Collections.sort(nodes);
+		List<Node> nodes = edgeFrequencies.getNodes();
 		
 		Graph complete = new EdgeListGraph(nodes);
 		complete.fullyConnect(Endpoint.TAIL);
@@ -274,12 +257,11 @@ public class GeneralBootstrapTest {
 			double maxEdgeProb = 0;
 
 			// compute probability for each edge type
-			Edge eNil = new Edge(n1, n2, Endpoint.NULL, Endpoint.NULL);
-			AnilB = getProbability(eNil);
+			AnilB = edgeFrequencies.getProbability(n1, n2, EdgeTypeProbability.EdgeType.nil);
 			out.println(n1 + " [no edge] " + n2 + " : " + AnilB);
 
 			Edge eTA = new Edge(n1, n2, Endpoint.TAIL, Endpoint.ARROW);
-			AtoB = getProbability(eTA);
+			AtoB = edgeFrequencies.getProbability(n1, n2, EdgeTypeProbability.EdgeType.ta);
 			out.println(eTA + " : " + AtoB);
 			if (AtoB > maxEdgeProb) {
 				edge = eTA;
@@ -287,7 +269,7 @@ public class GeneralBootstrapTest {
 			}
 
 			Edge eAT = new Edge(n1, n2, Endpoint.ARROW, Endpoint.TAIL);
-			BtoA = getProbability(eAT);
+			BtoA = edgeFrequencies.getProbability(n1, n2, EdgeTypeProbability.EdgeType.at);
 			out.println(eAT + " : " + BtoA);
 			if (BtoA > maxEdgeProb) {
 				edge = eAT;
@@ -295,7 +277,7 @@ public class GeneralBootstrapTest {
 			}
 
 			Edge eCA = new Edge(n1, n2, Endpoint.CIRCLE, Endpoint.ARROW);
-			ACtoB = getProbability(eCA);
+			ACtoB = edgeFrequencies.getProbability(n1, n2, EdgeTypeProbability.EdgeType.ca);
 			out.println(eCA + " : " + ACtoB);
 			if (ACtoB > maxEdgeProb) {
 				edge = eCA;
@@ -303,7 +285,7 @@ public class GeneralBootstrapTest {
 			}
 
 			Edge eAC = new Edge(n1, n2, Endpoint.ARROW, Endpoint.CIRCLE);
-			BCtoA = getProbability(eAC);
+			BCtoA = edgeFrequencies.getProbability(n1, n2, EdgeTypeProbability.EdgeType.ac);
 			out.println(eAC + " : " + BCtoA);
 			if (BCtoA > maxEdgeProb) {
 				edge = eAC;
@@ -311,7 +293,7 @@ public class GeneralBootstrapTest {
 			}
 
 			Edge eCC = new Edge(n1, n2, Endpoint.CIRCLE, Endpoint.CIRCLE);
-			AccB = getProbability(eCC);
+			AccB = edgeFrequencies.getProbability(n1, n2, EdgeTypeProbability.EdgeType.cc);
 			out.println(eCC + " : " + AccB);
 			if (AccB > maxEdgeProb) {
 				edge = eCC;
@@ -319,7 +301,7 @@ public class GeneralBootstrapTest {
 			}
 
 			Edge eAA = new Edge(n1, n2, Endpoint.ARROW, Endpoint.ARROW);
-			AbB = getProbability(eAA);
+			AbB = edgeFrequencies.getProbability(n1, n2, EdgeTypeProbability.EdgeType.aa);
 			out.println(eAA + " : " + AbB);
 			if (AbB > maxEdgeProb) {
 				edge = eAA;
@@ -327,7 +309,7 @@ public class GeneralBootstrapTest {
 			}
 
 			Edge eTT = new Edge(n1, n2, Endpoint.TAIL, Endpoint.TAIL);
-			AuB = getProbability(eTT);
+			AuB = edgeFrequencies.getProbability(n1, n2, EdgeTypeProbability.EdgeType.tt);
 			out.println(eTT + " : " + AuB);
 			if (AuB > maxEdgeProb) {
 				edge = eTT;
@@ -361,7 +343,7 @@ public class GeneralBootstrapTest {
 				edge.addEdgeTypeProbability(new EdgeTypeProbability(EdgeTypeProbability.EdgeType.aa, AbB));
 				edge.addEdgeTypeProbability(new EdgeTypeProbability(EdgeTypeProbability.EdgeType.tt, AuB));
 
-				Map<Property, Double> properties = getPropertyProbability(n1, n2);
+				Map<Property, Double> properties = edgeFrequencies.getPropertyProbabilities(n1, n2);
 				if(properties != null && properties.size() > 0){
 					for(Property property : properties.keySet()){
 						double prob = properties.get(property);
@@ -383,70 +365,6 @@ public class GeneralBootstrapTest {
 		return graph;
 	}
 
-	private Map<Property, Double> getPropertyProbability(Node node1, Node node2) {
-		Map<Property, Double> count = null;
-		int n = PAGs.size();
-		for (Graph g : PAGs) {
-			if (!g.containsNode(node1)) {
-				throw new IllegalArgumentException();
-			}
-			if (!g.containsNode(node2)) {
-				throw new IllegalArgumentException();
-			}
-
-			if (g.isAdjacentTo(node1, node2)) {
-				Edge edge = g.getEdge(node1, node2);
-				List<Property> properties = edge.getProperties();
-				if(properties != null && properties.size() > 0){
-					if(count == null){
-						count = new HashMap<>();
-					}
-					for(Property property : properties){
-						Double _no = count.get(property);
-						if(_no == null){
-							_no = 0.0;
-						}
-						_no++;
-						count.put(property, _no);
-					}
-				}
-			}
-		}
-		
-		if(count != null && count.size() > 0){
-			for(Property property : count.keySet()){
-				Double _no = count.get(property);
-				_no = _no/(double)n;
-				count.put(property, _no);
-			}
-		}
-
-		return count;
-	}
-
-	private double getProbability(Edge e) {
-		int count = 0;
-		int n = PAGs.size();
-		for (Graph g : PAGs) {
-			if (!g.containsNode(e.getNode1())) {
-				throw new IllegalArgumentException();
-			}
-			if (!g.containsNode(e.getNode2())) {
-				throw new IllegalArgumentException();
-			}
-
-			if (e.getEndpoint1() == Endpoint.NULL || e.getEndpoint2() == Endpoint.NULL) {
-				if (!g.isAdjacentTo(e.getNode1(), e.getNode2()))
-					count++;
-			} else {
-				if (g.containsEdge(e))
-					count++;
-			}
-		}
-
-		return count / (double) n;
-	}
-
 	public static int[][] getAdjConfusionMatrix(Graph truth, Graph estimate) {
 		Graph complete = new EdgeListGraph(estimate.getNodes());
 		complete.fullyConnect(Endpoint.TAIL);
@@ -2,6 +2,7 @@ package edu.pitt.dbmi.algo.bootstrap.task;
 
 import java.io.PrintStream;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import edu.cmu.tetrad.algcomparison.algorithm.Algorithm;
 import edu.cmu.tetrad.algcomparison.algorithm.MultiDataSetAlgorithm;
@@ -22,7 +23,7 @@ import edu.pitt.dbmi.algo.bootstrap.GeneralBootstrapSearch;
  * @author Chirayu (Kong) Wongchokprasitti, PhD
  * 
  */
-public class GeneralBootstrapSearchRunnable implements Runnable {
+public class GeneralBootstrapSearchRunnable implements Runnable, Callable<Graph> {
 
 	private DataSet dataSet = null;
 
@@ -114,6 +115,15 @@ public class GeneralBootstrapSearchRunnable implements Runnable {
 
 	@Override
 	public void run() {
+		bootstrapAlgorithmSearch.addPAG(call());
+	}
+
+	/**
+	 * Runs the search on the sample and returns the graph, without handing it to the
+	 * bootstrap search.
+	 */
+	@Override
+	public Graph call() {
 		//System.out.println("#dataSet rows: " + dataSet.getNumRows());
 		
 		long start, stop;
@@ -149,7 +159,8 @@ public class GeneralBootstrapSearchRunnable implements Runnable {
 			out.println("processing time of bootstrap for a thread was: "
 					+ (stop - start) / 1000.0 + " sec");
 		}
-		bootstrapAlgorithmSearch.addPAG(graph);
+
+		return graph;
 	}
 
 }
@@ -0,0 +1,142 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.*;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.AdLeafTree;
+import edu.cmu.tetrad.search.ConditionalGaussianLikelihood;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Pins the cells of AdLeafTree and the likelihoods of ConditionalGaussianLikelihood to the values the tree of
+ * boxed row lists gave before.
+ */
+public final class TestAdLeafTree {
+
+    @Test
+    public void testCells() {
+        DataSet data = getData();
+        DiscreteVariable x1 = (DiscreteVariable) data.getVariable(0);
+        DiscreteVariable x2 = (DiscreteVariable) data.getVariable(1);
+        DiscreteVariable x5 = (DiscreteVariable) data.getVariable(4);
+
+        // A small cache forces cells to be rebuilt.
+        for (int cacheSize : new int[]{1000, 1}) {
+            AdLeafTree tree = new AdLeafTree(data);
+            tree.setCacheSize(cacheSize);
+
+            // Sizes and first rows of the cells; rows missing X2 are left out.
+            checkCells(tree, Arrays.asList(x2), new int[][]{{51, 7}, {61, 0}, {24, 1}});
+            checkCells(tree, Arrays.asList(x2, x1), new int[][]{
+                    {39, 8}, {13, 5}, {14, 1}, {12, 7}, {48, 0}, {10, 4}});
+            checkCells(tree, Arrays.asList(x5, x1, x2), new int[][]{
+                    {15, 11}, {24, 8}, {3, 45}, {10, 5}, {6, 1}, {8, 6},
+                    {4, 18}, {8, 7}, {20, 0}, {28, 2}, {5, 4}, {5, 16}});
+
+            List<List<List<Integer>>> split = tree.getCellLeaves(new ArrayList<>(Arrays.asList(x1)), x5);
+            int[][][] expected = {{{26, 1}, {46, 5}}, {{35, 0}, {43, 2}}};
+            assertEquals(expected.length, split.size());
+
+            for (int c = 0; c < expected.length; c++) {
+                for (int k = 0; k < expected[c].length; k++) {
+                    assertEquals(expected[c][k][0], split.get(c).get(k).size());
+                    assertEquals(expected[c][k][1], (int) split.get(c).get(k).get(0));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLikelihoods() {
+        ConditionalGaussianLikelihood likelihood = new ConditionalGaussianLikelihood(getData());
+
+        checkLikelihood(likelihood, 3, new int[]{0, 1, 2}, -180.43228370744276, 12);
+        checkLikelihood(likelihood, 2, new int[]{0, 1}, -202.71754986455622, 6);
+        checkLikelihood(likelihood, 4, new int[]{3}, -95.80788324490089, 2);
+        checkLikelihood(likelihood, 1, new int[]{0, 2, 3}, -79.75487201538454, 16);
+        checkLikelihood(likelihood, 2, new int[0], -244.81547297862744, 1);
+    }
+
+    private void checkCells(AdLeafTree tree, List<DiscreteVariable> A, int[][] expected) {
+        List<List<Integer>> cells = tree.getCellLeaves(new ArrayList<>(A));
+        int[][] rows = tree.getCellRows(A);
+        assertEquals(expected.length, cells.size());
+        assertEquals(expected.length, rows.length);
+
+        for (int c = 0; c < expected.length; c++) {
+            assertEquals(expected[c][0], cells.get(c).size());
+            assertEquals(expected[c][1], (int) cells.get(c).get(0));
+
+            for (int k = 0; k < rows[c].length; k++) {
+                assertEquals((int) cells.get(c).get(k), rows[c][k]);
+            }
+        }
+    }
+
+    private void checkLikelihood(ConditionalGaussianLikelihood likelihood, int i, int[] parents,
+                                 double lik, int dof) {
+        ConditionalGaussianLikelihood.Ret ret = likelihood.getLikelihood(i, parents);
+        assertEquals(lik, ret.getLik(), 1e-8);
+        assertEquals(dof, ret.getDof());
+    }
+
+    // Three discrete and two continuous variables, with missing values for X2.
+    private DataSet getData() {
+        RandomUtil random = RandomUtil.getInstance();
+        random.setSeed(3049582L);
+
+        List<Node> nodes = new ArrayList<>();
+        nodes.add(new DiscreteVariable("X1", 2));
+        nodes.add(new DiscreteVariable("X2", 3));
+        nodes.add(new ContinuousVariable("X3"));
+        nodes.add(new ContinuousVariable("X4"));
+        nodes.add(new DiscreteVariable("X5", 2));
+
+        DataSet data = new BoxDataSet(new MixedDataBox(nodes, 150), nodes);
+
+        for (int i = 0; i < 150; i++) {
+            int x1 = random.nextInt(2);
+            int x2 = random.nextDouble() < 0.4 ? x1 : random.nextInt(3);
+            double x3 = x1 + 0.5 * x2 + random.nextNormal(0, 1);
+            double x4 = 0.8 * x3 - x1 + random.nextNormal(0, 1);
+            int x5 = x4 > 0.5 ? (random.nextDouble() < 0.8 ? 1 : 0) : random.nextInt(2);
+
+            data.setInt(i, 0, x1);
+            data.setInt(i, 1, x2);
+            data.setDouble(i, 2, x3);
+            data.setDouble(i, 3, x4);
+            data.setInt(i, 4, x5);
+        }
+
+        for (int i = 3; i < 150; i += 11) data.setInt(i, 1, DiscreteVariable.MISSING_VALUE);
+
+        return data;
+    }
+}
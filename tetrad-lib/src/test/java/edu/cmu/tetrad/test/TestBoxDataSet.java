@@ -23,11 +23,17 @@ package edu.cmu.tetrad.test;
 
 import edu.cmu.tetrad.data.*;
 import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.BDeuScore;
 import edu.cmu.tetrad.util.RandomUtil;
+import edu.cmu.tetrad.util.TetradMatrix;
 import edu.cmu.tetrad.util.TetradVector;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -75,6 +81,309 @@ public final class TestBoxDataSet {
         assertEquals(dataSet.getDoubleData().getColumn(4).get(0), _dataSet.getDoubleData().getColumn(1).get(0), .001);
     }
 
+    @Test
+    public void testPrimitiveAccessors() {
+        int rows = 10;
+        int cols = 4;
+
+        List<Node> variables = new ArrayList<>();
+        variables.add(new ContinuousVariable("X0"));
+        variables.add(new ContinuousVariable("X1"));
+        variables.add(new DiscreteVariable("X2", 3));
+        variables.add(new DiscreteVariable("X3", 3));
+
+        DataBox[] boxes = {new DoubleDataBox(rows, cols), new VerticalDoubleDataBox(rows, cols),
+                new FloatDataBox(new float[rows][cols]), new ColtDataBox(new TetradMatrix(rows, cols)),
+                new ShortDataBox(rows, cols), new ByteDataBox(rows, cols), new IntDataBox(rows, cols),
+                new VerticalIntDataBox(rows, cols), new LongDataBox(new long[rows][cols]),
+                new MixedDataBox(variables, rows)};
+
+        for (DataBox box : boxes) {
+            for (int i = 0; i < rows; i++) {
+                for (int j = 0; j < cols; j++) {
+                    if (i == j) {
+                        box.setInt(i, j, DiscreteVariable.MISSING_VALUE);
+                    } else {
+                        box.setDouble(i, j, (i + j) % 3);
+                    }
+                }
+            }
+
+            for (int i = 0; i < rows; i++) {
+                for (int j = 0; j < cols; j++) {
+                    if (i == j) {
+                        assertTrue(Double.isNaN(box.getDouble(i, j)));
+                        assertEquals(DiscreteVariable.MISSING_VALUE, box.getInt(i, j));
+                    } else {
+                        assertEquals((i + j) % 3, box.getDouble(i, j), 0.0);
+                        assertEquals((i + j) % 3, box.getInt(i, j));
+                        assertEquals((i + j) % 3, box.get(i, j).intValue());
+                    }
+                }
+            }
+
+            for (int j = 0; j < cols; j++) {
+                double[] doubleColumn = box.getDoubleColumn(j, new double[rows]);
+                int[] intColumn = box.getIntColumn(j, null);
+
+                for (int i = 0; i < rows; i++) {
+                    assertEquals(box.getDouble(i, j), doubleColumn[i], 0.0);
+                    assertEquals(box.getInt(i, j), intColumn[i]);
+                }
+            }
+
+            DataBox copy = box.copy();
+
+            for (int i = 0; i < rows; i++) {
+                for (int j = 0; j < cols; j++) {
+                    assertEquals(box.getInt(i, j), copy.getInt(i, j));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMapped() throws IOException {
+        int rows = 50;
+        int cols = 5;
+
+        List<Node> variables = new ArrayList<>();
+
+        for (int j = 0; j < cols; j++) {
+            variables.add(new ContinuousVariable("X" + j));
+        }
+
+        DataSet dataSet = new BoxDataSet(new VerticalDoubleDataBox(rows, cols), variables);
+
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                dataSet.setDouble(i, j, RandomUtil.getInstance().nextNormal(0, 1));
+            }
+        }
+
+        dataSet.setDouble(3, 2, Double.NaN);
+
+        File file = File.createTempFile("mapped", ".data");
+        file.deleteOnExit();
+
+        MappedDataBox.writeDataSet(dataSet, file);
+        DataSet mapped = MappedDataBox.readDataSet(file);
+
+        assertEquals(rows, mapped.getNumRows());
+        assertEquals(cols, mapped.getNumColumns());
+        assertEquals(dataSet.getVariableNames(), mapped.getVariableNames());
+
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                assertEquals(dataSet.getDouble(i, j), mapped.getDouble(i, j), 0.0);
+            }
+        }
+
+        ICovarianceMatrix cov1 = new CovarianceMatrixOnTheFly(dataSet.copy());
+        ICovarianceMatrix cov2 = new CovarianceMatrixOnTheFly(mapped);
+
+        for (int i = 0; i < cols; i++) {
+            for (int j = 0; j < cols; j++) {
+                assertEquals(cov1.getValue(i, j), cov2.getValue(i, j), 1e-10);
+            }
+        }
+
+        ICovarianceMatrix cov3 = new CovarianceMatrix(dataSet);
+        MappedDataBox.writeDataSet(dataSet, cov3, file);
+        ICovarianceMatrix cov4 = MappedDataBox.readCovarianceMatrix(file);
+
+        assertEquals(cov3.getVariableNames(), cov4.getVariableNames());
+        assertEquals(cov3.getSampleSize(), cov4.getSampleSize());
+
+        for (int i = 0; i < cols; i++) {
+            for (int j = 0; j < cols; j++) {
+                assertEquals(cov3.getValue(i, j), cov4.getValue(i, j), 0.0);
+            }
+        }
+
+        assertEquals(dataSet.getDouble(3, 1), MappedDataBox.readDataSet(file).getDouble(3, 1), 0.0);
+    }
+
+    @Test
+    public void testMappedMixed() throws IOException {
+        int rows = 100;
+        int cols = 6;
+
+        List<Node> variables = new ArrayList<>();
+
+        for (int j = 0; j < cols; j++) {
+            if (j % 2 == 0) {
+                variables.add(new ContinuousVariable("X" + j));
+            } else {
+                variables.add(new DiscreteVariable("X" + j, 3));
+            }
+        }
+
+        DataSet dataSet = new BoxDataSet(new MixedDataBox(variables, rows), variables);
+
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                if (j % 2 == 0) {
+                    dataSet.setDouble(i, j, RandomUtil.getInstance().nextNormal(0, 1));
+                } else {
+                    dataSet.setInt(i, j, RandomUtil.getInstance().nextInt(3));
+                }
+            }
+        }
+
+        File file = File.createTempFile("mapped", ".data");
+        file.deleteOnExit();
+
+        MappedDataBox.writeDataSet(dataSet, file);
+        DataSet mapped = MappedDataBox.readDataSet(file);
+
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                if (j % 2 == 0) {
+                    assertEquals(dataSet.getDouble(i, j), mapped.getDouble(i, j), 0.0);
+                } else {
+                    assertEquals(dataSet.getInt(i, j), mapped.getInt(i, j));
+                }
+            }
+        }
+
+        try {
+            new CovarianceMatrixOnTheFly(mapped);
+            fail("Mixed data should be rejected.");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+
+        List<Node> discrete = new ArrayList<>();
+
+        for (int j = 1; j < cols; j += 2) {
+            discrete.add(variables.get(j));
+        }
+
+        DataSet discreteData = dataSet.subsetColumns(discrete);
+        MappedDataBox.writeDataSet(discreteData, file);
+        DataSet mappedDiscrete = MappedDataBox.readDataSet(file);
+
+        BDeuScore score1 = new BDeuScore(discreteData);
+        BDeuScore score2 = new BDeuScore(mappedDiscrete);
+
+        assertEquals(score1.localScore(0, new int[0]), score2.localScore(0, new int[0]), 1e-10);
+        assertEquals(score1.localScore(0, new int[]{1}), score2.localScore(0, new int[]{1}), 1e-10);
+        assertEquals(score1.localScore(2, new int[]{0, 1}), score2.localScore(2, new int[]{0, 1}), 1e-10);
+    }
+
+    @Test
+    public void testMappedDiscrete() throws IOException {
+        int rows = 40;
+
+        List<Node> variables = new ArrayList<>();
+        variables.add(new DiscreteVariable("Level", Arrays.asList("low", "medium", "high")));
+        variables.add(new DiscreteVariable("Answer", Arrays.asList("yes", "no")));
+        variables.add(new DiscreteVariable("Count", 4));
+
+        DataSet dataSet = new BoxDataSet(new VerticalIntDataBox(rows, variables.size()), variables);
+
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < variables.size(); j++) {
+                int numCategories = ((DiscreteVariable) variables.get(j)).getNumCategories();
+                dataSet.setInt(i, j, RandomUtil.getInstance().nextInt(numCategories));
+            }
+        }
+
+        dataSet.setInt(5, 1, -99);
+
+        File file = File.createTempFile("mapped", ".data");
+        file.deleteOnExit();
+
+        MappedDataBox.writeDataSet(dataSet, file);
+        DataSet mapped = MappedDataBox.readDataSet(file);
+
+        assertEquals(rows, mapped.getNumRows());
+
+        for (int j = 0; j < variables.size(); j++) {
+            DiscreteVariable expected = (DiscreteVariable) variables.get(j);
+            Node node = mapped.getVariable(j);
+
+            assertTrue(node instanceof DiscreteVariable);
+            assertEquals(expected.getName(), node.getName());
+            assertEquals(expected.getCategories(), ((DiscreteVariable) node).getCategories());
+
+            for (int i = 0; i < rows; i++) {
+                assertEquals(dataSet.getInt(i, j), mapped.getInt(i, j));
+            }
+        }
+
+        assertEquals(-99, mapped.getInt(5, 1));
+        assertEquals(dataSet.getObject(5, 1), mapped.getObject(5, 1));
+        assertEquals(dataSet.getObject(0, 0), mapped.getObject(0, 0));
+
+        // Changes to a writable box are written through to the file.
+        MappedDataBox box = new MappedDataBox(file, true);
+        box.setInt(3, 0, 2);
+        assertEquals(2, MappedDataBox.readDataSet(file).getInt(3, 0));
+    }
+
+    // A file written where the categories were stored in another order is read by category.
+    @Test
+    public void testMappedCategoryOrder() throws IOException {
+        int rows = 30;
+
+        List<Node> variables = new ArrayList<>();
+        variables.add(new DiscreteVariable("Grade", Arrays.asList("grade_a", "grade_b", "grade_c")));
+        DataSet dataSet = new BoxDataSet(new VerticalIntDataBox(rows, 1), variables);
+
+        for (int i = 0; i < rows; i++) {
+            dataSet.setInt(i, 0, i % 3);
+        }
+
+        dataSet.setInt(4, 0, -99);
+
+        File file = File.createTempFile("mapped", ".data");
+        file.deleteOnExit();
+        MappedDataBox.writeDataSet(dataSet, file);
+
+        // Swap grade_a and grade_c in the header, as if the file listed them as [grade_c, grade_b, grade_a].
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        int a = indexOf(bytes, "grade_a".getBytes("UTF-8"));
+        int c = indexOf(bytes, "grade_c".getBytes("UTF-8"));
+        bytes[a + 6] = 'c';
+        bytes[c + 6] = 'a';
+        Files.write(file.toPath(), bytes);
+
+        DataSet mapped = MappedDataBox.readDataSet(file);
+        DiscreteVariable variable = (DiscreteVariable) mapped.getVariable(0);
+        assertEquals(Arrays.asList("grade_a", "grade_b", "grade_c"), variable.getCategories());
+
+        String[] fileOrder = {"grade_c", "grade_b", "grade_a"};
+        int[] column = ((BoxDataSet) mapped).getDataBox().getIntColumn(0, null);
+
+        for (int i = 0; i < rows; i++) {
+            if (i == 4) {
+                assertEquals(-99, mapped.getInt(i, 0));
+                assertEquals(-99, column[i]);
+            } else {
+                assertEquals(fileOrder[i % 3], variable.getCategory(mapped.getInt(i, 0)));
+                assertEquals(mapped.getInt(i, 0), column[i]);
+            }
+        }
+
+        // Values set are written in the file's order.
+        MappedDataBox box = new MappedDataBox(file, true);
+        box.setInt(0, 0, variable.getIndex("grade_b"));
+        box.setInt(1, 0, variable.getIndex("grade_a"));
+        assertEquals(1, box.getIntBuffer(0).get(0));
+        assertEquals(2, box.getIntBuffer(0).get(1));
+        assertEquals("grade_a", variable.getCategory(MappedDataBox.readDataSet(file).getInt(1, 0)));
+    }
+
+    private static int indexOf(byte[] bytes, byte[] target) {
+        for (int i = 0; i + target.length <= bytes.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(bytes, i, i + target.length), target)) return i;
+        }
+
+        return -1;
+    }
+
     @Test
     public void testDiscrete() {
         int rows = 10;
@@ -273,9 +582,95 @@ public final class TestBoxDataSet {
             fail("Missing row in permutation.");
         }
     }
-}
 
+    @Test
+    public void testBootstrapView() {
+        List<Node> nodes = new ArrayList<>();
+
+        for (int j = 0; j < 4; j++) {
+            nodes.add(new ContinuousVariable("X" + j));
+        }
+
+        DataSet dataSet = new BoxDataSet(new DoubleDataBox(50, nodes.size()), nodes);
+        RandomUtil randomUtil = RandomUtil.getInstance();
+
+        for (int i = 0; i < 50; i++) {
+            for (int j = 0; j < 4; j++) {
+                dataSet.setDouble(i, j, randomUtil.nextNormal(0, 1));
+            }
+        }
+
+        DataSet view = DataUtils.getBootstrapView(dataSet, 80);
+        DataSet sample = view.copy();
+
+        assertEquals(80, view.getNumRows());
+        assertTrue(((ResampledDataBox) ((BoxDataSet) view).getDataBox()).isView());
+
+        ICovarianceMatrix cov1 = new CovarianceMatrix(view);
+        ICovarianceMatrix cov2 = new CovarianceMatrix(sample);
+        ICovarianceMatrix cov3 = new CovarianceMatrixOnTheFly(view);
+
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                assertEquals(cov2.getValue(i, j), cov1.getValue(i, j), 1e-10);
+                assertEquals(cov2.getValue(i, j), cov3.getValue(i, j), 1e-10);
+            }
+        }
+
+        // Writes go to a copy of the sampled rows, not to the data they were drawn from.
+        DataSet original = dataSet.copy();
+        double d = view.getDouble(0, 0);
+        view.setDouble(0, 0, d + 1);
+        assertEquals(d + 1, view.getDouble(0, 0), 0.0);
+        assertFalse(((ResampledDataBox) ((BoxDataSet) view).getDataBox()).isView());
+        assertEquals(original, dataSet);
+    }
+
+    @Test
+    public void testBootstrapViewPermuteRows() {
+        List<Node> nodes = new ArrayList<>();
+
+        for (int j = 0; j < 3; j++) {
+            nodes.add(new ContinuousVariable("X" + j));
+        }
+
+        DataSet dataSet = new BoxDataSet(new DoubleDataBox(50, nodes.size()), nodes);
+        RandomUtil randomUtil = RandomUtil.getInstance();
+
+        for (int i = 0; i < 50; i++) {
+            for (int j = 0; j < 3; j++) {
+                dataSet.setDouble(i, j, randomUtil.nextNormal(0, 1));
+            }
+        }
+
+        DataSet original = dataSet.copy();
+        DataSet view = DataUtils.getBootstrapView(dataSet, 80);
+        DataSet sample = view.copy();
+
+        // The like box is empty (all missing), with the rows of the view, not of the data they were drawn from.
+        DataBox like = ((BoxDataSet) view).getDataBox().like();
+        assertEquals(80, like.numRows());
+        assertEquals(3, like.numCols());
 
+        for (int i = 0; i < 80; i++) {
+            for (int j = 0; j < 3; j++) {
+                assertTrue(Double.isNaN(like.getDouble(i, j)));
+                like.setDouble(i, j, 1.0);
+            }
+        }
+
+        assertTrue(((ResampledDataBox) ((BoxDataSet) view).getDataBox()).isView());
+        assertEquals(sample, view);
 
+        view.permuteRows();
+        assertEquals(80, view.getNumRows());
 
+        double[] before = sample.getDoubleData().getColumn(0).toArray();
+        double[] after = view.getDoubleData().getColumn(0).toArray();
+        Arrays.sort(before);
+        Arrays.sort(after);
+        assertTrue(Arrays.equals(before, after));
 
+        assertEquals(original, dataSet);
+    }
+}
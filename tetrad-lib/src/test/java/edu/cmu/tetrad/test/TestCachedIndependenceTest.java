@@ -0,0 +1,145 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.CachedIndependenceTest;
+import edu.cmu.tetrad.search.IndTestFisherZ;
+import edu.cmu.tetrad.search.IndependenceTest;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that CachedIndependenceTest remembers the results of the test it wraps.
+ */
+public final class TestCachedIndependenceTest {
+
+    @Test
+    public void testCached() throws IOException {
+        DataSet data = getData();
+
+        IndTestFisherZ test = new IndTestFisherZ(data, 0.05);
+        CachedIndependenceTest cached = new CachedIndependenceTest(new IndTestFisherZ(data, 0.05));
+        List<Node> nodes = test.getVariables();
+
+        Node x = nodes.get(0);
+        Node y = nodes.get(1);
+        List<Node> z = new ArrayList<>(nodes.subList(2, 5));
+        List<Node> z2 = new ArrayList<>(Arrays.asList(z.get(2), z.get(0), z.get(1)));
+
+        assertEquals(test.isIndependent(x, y, z), cached.isIndependent(x, y, z));
+        assertEquals(test.getPValue(), cached.getPValue(), 0.0);
+        assertEquals(test.getScore(), cached.getScore(), 0.0);
+
+        // The same test with x and y swapped and z reordered is remembered.
+        assertEquals(test.isIndependent(x, y, z), cached.isIndependent(y, x, z2));
+        assertEquals(test.getPValue(), cached.getPValue(), 0.0);
+        assertEquals(test.getScore(), cached.getScore(), 0.0);
+        assertEquals(1, cached.getCache().getMisses());
+        assertTrue(cached.getCache().getHits() >= 1);
+
+        // After alpha changes, the test is done again, since the score of the wrapped test
+        // depends on alpha; going back to an alpha reuses its results.
+        double p = test.getPValue();
+
+        for (double alpha : new double[]{0.001, 0.01, 0.1, 0.5}) {
+            test.setAlpha(alpha);
+            cached.setAlpha(alpha);
+            assertEquals(test.isIndependent(x, y, z), cached.isIndependent(x, y, z));
+            assertEquals(p, cached.getPValue(), 0.0);
+            assertEquals(test.getScore(), cached.getScore(), 0.0);
+        }
+
+        assertEquals(5, cached.getCache().getMisses());
+
+        test.setAlpha(0.01);
+        cached.setAlpha(0.01);
+        assertEquals(test.isIndependent(x, y, z), cached.isIndependent(y, x, z2));
+        assertEquals(test.getScore(), cached.getScore(), 0.0);
+        assertEquals(5, cached.getCache().getMisses());
+
+        // A subset test shares the results.
+        IndependenceTest subset = cached.indTestSubset(nodes.subList(0, 6));
+        subset.isIndependent(x, y, z);
+        assertEquals(test.getScore(), subset.getScore(), 0.0);
+        assertEquals(5, cached.getCache().getMisses());
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        DataSet data = getData();
+
+        IndTestFisherZ test = new IndTestFisherZ(data, 0.05);
+        CachedIndependenceTest cached = new CachedIndependenceTest(new IndTestFisherZ(data, 0.05));
+        List<Node> nodes = test.getVariables();
+
+        // Tests sharing the same variables in different roles have different results.
+        List<List<Node>> tests = new ArrayList<>();
+        tests.add(Arrays.asList(nodes.get(0), nodes.get(1)));
+        tests.add(Arrays.asList(nodes.get(0), nodes.get(1), nodes.get(2)));
+        tests.add(Arrays.asList(nodes.get(0), nodes.get(2), nodes.get(1)));
+        tests.add(Arrays.asList(nodes.get(2), nodes.get(1), nodes.get(0), nodes.get(3)));
+
+        for (List<Node> t : tests) {
+            cached.isIndependent(t.get(0), t.get(1), t.subList(2, t.size()));
+        }
+
+        File file = File.createTempFile("pvalues", ".bin");
+        file.deleteOnExit();
+        cached.save(file);
+
+        CachedIndependenceTest loaded = new CachedIndependenceTest(new IndTestFisherZ(data, 0.05));
+        loaded.load(file);
+
+        for (List<Node> t : tests) {
+            List<Node> z = new ArrayList<>(t.subList(2, t.size()));
+
+            assertEquals(test.isIndependent(t.get(0), t.get(1), z), loaded.isIndependent(t.get(1), t.get(0), z));
+            assertEquals(test.getPValue(), loaded.getPValue(), 0.0);
+            assertEquals(test.getScore(), loaded.getScore(), 0.0);
+        }
+
+        assertEquals(0, loaded.getCache().getMisses());
+    }
+
+    private DataSet getData() {
+        RandomUtil.getInstance().setSeed(48285934L);
+
+        Graph graph = GraphUtils.randomGraph(8, 0, 10, 30, 15, 15, false);
+        SemIm im = new SemIm(new SemPm(graph));
+        return im.simulateData(500, false);
+    }
+}
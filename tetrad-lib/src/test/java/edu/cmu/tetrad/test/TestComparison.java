@@ -0,0 +1,132 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.algcomparison.Comparison;
+import edu.cmu.tetrad.algcomparison.algorithm.Algorithms;
+import edu.cmu.tetrad.algcomparison.algorithm.oracle.pattern.Fges;
+import edu.cmu.tetrad.algcomparison.graph.RandomForward;
+import edu.cmu.tetrad.algcomparison.score.SemBicScore;
+import edu.cmu.tetrad.algcomparison.simulation.SemSimulation;
+import edu.cmu.tetrad.algcomparison.simulation.Simulations;
+import edu.cmu.tetrad.algcomparison.statistic.*;
+import edu.cmu.tetrad.util.Parameters;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the scheduling and checkpointing of Comparison.
+ */
+public final class TestComparison {
+
+    @Test
+    public void testParallelEqualsSerial() throws IOException {
+        File dir = Files.createTempDirectory("comparison").toFile();
+
+        List<String> serial = compare(new File(dir, "serial"), 1, false, getStatistics(), 1.0);
+        List<String> parallel = compare(new File(dir, "parallel"), 3, false, getStatistics(), 1.0);
+
+        // The first line is the date.
+        assertEquals(serial.subList(1, serial.size()), parallel.subList(1, parallel.size()));
+    }
+
+    @Test
+    public void testCheckpoints() throws IOException {
+        File dir = Files.createTempDirectory("comparison").toFile();
+        File checkpoint = new File(dir, "checkpoints/run.1.1.txt");
+
+        List<String> first = compare(dir, 2, true, getStatistics(), 1.0);
+        assertTrue(checkpoint.exists());
+        assertTrue(new File(dir, "checkpoints/run.1.4.txt").exists());
+
+        // Loading the checkpoints gives the same tables.
+        List<String> second = compare(dir, 1, true, getStatistics(), 1.0);
+        assertEquals(first.subList(1, first.size()), second.subList(1, second.size()));
+
+        // A changed checkpoint is loaded rather than rerun.
+        List<String> lines = Files.readAllLines(checkpoint.toPath());
+        lines.set(4, "0\ttrue\t0.0\t0.0\t0.0\t0.0\t0.0");
+        Files.write(checkpoint.toPath(), lines);
+
+        List<String> third = compare(dir, 1, true, getStatistics(), 1.0);
+        assertFalse(first.subList(1, first.size()).equals(third.subList(1, third.size())));
+
+        // With other statistics or parameter values, the run is done again.
+        Statistics statistics = getStatistics();
+        statistics.add(new TailPrecision());
+        compare(dir, 1, true, statistics, 1.0);
+        lines = Files.readAllLines(checkpoint.toPath());
+        assertTrue(lines.get(2).endsWith("\tTP"));
+        assertFalse(lines.get(4).startsWith("0\ttrue\t0.0\t0.0\t0.0\t0.0\t0.0"));
+
+        compare(dir, 1, true, statistics, 2.0);
+        lines = Files.readAllLines(checkpoint.toPath());
+        assertTrue(lines.get(3).contains("penaltyDiscount = [2.0]"));
+    }
+
+    private Statistics getStatistics() {
+        Statistics statistics = new Statistics();
+        statistics.add(new AdjacencyPrecision());
+        statistics.add(new AdjacencyRecall());
+        statistics.add(new ArrowheadPrecision());
+        statistics.add(new ArrowheadRecall());
+        return statistics;
+    }
+
+    // Runs a comparison of FGES on four simulated data sets and returns the lines of Comparison.txt.
+    private List<String> compare(File dir, int numWorkers, boolean checkpointing, Statistics statistics,
+                                 double penaltyDiscount) throws IOException {
+        RandomUtil.getInstance().setSeed(29388422L);
+
+        Parameters parameters = new Parameters();
+        parameters.set("numRuns", 4);
+        parameters.set("numMeasures", 10);
+        parameters.set("avgDegree", 2);
+        parameters.set("sampleSize", 500);
+        parameters.set("penaltyDiscount", penaltyDiscount);
+
+        Simulations simulations = new Simulations();
+        simulations.add(new SemSimulation(new RandomForward()));
+
+        Algorithms algorithms = new Algorithms();
+        algorithms.add(new Fges(new SemBicScore()));
+
+        Comparison comparison = new Comparison();
+        comparison.setParallelized(numWorkers > 1);
+        comparison.setNumWorkers(numWorkers);
+        comparison.setCheckpointing(checkpointing);
+        comparison.setSaveGraphs(false);
+
+        comparison.compareFromSimulations(dir.getAbsolutePath(), simulations, algorithms, statistics, parameters);
+
+        return Files.readAllLines(new File(dir, "Comparison.txt").toPath());
+    }
+}
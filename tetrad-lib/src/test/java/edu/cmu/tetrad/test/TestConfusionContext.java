@@ -0,0 +1,108 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.algcomparison.statistic.utils.AdjacencyConfusion;
+import edu.cmu.tetrad.algcomparison.statistic.utils.ArrowConfusion;
+import edu.cmu.tetrad.algcomparison.statistic.utils.ConfusionContext;
+import edu.cmu.tetrad.algcomparison.statistic.utils.TailConfusion;
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that ConfusionContext counts as AdjacencyConfusion, ArrowConfusion and TailConfusion do.
+ */
+public final class TestConfusionContext {
+
+    private static final Endpoint[] ENDPOINTS = {Endpoint.TAIL, Endpoint.ARROW, Endpoint.CIRCLE};
+
+    @Test
+    public void testRandomGraphs() {
+        RandomUtil.getInstance().setSeed(3929392L);
+
+        for (int i = 0; i < 100; i++) {
+            List<Node> nodes = new ArrayList<>();
+
+            for (int j = 0; j < 12; j++) {
+                nodes.add(new GraphNode("X" + (j + 1)));
+            }
+
+            Graph truth = randomGraph(nodes);
+            Graph est = randomGraph(nodes);
+
+            ConfusionContext context = new ConfusionContext(truth, est);
+
+            AdjacencyConfusion adj = new AdjacencyConfusion(truth, est);
+            assertEquals(adj.getAdjTp(), context.getAdjTp());
+            assertEquals(adj.getAdjFp(), context.getAdjFp());
+            assertEquals(adj.getAdjFn(), context.getAdjFn());
+            assertEquals(adj.getAdjTn(), context.getAdjTn());
+
+            ArrowConfusion arrows = new ArrowConfusion(truth, est);
+            assertEquals(arrows.getArrowsTp(), context.getArrowsTp());
+            assertEquals(arrows.getArrowsFp(), context.getArrowsFp());
+            assertEquals(arrows.getArrowsFn(), context.getArrowsFn());
+            assertEquals(arrows.getArrowsTn(), context.getArrowsTn());
+            assertEquals(arrows.getArrowsTpc(), context.getArrowsTpc());
+            assertEquals(arrows.getArrowsFpc(), context.getArrowsFpc());
+            assertEquals(arrows.getArrowsFnc(), context.getArrowsFnc());
+            assertEquals(arrows.getArrowsTnc(), context.getArrowsTnc());
+            assertEquals(arrows.getTwoCycleTp(), context.getTwoCycleTp());
+            assertEquals(arrows.getTwoCycleFp(), context.getTwoCycleFp());
+            assertEquals(arrows.getTwoCycleFn(), context.getTwoCycleFn());
+
+            TailConfusion tails = new TailConfusion(truth, est);
+            assertEquals(tails.getArrowsTp(), context.getTailsTp());
+            assertEquals(tails.getArrowsFp(), context.getTailsFp());
+            assertEquals(tails.getArrowsFn(), context.getTailsFn());
+            assertEquals(tails.getArrowsTn(), context.getTailsTn());
+        }
+    }
+
+    // A graph over the given nodes with edges of random endpoints, some of them two-cycles.
+    private Graph randomGraph(List<Node> nodes) {
+        RandomUtil random = RandomUtil.getInstance();
+        Graph graph = new EdgeListGraph(nodes);
+
+        for (int a = 0; a < nodes.size(); a++) {
+            for (int b = a + 1; b < nodes.size(); b++) {
+                double r = random.nextDouble();
+
+                if (r < 0.05) {
+                    graph.addDirectedEdge(nodes.get(a), nodes.get(b));
+                    graph.addDirectedEdge(nodes.get(b), nodes.get(a));
+                } else if (r < 0.3) {
+                    graph.addEdge(new Edge(nodes.get(a), nodes.get(b),
+                            ENDPOINTS[random.nextInt(3)], ENDPOINTS[random.nextInt(3)]));
+                }
+            }
+        }
+
+        return graph;
+    }
+}
@@ -27,6 +27,8 @@ import edu.cmu.tetrad.util.RandomUtil;
 import edu.cmu.tetrad.util.TetradMatrix;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -83,9 +85,147 @@ public final class TestCovarianceMatrix {
         assertEquals(-.051, c2.getValue(0, 1), 0.001);
         assertEquals(-.609, c3.getValue(0, 1), 0.001);
     }
-}
 
+    /**
+     * Tests that the blocked covariance kernel agrees with the per-row path for
+     * sizes that do not fill whole tiles and strips, with and without missing
+     * values.
+     */
+    @Test
+    public void testBlocked() {
+        RandomUtil.getInstance().setSeed(4828384834L);
+
+        int[][] sizes = {{1, 5}, {3, 2}, {63, 100}, {65, 2049}, {130, 300}};
+
+        for (int[] size : sizes) {
+            int numVars = size[0];
+            int numRows = size[1];
+
+            List<Node> variables = new ArrayList<>();
+
+            for (int i = 0; i < numVars; i++) {
+                variables.add(new ContinuousVariable("X" + i));
+            }
+
+            DataSet dataSet = new BoxDataSet(new VerticalDoubleDataBox(numRows, numVars), variables);
+
+            for (int i = 0; i < numRows; i++) {
+                for (int j = 0; j < numVars; j++) {
+                    dataSet.setDouble(i, j, 10 + RandomUtil.getInstance().nextNormal(0, 1)
+                            + (j > 0 ? dataSet.getDouble(i, j - 1) : 0));
+                }
+            }
+
+            for (int missing = 0; missing < 2; missing++) {
+                if (missing == 1 && numRows > 2) {
+                    dataSet.setDouble(1, 0, Double.NaN);
+                    dataSet.setDouble(numRows - 1, numVars - 1, Double.NaN);
+                }
+
+                ICovarianceMatrix expected = new CovarianceMatrix(dataSet);
+                ICovarianceMatrix blocked = new CovarianceMatrix(dataSet, true);
+
+                for (int i = 0; i < numVars; i++) {
+                    for (int j = 0; j < numVars; j++) {
+                        assertEquals(expected.getValue(i, j), blocked.getValue(i, j),
+                                1e-9 * (1 + Math.abs(expected.getValue(i, j))));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that rows streamed in singly, in batches and from merged shards
+     * give the covariances of the whole data set.
+     */
+    @Test
+    public void testStreaming() {
+        RandomUtil.getInstance().setSeed(4828384834L);
+
+        List<Node> variables = new LinkedList<>();
+
+        for (int i = 0; i < 5; i++) {
+            variables.add(new ContinuousVariable("X" + i));
+        }
+
+        int numRows = 1000;
+        DataSet dataSet = new ColtDataSet(numRows, variables);
+
+        for (int i = 0; i < numRows; i++) {
+            for (int j = 0; j < 5; j++) {
+                dataSet.setDouble(i, j, 100 + j * RandomUtil.getInstance().nextNormal(0, 1)
+                        + (j > 0 ? dataSet.getDouble(i, j - 1) : 0));
+            }
+        }
 
+        ICovarianceMatrix expected = new CovarianceMatrix(dataSet);
 
+        StreamingCovarianceMatrix shard1 = new StreamingCovarianceMatrix(variables);
+        StreamingCovarianceMatrix shard2 = new StreamingCovarianceMatrix(variables);
 
+        for (int i = 0; i < 100; i++) {
+            double[] row = new double[5];
 
+            for (int j = 0; j < 5; j++) {
+                row[j] = dataSet.getDouble(i, j);
+            }
+
+            shard1.addRow(row);
+        }
+
+        double[][] batch = new double[300][5];
+
+        for (int i = 100; i < 400; i++) {
+            for (int j = 0; j < 5; j++) {
+                batch[i - 100][j] = dataSet.getDouble(i, j);
+            }
+        }
+
+        shard1.addRows(batch);
+
+        int[] rest = new int[numRows - 400];
+
+        for (int i = 0; i < rest.length; i++) {
+            rest[i] = 400 + i;
+        }
+
+        shard2.addDataSet(dataSet.subsetRows(rest));
+
+        ICovarianceMatrix before = shard1.snapshot();
+        shard1.merge(shard2);
+
+        assertEquals(400, before.getSampleSize());
+        assertEquals(numRows, shard1.getSampleSize());
+
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j < 5; j++) {
+                assertEquals(expected.getValue(i, j), shard1.getValue(i, j), 1e-8);
+            }
+        }
+
+        // Removing variables keeps the accumulated covariances of the rest.
+        StreamingCovarianceMatrix reduced = new StreamingCovarianceMatrix(shard1);
+        reduced.removeVariables(Arrays.asList("X3", "X1"));
+        ICovarianceMatrix expectedReduced = expected.getSubmatrix(new int[]{3, 1});
+
+        assertEquals(Arrays.asList("X3", "X1"), reduced.getVariableNames());
+
+        for (int i = 0; i < 2; i++) {
+            for (int j = 0; j < 2; j++) {
+                assertEquals(expectedReduced.getValue(i, j), reduced.getValue(i, j), 1e-8);
+            }
+        }
+
+        // Setting the sample size keeps the covariances; setting values changes them symmetrically.
+        reduced.setSampleSize(50);
+        assertEquals(50, reduced.getSampleSize());
+        assertEquals(expectedReduced.getValue(0, 1), reduced.getValue(0, 1), 1e-8);
+
+        reduced.setValue(0, 1, 0.5);
+        assertEquals(0.5, reduced.getValue(1, 0), 1e-12);
+
+        reduced.setMatrix(expectedReduced.getMatrix());
+        assertEquals(expectedReduced.getValue(1, 1), reduced.getValue(1, 1), 1e-8);
+    }
+}
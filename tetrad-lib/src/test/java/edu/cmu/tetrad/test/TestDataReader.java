@@ -22,15 +22,16 @@
 package edu.cmu.tetrad.test;
 
 import edu.cmu.tetrad.data.*;
+import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.util.TetradLogger;
 import org.junit.Test;
 
-import java.io.CharArrayWriter;
-import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
+import java.io.*;
+import java.util.Arrays;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public final class TestDataReader {
 
@@ -91,6 +92,112 @@ public final class TestDataReader {
 
     }
 
+    @Test
+    public void testParallelTabular() throws IOException {
+        Random random = new Random(48393L);
+        StringBuilder buf = new StringBuilder();
+        buf.append("// A comment\nX1\tX2\tX3\tX4\tX5\n");
+
+        for (int i = 0; i < 5000; i++) {
+            if (i % 1000 == 7) buf.append("\n// Another comment\n");
+
+            double x1 = random.nextGaussian();
+            String x2 = i % 3 == 0 ? Double.toString(x1) : String.format("%.4f", x1 * 1e-3);
+            String x3 = random.nextInt(50) == 0 ? "*" : Integer.toString(random.nextInt(3));
+            String x4 = new String[]{"low", "medium", "high"}[random.nextInt(3)];
+            String x5 = i % 5 == 0 ? "1e-3" : i % 5 == 1 ? "-.5" : i % 5 == 2 ? "2." : "" + random.nextInt(1000);
+
+            buf.append(String.format("%.6f", x1)).append('\t').append(x2).append('\t').append(x3)
+                    .append('\t').append(x4).append('\t').append(x5).append(i % 2 == 0 ? "\n" : "\r\n");
+        }
+
+        File file = File.createTempFile("tabular", ".txt");
+        file.deleteOnExit();
+        write(file, buf.toString());
+
+        DataReader reader = new DataReader();
+        reader.setDelimiter(DelimiterType.TAB);
+        reader.setMaxIntegralDiscrete(3);
+        DataSet expected = reader.parseTabular(buf.toString().toCharArray());
+
+        ParallelTabularReader parallelReader = new ParallelTabularReader();
+        parallelReader.setDelimiter(DelimiterType.TAB);
+        parallelReader.setMaxIntegralDiscrete(3);
+        DataSet data = parallelReader.parseTabular(file);
+
+        assertEquals(expected.getNumRows(), data.getNumRows());
+        assertEquals(expected.getVariableNames(), data.getVariableNames());
+
+        for (int j = 0; j < expected.getNumColumns(); j++) {
+            Node expectedVariable = expected.getVariable(j);
+            Node variable = data.getVariable(j);
+            assertEquals(expectedVariable.getClass(), variable.getClass());
+
+            if (variable instanceof DiscreteVariable) {
+                assertEquals(((DiscreteVariable) expectedVariable).getCategories(),
+                        ((DiscreteVariable) variable).getCategories());
+            }
+
+            for (int i = 0; i < expected.getNumRows(); i++) {
+                if (variable instanceof DiscreteVariable) {
+                    assertEquals(expected.getInt(i, j), data.getInt(i, j));
+                } else {
+                    assertEquals(expected.getDouble(i, j), data.getDouble(i, j), 0.0);
+                }
+            }
+        }
+    }
+
+    // A variable may take a stored order of its categories; cells must follow that order.
+    @Test
+    public void testParallelTabularStoredCategories() throws IOException {
+        new DiscreteVariable("Y", Arrays.asList("gamma", "alpha", "beta"));
+
+        File file = File.createTempFile("tabular", ".txt");
+        file.deleteOnExit();
+        String[] values = {"alpha", "beta", "gamma", "beta", "alpha"};
+        StringBuilder buf = new StringBuilder("X\n");
+        for (String value : values) buf.append(value).append("\n");
+        write(file, buf.toString());
+
+        DataSet data = new ParallelTabularReader().parseTabular(file);
+        DiscreteVariable variable = (DiscreteVariable) data.getVariable(0);
+
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i], variable.getCategory(data.getInt(i, 0)));
+        }
+    }
+
+    @Test
+    public void testParallelTabularMissing() throws IOException {
+        File file = File.createTempFile("tabular", ".txt");
+        file.deleteOnExit();
+        write(file, "X1 X2 X3\n1.5 * a\n2.5 * b\n3.5 *\n");
+
+        DataSet data = new ParallelTabularReader().parseTabular(file);
+
+        assertEquals(3, data.getNumRows());
+        assertTrue(data.getVariable(1) instanceof ContinuousVariable);
+        assertTrue(Double.isNaN(data.getDouble(0, 1)));
+        assertEquals(2, ((DiscreteVariable) data.getVariable(2)).getNumCategories());
+        assertEquals(-99, data.getInt(2, 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParallelTabularTooManyTokens() throws IOException {
+        File file = File.createTempFile("tabular", ".txt");
+        file.deleteOnExit();
+        write(file, "X1 X2\n1 2\n3 4 5\n");
+
+        new ParallelTabularReader().parseTabular(file);
+    }
+
+    private void write(File file, String text) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+            writer.write(text);
+        }
+    }
+
     private char[] fileToCharArray(File file) {
         try {
             FileReader reader = new FileReader(file);
@@ -261,6 +261,36 @@ public class TestDeltaTetradTest {
         double chiSq2 = test2.calcChiSquare(t1234, t1342);
     }
 
+    @Test
+    public void testBatch() {
+        RandomUtil.getInstance().setSeed(49284932L);
+
+        SemPm pm = makePm();
+        DataSet data = new SemIm(pm).simulateData(1000, false);
+        List<Node> variables = data.getVariables();
+
+        List<Tetrad[]> tetrads = new ArrayList<>();
+
+        for (int i = 0; i < 5; i++) {
+            List<Node> v = new ArrayList<>(variables);
+            Node x = v.remove(i);
+            tetrads.add(new Tetrad[]{new Tetrad(x, v.get(0), v.get(1), v.get(2)),
+                    new Tetrad(x, v.get(0), v.get(2), v.get(1))});
+            tetrads.add(new Tetrad[]{new Tetrad(x, v.get(1), v.get(2), v.get(3))});
+        }
+
+        DeltaTetradTest cached = new DeltaTetradTest(data);
+        DeltaTetradTest uncached = new DeltaTetradTest(data);
+        uncached.setCacheFourthMoments(false);
+
+        double[] pValues = cached.getPValues(tetrads);
+
+        for (int i = 0; i < tetrads.size(); i++) {
+            assertEquals(uncached.getPValue(tetrads.get(i)), pValues[i], 1e-10);
+            assertEquals(uncached.getPValue(tetrads.get(i)), cached.getPValue(tetrads.get(i)), 1e-10);
+        }
+    }
+
     private SemPm makePm() {
         List<Node> variableNodes = new ArrayList<>();
         ContinuousVariable x1 = new ContinuousVariable("X1");
@@ -167,9 +167,52 @@ public final class TestEdgeListGraph {
 
         assertEquals(2, shd);
     }
-}
 
+    @Test
+    public void testCyclesAndAncestors() {
+        setUp();
 
+        graph.addNode(x1);
+        graph.addNode(x2);
+        graph.addNode(x3);
+        graph.addNode(x4);
+        graph.addNode(x5);
 
+        graph.addDirectedEdge(x1, x2);
+        graph.addDirectedEdge(x2, x3);
+        graph.addUndirectedEdge(x3, x4);
 
+        assertTrue(!graph.existsDirectedCycle());
+        assertTrue(graph.isAncestorOf(x1, x3));
+        assertTrue(!graph.isAncestorOf(x3, x1));
+        assertTrue(!graph.isAncestorOf(x1, x4));
+        assertTrue(graph.isDescendentOf(x3, x1));
 
+        // Adding a directed edge extends the cached ancestor sets.
+        graph.addDirectedEdge(x5, x1);
+        assertTrue(graph.isAncestorOf(x5, x3));
+
+        // Removing one shrinks them.
+        graph.removeEdge(x1, x2);
+        assertTrue(!graph.isAncestorOf(x5, x3));
+        assertTrue(!graph.isAncestorOf(x1, x3));
+
+        // So does reorienting an edge in place.
+        graph.addDirectedEdge(x1, x2);
+        assertTrue(graph.isAncestorOf(x1, x3));
+
+        // Copies share edges, so the copy's cache is dropped too.
+        Graph copy = new EdgeListGraph(graph);
+        assertTrue(copy.isAncestorOf(x1, x3));
+
+        Edge edge = graph.getEdge(x1, x2);
+        edge.setEndpoint1(Endpoint.ARROW);
+        assertTrue(!graph.isAncestorOf(x1, x3));
+        assertTrue(!copy.isAncestorOf(x1, x3));
+        edge.setEndpoint1(Endpoint.TAIL);
+
+        graph.addDirectedEdge(x3, x5);
+        assertTrue(graph.existsDirectedCycle());
+        assertTrue(graph.isAncestorOf(x3, x1));
+    }
+}
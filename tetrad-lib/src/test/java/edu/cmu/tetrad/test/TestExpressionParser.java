@@ -21,9 +21,11 @@
 
 package edu.cmu.tetrad.test;
 
+import edu.cmu.tetrad.calculator.expression.CompiledExpression;
 import edu.cmu.tetrad.calculator.expression.Context;
 import edu.cmu.tetrad.calculator.expression.Expression;
 import edu.cmu.tetrad.calculator.parser.ExpressionParser;
+import edu.cmu.tetrad.util.RandomUtil;
 import org.junit.Test;
 
 import java.text.ParseException;
@@ -366,6 +368,57 @@ public class TestExpressionParser {
             e.printStackTrace();
         }
     }
-}
 
+    // Compiled expressions give the values of the expressions, with the same random draws.
+    @Test
+    public void testCompiled() {
+        final Map<String, Double> values = new HashMap<>();
+        values.put("a", 0.7);
+        values.put("b", -1.2);
+        values.put("X", 0.3);
+        values.put("Y", -1.7);
+
+        Context context = new Context() {
+            public Double getValue(String var) {
+                return values.get(var);
+            }
+        };
+
+        Map<String, Integer> slots = new HashMap<>();
+        slots.put("a", 0);
+        slots.put("b", 1);
+        slots.put("X", 2);
+        slots.put("Y", 3);
+        double[] slotValues = {0.7, -1.2, 0.3, -1.7};
+
+        String[] formulas = {"a*X + b*Y + N(0, 1)", "X^2 + sin(Y) - cos(X*Y)/3", "tanh(a*X) + exp(-Y) * sqrt(abs(X))",
+                "max(X, Y, 0.5) + min(X, -Y)", "IF(X > 0, X, -X)", "-X + pow(abs(Y), 1.5) + round(X) + signum(Y)",
+                "U(-1, 1) + Normal(X, 2)", "N(0, -1) + 2*X", "Z + X", "Gamma(2, 2) + X"};
+        List<String> random = Arrays.asList("a*X + b*Y + N(0, 1)", "U(-1, 1) + Normal(X, 2)", "Gamma(2, 2) + X");
 
+        ExpressionParser parser = new ExpressionParser();
+
+        try {
+            for (String formula : formulas) {
+                Expression expression = parser.parseExpression(formula);
+                CompiledExpression compiled = CompiledExpression.compile(expression, slots);
+
+                RandomUtil.getInstance().setSeed(2934833L);
+                double value = expression.evaluate(context);
+                RandomUtil.getInstance().setSeed(2934833L);
+                assertEquals(value, compiled.evaluate(slotValues), 0.0);
+
+                double[][] columns = {{0.7, 0.7}, {-1.2, -1.2}, {0.3, 0.3}, {-1.7, -1.7}};
+                double[] result = new double[2];
+                compiled.evaluate(columns, 0, 2, result);
+
+                if (!random.contains(formula)) {
+                    assertEquals(value, result[0], 0.0);
+                    assertEquals(value, result[1], 0.0);
+                }
+            }
+        } catch (ParseException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -708,6 +708,132 @@ public class TestFges {
         }
     }
 
+    @Test
+    public void testCholeskyCache() {
+        RandomUtil.getInstance().setSeed(1450030184196L);
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < 20; i++) {
+            nodes.add(new ContinuousVariable("X" + (i + 1)));
+        }
+
+        Graph graph = GraphUtils.randomGraph(nodes, 0, 30, 30, 15, 15, false);
+        SemPm pm = new SemPm(graph);
+        SemIm im = new SemIm(pm);
+        DataSet data = im.simulateData(500, false);
+        ICovarianceMatrix cov = new CovarianceMatrix(data);
+
+        SemBicScore score1 = new SemBicScore(cov);
+        SemBicScore score2 = new SemBicScore(cov);
+        score2.setUseCholeskyCache(true, 50);
+
+        for (int i = 0; i < 1000; i++) {
+            int y = RandomUtil.getInstance().nextInt(20);
+            List<Integer> parents = new ArrayList<>();
+
+            for (int j = 0; j < 20; j++) {
+                if (j != y && RandomUtil.getInstance().nextDouble() < 0.25) parents.add(j);
+            }
+
+            Collections.shuffle(parents);
+            int[] _parents = new int[parents.size()];
+            for (int j = 0; j < parents.size(); j++) _parents[j] = parents.get(j);
+
+            assertEquals(score1.localScore(y, _parents), score2.localScore(y, _parents), 1e-8);
+
+            if (_parents.length > 0) {
+                int[] fewer = Arrays.copyOf(_parents, _parents.length - 1);
+                assertEquals(score1.localScore(y, fewer), score2.localScore(y, fewer), 1e-8);
+            }
+        }
+
+        Graph pattern1 = new Fges(score1).search();
+        Graph pattern2 = new Fges(score2).search();
+        assertEquals(pattern1, pattern2);
+    }
+
+    @Test
+    public void testCachedScore() {
+        RandomUtil.getInstance().setSeed(1450030184196L);
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < 20; i++) {
+            nodes.add(new ContinuousVariable("X" + (i + 1)));
+        }
+
+        Graph graph = GraphUtils.randomGraph(nodes, 0, 30, 30, 15, 15, false);
+        SemPm pm = new SemPm(graph);
+        SemIm im = new SemIm(pm);
+        DataSet data = im.simulateData(500, false);
+        ICovarianceMatrix cov = new CovarianceMatrix(data);
+
+        SemBicScore score = new SemBicScore(cov);
+        CachedScore cachedScore = new CachedScore(new SemBicScore(cov), 100);
+
+        for (int i = 0; i < 1000; i++) {
+            int y = RandomUtil.getInstance().nextInt(20);
+            int x = RandomUtil.getInstance().nextInt(20);
+            if (x == y) continue;
+            int[] z = y == 0 || x == 0 ? new int[0] : new int[]{0};
+
+            assertEquals(score.localScore(y, x), cachedScore.localScore(y, x), 1e-10);
+            assertEquals(score.localScore(y, z), cachedScore.localScore(y, z), 1e-10);
+            assertEquals(score.localScoreDiff(x, y, z), cachedScore.localScoreDiff(x, y, z), 1e-10);
+            assertEquals(score.localScoreDiff(x, y), cachedScore.localScoreDiff(x, y), 1e-10);
+        }
+
+        assertTrue(cachedScore.getCache().getHits() > 0);
+        assertTrue(cachedScore.getCache().size() <= cachedScore.getCache().getCapacity());
+
+        Graph pattern1 = new Fges(score).search();
+        Graph pattern2 = new Fges(cachedScore).search();
+        assertEquals(pattern1, pattern2);
+
+        CachedScore verifiedScore = new CachedScore(new SemBicScore(cov),
+                new ConcurrentScoreCache(100, 4, true));
+        Graph pattern3 = new Fges(verifiedScore).search();
+        assertEquals(pattern1, pattern3);
+    }
+
+    @Test
+    public void testVerifiedScoreCache() {
+        ConcurrentScoreCache cache = new ConcurrentScoreCache(100, 4, true);
+
+        // Two different exact keys forced to collide on the same 64 bit key.
+        cache.put(5L, ConcurrentScoreCache.exactKey(new int[]{2, 1}, 0, 7), 1.0);
+        assertEquals(1.0, cache.get(5L, ConcurrentScoreCache.exactKey(new int[]{1, 2}, 0, 7)), 0.0);
+        assertTrue(Double.isNaN(cache.get(5L, ConcurrentScoreCache.exactKey(new int[]{1, 3}, 0, 7))));
+        assertTrue(Double.isNaN(cache.get(5L, ConcurrentScoreCache.exactKey(new int[]{1, 2}, 1, 7))));
+
+        cache.put(5L, ConcurrentScoreCache.exactKey(new int[]{1, 3}, 0, 7), 2.0);
+        assertEquals(2.0, cache.get(5L, ConcurrentScoreCache.exactKey(new int[]{3, 1}, 0, 7)), 0.0);
+        assertTrue(Double.isNaN(cache.get(5L, ConcurrentScoreCache.exactKey(new int[]{1, 2}, 0, 7))));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testBatchForwardEvaluation() {
+        RandomUtil.getInstance().setSeed(1450030184196L);
+
+        int numNodes = 20;
+
+        for (int i = 0; i < 10; i++) {
+            Graph dag = GraphUtils.randomDag(numNodes, 0, numNodes, 10, 10, 10, false);
+
+            Fges fges = new Fges(new GraphScore(dag));
+            fges.setFaithfulnessAssumed(true);
+            Graph unbatched = fges.search();
+
+            Fges batchedFges = new Fges(new GraphScore(dag));
+            batchedFges.setBatchForwardEvaluation(true);
+            batchedFges.setFaithfulnessAssumed(true);
+            Graph batched = batchedFges.search();
+
+            assertEquals(unbatched, batched);
+            assertEquals(new Pc(new IndTestDSep(dag)).search(), batched);
+        }
+    }
+
 
     @Test
     public void testFromGraph() {
@@ -34,18 +34,28 @@ import edu.cmu.tetrad.bayes.MlBayesIm;
 import edu.cmu.tetrad.data.ContinuousVariable;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.DiscreteVariable;
+import edu.cmu.tetrad.graph.Edge;
+import edu.cmu.tetrad.graph.EdgeListGraph;
+import edu.cmu.tetrad.graph.EdgeTypeProbability.EdgeType;
+import edu.cmu.tetrad.graph.Endpoint;
 import edu.cmu.tetrad.graph.Graph;
 import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.graph.GraphNode;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.search.DagToPag;
 import edu.cmu.tetrad.sem.LargeScaleSimulation;
 import edu.cmu.tetrad.util.Parameters;
 import edu.pitt.dbmi.algo.bootstrap.BootstrapEdgeEnsemble;
+import edu.pitt.dbmi.algo.bootstrap.EdgeFrequencyTable;
+import edu.pitt.dbmi.algo.bootstrap.GeneralBootstrapSearch;
 import edu.pitt.dbmi.algo.bootstrap.GeneralBootstrapTest;
 import java.util.ArrayList;
 import java.util.List;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 /**
  *
  * Aug 17, 2017 2:28:48 PM
@@ -67,6 +77,78 @@ public class TestGeneralBootstrapTest {
 		//testFCId();
 	}
 
+	@Test
+	public void testEdgeFrequencyTable() {
+		Node x = new GraphNode("X");
+		Node y = new GraphNode("Y");
+		Node z = new GraphNode("Z");
+		List<Node> nodes = new ArrayList<>();
+		nodes.add(z);
+		nodes.add(y);
+		nodes.add(x);
+
+		EdgeFrequencyTable table = new EdgeFrequencyTable(nodes);
+
+		Graph g1 = new EdgeListGraph(nodes);
+		g1.addEdge(new Edge(x, y, Endpoint.TAIL, Endpoint.ARROW));
+		Edge e = new Edge(z, y, Endpoint.CIRCLE, Endpoint.ARROW);
+		e.addProperty(Edge.Property.dd);
+		g1.addEdge(e);
+		table.add(g1);
+
+		Graph g2 = new EdgeListGraph(nodes);
+		g2.addEdge(new Edge(y, x, Endpoint.ARROW, Endpoint.TAIL));
+		table.add(g2);
+
+		Graph g3 = new EdgeListGraph(nodes);
+		g3.addEdge(new Edge(y, x, Endpoint.TAIL, Endpoint.ARROW));
+		g3.addEdge(new Edge(x, z, Endpoint.CIRCLE, Endpoint.CIRCLE));
+		table.add(g3);
+
+		assertEquals(3, table.getNumGraphs());
+		assertEquals(x, table.getNodes().get(0));
+		assertEquals(2 / 3.0, table.getProbability(x, y, EdgeType.ta), 1e-10);
+		assertEquals(2 / 3.0, table.getProbability(y, x, EdgeType.at), 1e-10);
+		assertEquals(1 / 3.0, table.getProbability(x, y, EdgeType.at), 1e-10);
+		assertEquals(0.0, table.getProbability(x, y, EdgeType.nil), 1e-10);
+		assertEquals(1 / 3.0, table.getProbability(y, z, EdgeType.ac), 1e-10);
+		assertEquals(1 / 3.0, table.getProbability(z, y, EdgeType.ca), 1e-10);
+		assertEquals(2 / 3.0, table.getProbability(y, z, EdgeType.nil), 1e-10);
+		assertEquals(1 / 3.0, table.getProbability(x, z, EdgeType.cc), 1e-10);
+		assertEquals(1 / 3.0, table.getPropertyProbabilities(y, z).get(Edge.Property.dd), 1e-10);
+	}
+
+	@Test
+	public void testCancelBeforeSearch() {
+		int numVars = 5;
+		Graph dag = makeContinuousDAG(numVars, 0, 1);
+
+		int[] causalOrdering = new int[numVars];
+
+		for (int i = 0; i < numVars; i++) {
+			causalOrdering[i] = i;
+		}
+
+		LargeScaleSimulation simulator = new LargeScaleSimulation(dag, dag.getNodes(), causalOrdering);
+		DataSet data = simulator.simulateDataFisher(100);
+
+		Parameters parameters = new Parameters();
+		parameters.set("verbose", false);
+
+		GeneralBootstrapSearch search = new GeneralBootstrapSearch(data);
+		search.setAlgorithm(new Fges(new SemBicScore()));
+		search.setParameters(parameters);
+		search.setNumOfBootstrap(3);
+
+		// A cancel that comes before the search starts stops it.
+		search.cancel();
+		assertTrue(search.search().isEmpty());
+
+		// Setting up a new search clears it.
+		search.setAlgorithm(new Fges(new SemBicScore()));
+		assertEquals(3, search.search().size());
+	}
+
 	@Test
 	public void testFGESc() {
 		int penaltyDiscount = 2;
@@ -0,0 +1,92 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Dag;
+import edu.cmu.tetrad.graph.GraphNode;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.sem.GeneralizedSemIm;
+import edu.cmu.tetrad.sem.GeneralizedSemPm;
+import edu.cmu.tetrad.util.RandomUtil;
+import edu.cmu.tetrad.util.StatUtils;
+import org.junit.Test;
+
+import java.text.ParseException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that recursive simulation of a generalized SEM, a row or a batch of rows at a time,
+ * gives data with the distribution of the model.
+ */
+public final class TestGeneralizedSemSimulation {
+
+    @Test
+    public void testRecursive() throws ParseException {
+        Node x1 = new GraphNode("X1");
+        Node x2 = new GraphNode("X2");
+        Node x3 = new GraphNode("X3");
+
+        Dag graph = new Dag();
+        graph.addNode(x1);
+        graph.addNode(x2);
+        graph.addNode(x3);
+        graph.addDirectedEdge(x1, x2);
+        graph.addDirectedEdge(x2, x3);
+
+        GeneralizedSemPm pm = new GeneralizedSemPm(graph);
+        pm.setNodeExpression(x1, "E_X1");
+        pm.setNodeExpression(x2, "a * X1 + E_X2");
+        pm.setNodeExpression(x3, "X2^2 + E_X3");
+        pm.setNodeExpression(pm.getErrorNode(x1), "U(-1, 1)");
+        pm.setNodeExpression(pm.getErrorNode(x2), "N(1, 1)");
+        pm.setNodeExpression(pm.getErrorNode(x3), "Uniform(0, 2)");
+
+        GeneralizedSemIm im = new GeneralizedSemIm(pm);
+        im.setParameterValue("a", 2.0);
+
+        RandomUtil.getInstance().setSeed(49283749L);
+
+        // X1 has mean 0 and variance 1/3, X2 mean 1 and variance 7/3, and X3 mean 7/3 + 1 + 1.
+        for (int batchSize : new int[]{1, 7, 1000}) {
+            DataSet data = im.simulateDataRecursive(100000, batchSize, false);
+            assertEquals(3, data.getNumColumns());
+            assertEquals(100000, data.getNumRows());
+
+            double[] d1 = data.getDoubleData().getColumn(data.getColumn(data.getVariable("X1"))).toArray();
+            double[] d2 = data.getDoubleData().getColumn(data.getColumn(data.getVariable("X2"))).toArray();
+            double[] d3 = data.getDoubleData().getColumn(data.getColumn(data.getVariable("X3"))).toArray();
+
+            for (double d : d1) {
+                assertEquals(0.0, d, 1.0);
+            }
+
+            assertEquals(0.0, StatUtils.mean(d1), 0.01);
+            assertEquals(1.0 / 3.0, StatUtils.covariance(d1, d1), 0.01);
+            assertEquals(1.0, StatUtils.mean(d2), 0.02);
+            assertEquals(7.0 / 3.0, StatUtils.covariance(d2, d2), 0.05);
+            assertEquals(2.0 / 3.0, StatUtils.covariance(d1, d2), 0.02);
+            assertEquals(13.0 / 3.0, StatUtils.mean(d3), 0.05);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.search.SearchGraphUtils;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static junit.framework.TestCase.fail;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the functions of IndexedGraph through the Graph interface and
+ * against EdgeListGraph.
+ */
+public final class TestIndexedGraph {
+    private Node x1, x2, x3, x4, x5;
+    private Graph graph;
+
+    public void setUp() {
+        x1 = new GraphNode("x1");
+        x2 = new GraphNode("x2");
+        x3 = new GraphNode("x3");
+        x4 = new GraphNode("x4");
+        x5 = new GraphNode("x5");
+        graph = new IndexedGraph();
+    }
+
+    @Test
+    public void testSequence1() {
+        setUp();
+
+        graph.clear();
+
+        // Add and remove some nodes.
+        graph.addNode(x1);
+        graph.addNode(x2);
+        graph.addNode(x3);
+        graph.addNode(x4);
+        graph.addNode(x5);
+
+        graph.addDirectedEdge(x1, x2);
+        graph.addDirectedEdge(x2, x3);
+        graph.addDirectedEdge(x3, x4);
+
+        List<Node> children = graph.getChildren(x1);
+        List<Node> parents = graph.getParents(x4);
+
+        assertEquals(children, Collections.singletonList(x2));
+        assertEquals(parents, Collections.singletonList(x3));
+
+        assertTrue(graph.isDConnectedTo(x1, x3, Collections.EMPTY_LIST));
+        graph.removeNode(x2);
+
+        // No cycles.
+        assertTrue(!graph.existsDirectedCycle());
+
+        // Copy the graph.
+        Graph graph2 = new IndexedGraph(graph);
+        assertEquals(graph, graph2);
+
+        Graph graph3 = ((IndexedGraph) graph).toEdgeListGraph();
+        assertEquals(graph, graph3);
+    }
+
+    @Test
+    public void testSequence2() {
+        setUp();
+
+        graph.clear();
+
+        // Add some edges in a cycle.
+        graph.addNode(x1);
+        graph.addNode(x2);
+        graph.addNode(x3);
+        graph.addNode(x4);
+        graph.addNode(x5);
+
+        assertTrue(!graph.existsDirectedCycle());
+
+        graph.addDirectedEdge(x1, x3);
+
+        try {
+            graph.addDirectedEdge(x1, x3);
+        } catch (IllegalArgumentException e) {
+            fail("This should have been ignored.");
+        }
+
+        try {
+            graph.addDirectedEdge(x3, x1);
+            fail("Shouldn't have been able to add a second edge between x1 and x3.");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+
+        graph.addDirectedEdge(x3, x4);
+        graph.addDirectedEdge(x4, x1);
+        graph.addDirectedEdge(x1, x2);
+        graph.addDirectedEdge(x2, x3);
+        graph.addDirectedEdge(x3, x5);
+        graph.addDirectedEdge(x5, x2);
+
+        graph.setEndpoint(x4, x3, Endpoint.ARROW);
+        graph.setEndpoint(x3, x4, Endpoint.ARROW);
+
+        assertTrue(graph.isAdjacentTo(x3, x4));
+        assertEquals(Endpoint.ARROW, graph.getEndpoint(x3, x4));
+        assertEquals(Endpoint.ARROW, graph.getEndpoint(x4, x3));
+        assertTrue(graph.existsDirectedCycle());
+    }
+
+    @Test
+    public void testSequence4() {
+        setUp();
+
+        graph.clear();
+
+        graph.addNode(x1);
+        graph.addNode(x2);
+
+        graph.addUndirectedEdge(x1, x2);
+
+        List<Edge> edges = new ArrayList<>(graph.getEdges());
+
+        Edge e1 = edges.get(0);
+
+        Edge e2 = new Edge(x2, x1, Endpoint.TAIL, Endpoint.TAIL);
+
+        assertTrue(e1.equals(e2));
+
+        assertTrue(e1.hashCode() == e2.hashCode());
+
+        graph.removeEdge(e2);
+
+        assertTrue(!graph.isAdjacentTo(x1, x2));
+        assertEquals(0, graph.getNumEdges());
+    }
+
+    @Test
+    public void test5() {
+        Graph graph1 = GraphUtils.emptyGraph(3);
+
+        List<Node> nodes = graph1.getNodes();
+
+        graph1.addDirectedEdge(nodes.get(0), nodes.get(1));
+        graph1.addDirectedEdge(nodes.get(1), nodes.get(2));
+        graph1.addDirectedEdge(nodes.get(0), nodes.get(2));
+
+        Graph graph2 = new IndexedGraph(graph1);
+
+        graph2.removeEdge(nodes.get(0), nodes.get(1));
+
+        int shd = SearchGraphUtils.structuralHammingDistance(graph1, graph2);
+
+        assertEquals(2, shd);
+    }
+
+    @Test
+    public void testAgainstEdgeListGraph() {
+        RandomUtil.getInstance().setSeed(38482938L);
+
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < 30; i++) {
+            nodes.add(new GraphNode("X" + (i + 1)));
+        }
+
+        EdgeListGraph reference = new EdgeListGraph(nodes);
+        IndexedGraph graph = new IndexedGraph(nodes);
+
+        for (int t = 0; t < 2000; t++) {
+            Node a = nodes.get(RandomUtil.getInstance().nextInt(nodes.size()));
+            Node b = nodes.get(RandomUtil.getInstance().nextInt(nodes.size()));
+            if (a == b) continue;
+
+            if (reference.isAdjacentTo(a, b)) {
+                if (RandomUtil.getInstance().nextDouble() < 0.5) {
+                    reference.removeEdge(a, b);
+                    graph.removeEdge(a, b);
+                } else {
+                    reference.setEndpoint(a, b, Endpoint.ARROW);
+                    graph.setEndpoint(a, b, Endpoint.ARROW);
+                }
+            } else if (RandomUtil.getInstance().nextDouble() < 0.5) {
+                reference.addDirectedEdge(a, b);
+                graph.addDirectedEdge(a, b);
+            } else {
+                reference.addUndirectedEdge(a, b);
+                graph.addUndirectedEdge(a, b);
+            }
+        }
+
+        assertEquals(reference, graph);
+
+        for (Node a : nodes) {
+            assertEquals(new HashSet<>(reference.getAdjacentNodes(a)), new HashSet<>(graph.getAdjacentNodes(a)));
+            assertEquals(new HashSet<>(reference.getParents(a)), new HashSet<>(graph.getParents(a)));
+            assertEquals(new HashSet<>(reference.getChildren(a)), new HashSet<>(graph.getChildren(a)));
+            assertEquals(reference.getDegree(a), graph.getDegree(a));
+
+            int i = graph.getIndex(a);
+            assertEquals(a, graph.getNode(i));
+
+            for (Node b : nodes) {
+                int j = graph.getIndex(b);
+                assertEquals(reference.isAdjacentTo(a, b), graph.isAdjacentTo(i, j));
+                assertEquals(reference.getEndpoint(a, b), graph.getEndpoint(i, j));
+                assertEquals(reference.isParentOf(a, b), graph.isParentOf(i, j));
+                assertEquals(reference.getEdge(a, b), graph.getEdge(a, b));
+            }
+        }
+
+        graph.removeNode(nodes.get(3));
+        reference.removeNode(nodes.get(3));
+        assertEquals(reference, graph);
+        assertEquals(reference, new IndexedGraph(reference));
+    }
+}
@@ -21,6 +21,7 @@
 
 package edu.cmu.tetrad.test;
 
+import edu.cmu.tetrad.data.CompiledKnowledge;
 import edu.cmu.tetrad.data.ContinuousVariable;
 import edu.cmu.tetrad.data.IKnowledge;
 import edu.cmu.tetrad.data.Knowledge2;
@@ -34,6 +35,7 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -164,9 +166,51 @@ public final class TestKnowledge {
             assertTrue(knowledge.isForbidden("X11", "X22"));
         }
     }
-}
 
+    @Test
+    public final void testCompiled() {
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < 30; i++) {
+            nodes.add(new ContinuousVariable("X" + (i + 1)));
+        }
+
+        List<String> names = new ArrayList<>();
+        for (Node node : nodes) names.add(node.getName());
+
+        Knowledge2 knowledge = new Knowledge2(names);
+
+        knowledge.addToTier(0, "X1*");
+        knowledge.addToTier(1, "X2*");
+        knowledge.setTierForbiddenWithin(1, true);
+        knowledge.setForbidden("X3", "X4*");
+        knowledge.setRequired("X5", "X6");
 
+        CompiledKnowledge compiled = CompiledKnowledge.compile(knowledge, nodes);
+        assertCompiled(knowledge, compiled, nodes);
 
+        // Compiling again against the same variables reuses the snapshot.
+        assertTrue(compiled == knowledge.compile(nodes));
 
+        // Edits discard it.
+        knowledge.setForbidden("X7", "X8");
+        CompiledKnowledge recompiled = knowledge.compile(nodes);
+        assertTrue(compiled != recompiled);
+        assertTrue(recompiled.isForbidden(6, 7));
+        assertCompiled(knowledge, recompiled, nodes);
+
+        knowledge.clear();
+        assertTrue(knowledge.compile(nodes).isEmpty());
+    }
 
+    private void assertCompiled(IKnowledge knowledge, CompiledKnowledge compiled, List<Node> nodes) {
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int j = 0; j < nodes.size(); j++) {
+                String x = nodes.get(i).getName();
+                String y = nodes.get(j).getName();
+                assertEquals(knowledge.isForbidden(x, y), compiled.isForbidden(i, j));
+                assertEquals(knowledge.isRequired(x, y), compiled.isRequired(i, j));
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.*;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.BDeuScore;
+import edu.cmu.tetrad.search.ChiSquareTest;
+import edu.cmu.tetrad.search.GSquareTest;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Pins the chi square and G square tests and the BDeu score, which count over packed columns, to the values the
+ * cell table gave before.
+ */
+public final class TestPackedDiscreteData {
+
+    private static final int[][] TESTS = {{0, 3}, {4, 0, 3}, {1, 4, 2}, {4, 1, 3}};
+
+    @Test
+    public void testFullData() {
+        DataSet data = getData();
+
+        checkTests(data, new double[][]{
+                {12.576416814348601, 3.9064498160912287E-4, 1},
+                {4.323734679868946, 0.3639624570973091, 4},
+                {25.855040905250988, 0.056102342662910365, 16},
+                {31.950293261280468, 9.507035453582002E-5, 8}
+        });
+
+        checkScores(data, new double[]{-238.4155571316199, -277.09712170270825, -12.508644414127872,
+                -45.56041712405241, -142.6163620988685});
+    }
+
+    @Test
+    public void testRowSubset() {
+        DataSet data = getData();
+
+        int[] rows = new int[120];
+        for (int i = 0; i < rows.length; i++) rows[i] = (i * 7) % 200;
+        DataSet subset = data.subsetRows(rows);
+
+        checkTests(subset, new double[][]{
+                {7.252747252747252, 0.007079262383694163, 1},
+                {3.0248262686773604, 0.5536794139299355, 4},
+                {26.615491495036952, 0.045959833309148435, 16},
+                {32.168677140180904, 8.687948062369166E-5, 8}
+        });
+
+        checkScores(subset, new double[]{-150.02575894748486, -172.52167488927404, -11.371324417167699,
+                -39.149756370621304, -86.68315214051391});
+    }
+
+    private void checkTests(DataSet data, double[][] expected) {
+        ChiSquareTest chiSquare = new ChiSquareTest(data, 0.05);
+        GSquareTest gSquare = new GSquareTest(data, 0.05);
+
+        for (int t = 0; t < TESTS.length; t++) {
+            ChiSquareTest.Result r1 = chiSquare.calcChiSquare(TESTS[t]);
+            assertEquals(expected[t][0], r1.getXSquare(), 1e-10);
+            assertEquals(expected[t][1], r1.getPValue(), 1e-12);
+            assertEquals((int) expected[t][2], r1.getDf());
+
+            // Like the chi square test, the G square test sums Pearson terms.
+            GSquareTest.Result r2 = gSquare.calcGSquare(TESTS[t]);
+            assertEquals(expected[t][0], r2.getGSquare(), 1e-10);
+            assertEquals(expected[t][1], r2.getPValue(), 1e-12);
+            assertEquals((int) expected[t][2], r2.getDf());
+        }
+    }
+
+    private void checkScores(DataSet data, double[] expected) {
+        BDeuScore score = new BDeuScore(data);
+
+        assertEquals(expected[0], score.localScore(4, new int[]{1, 3}), 1e-10);
+        assertEquals(expected[1], score.localScore(2, new int[]{0}), 1e-10);
+        assertEquals(expected[2], score.localScoreDiff(3, 4, new int[]{1}), 1e-10);
+        assertEquals(expected[3], score.localScoreDiff(2, 4, new int[]{1}), 1e-10);
+        assertEquals(expected[4], score.localScore(0), 1e-10);
+    }
+
+    // Five discrete variables with weak dependencies and missing values in two columns.
+    private DataSet getData() {
+        RandomUtil random = RandomUtil.getInstance();
+        random.setSeed(2939201L);
+
+        int[] categories = {2, 3, 4, 2, 3};
+        List<Node> nodes = new ArrayList<>();
+
+        for (int j = 0; j < categories.length; j++) {
+            nodes.add(new DiscreteVariable("X" + (j + 1), categories[j]));
+        }
+
+        DataSet data = new BoxDataSet(new VerticalIntDataBox(200, categories.length), nodes);
+
+        for (int i = 0; i < 200; i++) {
+            int x1 = random.nextInt(2);
+            data.setInt(i, 0, x1);
+            data.setInt(i, 1, random.nextDouble() < 0.25 ? x1 : random.nextInt(3));
+            data.setInt(i, 2, random.nextInt(4));
+            data.setInt(i, 3, random.nextDouble() < 0.2 ? x1 : random.nextInt(2));
+            data.setInt(i, 4, random.nextDouble() < 0.3 ? (data.getInt(i, 1) + data.getInt(i, 3)) % 3
+                    : random.nextInt(3));
+        }
+
+        for (int i = 0; i < 200; i += 17) data.setInt(i, 2, DiscreteVariable.MISSING_VALUE);
+        for (int i = 5; i < 200; i += 23) data.setInt(i, 4, DiscreteVariable.MISSING_VALUE);
+
+        return data;
+    }
+}
@@ -23,10 +23,20 @@ package edu.cmu.tetrad.test;
 
 import edu.cmu.tetrad.bayes.*;
 import edu.cmu.tetrad.graph.Dag;
+import edu.cmu.tetrad.graph.GraphUtils;
 import edu.cmu.tetrad.graph.GraphNode;
 import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.RandomUtil;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -266,6 +276,169 @@ public final class TestRowSummingUpdater {
         assertEquals(marginal1, marginal2, 0.000001);
     }
 
+    @Test
+    public void testJunctionTree() {
+        RandomUtil.getInstance().setSeed(29384723L);
+
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            nodes.add(new GraphNode("X" + (i + 1)));
+        }
+
+        Dag graph = new Dag(GraphUtils.randomGraph(nodes, 0, 15, 4, 4, 4, false));
+        BayesPm bayesPm = new BayesPm(graph, 2, 3);
+        MlBayesIm bayesIm = new MlBayesIm(bayesPm, MlBayesIm.RANDOM);
+
+        Evidence evidence = Evidence.tautology(bayesIm);
+        evidence.getProposition().setCategory(1, 0);
+        evidence.getProposition().setCategory(4, 1);
+        evidence.getProposition().removeCategory(7, 0);
+        evidence.setManipulated(4, true);
+
+        ManipulatingBayesUpdater updater1 = new RowSummingExactUpdater(bayesIm, evidence);
+        ManipulatingBayesUpdater updater2 = new JunctionTreeUpdater(bayesIm, evidence);
+
+        for (int i = 0; i < bayesIm.getNumNodes(); i++) {
+            for (int j = 0; j < bayesIm.getNumColumns(i); j++) {
+                assertEquals(updater1.getMarginal(i, j), updater2.getMarginal(i, j), 1e-10);
+            }
+        }
+
+        int[] variables = {0, 5, 9};
+        int[] values = {1, 0, 1};
+        assertEquals(updater1.getJointMarginal(variables, values),
+                updater2.getJointMarginal(variables, values), 1e-10);
+
+        BayesIm updated1 = updater1.getUpdatedBayesIm();
+        BayesIm updated2 = updater2.getUpdatedBayesIm();
+
+        for (int i = 0; i < updated1.getNumNodes(); i++) {
+            for (int row = 0; row < updated1.getNumRows(i); row++) {
+                for (int col = 0; col < updated1.getNumColumns(i); col++) {
+                    assertEquals(updated1.getProbability(i, row, col), updated2.getProbability(i, row, col), 1e-10);
+                }
+            }
+        }
+
+        // The compiled tree is reused for new evidence.
+        Evidence evidence2 = Evidence.tautology(bayesIm);
+        evidence2.getProposition().setCategory(2, 1);
+        updater1.setEvidence(evidence2);
+        updater2.setEvidence(evidence2);
+
+        for (int j = 0; j < bayesIm.getNumColumns(8); j++) {
+            assertEquals(updater1.getMarginal(8, j), updater2.getMarginal(8, j), 1e-10);
+        }
+    }
+
+    @Test
+    public void testLikelihoodWeighting() {
+        RandomUtil.getInstance().setSeed(29384723L);
+
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            nodes.add(new GraphNode("X" + (i + 1)));
+        }
+
+        Dag graph = new Dag(GraphUtils.randomGraph(nodes, 0, 15, 4, 4, 4, false));
+        BayesPm bayesPm = new BayesPm(graph, 2, 3);
+        bayesPm.setNumCategories(nodes.get(1), 3);
+        MlBayesIm bayesIm = new MlBayesIm(bayesPm, MlBayesIm.RANDOM);
+
+        Evidence evidence = Evidence.tautology(bayesIm);
+        evidence.getProposition().setCategory(1, 0);
+        evidence.getProposition().setCategory(4, 1);
+        evidence.getProposition().setCategory(9, 0);
+        evidence.setManipulated(4, true);
+
+        checkApproximate(bayesIm, evidence);
+
+        // A manipulated variable takes each of its allowed categories equally often.
+        Evidence evidence2 = Evidence.tautology(bayesIm);
+        evidence2.setManipulated(1, true);
+
+        checkApproximate(bayesIm, evidence2);
+        assertEquals(1.0 / 3.0, new JunctionTreeUpdater(bayesIm, evidence2).getMarginal(1, 2), 1e-10);
+
+        Evidence evidence3 = Evidence.tautology(bayesIm);
+        evidence3.getProposition().removeCategory(1, 1);
+        evidence3.getProposition().setCategory(9, 0);
+        evidence3.setManipulated(1, true);
+
+        checkApproximate(bayesIm, evidence3);
+    }
+
+    @Test
+    public void testApproximateFromEarlierVersion() throws Exception {
+        BayesIm bayesIm = sampleBayesIm0();
+        ApproximateUpdater updater = new ApproximateUpdater(bayesIm);
+
+        // Set the fields as they would be read from a stream written before the sampling options
+        // were added, which has only the counts of points accepted by rejection.
+        setField(updater, "counts", new int[][]{{30, 70}});
+        setField(updater, "weightedCounts", null);
+        setField(updater, "method", null);
+        setField(updater, "tolerance", 0.0);
+        setField(updater, "maxSamples", 0L);
+        setField(updater, "timeLimit", 0L);
+        setField(updater, "batchSize", 0);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(updater);
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        ApproximateUpdater read = (ApproximateUpdater) in.readObject();
+
+        assertEquals(ApproximateUpdater.Method.LIKELIHOOD_WEIGHTING, read.getMethod());
+        assertEquals(0.01, getField(read, "tolerance"));
+        assertEquals(1000000L, getField(read, "maxSamples"));
+        assertEquals(10000L, getField(read, "timeLimit"));
+        assertEquals(1000, getField(read, "batchSize"));
+
+        assertEquals(100, read.getNumSamples());
+        assertEquals(0.3, read.getMarginal(0, 0), 1e-10);
+
+        // New evidence is simulated with the default options.
+        read.setEvidence(Evidence.tautology(bayesIm));
+        assertTrue(read.getNumSamples() > 0);
+        assertEquals(0.3, read.getMarginal(0, 0), 0.05);
+    }
+
+    private static void setField(Object o, String name, Object value) throws Exception {
+        Field field = o.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(o, value);
+    }
+
+    private static Object getField(Object o, String name) throws Exception {
+        Field field = o.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(o);
+    }
+
+    private void checkApproximate(BayesIm bayesIm, Evidence evidence) {
+        ManipulatingBayesUpdater exact = new JunctionTreeUpdater(bayesIm, evidence);
+
+        for (ApproximateUpdater.Method method : ApproximateUpdater.Method.values()) {
+            ApproximateUpdater updater = new ApproximateUpdater(bayesIm, evidence);
+            updater.setMethod(method);
+            updater.setTolerance(0.005);
+            updater.setTimeLimit(60000);
+
+            assertTrue(updater.getNumSamples() > 0);
+
+            for (int i = 0; i < bayesIm.getNumNodes(); i++) {
+                for (int j = 0; j < bayesIm.getNumColumns(i); j++) {
+                    assertEquals(exact.getMarginal(i, j), updater.getMarginal(i, j), 0.05);
+                }
+            }
+        }
+    }
+
     private BayesIm sampleBayesIm0() {
         Node z = new GraphNode("z");
 
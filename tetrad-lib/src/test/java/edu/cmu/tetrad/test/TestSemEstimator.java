@@ -25,12 +25,15 @@ import edu.cmu.tetrad.data.*;
 import edu.cmu.tetrad.graph.*;
 import edu.cmu.tetrad.sem.*;
 import edu.cmu.tetrad.util.MatrixUtils;
+import edu.cmu.tetrad.util.RandomUtil;
 import edu.cmu.tetrad.util.TetradMatrix;
 import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
+
 /**
  * Tests the MeasurementSimulator class using diagnostics devised by Richard
  * Scheines. The diagnostics are described in the Javadocs, below.
@@ -185,6 +188,45 @@ public class TestSemEstimator {
         opt.optimize(im2);
     }
 
+    @Test
+    public void testOptimizerLbfgs() {
+        RandomUtil.getInstance().setSeed(49283732L);
+
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < 8; i++) {
+            nodes.add(new ContinuousVariable("X" + (i + 1)));
+        }
+
+        Graph graph = new Dag(GraphUtils.randomGraph(nodes, 0, 10,
+                30, 15, 15, false));
+        SemPm pm = new SemPm(graph);
+        SemIm im = new SemIm(pm);
+
+        DataSet data = im.simulateData(1000, false);
+
+        // For a DAG without latents, regression gives the maximum likelihood estimates.
+        SemIm im2 = new SemIm(pm);
+        im2.setDataSet(data);
+        new SemOptimizerRegression().optimize(im2);
+
+        SemIm im3 = new SemIm(pm);
+        im3.setDataSet(data);
+        new SemOptimizerLbfgs().optimize(im3);
+
+        assertEquals(im2.getScore(), im3.getScore(), 1e-6);
+
+        // Random restarts should not find anything better.
+        SemOptimizerLbfgs lbfgs = new SemOptimizerLbfgs();
+        lbfgs.setNumRestarts(2);
+
+        SemIm im4 = new SemIm(pm);
+        im4.setDataSet(data);
+        lbfgs.optimize(im4);
+
+        assertEquals(im2.getScore(), im4.getScore(), 1e-6);
+    }
+
     private ICovarianceMatrix constructCovMatrix2() {
         String[] vars = new String[]{"X1", "X2", "X3", "X4", "X5", "X6"};
 
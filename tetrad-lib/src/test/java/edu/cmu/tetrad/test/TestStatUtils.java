@@ -37,7 +37,9 @@ import org.junit.Test;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import static java.lang.Math.*;
 import static org.junit.Assert.assertEquals;
@@ -94,6 +96,50 @@ public class TestStatUtils {
         assertEquals(sd1, sd2, 0.1);
     }
 
+    /**
+     * Tests that the partial correlation read from the covariance matrix into a workspace agrees
+     * with the partial correlation of the copied submatrix, for conditioning sets of size 0 to 8.
+     */
+    @Test
+    public void testPartialCorrelationWorkspace() {
+        RandomUtil.getInstance().setSeed(30299533L);
+
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < 15; i++) {
+            nodes.add(new ContinuousVariable("X" + (i + 1)));
+        }
+
+        Graph graph = new Dag(GraphUtils.randomGraph(nodes, 0, 20,
+                5, 5, 5, false));
+        SemPm pm = new SemPm(graph);
+        SemIm im = new SemIm(pm);
+        DataSet dataSet = im.simulateData(1000, false);
+        ICovarianceMatrix cov = new CovarianceMatrix(dataSet);
+
+        int maxZ = 8;
+        double[] work = new double[maxZ * (maxZ + 2)];
+        int[] z = new int[maxZ];
+        Random random = new Random(30299533L);
+
+        for (int k = 0; k <= maxZ; k++) {
+            for (int t = 0; t < 20; t++) {
+                List<Integer> indices = new ArrayList<>();
+                for (int i = 0; i < nodes.size(); i++) indices.add(i);
+                Collections.shuffle(indices, random);
+
+                int[] choice = new int[k + 2];
+                for (int i = 0; i < k + 2; i++) choice[i] = indices.get(i);
+                System.arraycopy(choice, 2, z, 0, k);
+
+                double r1 = StatUtils.partialCorrelation(cov.getSubmatrix(choice).getMatrix());
+                double r2 = StatUtils.partialCorrelation(cov, choice[0], choice[1], z, k, work);
+
+                assertEquals(r1, r2, 1e-10);
+            }
+        }
+    }
+
     @Test
     public void testRankCorr() {
         double[] a1 = new double[]{2, 2, 3};